@@ -41,6 +41,7 @@ import org.signal.core.util.DiskUtil;
 import org.signal.core.util.MemoryTracker;
 import org.signal.core.util.Util;
 import org.signal.core.util.ThreadUtil;
+import org.signal.core.util.concurrent.InstrumentedThreadPoolExecutor;
 import org.signal.core.util.concurrent.SignalExecutors;
 import org.signal.core.util.crypto.AttachmentSecretProvider;
 import org.signal.core.util.logging.AndroidLogger;
@@ -159,6 +160,10 @@ import io.reactivex.rxjava3.schedulers.Schedulers;
 import kotlin.Unit;
 import rxdogtag2.RxDogTag;
 
+import static org.thoughtcrime.securesms.util.AppStartup.Affinity.ANY_THREAD;
+import static org.thoughtcrime.securesms.util.AppStartup.Affinity.MAIN_THREAD;
+import static org.thoughtcrime.securesms.util.AppStartup.after;
+
 /**
  * Will be called once when the TextSecure process is created.
  * <p>
@@ -202,35 +207,36 @@ public class ApplicationContext extends Application implements AppForegroundObse
   private void onCreateUnlock() {
     AppStartup.getInstance().onApplicationCreate();
     SignalLocalMetrics.ColdStart.start();
+    InstrumentedThreadPoolExecutor.setSlowTaskListener(SignalLocalMetrics.ExecutorTask::onSlowTask);
 
     long startTime = System.currentTimeMillis();
 
-    AppStartup.getInstance().addBlocking("sqlcipher-init", () -> {
+    AppStartup.getInstance().addBlocking("sqlcipher-init", ANY_THREAD, after(), () -> {
                 SignalDatabase.init(this,
                                     DatabaseSecretProvider.getOrCreateDatabaseSecret(this),
                                     AttachmentSecretProvider.getInstance(this, AppAttachmentSecretStore.INSTANCE).getOrCreateAttachmentSecret());
                 Logger.setTarget(SqlCipherLogTarget.INSTANCE);
               })
-              .addBlocking("signal-store", () -> SignalStore.init(this))
-              .addBlocking("logging", () -> {
+              .addBlocking("signal-store", ANY_THREAD, after("sqlcipher-init"), () -> SignalStore.init(this))
+              .addBlocking("logging", ANY_THREAD, after("signal-store"), () -> {
                 initializeLogging(false);
                 Log.i(TAG, "onCreateUnlock()");
               })
-              .addBlocking("security-provider", this::initializeSecurityProvider)
-              .addBlocking("app-dependencies", this::initializeAppDependencies)
-              .addBlocking("crash-handling", this::initializeCrashHandling)
-              .addBlocking("rx-init", this::initializeRx)
-              .addBlocking("scrubber", () -> Scrubber.setIdentifierHmacKeyProvider(() -> SignalStore.svr().getMasterKey().deriveLoggingKey()))
-              .addBlocking("network-settings", this::initializeNetworkSettings)
-              .addBlocking("first-launch", this::initializeFirstEverAppLaunch)
-              .addBlocking("app-migrations", this::initializeApplicationMigrations)
-              .addBlocking("lifecycle-observer", () -> AppForegroundObserver.addListener(this))
-              .addBlocking("push", this::updatePushNotificationServices)
-              .addBlocking("message-retriever", this::initializeMessageRetrieval)
-              .addBlocking("blob-provider", this::initializeBlobProvider)
-              .addBlocking("remote-config", RemoteConfig::init)
-              .addBlocking("ring-rtc", this::initializeRingRtc)
-              .addBlocking("glide", () -> SignalGlideModule.setRegisterGlideComponents(new SignalGlideComponents()))
+              .addBlocking("security-provider", ANY_THREAD, after("logging"), this::initializeSecurityProvider)
+              .addBlocking("crash-handling", ANY_THREAD, after(), this::initializeCrashHandling)
+              .addBlocking("rx-init", ANY_THREAD, after(), this::initializeRx)
+              .addBlocking("scrubber", ANY_THREAD, after(), () -> Scrubber.setIdentifierHmacKeyProvider(() -> SignalStore.svr().getMasterKey().deriveLoggingKey()))
+              .addBlocking("glide", ANY_THREAD, after(), () -> SignalGlideModule.setRegisterGlideComponents(new SignalGlideComponents()))
+              .addBlocking("remote-config", ANY_THREAD, after("logging", "app-dependencies"), RemoteConfig::init)
+              .addBlocking("ring-rtc", ANY_THREAD, after("remote-config"), this::initializeRingRtc)
+              .addBlocking("app-dependencies", MAIN_THREAD, after("logging", "security-provider", "rx-init"), this::initializeAppDependencies)
+              .addBlocking("blob-provider", ANY_THREAD, after("app-dependencies"), this::initializeBlobProvider)
+              .addBlocking("network-settings", ANY_THREAD, after("app-dependencies"), this::initializeNetworkSettings)
+              .addBlocking("first-launch", ANY_THREAD, after("network-settings"), this::initializeFirstEverAppLaunch)
+              .addBlocking("app-migrations", MAIN_THREAD, after("first-launch"), this::initializeApplicationMigrations)
+              .addBlocking("lifecycle-observer", MAIN_THREAD, after("app-migrations"), () -> AppForegroundObserver.addListener(this))
+              .addBlocking("push", MAIN_THREAD, after("app-migrations", "remote-config"), this::updatePushNotificationServices)
+              .addBlocking("message-retriever", ANY_THREAD, after("push"), this::initializeMessageRetrieval)
               .addNonBlocking(() -> RegistrationUtil.maybeMarkRegistrationComplete())
               .addNonBlocking(() -> Glide.get(this))
               .addNonBlocking(this::cleanAvatarStorage)
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.attachments
+
+import org.signal.core.models.database.AttachmentId
+import org.signal.core.util.crypto.AttachmentSecret
+import org.signal.core.util.crypto.ModernDecryptingPartInputStream
+import org.signal.core.util.logging.Log
+import org.thoughtcrime.securesms.database.AttachmentTable
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.io.InterruptedIOException
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Tracks attachments whose plaintext is being streamed into their local data file while they download, so that they can be
+ * played before the download finishes. That covers every download with incremental MACs, whether it comes straight off the network or
+ * through a ranged download into a transfer file.
+ *
+ * Bytes are only published after they've passed incremental MAC verification and have been written to disk. Readers block
+ * until the bytes they ask for have been published.
+ */
+object ProgressiveAttachments {
+
+  private val TAG = Log.tag(ProgressiveAttachments::class.java)
+
+  private val inProgress: MutableMap<AttachmentId, Download> = ConcurrentHashMap()
+
+  /**
+   * Registers a download of [plaintextLength] bytes. The returned [Download] should be handed to the data file writer and
+   * completed with [Download.finish] or [Download.fail].
+   */
+  @JvmStatic
+  fun begin(attachmentId: AttachmentId, plaintextLength: Long): Download {
+    val download = Download(attachmentId, plaintextLength)
+    inProgress[attachmentId] = download
+    return download
+  }
+
+  @JvmStatic
+  fun get(attachmentId: AttachmentId): Download? {
+    return inProgress[attachmentId]
+  }
+
+  class Download internal constructor(
+    val attachmentId: AttachmentId,
+    val plaintextLength: Long
+  ) : AttachmentTable.DataFileProgressListener {
+
+    private val lock = Object()
+
+    private var file: File? = null
+    private var random: ByteArray? = null
+    private var published: Long = 0
+    private var finished: Boolean = false
+    private var failure: IOException? = null
+
+    override fun onDataFileProgress(file: File, random: ByteArray, length: Long) {
+      synchronized(lock) {
+        this.file = file
+        this.random = random
+        this.published = length
+        lock.notifyAll()
+      }
+    }
+
+    /**
+     * Renames the data file while holding the lock readers open it under, and switches them over to the new path in the same step.
+     */
+    override fun onDataFileFinished(from: File, to: File, random: ByteArray, length: Long): Boolean {
+      synchronized(lock) {
+        if (!from.renameTo(to)) {
+          return false
+        }
+
+        this.file = to
+        this.random = random
+        this.published = length
+        lock.notifyAll()
+        return true
+      }
+    }
+
+    fun finish() {
+      synchronized(lock) {
+        published = plaintextLength
+        finished = true
+        lock.notifyAll()
+      }
+      inProgress.remove(attachmentId, this)
+    }
+
+    fun fail(cause: Throwable) {
+      Log.w(TAG, "[$attachmentId] Progressive download failed.", cause)
+      synchronized(lock) {
+        failure = IOException("Download failed", cause)
+        finished = true
+        lock.notifyAll()
+      }
+      inProgress.remove(attachmentId, this)
+    }
+
+    /**
+     * Opens a stream of the plaintext starting at [position]. Reads block until the requested bytes are available.
+     */
+    fun openStream(attachmentSecret: AttachmentSecret, position: Long): InputStream {
+      return ProgressiveInputStream(this, attachmentSecret, position)
+    }
+
+    /**
+     * Blocks until at least one byte past [position] is available, or the download has ended.
+     *
+     * @return The number of plaintext bytes currently available from the start of the file.
+     */
+    @Throws(IOException::class)
+    internal fun awaitAvailable(position: Long, stream: ProgressiveInputStream): Long {
+      synchronized(lock) {
+        while (published <= position && position < plaintextLength) {
+          failure?.let { throw it }
+          if (stream.closed) throw IOException("Stream closed")
+          if (finished) throw IOException("Download ended before $position")
+
+          try {
+            lock.wait()
+          } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw InterruptedIOException("Interrupted while waiting for $attachmentId")
+          }
+        }
+
+        failure?.let { throw it }
+        return published
+      }
+    }
+
+    /**
+     * Opens the data file as it's currently published. Holds the lock while opening, so the file can't be renamed out from under it.
+     */
+    internal fun <T> openFile(open: (file: File, random: ByteArray) -> T): T {
+      synchronized(lock) {
+        return open(file!!, random!!)
+      }
+    }
+
+    internal fun wakeUp() {
+      synchronized(lock) {
+        lock.notifyAll()
+      }
+    }
+  }
+
+  /**
+   * Reads the published plaintext prefix of a [Download], waiting for more bytes whenever the reader catches up with the writer.
+   */
+  internal class ProgressiveInputStream(
+    private val download: Download,
+    private val attachmentSecret: AttachmentSecret,
+    private var position: Long
+  ) : InputStream() {
+
+    @Volatile
+    var closed: Boolean = false
+      private set
+
+    private var decrypted: InputStream? = null
+
+    override fun read(): Int {
+      val buffer = ByteArray(1)
+      val read = read(buffer, 0, 1)
+      return if (read == -1) -1 else buffer[0].toInt() and 0xFF
+    }
+
+    override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
+      if (length == 0) return 0
+      if (position >= download.plaintextLength) return -1
+
+      val available = download.awaitAvailable(position, this)
+      val toRead = minOf(length.toLong(), available - position).toInt()
+
+      var read = openIfNecessary().read(buffer, offset, toRead)
+      if (read == -1) {
+        // The bytes are published after being written, so this only happens if the cipher stream hasn't flushed to disk yet.
+        closeDecrypted()
+        read = openIfNecessary().read(buffer, offset, toRead)
+      }
+
+      if (read == -1) {
+        throw IOException("Unexpected end of data file at $position, published: $available")
+      }
+
+      position += read
+      return read
+    }
+
+    override fun skip(n: Long): Long {
+      if (n <= 0) return 0
+
+      val skipped = minOf(n, download.plaintextLength - position)
+      position += skipped
+      closeDecrypted()
+      return skipped
+    }
+
+    override fun close() {
+      closed = true
+      closeDecrypted()
+      download.wakeUp()
+    }
+
+    private fun openIfNecessary(): InputStream {
+      return decrypted ?: download.openFile { file, random ->
+        ModernDecryptingPartInputStream.createFor(attachmentSecret, random, file, position)
+      }.also { decrypted = it }
+    }
+
+    private fun closeDecrypted() {
+      decrypted?.close()
+      decrypted = null
+    }
+  }
+}
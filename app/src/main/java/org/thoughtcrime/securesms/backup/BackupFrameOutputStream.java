@@ -6,8 +6,13 @@
 package org.thoughtcrime.securesms.backup;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import org.signal.core.util.Conversions;
+import org.signal.core.util.StreamUtil;
+import org.signal.core.util.ThreadUtil;
+import org.signal.core.util.concurrent.SignalExecutors;
 import org.signal.core.util.logging.Log;
 import org.signal.libsignal.protocol.kdf.HKDF;
 import org.signal.libsignal.protocol.util.ByteUtil;
@@ -25,47 +30,87 @@ import org.signal.core.util.Util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
+/**
+ * Writes encrypted backup frames.
+ *
+ * When created with encryption threads, {@link #queue(AttachmentId, InputStream, long)} reads and encrypts small attachments in
+ * the background. Each one is given its counter when it's queued, and everything written after it is held back until its
+ * ciphertext is ready, so the output is byte-for-byte what writing it inline would have produced.
+ */
 class BackupFrameOutputStream extends FullBackupBase.BackupStream {
 
   private static final String TAG = Log.tag(BackupFrameOutputStream.class);
 
+  /** Attachments larger than this are always encrypted inline, since queued ones are held in memory until they're written. */
+  private static final int MAX_QUEUED_BLOB_SIZE = 2 * 1024 * 1024;
+  private static final int MAC_LENGTH           = 10;
+
   private final OutputStream outputStream;
   private final Cipher       cipher;
   private final Mac          mac;
 
   private final byte[] cipherKey;
+  private final byte[] macKey;
   private final byte[] iv;
   private       int    counter;
 
   private int frames;
 
+  private final @Nullable ExecutorService     encryptionExecutor;
+  private final           ArrayDeque<Pending> pending     = new ArrayDeque<>();
+  private final           ArrayDeque<byte[]>  freeBuffers = new ArrayDeque<>();
+  private final           int                 maxBuffers;
+  private                 int                 allocatedBuffers;
+
   BackupFrameOutputStream(@NonNull OutputStream output, @NonNull String passphrase) throws IOException {
+    this(output, passphrase, 0);
+  }
+
+  /**
+   * @param encryptionThreads How many threads {@link #queue(AttachmentId, InputStream, long)} may use. With 0, everything is
+   *                          written inline.
+   */
+  BackupFrameOutputStream(@NonNull OutputStream output, @NonNull String passphrase, int encryptionThreads) throws IOException {
+    this(output, passphrase, encryptionThreads, Util.getSecretBytes(32), Util.getSecretBytes(16));
+  }
+
+  /**
+   * Takes the salt and IV instead of generating them, so tests can produce the same output twice.
+   */
+  @VisibleForTesting
+  BackupFrameOutputStream(@NonNull OutputStream output, @NonNull String passphrase, int encryptionThreads, @NonNull byte[] salt, @NonNull byte[] iv) throws IOException {
     try {
-      byte[]   salt    = Util.getSecretBytes(32);
       byte[]   key     = getBackupKey(passphrase, salt);
       byte[]   derived = HKDF.deriveSecrets(key, "Backup Export".getBytes(), 64);
       byte[][] split   = ByteUtil.split(derived, 32, 32);
 
       this.cipherKey = split[0];
-      byte[] macKey = split[1];
+      this.macKey    = split[1];
 
       this.cipher       = Cipher.getInstance("AES/CTR/NoPadding");
       this.mac          = Mac.getInstance("HmacSHA256");
       this.outputStream = output;
-      this.iv           = Util.getSecretBytes(16);
+      this.iv           = iv.clone();
       this.counter      = Conversions.byteArrayToInt(iv);
 
       mac.init(new SecretKeySpec(macKey, "HmacSHA256"));
@@ -83,6 +128,14 @@ class BackupFrameOutputStream extends FullBackupBase.BackupStream {
     } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException e) {
       throw new AssertionError(e);
     }
+
+    if (encryptionThreads > 0) {
+      this.encryptionExecutor = Executors.newFixedThreadPool(encryptionThreads, new SignalExecutors.NumberedThreadFactory("signal-backup-encrypt", ThreadUtil.PRIORITY_BACKGROUND_THREAD));
+      this.maxBuffers         = encryptionThreads + 2;
+    } else {
+      this.encryptionExecutor = null;
+      this.maxBuffers         = 0;
+    }
   }
 
   public void write(SharedPreference preference) throws IOException {
@@ -116,23 +169,51 @@ class BackupFrameOutputStream extends FullBackupBase.BackupStream {
   }
 
   public void write(@NonNull AttachmentId attachmentId, @NonNull InputStream in, long size) throws IOException {
-    try {
-      write(outputStream, new BackupFrame.Builder()
-          .attachment(new Attachment.Builder()
-                          .rowId(attachmentId.id)
-                          .length(Util.toIntExact(size))
-                          .build())
-          .build());
-    } catch (ArithmeticException e) {
-      Log.w(TAG, "Unable to write " + attachmentId + " to backup", e);
-      throw new FullBackupExporter.InvalidBackupStreamException();
-    }
+    writeAttachmentFrame(attachmentId, size);
 
     if (writeStream(in) != size) {
       throw new IOException("Size mismatch!");
     }
   }
 
+  /**
+   * Like {@link #write(AttachmentId, InputStream, long)}, but takes ownership of {@code in} and may read and encrypt it on one of
+   * the encryption threads. A failure in the background is thrown from a later write.
+   */
+  void queue(@NonNull AttachmentId attachmentId, @NonNull InputStream in, long size) throws IOException {
+    if (encryptionExecutor == null || size > MAX_QUEUED_BLOB_SIZE) {
+      try (InputStream inputStream = in) {
+        write(attachmentId, inputStream, size);
+      }
+      return;
+    }
+
+    byte[] buffer;
+    try {
+      writeAttachmentFrame(attachmentId, size);
+      buffer = takeBuffer();
+    } catch (IOException e) {
+      StreamUtil.close(in);
+      throw e;
+    }
+
+    // The writer keeps reusing iv for later frames, so the encryption thread gets its own copy, taken here in order.
+    byte[] blobIv = iv.clone();
+    Conversions.intToByteArray(blobIv, 0, counter++);
+
+    Pending blob = new Pending(buffer, in);
+
+    blob.future = encryptionExecutor.submit(() -> {
+      try (InputStream inputStream = in) {
+        blob.length = encryptBlob(blobIv, inputStream, (int) size, buffer);
+      }
+      return null;
+    });
+
+    pending.add(blob);
+    writeReady();
+  }
+
   public void writeSticker(long rowId, @NonNull InputStream in, long size) throws IOException {
     try {
       write(outputStream, new BackupFrame.Builder()
@@ -159,12 +240,29 @@ class BackupFrameOutputStream extends FullBackupBase.BackupStream {
 
   void writeEnd() throws IOException {
     write(outputStream, new BackupFrame.Builder().end(true).build());
+    writeAllPending();
+  }
+
+  private void writeAttachmentFrame(@NonNull AttachmentId attachmentId, long size) throws IOException {
+    try {
+      write(outputStream, new BackupFrame.Builder()
+          .attachment(new Attachment.Builder()
+                          .rowId(attachmentId.id)
+                          .length(Util.toIntExact(size))
+                          .build())
+          .build());
+    } catch (ArithmeticException e) {
+      Log.w(TAG, "Unable to write " + attachmentId + " to backup", e);
+      throw new FullBackupExporter.InvalidBackupStreamException();
+    }
   }
 
   /**
    * @return The amount of data written from the provided InputStream.
    */
   private long writeStream(@NonNull InputStream inputStream) throws IOException {
+    writeAllPending();
+
     try {
       Conversions.intToByteArray(iv, 0, counter++);
       cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(cipherKey, "AES"), new IvParameterSpec(iv));
@@ -191,7 +289,7 @@ class BackupFrameOutputStream extends FullBackupBase.BackupStream {
       mac.update(remainder);
 
       byte[] attachmentDigest = mac.doFinal();
-      outputStream.write(attachmentDigest, 0, 10);
+      outputStream.write(attachmentDigest, 0, MAC_LENGTH);
 
       return total;
     } catch (InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException e) {
@@ -199,6 +297,48 @@ class BackupFrameOutputStream extends FullBackupBase.BackupStream {
     }
   }
 
+  /**
+   * Runs on an encryption thread. Does what {@link #writeStream(InputStream)} does, with its own cipher and mac, into
+   * {@code buffer}. {@code blobIv} must not be shared with the writer, which keeps changing {@link #iv}.
+   *
+   * @return The number of bytes of {@code buffer} to write.
+   */
+  private int encryptBlob(@NonNull byte[] blobIv, @NonNull InputStream inputStream, int size, @NonNull byte[] buffer) throws IOException {
+    int total = 0;
+    int read;
+
+    while (total < size && (read = inputStream.read(buffer, total, size - total)) != -1) {
+      total += read;
+    }
+
+    if (total != size || inputStream.read() != -1) {
+      throw new IOException("Size mismatch!");
+    }
+
+    try {
+      Cipher blobCipher = Cipher.getInstance("AES/CTR/NoPadding");
+      Mac    blobMac    = Mac.getInstance("HmacSHA256");
+
+      blobCipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(cipherKey, "AES"), new IvParameterSpec(blobIv));
+      blobMac.init(new SecretKeySpec(macKey, "HmacSHA256"));
+      blobMac.update(blobIv);
+
+      int length = blobCipher.doFinal(buffer, 0, size, buffer, 0);
+      if (length != size) {
+        throw new IOException("Stream cipher assumption has been violated!");
+      }
+
+      blobMac.update(buffer, 0, length);
+      System.arraycopy(blobMac.doFinal(), 0, buffer, length, MAC_LENGTH);
+
+      return length + MAC_LENGTH;
+    } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | InvalidAlgorithmParameterException |
+             IllegalBlockSizeException | BadPaddingException | ShortBufferException e)
+    {
+      throw new AssertionError(e);
+    }
+  }
+
   private void write(@NonNull OutputStream out, @NonNull BackupFrame frame) throws IOException {
     try {
       Conversions.intToByteArray(iv, 0, counter++);
@@ -207,7 +347,7 @@ class BackupFrameOutputStream extends FullBackupBase.BackupStream {
       byte[] encodedFrame = frame.encode();
 
       // this assumes a stream cipher
-      byte[] length = Conversions.intToByteArray(encodedFrame.length + 10);
+      byte[] length = Conversions.intToByteArray(encodedFrame.length + MAC_LENGTH);
       if (BackupVersions.isFrameLengthEncrypted(BackupVersions.CURRENT_VERSION)) {
         byte[] encryptedLength = cipher.update(length);
         if (encryptedLength.length != length.length) {
@@ -217,23 +357,105 @@ class BackupFrameOutputStream extends FullBackupBase.BackupStream {
         length = encryptedLength;
       }
 
-      byte[] frameCiphertext = cipher.doFinal(frame.encode());
+      byte[] frameCiphertext = cipher.doFinal(encodedFrame);
       if (frameCiphertext.length != encodedFrame.length) {
         throw new IOException("Stream cipher assumption has been violated!");
       }
 
       byte[] frameMac = mac.doFinal(frameCiphertext);
 
-      out.write(length);
-      out.write(frameCiphertext);
-      out.write(frameMac, 0, 10);
+      if (pending.isEmpty()) {
+        out.write(length);
+        out.write(frameCiphertext);
+        out.write(frameMac, 0, MAC_LENGTH);
+      } else {
+        byte[] bytes = new byte[length.length + frameCiphertext.length + MAC_LENGTH];
+        System.arraycopy(length, 0, bytes, 0, length.length);
+        System.arraycopy(frameCiphertext, 0, bytes, length.length, frameCiphertext.length);
+        System.arraycopy(frameMac, 0, bytes, length.length + frameCiphertext.length, MAC_LENGTH);
+
+        pending.add(new Pending(bytes));
+        writeReady();
+      }
       frames++;
     } catch (InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException e) {
       throw new AssertionError(e);
     }
   }
 
+  /**
+   * @return A buffer for a queued blob, writing out the oldest pending blob first if they're all in use.
+   */
+  private @NonNull byte[] takeBuffer() throws IOException {
+    while (freeBuffers.isEmpty() && allocatedBuffers >= maxBuffers) {
+      writeNextPending();
+    }
+
+    if (!freeBuffers.isEmpty()) {
+      return freeBuffers.pop();
+    }
+
+    allocatedBuffers++;
+    return new byte[MAX_QUEUED_BLOB_SIZE + MAC_LENGTH];
+  }
+
+  /** Writes out pending writes, in order, until one is reached that isn't ready yet. */
+  private void writeReady() throws IOException {
+    while (!pending.isEmpty() && pending.peek().isReady()) {
+      writeNextPending();
+    }
+  }
+
+  private void writeAllPending() throws IOException {
+    while (!pending.isEmpty()) {
+      writeNextPending();
+    }
+  }
+
+  private void writeNextPending() throws IOException {
+    Pending next = pending.peek();
+
+    if (next.future != null) {
+      try {
+        next.future.get();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted while encrypting an attachment");
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      }
+    }
+
+    outputStream.write(next.bytes, 0, next.length);
+    pending.pop();
+
+    if (next.future != null) {
+      freeBuffers.push(next.bytes);
+    }
+  }
+
+  /**
+   * Drops anything that hasn't been written yet and stops the encryption threads. Called when a backup ends early; after
+   * {@link #writeEnd()} there's nothing left to drop.
+   */
+  void abortPending() {
+    for (Pending blob : pending) {
+      if (blob.future != null) {
+        blob.future.cancel(true);
+        StreamUtil.close(blob.inputStream);
+      }
+    }
+    pending.clear();
+
+    if (encryptionExecutor != null) {
+      encryptionExecutor.shutdownNow();
+    }
+  }
+
   public void close() throws IOException {
+    abortPending();
     outputStream.flush();
     outputStream.close();
   }
@@ -241,4 +463,30 @@ class BackupFrameOutputStream extends FullBackupBase.BackupStream {
   public int getFrames() {
     return frames;
   }
+
+  /**
+   * A write that's waiting on an earlier queued blob. Frames are ready right away; blobs once their {@link #future} completes.
+   */
+  private static final class Pending {
+    final byte[]      bytes;
+    final InputStream inputStream;
+
+    int          length;
+    Future<?>    future;
+
+    Pending(@NonNull byte[] frame) {
+      this.bytes       = frame;
+      this.inputStream = null;
+      this.length      = frame.length;
+    }
+
+    Pending(@NonNull byte[] buffer, @NonNull InputStream inputStream) {
+      this.bytes       = buffer;
+      this.inputStream = inputStream;
+    }
+
+    boolean isReady() {
+      return future == null || future.isDone();
+    }
+  }
 }
@@ -60,7 +60,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -113,7 +115,7 @@ public class FullBackupExporter extends FullBackupBase {
       throws IOException
   {
     try (OutputStream outputStream = new FileOutputStream(output)) {
-      return internalExport(context, attachmentSecret, input, outputStream, passphrase, true, cancellationSignal);
+      return internalExport(context, attachmentSecret, input, outputStream, null, passphrase, true, cancellationSignal);
     }
   }
 
@@ -127,7 +129,7 @@ public class FullBackupExporter extends FullBackupBase {
       throws IOException
   {
     try (OutputStream outputStream = Objects.requireNonNull(context.getContentResolver().openOutputStream(output.getUri()))) {
-      return internalExport(context, attachmentSecret, input, outputStream, passphrase, true, cancellationSignal);
+      return internalExport(context, attachmentSecret, input, outputStream, null, passphrase, true, cancellationSignal);
     }
   }
 
@@ -138,20 +140,45 @@ public class FullBackupExporter extends FullBackupBase {
                               @NonNull String passphrase)
       throws IOException
   {
-    EventBus.getDefault().post(internalExport(context, attachmentSecret, input, outputStream, passphrase, false, () -> false));
+    EventBus.getDefault().post(internalExport(context, attachmentSecret, input, outputStream, null, passphrase, false, () -> false));
+  }
+
+  /**
+   * Like {@link #transfer(Context, AttachmentSecret, SQLiteDatabase, OutputStream, String)}, but attachment, sticker and avatar
+   * blobs are written across {@code blobStreams} in parallel while the rest of the backup goes over {@code outputStream}.
+   * Attachments that share a data file or content hash are only sent once. Must be read with
+   * {@link FullBackupImporter#importFile(Context, AttachmentSecret, SQLiteDatabase, InputStream, List, String, boolean)}.
+   */
+  public static void transfer(@NonNull Context context,
+                              @NonNull AttachmentSecret attachmentSecret,
+                              @NonNull SQLiteDatabase input,
+                              @NonNull OutputStream outputStream,
+                              @NonNull List<OutputStream> blobStreams,
+                              @NonNull String passphrase)
+      throws IOException
+  {
+    TransferBlobWriter blobWriter = new TransferBlobWriter(attachmentSecret, blobStreams, passphrase);
+    try {
+      EventBus.getDefault().post(internalExport(context, attachmentSecret, input, outputStream, blobWriter, passphrase, false, () -> false));
+    } finally {
+      blobWriter.abort();
+    }
   }
 
   private static BackupEvent internalExport(@NonNull Context context,
                                             @NonNull AttachmentSecret attachmentSecret,
                                             @NonNull SQLiteDatabase input,
                                             @NonNull OutputStream fileOutputStream,
+                                            @Nullable TransferBlobWriter blobWriter,
                                             @NonNull String passphrase,
                                             boolean closeOutputStream,
                                             @NonNull BackupCancellationSignal cancellationSignal)
       throws IOException
   {
-    BackupFrameOutputStream outputStream          = new BackupFrameOutputStream(fileOutputStream, passphrase);
+    BackupFrameOutputStream outputStream          = new BackupFrameOutputStream(fileOutputStream, passphrase, blobWriter == null ? getEncryptionThreadCount() : 0);
+    Set<String>             sentAttachments       = new HashSet<>();
     int                     count                 = 0;
+    int                     blobFrames            = 0;
     long                    estimatedCountOutside;
 
     try {
@@ -166,26 +193,33 @@ public class FullBackupExporter extends FullBackupBase {
 
       Stopwatch stopwatch = new Stopwatch("Backup");
 
+      // The database can change while we export. Every table that belongs to messages is filtered by these same IDs, messages
+      // included, so a message that arrives partway through is either exported along with its rows or not at all.
+      long[] messageIds = getNonExpiringMessageIds(input);
+      long[] pollIds    = getPollIdsForMessages(input, messageIds);
+
+      stopwatch.split("expiring-messages");
+
       for (String table : tables) {
         throwIfCanceled(cancellationSignal);
         if (table.equals(MessageTable.TABLE_NAME)) {
-          count = exportTable(table, input, outputStream, cursor -> isNonExpiringMessage(input, cursor), null, count, estimatedCount, cancellationSignal);
+          count = exportTable(table, input, outputStream, cursor -> containsId(messageIds, CursorUtil.requireLong(cursor, MessageTable.ID)), null, count, estimatedCount, cancellationSignal);
         } else if (table.equals(ReactionTable.TABLE_NAME)) {
-          count = exportTable(table, input, outputStream, cursor -> isForNonExpiringMessage(input, CursorUtil.requireLong(cursor, ReactionTable.MESSAGE_ID)), null, count, estimatedCount, cancellationSignal);
+          count = exportTable(table, input, outputStream, cursor -> containsId(messageIds, CursorUtil.requireLong(cursor, ReactionTable.MESSAGE_ID)), null, count, estimatedCount, cancellationSignal);
         } else if (table.equals(MentionTable.TABLE_NAME)) {
-          count = exportTable(table, input, outputStream, cursor -> isForNonExpiringMessage(input, CursorUtil.requireLong(cursor, MentionTable.MESSAGE_ID)), null, count, estimatedCount, cancellationSignal);
+          count = exportTable(table, input, outputStream, cursor -> containsId(messageIds, CursorUtil.requireLong(cursor, MentionTable.MESSAGE_ID)), null, count, estimatedCount, cancellationSignal);
         } else if (table.equals(GroupReceiptTable.TABLE_NAME)) {
-          count = exportTable(table, input, outputStream, cursor -> isForNonExpiringMessage(input, cursor.getLong(cursor.getColumnIndexOrThrow(GroupReceiptTable.MMS_ID))), null, count, estimatedCount, cancellationSignal);
+          count = exportTable(table, input, outputStream, cursor -> containsId(messageIds, cursor.getLong(cursor.getColumnIndexOrThrow(GroupReceiptTable.MMS_ID))), null, count, estimatedCount, cancellationSignal);
         } else if (table.equals(AttachmentTable.TABLE_NAME)) {
-          count = exportTable(table, input, outputStream, cursor -> isForNonExpiringMessage(input, cursor.getLong(cursor.getColumnIndexOrThrow(AttachmentTable.MESSAGE_ID))), (cursor, innerCount) -> exportAttachment(attachmentSecret, cursor, outputStream, innerCount, estimatedCount), count, estimatedCount, cancellationSignal);
+          count = exportTable(table, input, outputStream, cursor -> containsId(messageIds, cursor.getLong(cursor.getColumnIndexOrThrow(AttachmentTable.MESSAGE_ID))), (cursor, innerCount) -> blobWriter != null ? transferAttachment(cursor, blobWriter, sentAttachments, innerCount, estimatedCount) : exportAttachment(attachmentSecret, cursor, outputStream, innerCount, estimatedCount), count, estimatedCount, cancellationSignal);
         } else if (table.equals(PollTables.PollTable.TABLE_NAME)) {
-          count = exportTable(table, input, outputStream, cursor -> isForNonExpiringMessage(input, cursor.getLong(cursor.getColumnIndexOrThrow(PollTables.PollTable.MESSAGE_ID))), null, count, estimatedCount, cancellationSignal);
+          count = exportTable(table, input, outputStream, cursor -> containsId(pollIds, cursor.getLong(cursor.getColumnIndexOrThrow(PollTables.PollTable.ID))), null, count, estimatedCount, cancellationSignal);
         } else if (table.equals(PollTables.PollOptionTable.TABLE_NAME)) {
-          count = exportTable(table, input, outputStream, cursor -> isForNonExpiringPollMessage(input, cursor.getLong(cursor.getColumnIndexOrThrow(PollTables.PollOptionTable.POLL_ID))), null, count, estimatedCount, cancellationSignal);
+          count = exportTable(table, input, outputStream, cursor -> containsId(pollIds, cursor.getLong(cursor.getColumnIndexOrThrow(PollTables.PollOptionTable.POLL_ID))), null, count, estimatedCount, cancellationSignal);
         } else if (table.equals(PollTables.PollVoteTable.TABLE_NAME)) {
-          count = exportTable(table, input, outputStream, cursor -> isForNonExpiringPollMessage(input, cursor.getLong(cursor.getColumnIndexOrThrow(PollTables.PollVoteTable.POLL_ID))), null, count, estimatedCount, cancellationSignal);
+          count = exportTable(table, input, outputStream, cursor -> containsId(pollIds, cursor.getLong(cursor.getColumnIndexOrThrow(PollTables.PollVoteTable.POLL_ID))), null, count, estimatedCount, cancellationSignal);
         } else if (table.equals(StickerTable.TABLE_NAME)) {
-          count = exportTable(table, input, outputStream, cursor -> true, (cursor, innerCount) -> exportSticker(attachmentSecret, cursor, outputStream, innerCount, estimatedCount), count, estimatedCount, cancellationSignal);
+          count = exportTable(table, input, outputStream, cursor -> true, (cursor, innerCount) -> blobWriter != null ? transferSticker(cursor, blobWriter, innerCount, estimatedCount) : exportSticker(attachmentSecret, cursor, outputStream, innerCount, estimatedCount), count, estimatedCount, cancellationSignal);
         } else if (!TABLE_CONTENT_BLOCKLIST.contains(table)) {
           count = exportTable(table, input, outputStream, null, null, count, estimatedCount, cancellationSignal);
         }
@@ -208,22 +242,41 @@ public class FullBackupExporter extends FullBackupBase {
         throwIfCanceled(cancellationSignal);
         if (avatar != null) {
           EventBus.getDefault().post(new BackupEvent(BackupEvent.Type.PROGRESS, ++count, estimatedCount));
-          try (InputStream inputStream = avatar.getInputStream()) {
-            outputStream.write(avatar.getFilename(), inputStream, avatar.getLength());
+          if (blobWriter != null) {
+            blobWriter.writeAvatar(avatar);
+          } else {
+            try (InputStream inputStream = avatar.getInputStream()) {
+              outputStream.write(avatar.getFilename(), inputStream, avatar.getLength());
+            }
           }
         }
       }
 
       stopwatch.split("avatars");
+
+      if (blobWriter != null) {
+        blobFrames = blobWriter.finish();
+        stopwatch.split("blobs");
+      }
+
       stopwatch.stop(TAG);
 
       outputStream.writeEnd();
     } finally {
+      outputStream.abortPending();
       if (closeOutputStream) {
         outputStream.close();
       }
     }
-    return new BackupEvent(BackupEvent.Type.FINISHED, outputStream.getFrames(), estimatedCountOutside);
+    return new BackupEvent(BackupEvent.Type.FINISHED, outputStream.getFrames() + blobFrames, estimatedCountOutside);
+  }
+
+  /**
+   * Attachments are decrypted from local storage and encrypted for the backup on this many threads, leaving a core for the
+   * thread reading the database. With a single core there's nothing to overlap, so everything is written inline.
+   */
+  private static int getEncryptionThreadCount() {
+    return Math.max(0, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
   }
 
   private static long calculateCount(@NonNull Context context, @NonNull SQLiteDatabase input, List<String> tables) {
@@ -467,22 +520,77 @@ public class FullBackupExporter extends FullBackupBase {
     byte[] random = cursor.getBlob(cursor.getColumnIndexOrThrow(AttachmentTable.DATA_RANDOM));
 
     if (!TextUtils.isEmpty(data)) {
-      long fileLength = new File(data).length();
-      long dbLength   = size;
-
-      if (size <= 0 || fileLength != dbLength) {
-        size = calculateVeryOldStreamLength(attachmentSecret, random, data);
-        Log.w(TAG, "Needed size calculation! Manual: " + size + " File: " + fileLength + "  DB: " + dbLength + " ID: " + new AttachmentId(rowId));
-      }
+      size = resolveAttachmentLength(attachmentSecret, new AttachmentId(rowId), random, data, size);
     }
 
     EventBus.getDefault().post(new BackupEvent(BackupEvent.Type.PROGRESS, ++count, estimatedCount));
     if (!TextUtils.isEmpty(data) && size > 0) {
-      try (InputStream inputStream = openAttachmentStream(attachmentSecret, random, data)) {
-        outputStream.write(new AttachmentId(rowId), inputStream, size);
+      InputStream inputStream;
+      try {
+        inputStream = openAttachmentStream(attachmentSecret, random, data);
       } catch (FileNotFoundException e) {
         Log.w(TAG, "Missing attachment", e);
+        return count;
       }
+
+      outputStream.queue(new AttachmentId(rowId), inputStream, size);
+    }
+
+    return count;
+  }
+
+  /**
+   * Hands an attachment's blob to the {@link TransferBlobWriter}. Only the first row for each data file or content hash has its
+   * blob sent; the importer points the other rows at the same restored file.
+   */
+  private static int transferAttachment(@NonNull Cursor cursor,
+                                        @NonNull TransferBlobWriter blobWriter,
+                                        @NonNull Set<String> sentAttachments,
+                                        int count,
+                                        long estimatedCount)
+      throws IOException
+  {
+    long   rowId   = cursor.getLong(cursor.getColumnIndexOrThrow(AttachmentTable.ID));
+    long   size    = cursor.getLong(cursor.getColumnIndexOrThrow(AttachmentTable.DATA_SIZE));
+    String data    = cursor.getString(cursor.getColumnIndexOrThrow(AttachmentTable.DATA_FILE));
+    byte[] random  = cursor.getBlob(cursor.getColumnIndexOrThrow(AttachmentTable.DATA_RANDOM));
+    String hashEnd = cursor.getString(cursor.getColumnIndexOrThrow(AttachmentTable.DATA_HASH_END));
+
+    EventBus.getDefault().post(new BackupEvent(BackupEvent.Type.PROGRESS, ++count, estimatedCount));
+
+    if (TextUtils.isEmpty(data) || sentAttachments.contains(data) || (hashEnd != null && sentAttachments.contains(hashEnd))) {
+      return count;
+    }
+
+    if (!new File(data).exists()) {
+      Log.w(TAG, "Missing attachment " + new AttachmentId(rowId));
+      return count;
+    }
+
+    sentAttachments.add(data);
+    if (hashEnd != null) {
+      sentAttachments.add(hashEnd);
+    }
+
+    blobWriter.writeAttachment(new AttachmentId(rowId), random, data, size);
+
+    return count;
+  }
+
+  private static int transferSticker(@NonNull Cursor cursor,
+                                     @NonNull TransferBlobWriter blobWriter,
+                                     int count,
+                                     long estimatedCount)
+      throws IOException
+  {
+    long   rowId  = cursor.getLong(cursor.getColumnIndexOrThrow(StickerTable.ID));
+    long   size   = cursor.getLong(cursor.getColumnIndexOrThrow(StickerTable.FILE_LENGTH));
+    String data   = cursor.getString(cursor.getColumnIndexOrThrow(StickerTable.FILE_PATH));
+    byte[] random = cursor.getBlob(cursor.getColumnIndexOrThrow(StickerTable.FILE_RANDOM));
+
+    if (!TextUtils.isEmpty(data) && size > 0) {
+      EventBus.getDefault().post(new BackupEvent(BackupEvent.Type.PROGRESS, ++count, estimatedCount));
+      blobWriter.writeSticker(rowId, random, data, size);
     }
 
     return count;
@@ -513,6 +621,22 @@ public class FullBackupExporter extends FullBackupBase {
     return count;
   }
 
+  /**
+   * @return The plaintext length of an attachment's data file, recalculating it by decrypting the whole file if the database
+   * disagrees with the file on disk.
+   */
+  static long resolveAttachmentLength(@NonNull AttachmentSecret attachmentSecret, @NonNull AttachmentId attachmentId, @Nullable byte[] random, @NonNull String data, long size) {
+    long fileLength = new File(data).length();
+    long dbLength   = size;
+
+    if (size <= 0 || fileLength != dbLength) {
+      size = calculateVeryOldStreamLength(attachmentSecret, random, data);
+      Log.w(TAG, "Needed size calculation! Manual: " + size + " File: " + fileLength + "  DB: " + dbLength + " ID: " + attachmentId);
+    }
+
+    return size;
+  }
+
   private static long calculateVeryOldStreamLength(@NonNull AttachmentSecret attachmentSecret, @Nullable byte[] random, @NonNull String data) {
     long result = 0;
 
@@ -534,7 +658,7 @@ public class FullBackupExporter extends FullBackupBase {
     return result;
   }
 
-  private static InputStream openAttachmentStream(@NonNull AttachmentSecret attachmentSecret, @Nullable byte[] random, @NonNull String data) throws IOException {
+  static InputStream openAttachmentStream(@NonNull AttachmentSecret attachmentSecret, @Nullable byte[] random, @NonNull String data) throws IOException {
     return ModernDecryptingPartInputStream.createFor(attachmentSecret, random, new File(data), 0);
   }
 
@@ -590,38 +714,62 @@ public class FullBackupExporter extends FullBackupBase {
     return count;
   }
 
-  private static boolean isNonExpiringMessage(@NonNull SQLiteDatabase db, @NonNull Cursor cursor) {
-    // MOLLY: Exclude any message whose expire timer has started regardless of remaining time
-    return CursorUtil.requireLong(cursor, MessageTable.EXPIRES_IN) <= 0 ||
-           CursorUtil.requireLong(cursor, MessageTable.EXPIRE_STARTED) <= 0;
+  /**
+   * Selects every message that isn't expiring in a single pass, so rows that belong to a message can be filtered with
+   * {@link #containsId(long[], long)} instead of a query per row. Rows whose message doesn't exist are left out too.
+   * <p>
+   * MOLLY: Exclude any message whose expire timer has started regardless of remaining time
+   *
+   * @return The sorted IDs of every message that will be exported.
+   */
+  private static long[] getNonExpiringMessageIds(@NonNull SQLiteDatabase db) {
+    String query = "SELECT " + MessageTable.ID + " FROM " + MessageTable.TABLE_NAME + " " +
+                   "WHERE IFNULL(" + MessageTable.EXPIRES_IN + ", 0) <= 0 OR IFNULL(" + MessageTable.EXPIRE_STARTED + ", 0) <= 0 " +
+                   "ORDER BY " + MessageTable.ID;
+
+    try (Cursor cursor = db.rawQuery(query, null)) {
+      return readSortedIds(cursor);
+    }
   }
 
-  private static boolean isForNonExpiringMessage(@NonNull SQLiteDatabase db, long messageId) {
-    String[] columns = new String[] { MessageTable.ID, MessageTable.EXPIRE_STARTED, MessageTable.EXPIRES_IN, MessageTable.LATEST_REVISION_ID };
-    String   where   = MessageTable.ID + " = ?";
-    String[] args    = SqlUtil.buildArgs(messageId);
+  /**
+   * @return The sorted IDs of every poll that belongs to one of the sorted {@code messageIds}.
+   */
+  private static long[] getPollIdsForMessages(@NonNull SQLiteDatabase db, long[] messageIds) {
+    String[] columns = new String[] { PollTables.PollTable.ID, PollTables.PollTable.MESSAGE_ID };
+    long[]   pollIds = new long[0];
+    int      size    = 0;
 
-    try (Cursor mmsCursor = db.query(MessageTable.TABLE_NAME, columns, where, args, null, null, null)) {
-      if (mmsCursor != null && mmsCursor.moveToFirst()) {
-        return isNonExpiringMessage(db, mmsCursor);
+    try (Cursor cursor = db.query(PollTables.PollTable.TABLE_NAME, columns, null, null, null, null, PollTables.PollTable.ID)) {
+      while (cursor != null && cursor.moveToNext()) {
+        if (containsId(messageIds, cursor.getLong(1))) {
+          if (size == pollIds.length) {
+            pollIds = Arrays.copyOf(pollIds, Math.max(16, size * 2));
+          }
+          pollIds[size++] = cursor.getLong(0);
+        }
       }
     }
 
-    return false;
+    return Arrays.copyOf(pollIds, size);
   }
 
-  private static boolean isForNonExpiringPollMessage(@NonNull SQLiteDatabase db, long pollId) {
-    String[] columns = new String[] { PollTables.PollTable.MESSAGE_ID };
-    String   where   = PollTables.PollTable.ID + " = ?";
-    String[] args    = SqlUtil.buildArgs(pollId);
+  private static long[] readSortedIds(@Nullable Cursor cursor) {
+    long[] ids  = new long[1024];
+    int    size = 0;
 
-    try (Cursor cursor = db.query(PollTables.PollTable.TABLE_NAME, columns, where, args, null, null, null)) {
-      if (cursor != null && cursor.moveToFirst()) {
-        return isForNonExpiringMessage(db, cursor.getLong(cursor.getColumnIndexOrThrow(PollTables.PollTable.MESSAGE_ID)));
+    while (cursor != null && cursor.moveToNext()) {
+      if (size == ids.length) {
+        ids = Arrays.copyOf(ids, size * 2);
       }
+      ids[size++] = cursor.getLong(0);
     }
 
-    return false;
+    return Arrays.copyOf(ids, size);
+  }
+
+  private static boolean containsId(long[] sortedIds, long id) {
+    return Arrays.binarySearch(sortedIds, id) >= 0;
   }
 
   public interface PostProcessor {
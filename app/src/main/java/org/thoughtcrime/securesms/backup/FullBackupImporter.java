@@ -5,11 +5,13 @@ import android.annotation.SuppressLint;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.database.Cursor;
 import android.net.Uri;
 import kotlin.Pair;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.VisibleForTesting;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import net.zetetic.database.sqlcipher.SQLiteDatabase;
 
@@ -75,6 +77,8 @@ public class FullBackupImporter extends FullBackupBase {
   @SuppressWarnings("unused")
   private static final String TAG = Log.tag(FullBackupImporter.class);
 
+  private static final long BLOB_PROGRESS_INTERVAL_MS = 250;
+
   private static final Set<String> KEY_TABLES = SetsKt.setOf(KyberPreKeyTable.TABLE_NAME, LastResortKeyTupleTable.TABLE_NAME, OneTimePreKeyTable.TABLE_NAME, SignedPreKeyTable.TABLE_NAME);
 
   public static boolean validatePassphrase(@NonNull Context context,
@@ -116,7 +120,25 @@ public class FullBackupImporter extends FullBackupBase {
                                 boolean excludeKeyTables)
       throws IOException
   {
-    int count = 0;
+    importFile(context, attachmentSecret, db, is, Collections.emptyList(), passphrase, excludeKeyTables);
+  }
+
+  /**
+   * Imports a backup whose attachment, sticker and avatar blobs may arrive separately over {@code blobStreams}, as written by
+   * {@link FullBackupExporter#transfer(Context, AttachmentSecret, SQLiteDatabase, java.io.OutputStream, List, String)}.
+   * The blob streams are read in parallel with the main stream and their rows are updated once the main stream ends.
+   */
+  public static void importFile(@NonNull Context context,
+                                @NonNull AttachmentSecret attachmentSecret,
+                                @NonNull SQLiteDatabase db,
+                                @NonNull InputStream is,
+                                @NonNull List<InputStream> blobStreams,
+                                @NonNull String passphrase,
+                                boolean excludeKeyTables)
+      throws IOException
+  {
+    int                count      = 0;
+    TransferBlobReader blobReader = new TransferBlobReader(context, attachmentSecret, blobStreams, passphrase);
 
     SQLiteDatabase keyValueDatabase = KeyValueDatabase.getInstance(AppDependencies.getApplication()).getSqlCipherDatabase();
 
@@ -127,11 +149,12 @@ public class FullBackupImporter extends FullBackupBase {
       BackupRecordInputStream inputStream = new BackupRecordInputStream(is, passphrase);
 
       dropAllTables(db, excludeKeyTables);
+      blobReader.start();
 
       BackupFrame frame;
 
       while ((frame = inputStream.readFrame()).end != Boolean.TRUE) {
-        if (count % 100 == 0) EventBus.getDefault().post(new BackupEvent(BackupEvent.Type.PROGRESS, count, 0));
+        if (count % 100 == 0) EventBus.getDefault().post(new BackupEvent(BackupEvent.Type.PROGRESS, count + blobReader.getCount(), 0));
         count++;
 
         if      (frame.version != null)    processVersion(db, frame.version);
@@ -144,6 +167,15 @@ public class FullBackupImporter extends FullBackupBase {
         else                            count--;
       }
 
+      while (!blobReader.await(BLOB_PROGRESS_INTERVAL_MS)) {
+        EventBus.getDefault().post(new BackupEvent(BackupEvent.Type.PROGRESS, count + blobReader.getCount(), 0));
+      }
+
+      count += blobReader.getCount();
+
+      applyRestoredAttachments(db, blobReader.getAttachments());
+      applyRestoredStickers(db, blobReader.getStickers());
+
       db.setTransactionSuccessful();
       keyValueDatabase.setTransactionSuccessful();
     } finally {
@@ -245,6 +277,57 @@ public class FullBackupImporter extends FullBackupBase {
               SqlUtil.buildArgs(attachment.rowId));
   }
 
+  /**
+   * Points attachment rows at the files restored from the blob streams. Only one row per data file or content hash had its blob
+   * sent, so every row that shared that file or hash on the old device gets the same file, or is cleared along with it if the
+   * blob couldn't be restored.
+   */
+  @VisibleForTesting
+  static void applyRestoredAttachments(@NonNull SupportSQLiteDatabase db, @NonNull List<TransferBlobReader.RestoredBlob> attachments) {
+    for (TransferBlobReader.RestoredBlob attachment : attachments) {
+      String oldDataFile = null;
+      String hashEnd     = null;
+
+      try (Cursor cursor = db.query("SELECT " + AttachmentTable.DATA_FILE + ", " + AttachmentTable.DATA_HASH_END + " FROM " + AttachmentTable.TABLE_NAME + " WHERE " + AttachmentTable.ID + " = ?", SqlUtil.buildArgs(attachment.rowId))) {
+        if (cursor.moveToFirst()) {
+          oldDataFile = cursor.getString(0);
+          hashEnd     = cursor.getString(1);
+        }
+      }
+
+      ContentValues contentValues = new ContentValues();
+      contentValues.put(AttachmentTable.DATA_FILE, attachment.file != null ? attachment.file.getAbsolutePath() : null);
+      contentValues.put(AttachmentTable.DATA_RANDOM, attachment.random);
+
+      if (oldDataFile == null) {
+        db.update(AttachmentTable.TABLE_NAME, SQLiteDatabase.CONFLICT_NONE, contentValues, AttachmentTable.ID + " = ?", SqlUtil.buildArgs(attachment.rowId));
+      } else if (hashEnd == null) {
+        db.update(AttachmentTable.TABLE_NAME,
+                  SQLiteDatabase.CONFLICT_NONE,
+                  contentValues,
+                  AttachmentTable.ID + " = ? OR " + AttachmentTable.DATA_FILE + " = ?",
+                  SqlUtil.buildArgs(attachment.rowId, oldDataFile));
+      } else {
+        db.update(AttachmentTable.TABLE_NAME,
+                  SQLiteDatabase.CONFLICT_NONE,
+                  contentValues,
+                  AttachmentTable.ID + " = ? OR " + AttachmentTable.DATA_FILE + " = ? OR (" + AttachmentTable.DATA_HASH_END + " = ? AND " + AttachmentTable.DATA_FILE + " NOT NULL)",
+                  SqlUtil.buildArgs(attachment.rowId, oldDataFile, hashEnd));
+      }
+    }
+  }
+
+  private static void applyRestoredStickers(@NonNull SQLiteDatabase db, @NonNull List<TransferBlobReader.RestoredBlob> stickers) {
+    for (TransferBlobReader.RestoredBlob sticker : stickers) {
+      ContentValues contentValues = new ContentValues();
+      contentValues.put(StickerTable.FILE_PATH, sticker.file != null ? sticker.file.getAbsolutePath() : null);
+      contentValues.put(StickerTable.FILE_LENGTH, sticker.length);
+      contentValues.put(StickerTable.FILE_RANDOM, sticker.random);
+
+      db.update(StickerTable.TABLE_NAME, contentValues, StickerTable.ID + " = ?", SqlUtil.buildArgs(sticker.rowId));
+    }
+  }
+
   private static void processSticker(@NonNull Context context, @NonNull AttachmentSecret attachmentSecret, @NonNull SQLiteDatabase db, @NonNull Sticker sticker, BackupRecordInputStream inputStream)
       throws IOException
   {
@@ -0,0 +1,195 @@
+package org.thoughtcrime.securesms.backup;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.signal.core.util.crypto.AttachmentSecret;
+import org.signal.core.util.crypto.ModernEncryptingPartOutputStream;
+import org.signal.core.util.logging.Log;
+import org.thoughtcrime.securesms.backup.proto.Attachment;
+import org.thoughtcrime.securesms.backup.proto.Avatar;
+import org.thoughtcrime.securesms.backup.proto.BackupFrame;
+import org.thoughtcrime.securesms.backup.proto.Sticker;
+import org.thoughtcrime.securesms.database.AttachmentTable;
+import org.thoughtcrime.securesms.database.StickerTable;
+import org.thoughtcrime.securesms.profiles.AvatarHelper;
+import org.thoughtcrime.securesms.recipients.RecipientId;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import kotlin.Pair;
+
+/**
+ * Reads the blob streams written by {@link TransferBlobWriter}, one thread per stream.
+ *
+ * Attachments and stickers are written straight to new encrypted files. Since the rows they belong to may not have been
+ * imported yet, the files are only collected here and {@link FullBackupImporter} points the rows at them once the database
+ * frames are done. Avatars don't live in the database and are restored immediately.
+ */
+final class TransferBlobReader {
+
+  private static final String TAG = Log.tag(TransferBlobReader.class);
+
+  private final Context                      context;
+  private final AttachmentSecret             attachmentSecret;
+  private final List<Thread>                 threads;
+  private final List<RestoredBlob>           attachments = Collections.synchronizedList(new ArrayList<>());
+  private final List<RestoredBlob>           stickers    = Collections.synchronizedList(new ArrayList<>());
+  private final AtomicInteger                count       = new AtomicInteger();
+  private final AtomicReference<IOException> failure     = new AtomicReference<>();
+
+  TransferBlobReader(@NonNull Context context, @NonNull AttachmentSecret attachmentSecret, @NonNull List<InputStream> inputStreams, @NonNull String passphrase) {
+    this.context          = context;
+    this.attachmentSecret = attachmentSecret;
+    this.threads          = new ArrayList<>(inputStreams.size());
+
+    for (int i = 0; i < inputStreams.size(); i++) {
+      InputStream inputStream = inputStreams.get(i);
+      threads.add(new Thread(() -> readAll(inputStream, passphrase), "signal-transfer-reader-" + i));
+    }
+  }
+
+  void start() {
+    for (Thread thread : threads) {
+      thread.start();
+    }
+  }
+
+  /**
+   * @return The number of blob frames read so far across all streams.
+   */
+  int getCount() {
+    return count.get();
+  }
+
+  /**
+   * Waits up to {@code timeoutMs} for every stream to reach its end frame.
+   *
+   * @return True if every stream has finished, false if the timeout passed first.
+   * @throws IOException If any stream failed.
+   */
+  boolean await(long timeoutMs) throws IOException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+    for (Thread thread : threads) {
+      long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+      try {
+        thread.join(Math.max(1, remainingMs));
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted while waiting for transfer streams");
+      }
+
+      if (thread.isAlive()) {
+        throwIfFailed();
+        return false;
+      }
+    }
+
+    throwIfFailed();
+    return true;
+  }
+
+  /**
+   * Only valid once {@link #await(long)} has returned true.
+   */
+  @NonNull List<RestoredBlob> getAttachments() {
+    return attachments;
+  }
+
+  /**
+   * Only valid once {@link #await(long)} has returned true.
+   */
+  @NonNull List<RestoredBlob> getStickers() {
+    return stickers;
+  }
+
+  private void readAll(@NonNull InputStream inputStream, @NonNull String passphrase) {
+    try {
+      BackupRecordInputStream in = new BackupRecordInputStream(inputStream, passphrase);
+      BackupFrame             frame;
+
+      while ((frame = in.readFrame()).end != Boolean.TRUE && failure.get() == null) {
+        if      (frame.attachment != null) readAttachment(frame.attachment, in);
+        else if (frame.sticker != null)    readSticker(frame.sticker, in);
+        else if (frame.avatar != null)     readAvatar(frame.avatar, in);
+        else                               throw new IOException("Unexpected frame on a blob stream");
+
+        count.incrementAndGet();
+      }
+    } catch (IOException | RuntimeException e) {
+      Log.w(TAG, "Transfer stream failed", e);
+      failure.compareAndSet(null, e instanceof IOException ? (IOException) e : new IOException(e));
+    }
+  }
+
+  private void readAttachment(@NonNull Attachment attachment, @NonNull BackupRecordInputStream in) throws IOException {
+    File                       dataFile = AttachmentTable.newDataFile(context);
+    Pair<byte[], OutputStream> output   = ModernEncryptingPartOutputStream.createFor(attachmentSecret, dataFile, false);
+
+    try {
+      in.readAttachmentTo(output.getSecond(), attachment.length);
+      attachments.add(new RestoredBlob(attachment.rowId, dataFile, output.getFirst(), attachment.length));
+    } catch (BackupRecordInputStream.BadMacException e) {
+      Log.w(TAG, "Bad MAC for attachment " + attachment.attachmentId + "! Can't restore it.", e);
+      dataFile.delete();
+      attachments.add(new RestoredBlob(attachment.rowId, null, null, 0));
+    }
+  }
+
+  private void readSticker(@NonNull Sticker sticker, @NonNull BackupRecordInputStream in) throws IOException {
+    File                       stickerDirectory = context.getDir(StickerTable.DIRECTORY, Context.MODE_PRIVATE);
+    File                       dataFile         = File.createTempFile("sticker", ".mms", stickerDirectory);
+    Pair<byte[], OutputStream> output           = ModernEncryptingPartOutputStream.createFor(attachmentSecret, dataFile, false);
+
+    in.readAttachmentTo(output.getSecond(), sticker.length);
+    stickers.add(new RestoredBlob(sticker.rowId, dataFile, output.getFirst(), sticker.length));
+  }
+
+  private void readAvatar(@NonNull Avatar avatar, @NonNull BackupRecordInputStream in) throws IOException {
+    if (avatar.recipientId != null) {
+      in.readAttachmentTo(AvatarHelper.getOutputStream(context, RecipientId.from(avatar.recipientId), false), avatar.length);
+    } else {
+      Log.w(TAG, "Avatar is missing a recipientId. Skipping avatar restore.");
+      in.readAttachmentTo(new ByteArrayOutputStream(), avatar.length);
+    }
+  }
+
+  private void throwIfFailed() throws IOException {
+    IOException e = failure.get();
+    if (e != null) {
+      throw new IOException("A transfer stream failed", e);
+    }
+  }
+
+  /**
+   * A blob that has been written to a new local file, waiting for its row to be updated. {@link #file} is null if the blob
+   * could not be restored.
+   */
+  static final class RestoredBlob {
+    final long   rowId;
+    final File   file;
+    final byte[] random;
+    final long   length;
+
+    RestoredBlob(long rowId, @Nullable File file, @Nullable byte[] random, long length) {
+      this.rowId  = rowId;
+      this.file   = file;
+      this.random = random;
+      this.length = length;
+    }
+  }
+}
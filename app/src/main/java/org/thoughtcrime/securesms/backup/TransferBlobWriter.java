@@ -0,0 +1,211 @@
+package org.thoughtcrime.securesms.backup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.signal.core.models.database.AttachmentId;
+import org.signal.core.util.crypto.AttachmentSecret;
+import org.signal.core.util.crypto.ModernDecryptingPartInputStream;
+import org.signal.core.util.logging.Log;
+import org.thoughtcrime.securesms.profiles.AvatarHelper;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes the attachment, sticker and avatar blobs of a device transfer across several streams at once.
+ *
+ * Each stream gets its own thread and its own {@link BackupFrameOutputStream}, so decrypting blobs from local storage and
+ * re-encrypting them for the wire is spread across cores and connections. Blobs are handed out in the order they are
+ * submitted to whichever stream is free. Each stream ends with its own end frame and is read back by {@link TransferBlobReader}.
+ */
+final class TransferBlobWriter {
+
+  private static final String TAG = Log.tag(TransferBlobWriter.class);
+
+  private static final Blob END = out -> {};
+
+  private final AttachmentSecret             attachmentSecret;
+  private final BlockingQueue<Blob>          queue;
+  private final List<Thread>                 threads;
+  private final AtomicInteger                frames  = new AtomicInteger();
+  private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+  private boolean ended;
+
+  TransferBlobWriter(@NonNull AttachmentSecret attachmentSecret, @NonNull List<OutputStream> outputStreams, @NonNull String passphrase) {
+    this.attachmentSecret = attachmentSecret;
+    this.queue            = new ArrayBlockingQueue<>(outputStreams.size() * 2);
+    this.threads          = new ArrayList<>(outputStreams.size());
+
+    for (int i = 0; i < outputStreams.size(); i++) {
+      OutputStream outputStream = outputStreams.get(i);
+      Thread       thread       = new Thread(() -> writeAll(outputStream, passphrase), "signal-transfer-writer-" + i);
+
+      threads.add(thread);
+      thread.start();
+    }
+  }
+
+  void writeAttachment(@NonNull AttachmentId attachmentId, @Nullable byte[] random, @NonNull String data, long size) throws IOException {
+    submit(out -> {
+      long length = FullBackupExporter.resolveAttachmentLength(attachmentSecret, attachmentId, random, data, size);
+      if (length <= 0) {
+        return;
+      }
+
+      try (InputStream inputStream = FullBackupExporter.openAttachmentStream(attachmentSecret, random, data)) {
+        out.write(attachmentId, inputStream, length);
+      } catch (FileNotFoundException e) {
+        Log.w(TAG, "Missing attachment", e);
+      }
+    });
+  }
+
+  void writeSticker(long rowId, @Nullable byte[] random, @NonNull String data, long size) throws IOException {
+    submit(out -> {
+      try (InputStream inputStream = ModernDecryptingPartInputStream.createFor(attachmentSecret, random, new File(data), 0)) {
+        out.writeSticker(rowId, inputStream, size);
+      } catch (FileNotFoundException e) {
+        Log.w(TAG, "Missing sticker", e);
+      }
+    });
+  }
+
+  void writeAvatar(@NonNull AvatarHelper.Avatar avatar) throws IOException {
+    submit(out -> {
+      try (InputStream inputStream = avatar.getInputStream()) {
+        out.write(avatar.getFilename(), inputStream, avatar.getLength());
+      }
+    });
+  }
+
+  /**
+   * Waits for every submitted blob to be written and ends each stream.
+   *
+   * @return The number of blob frames written across all streams.
+   */
+  int finish() throws IOException {
+    end();
+
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted while waiting for transfer streams");
+      }
+    }
+
+    throwIfFailed();
+    return frames.get();
+  }
+
+  /**
+   * Stops the stream threads without writing their end frames if {@link #finish()} was never reached, so the new device sees
+   * the transfer fail instead of waiting for more blobs.
+   */
+  void abort() {
+    if (ended) {
+      return;
+    }
+
+    fail(new IOException("Transfer ended before all blobs were written"));
+
+    try {
+      end();
+    } catch (IOException e) {
+      Log.w(TAG, "Unable to stop transfer streams", e);
+    }
+  }
+
+  private void end() throws IOException {
+    ended = true;
+    for (int i = 0; i < threads.size(); i++) {
+      put(END);
+    }
+  }
+
+  private void submit(@NonNull Blob blob) throws IOException {
+    throwIfFailed();
+    put(blob);
+  }
+
+  private void put(@NonNull Blob blob) throws IOException {
+    try {
+      queue.put(blob);
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted while queueing a transfer blob");
+    }
+  }
+
+  private void throwIfFailed() throws IOException {
+    IOException e = failure.get();
+    if (e != null) {
+      throw new IOException("A transfer stream failed", e);
+    }
+  }
+
+  /**
+   * Runs on a stream's own thread. After a failure the thread keeps taking blobs off the queue without writing them, so the
+   * exporter never blocks on a full queue and finds out about the failure on its next submit.
+   */
+  private void writeAll(@NonNull OutputStream outputStream, @NonNull String passphrase) {
+    BackupFrameOutputStream out = null;
+
+    try {
+      out = new BackupFrameOutputStream(outputStream, passphrase);
+    } catch (IOException | RuntimeException e) {
+      fail(e);
+    }
+
+    Blob blob;
+    while ((blob = take()) != END) {
+      if (out != null && failure.get() == null) {
+        try {
+          blob.writeTo(out);
+        } catch (IOException | RuntimeException e) {
+          fail(e);
+        }
+      }
+    }
+
+    if (out != null && failure.get() == null) {
+      try {
+        frames.addAndGet(out.getFrames());
+        out.writeEnd();
+        outputStream.flush();
+      } catch (IOException e) {
+        fail(e);
+      }
+    }
+  }
+
+  private @NonNull Blob take() {
+    while (true) {
+      try {
+        return queue.take();
+      } catch (InterruptedException e) {
+        Log.w(TAG, "Interrupted while waiting for a transfer blob", e);
+      }
+    }
+  }
+
+  private void fail(@NonNull Exception e) {
+    Log.w(TAG, "Transfer stream failed", e);
+    failure.compareAndSet(null, e instanceof IOException ? (IOException) e : new IOException(e));
+  }
+
+  private interface Blob {
+    void writeTo(@NonNull BackupFrameOutputStream out) throws IOException;
+  }
+}
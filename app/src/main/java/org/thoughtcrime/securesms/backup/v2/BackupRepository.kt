@@ -195,6 +195,9 @@ object BackupRepository {
   private const val RECENT_RECIPIENTS_MAX = 50
   private val MANUAL_BACKUP_NOTIFICATION_THRESHOLD = 30.days
 
+  /** Compression is the bottleneck of an export once an account is big enough, so it gets a few threads. */
+  private val EXPORT_COMPRESSION_THREADS = Runtime.getRuntime().availableProcessors().coerceIn(1, 4)
+
   private val resetInitializedStateErrorAction: StatusCodeErrorAction = { error ->
     when (error.code) {
       401 -> {
@@ -770,7 +773,8 @@ object BackupRepository {
       key = SignalStore.backup.messageBackupKey,
       aci = SignalStore.account.aci!!,
       outputStream = NonClosingOutputStream(main),
-      append = { main.write(it) }
+      append = { main.write(it) },
+      compressionThreads = EXPORT_COMPRESSION_THREADS
     )
 
     export(
@@ -854,7 +858,8 @@ object BackupRepository {
       outputStream = outputStream,
       forwardSecrecyToken = forwardSecrecyToken,
       forwardSecrecyMetadata = forwardSecrecyMetadata,
-      append = append
+      append = append,
+      compressionThreads = EXPORT_COMPRESSION_THREADS
     )
 
     return export(
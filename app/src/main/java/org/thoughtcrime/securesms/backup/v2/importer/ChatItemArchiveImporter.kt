@@ -5,7 +5,6 @@
 
 package org.thoughtcrime.securesms.backup.v2.importer
 
-import android.content.ContentValues
 import androidx.core.content.contentValuesOf
 import org.signal.archive.proto.BodyRange
 import org.signal.archive.proto.ChatItem
@@ -30,10 +29,8 @@ import org.signal.core.util.JsonUtils
 import org.signal.core.util.SqlUtil
 import org.signal.core.util.UuidUtil
 import org.signal.core.util.asList
-import org.signal.core.util.forEach
 import org.signal.core.util.logging.Log
 import org.signal.core.util.orNull
-import org.signal.core.util.requireLong
 import org.signal.core.util.toInt
 import org.signal.core.util.update
 import org.thoughtcrime.securesms.attachments.Attachment
@@ -44,6 +41,7 @@ import org.thoughtcrime.securesms.backup.v2.ImportState
 import org.thoughtcrime.securesms.backup.v2.util.toLocalAttachment
 import org.thoughtcrime.securesms.contactshare.Contact
 import org.thoughtcrime.securesms.database.AttachmentTable
+import org.thoughtcrime.securesms.database.BulkInsertWriter
 import org.thoughtcrime.securesms.database.CallTable
 import org.thoughtcrime.securesms.database.GroupReceiptTable
 import org.thoughtcrime.securesms.database.MessageTable
@@ -77,7 +75,6 @@ import org.thoughtcrime.securesms.util.Environment
 import org.thoughtcrime.securesms.util.MessageUtil
 import org.whispersystems.signalservice.internal.push.DataMessage
 import java.math.BigDecimal
-import java.sql.SQLException
 import java.util.Optional
 import java.util.UUID
 import org.signal.archive.proto.GiftBadge as BackupGiftBadge
@@ -95,6 +92,7 @@ class ChatItemArchiveImporter(
     private val TAG = Log.tag(ChatItemArchiveImporter::class.java)
 
     private val MESSAGE_COLUMNS = arrayOf(
+      MessageTable.ID,
       MessageTable.DATE_SENT,
       MessageTable.DATE_RECEIVED,
       MessageTable.DATE_SERVER,
@@ -132,7 +130,8 @@ class ChatItemArchiveImporter(
       MessageTable.PINNED_UNTIL,
       MessageTable.PINNING_MESSAGE_ID,
       MessageTable.PINNED_AT,
-      MessageTable.DELETED_BY
+      MessageTable.DELETED_BY,
+      MessageTable.VOTES_LAST_SEEN
     )
 
     private val REACTION_COLUMNS = arrayOf(
@@ -153,7 +152,7 @@ class ChatItemArchiveImporter(
   }
 
   private val selfId = Recipient.self().id
-  private val buffer: Buffer = Buffer()
+  private val buffer: Buffer = Buffer(batchSize)
   private var messageId: Long = SqlUtil.getNextAutoIncrementId(db, MessageTable.TABLE_NAME)
 
   /**
@@ -191,33 +190,32 @@ class ChatItemArchiveImporter(
       return
     }
 
-    val messageInsert = chatItem.toMessageInsert(fromLocalRecipientId, chatLocalRecipientId, localThreadId)
-    if (chatItem.revisions.isNotEmpty()) {
-      // Flush to avoid having revisions cross batch boundaries, which will cause a foreign key failure
-      flush()
-      val originalId = messageId
-      val latestRevisionId = originalId + chatItem.revisions.size
-      val sortedRevisions = chatItem.revisions.sortedBy { it.dateSent }.map { it.toMessageInsert(fromLocalRecipientId, chatLocalRecipientId, localThreadId) }
-      val areAnyRevisionsRead = !Environment.IS_INSTRUMENTATION && ((messageInsert.contentValues.getAsInteger(MessageTable.READ) ?: 0) > 0 || sortedRevisions.any { (it.contentValues.getAsInteger(MessageTable.READ) ?: 0) > 0 })
-      for (revision in sortedRevisions) {
-        val revisionNumber = messageId - originalId
+    // Every row gets its ID up front, so that revisions, reactions and receipts can point at messages in the same batch
+    val revisionRows: List<Int> = chatItem.revisions
+      .sortedBy { it.dateSent }
+      .map { it.addMessageRow(messageId++, fromLocalRecipientId, chatLocalRecipientId, localThreadId) }
+
+    val row = chatItem.addMessageRow(messageId, fromLocalRecipientId, chatLocalRecipientId, localThreadId)
+
+    if (revisionRows.isNotEmpty()) {
+      val messages = buffer.messages
+      val originalId = messages.getLong(revisionRows[0], MessageTable.ID)
+      val areAnyRevisionsRead = !Environment.IS_INSTRUMENTATION && (messages.getLong(row, MessageTable.READ) > 0 || revisionRows.any { messages.getLong(it, MessageTable.READ) > 0 })
+      revisionRows.forEachIndexed { revisionNumber, revisionRow ->
         if (revisionNumber > 0) {
-          revision.contentValues.put(MessageTable.ORIGINAL_MESSAGE_ID, originalId)
+          messages.put(revisionRow, MessageTable.ORIGINAL_MESSAGE_ID, originalId)
         } else if (areAnyRevisionsRead) {
-          revision.contentValues.put(MessageTable.READ, 1)
+          messages.put(revisionRow, MessageTable.READ, 1)
         }
-        revision.contentValues.put(MessageTable.LATEST_REVISION_ID, latestRevisionId)
-        revision.contentValues.put(MessageTable.REVISION_NUMBER, revisionNumber)
-        buffer.messages += revision
-        messageId++
+        messages.put(revisionRow, MessageTable.LATEST_REVISION_ID, messageId)
+        messages.put(revisionRow, MessageTable.REVISION_NUMBER, revisionNumber)
       }
 
-      messageInsert.contentValues.put(MessageTable.ORIGINAL_MESSAGE_ID, originalId)
-      messageInsert.contentValues.put(MessageTable.REVISION_NUMBER, (messageId - originalId))
+      messages.put(row, MessageTable.ORIGINAL_MESSAGE_ID, originalId)
+      messages.put(row, MessageTable.REVISION_NUMBER, revisionRows.size)
     }
-    buffer.messages += messageInsert
-    buffer.reactions += chatItem.toReactionContentValues(messageId)
-    buffer.groupReceipts += chatItem.toGroupReceiptContentValues(messageId, chatBackupRecipientId)
+    chatItem.addReactionRows(messageId)
+    chatItem.addGroupReceiptRows(messageId, chatBackupRecipientId)
 
     messageId++
 
@@ -232,28 +230,28 @@ class ChatItemArchiveImporter(
       return false
     }
 
-    var messageInsertIndex = 0
-    try {
-      SqlUtil.buildBulkInsert(MessageTable.TABLE_NAME, MESSAGE_COLUMNS, buffer.messages.map { it.contentValues }, onConflict = "IGNORE").forEach { query ->
-        db.rawQuery("${query.where} RETURNING ${MessageTable.ID}", query.whereArgs).forEach { cursor ->
-          val finalMessageId = cursor.requireLong(MessageTable.ID)
-          val relatedInsert = buffer.messages[messageInsertIndex++]
-          relatedInsert.followUp?.invoke(finalMessageId)
-        }
-      }
-    } catch (e: SQLException) {
-      Log.w(TAG, "Failed to bulk-insert message! Trying one at at time.", e)
-      performIndividualMessageInserts(buffer.messages)
+    val messages = buffer.messages
+    val failedMessageIds: MutableSet<Long> = HashSet()
+    messages.write(db) { row, e ->
+      Log.w(TAG, "Failed to insert message with timestamp ${messages.getLong(row, MessageTable.DATE_SENT)}. Must skip.", e)
+      failedMessageIds += messages.getLong(row, MessageTable.ID)
     }
 
-    SqlUtil.buildBulkInsert(ReactionTable.TABLE_NAME, REACTION_COLUMNS, buffer.reactions).forEach {
-      db.execSQL(it.where, it.whereArgs)
+    for (row in 0 until messages.size) {
+      val id = messages.getLong(row, MessageTable.ID)
+      if (failedMessageIds.isEmpty() || id !in failedMessageIds) {
+        buffer.followUps[row]?.invoke(id)
+      }
     }
 
-    SqlUtil.buildBulkInsert(GroupReceiptTable.TABLE_NAME, GROUP_RECEIPT_COLUMNS, buffer.groupReceipts).forEach {
-      db.execSQL(it.where, it.whereArgs)
+    if (failedMessageIds.isNotEmpty()) {
+      buffer.reactions.retainRows { buffer.reactions.getLong(it, ReactionTable.MESSAGE_ID) !in failedMessageIds }
+      buffer.groupReceipts.retainRows { buffer.groupReceipts.getLong(it, GroupReceiptTable.MMS_ID) !in failedMessageIds }
     }
 
+    buffer.reactions.write(db)
+    buffer.groupReceipts.write(db)
+
     messageId = SqlUtil.getNextAutoIncrementId(db, MessageTable.TABLE_NAME)
 
     buffer.reset()
@@ -261,20 +259,16 @@ class ChatItemArchiveImporter(
     return true
   }
 
-  private fun performIndividualMessageInserts(messageInserts: List<MessageInsert>) {
-    for (message in messageInserts) {
-      val values = message.contentValues
-      try {
-        db.insert(MessageTable.TABLE_NAME, SQLiteDatabase.CONFLICT_IGNORE, values)
-        message.followUp?.invoke(messageId - 1)
-      } catch (e: SQLException) {
-        Log.w(TAG, "Failed to insert message with timestamp ${message.contentValues.get(MessageTable.DATE_SENT)}. Must skip.", e)
-      }
-    }
-  }
-
-  private fun ChatItem.toMessageInsert(fromRecipientId: RecipientId, chatRecipientId: RecipientId, threadId: Long): MessageInsert {
-    val contentValues = this.toMessageContentValues(fromRecipientId, chatRecipientId, threadId)
+  /**
+   * Adds a row for this item to the batch of messages, with the given [id], and queues up whatever else needs to be written once it's been inserted.
+   *
+   * @return The index of the row in [Buffer.messages].
+   */
+  private fun ChatItem.addMessageRow(id: Long, fromRecipientId: RecipientId, chatRecipientId: RecipientId, threadId: Long): Int {
+    val messages = buffer.messages
+    val row = messages.addRow()
+    messages.put(row, MessageTable.ID, id)
+    this.putMessageValues(messages, row, fromRecipientId, chatRecipientId, threadId)
 
     val followUps: MutableList<(Long) -> Unit> = mutableListOf()
 
@@ -447,7 +441,7 @@ class ChatItemArchiveImporter(
     if (directStoryReplyMessage != null) {
       val (trimmedBodyText, longTextAttachment) = directStoryReplyMessage.parseBodyText(importState)
       if (trimmedBodyText != null) {
-        contentValues.put(MessageTable.BODY, trimmedBodyText)
+        messages.put(row, MessageTable.BODY, trimmedBodyText)
       }
 
       if (longTextAttachment != null) {
@@ -477,7 +471,7 @@ class ChatItemArchiveImporter(
 
       val (trimmedBodyText, longTextAttachment) = standardMessage.parseBodyText(importState)
       if (trimmedBodyText != null) {
-        contentValues.put(MessageTable.BODY, trimmedBodyText)
+        messages.put(row, MessageTable.BODY, trimmedBodyText)
       }
 
       val quoteAttachments: List<Attachment> = standardMessage.quote?.toLocalAttachments() ?: emptyList()
@@ -532,8 +526,8 @@ class ChatItemArchiveImporter(
 
     val poll = this.poll
     if (poll != null) {
-      contentValues.put(MessageTable.BODY, poll.question)
-      contentValues.put(MessageTable.VOTES_LAST_SEEN, System.currentTimeMillis())
+      messages.put(row, MessageTable.BODY, poll.question)
+      messages.put(row, MessageTable.VOTES_LAST_SEEN, System.currentTimeMillis())
 
       followUps += { messageRowId ->
         val pollId = SignalDatabase.polls.insertPoll(
@@ -568,7 +562,9 @@ class ChatItemArchiveImporter(
       null
     }
 
-    return MessageInsert(contentValues, followUp)
+    buffer.followUps += followUp
+
+    return row
   }
 
   /**
@@ -618,28 +614,25 @@ class ChatItemArchiveImporter(
     return null to null
   }
 
-  private fun ChatItem.toMessageContentValues(fromRecipientId: RecipientId, chatRecipientId: RecipientId, threadId: Long): ContentValues {
-    val contentValues = ContentValues()
-
+  private fun ChatItem.putMessageValues(messages: BulkInsertWriter, row: Int, fromRecipientId: RecipientId, chatRecipientId: RecipientId, threadId: Long) {
     val outgoing = this.outgoing
     val incoming = this.incoming
     val directionless = this.directionless
 
     val toRecipientId = if (outgoing != null) chatRecipientId else selfId
 
-    contentValues.put(MessageTable.TYPE, this.getMessageType())
-    contentValues.put(MessageTable.DATE_SENT, this.dateSent)
-    contentValues.put(MessageTable.DATE_SERVER, incoming?.dateServerSent ?: -1)
-    contentValues.put(MessageTable.FROM_RECIPIENT_ID, fromRecipientId.serialize())
-    contentValues.put(MessageTable.TO_RECIPIENT_ID, toRecipientId.serialize())
-    contentValues.put(MessageTable.THREAD_ID, threadId)
-    contentValues.put(MessageTable.DATE_RECEIVED, incoming?.dateReceived ?: outgoing?.dateReceived?.takeUnless { it == 0L } ?: this.dateSent)
-    contentValues.put(MessageTable.RECEIPT_TIMESTAMP, outgoing?.sendStatus?.maxOfOrNull { it.timestamp } ?: 0)
-    contentValues.putNull(MessageTable.LATEST_REVISION_ID)
-    contentValues.putNull(MessageTable.ORIGINAL_MESSAGE_ID)
-    contentValues.put(MessageTable.REVISION_NUMBER, 0)
-    contentValues.put(MessageTable.EXPIRES_IN, this.expiresInMs ?: 0)
-    contentValues.put(MessageTable.EXPIRE_STARTED, this.expireStartDate ?: 0)
+    messages.put(row, MessageTable.TYPE, this.getMessageType())
+    messages.put(row, MessageTable.DATE_SENT, this.dateSent)
+    messages.put(row, MessageTable.DATE_SERVER, incoming?.dateServerSent ?: -1)
+    messages.put(row, MessageTable.FROM_RECIPIENT_ID, fromRecipientId.toLong())
+    messages.put(row, MessageTable.TO_RECIPIENT_ID, toRecipientId.toLong())
+    messages.put(row, MessageTable.THREAD_ID, threadId)
+    messages.put(row, MessageTable.DATE_RECEIVED, incoming?.dateReceived ?: outgoing?.dateReceived?.takeUnless { it == 0L } ?: this.dateSent)
+    messages.put(row, MessageTable.RECEIPT_TIMESTAMP, outgoing?.sendStatus?.maxOfOrNull { it.timestamp } ?: 0)
+    messages.put(row, MessageTable.REVISION_NUMBER, 0)
+    messages.put(row, MessageTable.VOTES_LAST_SEEN, 0)
+    messages.put(row, MessageTable.EXPIRES_IN, this.expiresInMs ?: 0)
+    messages.put(row, MessageTable.EXPIRE_STARTED, this.expireStartDate ?: 0)
 
     when {
       outgoing != null -> {
@@ -647,44 +640,44 @@ class ChatItemArchiveImporter(
         val hasReadReceipt = viewed || outgoing.sendStatus.any { it.read != null }
         val hasDeliveryReceipt = viewed || hasReadReceipt || outgoing.sendStatus.any { it.delivered != null }
 
-        contentValues.put(MessageTable.VIEWED_COLUMN, viewed.toInt())
-        contentValues.put(MessageTable.HAS_READ_RECEIPT, hasReadReceipt.toInt())
-        contentValues.put(MessageTable.HAS_DELIVERY_RECEIPT, hasDeliveryReceipt.toInt())
-        contentValues.put(MessageTable.UNIDENTIFIED, outgoing.sendStatus.count { it.sealedSender })
-        contentValues.put(MessageTable.READ, 1)
+        messages.put(row, MessageTable.VIEWED_COLUMN, viewed.toInt())
+        messages.put(row, MessageTable.HAS_READ_RECEIPT, hasReadReceipt.toInt())
+        messages.put(row, MessageTable.HAS_DELIVERY_RECEIPT, hasDeliveryReceipt.toInt())
+        messages.put(row, MessageTable.UNIDENTIFIED, outgoing.sendStatus.count { it.sealedSender })
+        messages.put(row, MessageTable.READ, 1)
 
-        contentValues.addNetworkFailures(this, importState)
-        contentValues.addIdentityKeyMismatches(this, importState)
+        messages.addNetworkFailures(row, this, importState)
+        messages.addIdentityKeyMismatches(row, this, importState)
       }
       incoming != null -> {
-        contentValues.put(MessageTable.VIEWED_COLUMN, 0)
-        contentValues.put(MessageTable.HAS_READ_RECEIPT, 0)
-        contentValues.put(MessageTable.HAS_DELIVERY_RECEIPT, 0)
-        contentValues.put(MessageTable.UNIDENTIFIED, incoming.sealedSender.toInt())
-        contentValues.put(MessageTable.READ, incoming.read.toInt())
-        contentValues.put(MessageTable.NOTIFIED, 1)
+        messages.put(row, MessageTable.VIEWED_COLUMN, 0)
+        messages.put(row, MessageTable.HAS_READ_RECEIPT, 0)
+        messages.put(row, MessageTable.HAS_DELIVERY_RECEIPT, 0)
+        messages.put(row, MessageTable.UNIDENTIFIED, incoming.sealedSender.toInt())
+        messages.put(row, MessageTable.READ, incoming.read.toInt())
+        messages.put(row, MessageTable.NOTIFIED, 1)
       }
       directionless != null -> {
-        contentValues.put(MessageTable.VIEWED_COLUMN, 0)
-        contentValues.put(MessageTable.HAS_READ_RECEIPT, 0)
-        contentValues.put(MessageTable.HAS_DELIVERY_RECEIPT, 0)
-        contentValues.put(MessageTable.READ, 1)
-        contentValues.put(MessageTable.NOTIFIED, 1)
+        messages.put(row, MessageTable.VIEWED_COLUMN, 0)
+        messages.put(row, MessageTable.HAS_READ_RECEIPT, 0)
+        messages.put(row, MessageTable.HAS_DELIVERY_RECEIPT, 0)
+        messages.put(row, MessageTable.READ, 1)
+        messages.put(row, MessageTable.NOTIFIED, 1)
       }
     }
 
-    contentValues.put(MessageTable.QUOTE_ID, 0)
-    contentValues.put(MessageTable.QUOTE_AUTHOR, 0)
-    contentValues.put(MessageTable.QUOTE_MISSING, 0)
-    contentValues.put(MessageTable.QUOTE_TYPE, 0)
-    contentValues.put(MessageTable.VIEW_ONCE, 0)
-    contentValues.put(MessageTable.PARENT_STORY_ID, 0)
+    messages.put(row, MessageTable.QUOTE_ID, 0)
+    messages.put(row, MessageTable.QUOTE_AUTHOR, 0)
+    messages.put(row, MessageTable.QUOTE_MISSING, 0)
+    messages.put(row, MessageTable.QUOTE_TYPE, 0)
+    messages.put(row, MessageTable.VIEW_ONCE, 0)
+    messages.put(row, MessageTable.PARENT_STORY_ID, 0)
 
     val pinDetails = this.pinDetails
     if (pinDetails != null) {
       val pinnedUntil = if (pinDetails.pinNeverExpires == true) MessageTable.PIN_FOREVER else pinDetails.pinExpiresAtTimestamp
-      contentValues.put(MessageTable.PINNED_UNTIL, pinnedUntil ?: 0)
-      contentValues.put(MessageTable.PINNED_AT, pinDetails.pinnedAtTimestamp)
+      messages.put(row, MessageTable.PINNED_UNTIL, pinnedUntil ?: 0)
+      messages.put(row, MessageTable.PINNED_AT, pinDetails.pinnedAtTimestamp)
     }
 
     val itemStandardMessage = this.standardMessage
@@ -696,19 +689,17 @@ class ChatItemArchiveImporter(
     val itemDirectStoryReplyMessage = this.directStoryReplyMessage
     val itemAdminDeletedMessage = this.adminDeletedMessage
     when {
-      itemStandardMessage != null -> contentValues.addStandardMessage(itemStandardMessage)
-      itemRemoteDeletedMessage != null -> contentValues.put(MessageTable.DELETED_BY, fromRecipientId.toLong())
-      itemUpdateMessage != null -> contentValues.addUpdateMessage(itemUpdateMessage, fromRecipientId, toRecipientId, chatRecipientId)
-      itemGiftBadge != null -> contentValues.addGiftBadge(itemGiftBadge)
-      itemViewOnceMessage != null -> contentValues.addViewOnce(itemViewOnceMessage)
-      itemDirectStoryReplyMessage != null -> contentValues.addDirectStoryReply(itemDirectStoryReplyMessage, toRecipientId)
-      itemAdminDeletedMessage != null -> contentValues.put(MessageTable.DELETED_BY, importState.remoteToLocalRecipientId[itemAdminDeletedMessage.adminId]!!.toLong())
+      itemStandardMessage != null -> messages.addStandardMessage(row, itemStandardMessage)
+      itemRemoteDeletedMessage != null -> messages.put(row, MessageTable.DELETED_BY, fromRecipientId.toLong())
+      itemUpdateMessage != null -> messages.addUpdateMessage(row, itemUpdateMessage, fromRecipientId, toRecipientId, chatRecipientId)
+      itemGiftBadge != null -> messages.addGiftBadge(row, itemGiftBadge)
+      itemViewOnceMessage != null -> messages.addViewOnce(row, itemViewOnceMessage)
+      itemDirectStoryReplyMessage != null -> messages.addDirectStoryReply(row, itemDirectStoryReplyMessage, toRecipientId)
+      itemAdminDeletedMessage != null -> messages.put(row, MessageTable.DELETED_BY, importState.remoteToLocalRecipientId[itemAdminDeletedMessage.adminId]!!.toLong())
     }
-
-    return contentValues
   }
 
-  private fun ChatItem.toReactionContentValues(messageId: Long): List<ContentValues> {
+  private fun ChatItem.addReactionRows(messageId: Long) {
     val reactions: List<Reaction> = this.standardMessage?.reactions
       ?: this.contactMessage?.reactions
       ?: this.stickerMessage?.reactions
@@ -717,47 +708,44 @@ class ChatItemArchiveImporter(
       ?: this.poll?.reactions
       ?: emptyList()
 
-    return reactions
-      .mapNotNull {
-        val authorId: Long? = importState.remoteToLocalRecipientId[it.authorId]?.toLong()
-
-        if (authorId != null) {
-          contentValuesOf(
-            ReactionTable.MESSAGE_ID to messageId,
-            ReactionTable.AUTHOR_ID to authorId,
-            ReactionTable.DATE_SENT to it.sentTimestamp,
-            ReactionTable.DATE_RECEIVED to it.sortOrder,
-            ReactionTable.EMOJI to it.emoji
-          )
-        } else {
-          Log.w(TAG, "[Reaction] Could not find a local recipient for backup recipient ID ${it.authorId}! Skipping.")
-          null
-        }
+    val rows = buffer.reactions
+    for (reaction in reactions) {
+      val authorId: RecipientId? = importState.remoteToLocalRecipientId[reaction.authorId]
+
+      if (authorId != null) {
+        val row = rows.addRow()
+        rows.put(row, ReactionTable.MESSAGE_ID, messageId)
+        rows.put(row, ReactionTable.AUTHOR_ID, authorId.toLong())
+        rows.put(row, ReactionTable.DATE_SENT, reaction.sentTimestamp)
+        rows.put(row, ReactionTable.DATE_RECEIVED, reaction.sortOrder)
+        rows.put(row, ReactionTable.EMOJI, reaction.emoji)
+      } else {
+        Log.w(TAG, "[Reaction] Could not find a local recipient for backup recipient ID ${reaction.authorId}! Skipping.")
       }
+    }
   }
 
-  private fun ChatItem.toGroupReceiptContentValues(messageId: Long, chatBackupRecipientId: Long): List<ContentValues> {
-    val outgoing = this.outgoing ?: return emptyList()
+  private fun ChatItem.addGroupReceiptRows(messageId: Long, chatBackupRecipientId: Long) {
+    val outgoing = this.outgoing ?: return
 
     // TODO [backup] This seems like an indirect/bad way to detect if this is a 1:1 or group convo
     if (outgoing.sendStatus.size == 1 && outgoing.sendStatus[0].recipientId == chatBackupRecipientId) {
-      return emptyList()
+      return
     }
 
-    return outgoing.sendStatus.mapNotNull { sendStatus ->
+    val rows = buffer.groupReceipts
+    for (sendStatus in outgoing.sendStatus) {
       val recipientId = importState.remoteToLocalRecipientId[sendStatus.recipientId]
 
       if (recipientId != null) {
-        contentValuesOf(
-          GroupReceiptTable.MMS_ID to messageId,
-          GroupReceiptTable.RECIPIENT_ID to recipientId.serialize(),
-          GroupReceiptTable.STATUS to sendStatus.toLocalSendStatus(),
-          GroupReceiptTable.TIMESTAMP to sendStatus.timestamp,
-          GroupReceiptTable.UNIDENTIFIED to sendStatus.sealedSender.toInt()
-        )
+        val row = rows.addRow()
+        rows.put(row, GroupReceiptTable.MMS_ID, messageId)
+        rows.put(row, GroupReceiptTable.RECIPIENT_ID, recipientId.toLong())
+        rows.put(row, GroupReceiptTable.STATUS, sendStatus.toLocalSendStatus())
+        rows.put(row, GroupReceiptTable.TIMESTAMP, sendStatus.timestamp)
+        rows.put(row, GroupReceiptTable.UNIDENTIFIED, sendStatus.sealedSender.toInt())
       } else {
         Log.w(TAG, "[GroupReceipts] Could not find a local recipient for backup recipient ID ${sendStatus.recipientId}! Skipping.")
-        null
       }
     }
   }
@@ -797,23 +785,23 @@ class ChatItemArchiveImporter(
     return type
   }
 
-  private fun ContentValues.addStandardMessage(standardMessage: StandardMessage) {
+  private fun BulkInsertWriter.addStandardMessage(row: Int, standardMessage: StandardMessage) {
     val text = standardMessage.text
     if (text != null) {
-      this.put(MessageTable.BODY, text.body)
+      this.put(row, MessageTable.BODY, text.body)
 
       if (text.bodyRanges.isNotEmpty()) {
-        this.put(MessageTable.MESSAGE_RANGES, text.bodyRanges.toLocalBodyRanges()?.encode())
+        this.put(row, MessageTable.MESSAGE_RANGES, text.bodyRanges.toLocalBodyRanges()?.encode())
       }
     }
 
     val quote = standardMessage.quote
     if (quote != null) {
-      this.addQuote(quote)
+      this.addQuote(row, quote)
     }
   }
 
-  private fun ContentValues.addUpdateMessage(updateMessage: ChatUpdateMessage, fromRecipientId: RecipientId, toRecipientId: RecipientId, chatRecipientId: RecipientId) {
+  private fun BulkInsertWriter.addUpdateMessage(row: Int, updateMessage: ChatUpdateMessage, fromRecipientId: RecipientId, toRecipientId: RecipientId, chatRecipientId: RecipientId) {
     var typeFlags: Long = 0
     val simpleUpdate = updateMessage.simpleUpdate
     val expirationTimerChange = updateMessage.expirationTimerChange
@@ -828,7 +816,7 @@ class ChatItemArchiveImporter(
     val groupChange = updateMessage.groupChange
     when {
       simpleUpdate != null -> {
-        val typeWithoutBase = (getAsLong(MessageTable.TYPE) and MessageTypes.BASE_TYPE_MASK.inv())
+        val typeWithoutBase = (getLong(row, MessageTable.TYPE) and MessageTypes.BASE_TYPE_MASK.inv())
         typeFlags = when (simpleUpdate.type) {
           SimpleChatUpdate.Type.UNKNOWN -> typeWithoutBase
           SimpleChatUpdate.Type.JOINED_SIGNAL -> MessageTypes.JOINED_TYPE or typeWithoutBase
@@ -851,46 +839,46 @@ class ChatItemArchiveImporter(
 
         // Identity verification changes have to/from swapped
         if (simpleUpdate.type == SimpleChatUpdate.Type.IDENTITY_VERIFIED || simpleUpdate.type == SimpleChatUpdate.Type.IDENTITY_DEFAULT) {
-          put(MessageTable.FROM_RECIPIENT_ID, toRecipientId.serialize())
-          put(MessageTable.TO_RECIPIENT_ID, fromRecipientId.serialize())
+          put(row, MessageTable.FROM_RECIPIENT_ID, toRecipientId.toLong())
+          put(row, MessageTable.TO_RECIPIENT_ID, fromRecipientId.toLong())
         }
 
         // directionless 1:1 message requests expect to recipient to be the other recipient not self
         if (simpleUpdate.type == SimpleChatUpdate.Type.MESSAGE_REQUEST_ACCEPTED) {
-          put(MessageTable.TO_RECIPIENT_ID, chatRecipientId.serialize())
+          put(row, MessageTable.TO_RECIPIENT_ID, chatRecipientId.toLong())
         }
       }
       expirationTimerChange != null -> {
-        typeFlags = getAsLong(MessageTable.TYPE) or MessageTypes.EXPIRATION_TIMER_UPDATE_BIT
-        put(MessageTable.EXPIRES_IN, expirationTimerChange.expiresInMs)
+        typeFlags = getLong(row, MessageTable.TYPE) or MessageTypes.EXPIRATION_TIMER_UPDATE_BIT
+        put(row, MessageTable.EXPIRES_IN, expirationTimerChange.expiresInMs)
       }
       profileChange != null -> {
         typeFlags = MessageTypes.PROFILE_CHANGE_TYPE
         val profileChangeDetails = ProfileChangeDetails(profileNameChange = ProfileChangeDetails.StringChange(previous = profileChange.previousName, newValue = profileChange.newName))
         val messageExtras = MessageExtras(profileChangeDetails = profileChangeDetails).encode()
-        put(MessageTable.MESSAGE_EXTRAS, messageExtras)
+        put(row, MessageTable.MESSAGE_EXTRAS, messageExtras)
       }
       learnedProfileChange != null -> {
         typeFlags = MessageTypes.PROFILE_CHANGE_TYPE
         val profileChangeDetails = ProfileChangeDetails(learnedProfileName = ProfileChangeDetails.LearnedProfileName(e164 = learnedProfileChange.e164?.toString(), username = learnedProfileChange.username))
         val messageExtras = MessageExtras(profileChangeDetails = profileChangeDetails).encode()
-        put(MessageTable.MESSAGE_EXTRAS, messageExtras)
+        put(row, MessageTable.MESSAGE_EXTRAS, messageExtras)
       }
       pollTerminate != null -> {
-        typeFlags = MessageTypes.SPECIAL_TYPE_POLL_TERMINATE or (getAsLong(MessageTable.TYPE) and MessageTypes.BASE_TYPE_MASK.inv())
+        typeFlags = MessageTypes.SPECIAL_TYPE_POLL_TERMINATE or (getLong(row, MessageTable.TYPE) and MessageTypes.BASE_TYPE_MASK.inv())
       }
       pinMessage != null -> {
-        typeFlags = MessageTypes.SPECIAL_TYPE_PINNED_MESSAGE or (getAsLong(MessageTable.TYPE) and MessageTypes.BASE_TYPE_MASK.inv())
+        typeFlags = MessageTypes.SPECIAL_TYPE_PINNED_MESSAGE or (getLong(row, MessageTable.TYPE) and MessageTypes.BASE_TYPE_MASK.inv())
       }
       sessionSwitchover != null -> {
-        typeFlags = MessageTypes.SESSION_SWITCHOVER_TYPE or (getAsLong(MessageTable.TYPE) and MessageTypes.BASE_TYPE_MASK.inv())
+        typeFlags = MessageTypes.SESSION_SWITCHOVER_TYPE or (getLong(row, MessageTable.TYPE) and MessageTypes.BASE_TYPE_MASK.inv())
         val sessionSwitchoverDetails = SessionSwitchoverEvent(e164 = sessionSwitchover.e164.toString()).encode()
-        put(MessageTable.BODY, Base64.encodeWithPadding(sessionSwitchoverDetails))
+        put(row, MessageTable.BODY, Base64.encodeWithPadding(sessionSwitchoverDetails))
       }
       threadMerge != null -> {
-        typeFlags = MessageTypes.THREAD_MERGE_TYPE or (getAsLong(MessageTable.TYPE) and MessageTypes.BASE_TYPE_MASK.inv())
+        typeFlags = MessageTypes.THREAD_MERGE_TYPE or (getLong(row, MessageTable.TYPE) and MessageTypes.BASE_TYPE_MASK.inv())
         val threadMergeDetails = ThreadMergeEvent(previousE164 = threadMerge.previousE164.toString()).encode()
-        put(MessageTable.BODY, Base64.encodeWithPadding(threadMergeDetails))
+        put(row, MessageTable.BODY, Base64.encodeWithPadding(threadMergeDetails))
       }
       individualCall != null -> {
         if (individualCall.state == IndividualCall.State.MISSED || individualCall.state == IndividualCall.State.MISSED_NOTIFICATION_PROFILE) {
@@ -914,7 +902,7 @@ class ChatItemArchiveImporter(
             }
           }
         }
-        this.put(MessageTable.READ, 1)
+        this.put(row, MessageTable.READ, 1)
       }
       groupCall != null -> {
         val startedCallRecipientId = groupCall.startedCallRecipientId?.let { importState.remoteToLocalRecipientId[it] }
@@ -923,26 +911,27 @@ class ChatItemArchiveImporter(
         } else {
           null
         }
-        this.put(MessageTable.BODY, GroupCallUpdateDetailsUtil.createBodyFromBackup(groupCall, startedCall))
-        this.put(MessageTable.READ, groupCall.read.toInt())
+        this.put(row, MessageTable.BODY, GroupCallUpdateDetailsUtil.createBodyFromBackup(groupCall, startedCall))
+        this.put(row, MessageTable.READ, groupCall.read.toInt())
         typeFlags = MessageTypes.GROUP_CALL_TYPE
       }
       groupChange != null -> {
-        put(MessageTable.BODY, "")
+        put(row, MessageTable.BODY, "")
         put(
+          row,
           MessageTable.MESSAGE_EXTRAS,
           MessageExtras(
             gv2UpdateDescription =
             GV2UpdateDescription(groupChangeUpdate = groupChange)
           ).encode()
         )
-        typeFlags = getAsLong(MessageTable.TYPE) or MessageTypes.GROUP_V2_BIT or MessageTypes.GROUP_UPDATE_BIT
+        typeFlags = getLong(row, MessageTable.TYPE) or MessageTypes.GROUP_V2_BIT or MessageTypes.GROUP_UPDATE_BIT
       }
     }
-    this.put(MessageTable.TYPE, typeFlags)
+    this.put(row, MessageTable.TYPE, typeFlags)
   }
 
-  private fun ContentValues.addGiftBadge(giftBadge: BackupGiftBadge) {
+  private fun BulkInsertWriter.addGiftBadge(row: Int, giftBadge: BackupGiftBadge) {
     val dbGiftBadge = GiftBadge(
       redemptionToken = giftBadge.receiptCredentialPresentation,
       redemptionState = when (giftBadge.state) {
@@ -953,38 +942,38 @@ class ChatItemArchiveImporter(
       }
     )
 
-    put(MessageTable.BODY, Base64.encodeWithPadding(GiftBadge.ADAPTER.encode(dbGiftBadge)))
+    put(row, MessageTable.BODY, Base64.encodeWithPadding(GiftBadge.ADAPTER.encode(dbGiftBadge)))
   }
 
-  private fun ContentValues.addViewOnce(viewOnce: ViewOnceMessage) {
-    put(MessageTable.VIEW_ONCE, true.toInt())
+  private fun BulkInsertWriter.addViewOnce(row: Int, viewOnce: ViewOnceMessage) {
+    put(row, MessageTable.VIEW_ONCE, true.toInt())
   }
 
-  private fun ContentValues.addDirectStoryReply(directStoryReply: DirectStoryReplyMessage, toRecipientId: RecipientId) {
-    put(MessageTable.PARENT_STORY_ID, MessageTable.PARENT_STORY_MISSING_ID)
-    put(MessageTable.QUOTE_MISSING, 1)
-    put(MessageTable.QUOTE_ID, MessageTable.QUOTE_TARGET_MISSING_ID)
-    put(MessageTable.QUOTE_AUTHOR, toRecipientId.serialize())
+  private fun BulkInsertWriter.addDirectStoryReply(row: Int, directStoryReply: DirectStoryReplyMessage, toRecipientId: RecipientId) {
+    put(row, MessageTable.PARENT_STORY_ID, MessageTable.PARENT_STORY_MISSING_ID)
+    put(row, MessageTable.QUOTE_MISSING, 1)
+    put(row, MessageTable.QUOTE_ID, MessageTable.QUOTE_TARGET_MISSING_ID)
+    put(row, MessageTable.QUOTE_AUTHOR, toRecipientId.toLong())
 
     val emoji = directStoryReply.emoji
     if (emoji != null) {
-      put(MessageTable.BODY, emoji)
+      put(row, MessageTable.BODY, emoji)
     }
 
     val textReply = directStoryReply.textReply
     if (textReply != null) {
-      put(MessageTable.BODY, textReply.text?.body)
-      put(MessageTable.MESSAGE_RANGES, textReply.text?.bodyRanges?.toLocalBodyRanges()?.encode())
+      put(row, MessageTable.BODY, textReply.text?.body)
+      put(row, MessageTable.MESSAGE_RANGES, textReply.text?.bodyRanges?.toLocalBodyRanges()?.encode())
     }
   }
 
-  private fun ContentValues.addQuote(quote: Quote) {
-    this.put(MessageTable.QUOTE_ID, quote.targetSentTimestamp ?: MessageTable.QUOTE_TARGET_MISSING_ID)
-    this.put(MessageTable.QUOTE_AUTHOR, importState.requireLocalRecipientId(quote.authorId).serialize())
-    this.put(MessageTable.QUOTE_BODY, quote.text?.body)
-    this.put(MessageTable.QUOTE_TYPE, quote.type.toLocalQuoteType())
-    this.put(MessageTable.QUOTE_BODY_RANGES, quote.text?.bodyRanges?.toLocalBodyRanges(includeMentions = true)?.encode())
-    this.put(MessageTable.QUOTE_MISSING, (quote.targetSentTimestamp == null).toInt())
+  private fun BulkInsertWriter.addQuote(row: Int, quote: Quote) {
+    this.put(row, MessageTable.QUOTE_ID, quote.targetSentTimestamp ?: MessageTable.QUOTE_TARGET_MISSING_ID)
+    this.put(row, MessageTable.QUOTE_AUTHOR, importState.requireLocalRecipientId(quote.authorId).toLong())
+    this.put(row, MessageTable.QUOTE_BODY, quote.text?.body)
+    this.put(row, MessageTable.QUOTE_TYPE, quote.type.toLocalQuoteType())
+    this.put(row, MessageTable.QUOTE_BODY_RANGES, quote.text?.bodyRanges?.toLocalBodyRanges(includeMentions = true)?.encode())
+    this.put(row, MessageTable.QUOTE_MISSING, (quote.targetSentTimestamp == null).toInt())
   }
 
   private fun Quote.Type.toLocalQuoteType(): Int {
@@ -997,7 +986,7 @@ class ChatItemArchiveImporter(
     }
   }
 
-  private fun ContentValues.addNetworkFailures(chatItem: ChatItem, importState: ImportState) {
+  private fun BulkInsertWriter.addNetworkFailures(row: Int, chatItem: ChatItem, importState: ImportState) {
     val outgoing = chatItem.outgoing ?: return
 
     val networkFailures = outgoing.sendStatus
@@ -1007,11 +996,11 @@ class ChatItemArchiveImporter(
       .toSet()
 
     if (networkFailures.isNotEmpty()) {
-      this.put(MessageTable.NETWORK_FAILURES, JsonUtils.toJson(NetworkFailureSet(networkFailures)))
+      this.put(row, MessageTable.NETWORK_FAILURES, JsonUtils.toJson(NetworkFailureSet(networkFailures)))
     }
   }
 
-  private fun ContentValues.addIdentityKeyMismatches(chatItem: ChatItem, importState: ImportState) {
+  private fun BulkInsertWriter.addIdentityKeyMismatches(row: Int, chatItem: ChatItem, importState: ImportState) {
     val outgoing = chatItem.outgoing ?: return
 
     val mismatches = outgoing.sendStatus
@@ -1021,7 +1010,7 @@ class ChatItemArchiveImporter(
       .toSet()
 
     if (mismatches.isNotEmpty()) {
-      this.put(MessageTable.MISMATCHED_IDENTITIES, JsonUtils.toJson(IdentityKeyMismatchSet(mismatches)))
+      this.put(row, MessageTable.MISMATCHED_IDENTITIES, JsonUtils.toJson(IdentityKeyMismatchSet(mismatches)))
     }
   }
 
@@ -1193,21 +1182,21 @@ class ChatItemArchiveImporter(
       }
   }
 
-  private class MessageInsert(
-    val contentValues: ContentValues,
-    val followUp: ((Long) -> Unit)?
-  )
+  /**
+   * The rows waiting to be inserted, along with what has to be done for each message once it has been. [followUps] lines up with the rows of [messages].
+   */
+  private class Buffer(capacity: Int) {
+    val messages = BulkInsertWriter(MessageTable.TABLE_NAME, MESSAGE_COLUMNS, capacity)
+    val followUps: MutableList<((Long) -> Unit)?> = ArrayList(capacity)
+    val reactions = BulkInsertWriter(ReactionTable.TABLE_NAME, REACTION_COLUMNS, capacity)
+    val groupReceipts = BulkInsertWriter(GroupReceiptTable.TABLE_NAME, GROUP_RECEIPT_COLUMNS, capacity)
 
-  private class Buffer(
-    val messages: MutableList<MessageInsert> = mutableListOf(),
-    val reactions: MutableList<ContentValues> = mutableListOf(),
-    val groupReceipts: MutableList<ContentValues> = mutableListOf()
-  ) {
     val size: Int
-      get() = listOf(messages.size, reactions.size, groupReceipts.size).max()
+      get() = maxOf(messages.size, reactions.size, groupReceipts.size)
 
     fun reset() {
       messages.clear()
+      followUps.clear()
       reactions.clear()
       groupReceipts.clear()
     }
@@ -518,13 +518,18 @@ public class ThumbnailView extends FrameLayout {
 
     transferControlViewStub.setVisibility(View.GONE);
 
-    Object glideModel = uri;
+    Object            glideModel    = uri;
+    DiskCacheStrategy cacheStrategy = DiskCacheStrategy.NONE;
     if (PartAuthority.isLocalUri(uri)) {
       glideModel = new DecryptableUri(uri);
     }
 
+    if (PartAuthority.isAttachmentUri(uri)) {
+      cacheStrategy = DiskCacheStrategy.RESOURCE;
+    }
+
     RequestBuilder<Drawable> request = requestManager.load(glideModel)
-                                                  .diskCacheStrategy(DiskCacheStrategy.NONE)
+                                                  .diskCacheStrategy(cacheStrategy)
                                                   .downsample(SignalDownsampleStrategy.CENTER_OUTSIDE_NO_UPSCALE)
                                                   .listener(listener);
 
@@ -643,6 +648,17 @@ public class ThumbnailView extends FrameLayout {
     slide = null;
   }
 
+  /**
+   * Shows just a blur hash, for when the slide it belongs to hasn't been loaded yet.
+   */
+  public void setPlaceholder(@NonNull RequestManager requestManager, @Nullable BlurHash placeholderBlur) {
+    clear(requestManager);
+
+    if (placeholderBlur != null) {
+      applySizing(requestManager.asBitmap().load(placeholderBlur).diskCacheStrategy(DiskCacheStrategy.NONE)).centerCrop().into(blurHash);
+    }
+  }
+
   public void showSecondaryText(boolean showSecondaryText) {
     transferControlViewStub.get().setShowSecondaryText(showSecondaryText);
   }
@@ -8,7 +8,9 @@ import java.util.stream.Collectors;
 import org.signal.core.util.SetUtil;
 import org.thoughtcrime.securesms.events.CallParticipant;
 import org.thoughtcrime.securesms.events.CallParticipantId;
+import org.thoughtcrime.securesms.service.webrtc.state.RemoteParticipants;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -81,6 +83,36 @@ public final class CallParticipantListUpdate {
     return new CallParticipantListUpdate(added, removed);
   }
 
+  /**
+   * Generates a new Update Object from the changes between two snapshots of the remote participants, without visiting the participants that stayed. Like
+   * {@link #computeDeltaUpdate(List, List)}, this ignores any participants that have the demux id set to {@link CallParticipantId#DEFAULT_ID}.
+   *
+   * @param previous The old snapshot of remote participants
+   * @param current  The new (or current) snapshot of remote participants
+   * @param changes  The changes from previous to current, as given by {@link RemoteParticipants#changesSince(RemoteParticipants)}
+   */
+  public static @NonNull CallParticipantListUpdate computeDeltaUpdate(@NonNull RemoteParticipants previous,
+                                                                      @NonNull RemoteParticipants current,
+                                                                      @NonNull RemoteParticipants.Changes changes)
+  {
+    Set<CallParticipantListUpdate.Wrapper> added   = new HashSet<>();
+    Set<CallParticipantListUpdate.Wrapper> removed = new HashSet<>();
+
+    for (CallParticipantId id : changes.getAdded()) {
+      if (id.demuxId != CallParticipantId.DEFAULT_ID) {
+        added.add(createWrapper(Objects.requireNonNull(current.get(id))));
+      }
+    }
+
+    for (CallParticipantId id : changes.getRemoved()) {
+      if (id.demuxId != CallParticipantId.DEFAULT_ID) {
+        removed.add(createWrapper(Objects.requireNonNull(previous.get(id))));
+      }
+    }
+
+    return new CallParticipantListUpdate(added, removed);
+  }
+
   @VisibleForTesting
   public static Wrapper createWrapper(@NonNull CallParticipant callParticipant) {
     return new Wrapper(callParticipant);
@@ -47,6 +47,7 @@ import org.thoughtcrime.securesms.recipients.LiveRecipient
 import org.thoughtcrime.securesms.recipients.Recipient
 import org.thoughtcrime.securesms.recipients.RecipientId
 import org.thoughtcrime.securesms.service.webrtc.PendingParticipantCollection
+import org.thoughtcrime.securesms.service.webrtc.state.RemoteParticipants
 import org.thoughtcrime.securesms.service.webrtc.state.WebRtcEphemeralState
 import org.thoughtcrime.securesms.util.NetworkUtil
 import org.thoughtcrime.securesms.webrtc.audio.SignalAudioManager
@@ -102,7 +103,7 @@ class WebRtcCallViewModel : ViewModel() {
   private var wasInOutgoingRingingMode = false
   private var callConnectedTime = -1L
   private var answerWithVideoAvailable = false
-  private var previousParticipantList = Collections.emptyList<CallParticipant>()
+  private var previousParticipants = RemoteParticipants.EMPTY
   private var hasSeededParticipantList = false
   private var switchOnFirstScreenShare = true
   private var showScreenShareTip = true
@@ -353,15 +354,18 @@ class WebRtcCallViewModel : ViewModel() {
     }
 
     if (webRtcViewModel.groupState.isConnected) {
-      if (!containsPlaceholders(previousParticipantList) && hasSeededParticipantList) {
-        val update = CallParticipantListUpdate.computeDeltaUpdate(previousParticipantList, webRtcViewModel.remoteParticipants)
+      val changes = webRtcViewModel.remoteParticipantsById.changesSince(previousParticipants)
+
+      if (!containsPlaceholders(previousParticipants.list) && hasSeededParticipantList) {
+        val update = CallParticipantListUpdate.computeDeltaUpdate(previousParticipants, webRtcViewModel.remoteParticipantsById, changes)
         viewModelScope.launch {
           callParticipantListUpdate.emit(update)
         }
       }
       hasSeededParticipantList = true
 
-      for (remote in webRtcViewModel.remoteParticipants) {
+      for (id in changes.added + changes.updated) {
+        val remote = webRtcViewModel.remoteParticipantsById.getValue(id)
         if (remote.remotelyMutedBy == null) {
           remoteMutesReported.value.remove(remote.callParticipantId)
         } else if (!remoteMutesReported.value.contains(remote.callParticipantId)) {
@@ -381,7 +385,7 @@ class WebRtcCallViewModel : ViewModel() {
         }
       }
 
-      previousParticipantList = webRtcViewModel.remoteParticipants
+      previousParticipants = webRtcViewModel.remoteParticipantsById
       identityChangedRecipients.value = webRtcViewModel.identityChangedParticipants
     }
 
@@ -2,6 +2,7 @@ package org.thoughtcrime.securesms.contacts.sync
 
 import android.Manifest
 import android.content.Context
+import android.net.Uri
 import android.text.TextUtils
 import androidx.annotation.WorkerThread
 import org.signal.contacts.SystemContactsRepository
@@ -128,19 +129,53 @@ object ContactDiscovery {
     return ContactDiscoveryRefreshV2.lookupE164(e164)
   }
 
+  /**
+   * Updates recipients with the latest info from the system contacts. After the first full sync, only contacts that changed since the last sync are read.
+   */
   @JvmStatic
   @WorkerThread
   fun syncRecipientInfoWithSystemContacts(context: Context) {
     if (!hasContactsPermissions(context)) {
       Log.w(TAG, "[syncRecipientInfoWithSystemContacts] No contacts permission, skipping.")
+      SignalStore.misc.systemContactsSyncTimestamp = 0
+      return
+    }
+
+    val syncStart = System.currentTimeMillis()
+    val changes: SystemContactsRepository.ContactChanges? = SystemContactsRepository.getContactChangesSince(context, SignalStore.misc.systemContactsSyncTimestamp)
+
+    if (changes == null) {
+      Log.d(TAG, "[syncRecipientInfoWithSystemContacts] No usable high-water mark, doing a full sync.")
+      syncRecipientsWithSystemContacts(
+        context = context,
+        rewrites = emptyMap(),
+        clearInfoForMissingContacts = true
+      )
+      SignalStore.misc.systemContactsSyncTimestamp = syncStart
       return
     }
 
+    if (changes.isEmpty) {
+      Log.d(TAG, "[syncRecipientInfoWithSystemContacts] No contacts changed.")
+      SignalStore.misc.systemContactsSyncTimestamp = changes.timestamp
+      return
+    }
+
+    Log.d(TAG, "[syncRecipientInfoWithSystemContacts] Doing an incremental sync. Updated: ${changes.updatedLookupKeys.size}, Deletions: ${changes.hasDeletions}")
+
+    val remainingLookupKeys: Set<String>? = if (changes.hasDeletions) SystemContactsRepository.getAllLookupKeys(context) else null
+
     syncRecipientsWithSystemContacts(
       context = context,
       rewrites = emptyMap(),
-      clearInfoForMissingContacts = true
+      contactsProvider = { SystemContactsRepository.getContactDetailsByLookupKeys(context, changes.updatedLookupKeys, phoneNumberFormatter()) },
+      clearInfoForMissingContacts = false,
+      clearInfoFor = { contactUri ->
+        val lookupKey: String? = SystemContactsRepository.getLookupKey(Uri.parse(contactUri))
+        lookupKey == null || lookupKey in changes.updatedLookupKeys || (remainingLookupKeys != null && lookupKey !in remainingLookupKeys)
+      }
     )
+    SignalStore.misc.systemContactsSyncTimestamp = changes.timestamp
   }
 
   private fun phoneNumberFormatter(): (String) -> String? {
@@ -233,12 +268,16 @@ object ContactDiscovery {
 
   /**
    * Synchronizes info from the system contacts (name, avatar, etc)
+   *
+   * @param clearInfoFor If set, takes the place of [clearInfoForMissingContacts], clearing saved contact details only for recipients whose contact URI it
+   *                     matches and that weren't updated.
    */
   private fun syncRecipientsWithSystemContacts(
     context: Context,
     rewrites: Map<String, String>,
     contactsProvider: () -> ContactIterator = { SystemContactsRepository.getAllSystemContacts(context, phoneNumberFormatter()) },
-    clearInfoForMissingContacts: Boolean
+    clearInfoForMissingContacts: Boolean,
+    clearInfoFor: ((String) -> Boolean)? = null
   ) {
     val localNumber: String = SignalStore.account.e164 ?: ""
 
@@ -282,8 +321,12 @@ object ContactDiscovery {
       Log.w(TAG, "Hit an issue with the cursor while reading!", e)
     }
 
-    if (contactInfos.isNotEmpty()) {
-      val handle = SignalDatabase.recipients.beginBulkSystemContactUpdate(clearInfoForMissingContacts)
+    if (contactInfos.isNotEmpty() || clearInfoFor != null) {
+      val handle = if (clearInfoFor != null) {
+        SignalDatabase.recipients.beginBulkSystemContactUpdate(clearInfoFor)
+      } else {
+        SignalDatabase.recipients.beginBulkSystemContactUpdate(clearInfoForMissingContacts)
+      }
       try {
         for (contactInfo in contactInfos) {
           handle.setSystemContactInfo(
@@ -82,9 +82,16 @@ abstract class ConversationListDataSource implements PagedDataSource<Long, Conve
       ThreadWithRecipient record;
       while ((record = reader.getNext()) != null && !cancellationSignal.isCanceled()) {
         conversations.add(new Conversation(record));
-        recipients.add(record.getRecipient());
         needsResolve.add(record.getGroupMessageSender());
 
+        // Group recipients come out of the thread join unresolved. Rather than caching them and resolving each one in the
+        // background, we resolve them below along with everything else in bulk.
+        if (record.getRecipient().isResolving()) {
+          needsResolve.add(record.getRecipient().getId());
+        } else {
+          recipients.add(record.getRecipient());
+        }
+
         if (!MessageTypes.isGroupV2(record.getType())) {
           needsResolve.add(record.getRecipient().getId());
         } else if (MessageTypes.isGroupUpdate(record.getType())) {
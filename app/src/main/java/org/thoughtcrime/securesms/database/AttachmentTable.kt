@@ -39,6 +39,7 @@ import org.signal.core.util.Util
 import org.signal.core.util.UuidUtil
 import org.signal.core.util.bitmaps.BitmapDecodingException
 import org.signal.core.util.copyTo
+import org.signal.core.util.copyToWithProgress
 import org.signal.core.util.count
 import org.signal.core.util.crypto.AttachmentSecret
 import org.signal.core.util.crypto.ModernDecryptingPartInputStream
@@ -78,6 +79,7 @@ import org.thoughtcrime.securesms.attachments.Cdn
 import org.thoughtcrime.securesms.attachments.DatabaseAttachment
 import org.thoughtcrime.securesms.attachments.LocalBackupKey
 import org.thoughtcrime.securesms.attachments.LocalStickerAttachment
+import org.thoughtcrime.securesms.attachments.ProgressiveAttachments
 import org.thoughtcrime.securesms.attachments.WallpaperAttachment
 import org.thoughtcrime.securesms.audio.AudioHash
 import org.thoughtcrime.securesms.backup.v2.ArchivedMediaObject
@@ -109,6 +111,7 @@ import org.thoughtcrime.securesms.util.RemoteConfig
 import org.thoughtcrime.securesms.video.EncryptedMediaDataSource
 import org.whispersystems.signalservice.api.crypto.AttachmentCipherStreamUtil
 import org.whispersystems.signalservice.internal.crypto.PaddingInputStream
+import org.whispersystems.signalservice.internal.push.RangedCdnDownload
 import java.io.ByteArrayInputStream
 import java.io.File
 import java.io.FileNotFoundException
@@ -331,6 +334,14 @@ class AttachmentTable(
     return getDataStream(attachmentId, offset) ?: throw FileNotFoundException("No stream for: $attachmentId")
   }
 
+  /**
+   * Returns a stream over the plaintext of an attachment that is still being streamed into its data file, if there is one.
+   * Reads block until the requested bytes have been downloaded and verified. See [ProgressiveAttachments].
+   */
+  fun getProgressiveAttachmentStream(attachmentId: AttachmentId, offset: Long): InputStream? {
+    return ProgressiveAttachments.get(attachmentId)?.openStream(attachmentSecret, offset)
+  }
+
   @Throws(IOException::class)
   fun getAttachmentStream(localArchivableAttachment: LocalArchivableAttachment): InputStream {
     return try {
@@ -1817,12 +1828,12 @@ class AttachmentTable(
    * that the content of the attachment will never change.
    */
   @Throws(MmsException::class)
-  fun finalizeAttachmentAfterDownload(mmsId: Long, attachmentId: AttachmentId, inputStream: InputStream, offloadRestoredAt: Duration? = null, archiveRestore: Boolean = false, restoredFromArchiveCdn: Boolean = false, notify: Boolean = true) {
+  fun finalizeAttachmentAfterDownload(mmsId: Long, attachmentId: AttachmentId, inputStream: InputStream, offloadRestoredAt: Duration? = null, archiveRestore: Boolean = false, restoredFromArchiveCdn: Boolean = false, notify: Boolean = true, dataFileProgressListener: DataFileProgressListener? = null) {
     Log.i(TAG, "[finalizeAttachmentAfterDownload] Finalizing downloaded data for $attachmentId. (MessageId: $mmsId, $attachmentId)")
 
     val existingPlaceholder: DatabaseAttachment = getAttachment(attachmentId) ?: throw MmsException("No attachment found for id: $attachmentId")
 
-    val fileWriteResult: DataFileWriteResult = writeToDataFile(newDataFile(context), inputStream, TransformProperties.empty(), closeInputStream = false)
+    val fileWriteResult: DataFileWriteResult = writeToDataFile(newDataFile(context), inputStream, TransformProperties.empty(), closeInputStream = false, progressListener = dataFileProgressListener)
 
     val foundDuplicate = writableDatabase.withinTransaction { db ->
       // We can look and see if we have any exact matches on hash_ends and dedupe the file if we see one.
@@ -2346,10 +2357,14 @@ class AttachmentTable(
   fun getOrCreateTransferFile(attachmentId: AttachmentId): File {
     val existing = getTransferFile(writableDatabase, attachmentId)
     if (existing != null) {
+      // A download resuming into this file needs it, and its range state, to survive the abandoned file cleanup
+      PartFileProtector.protect { existing }
+      PartFileProtector.protect { RangedCdnDownload.getStateFile(existing) }
       return existing
     }
 
     val transferFile = newTransferFile()
+    PartFileProtector.protect { RangedCdnDownload.getStateFile(transferFile) }
 
     writableDatabase
       .update(TABLE_NAME)
@@ -2750,11 +2765,15 @@ class AttachmentTable(
    * Reads the entire stream and saves to disk and returns a bunch of metadat about the write.
    */
   @Throws(MmsException::class, IllegalStateException::class)
-  private fun writeToDataFile(destination: File, inputStream: InputStream, transformProperties: TransformProperties, closeInputStream: Boolean = true): DataFileWriteResult {
+  /**
+   * @param progressListener If set, notified every time another chunk of plaintext has been flushed to the data file.
+   */
+  private fun writeToDataFile(destination: File, inputStream: InputStream, transformProperties: TransformProperties, closeInputStream: Boolean = true, progressListener: DataFileProgressListener? = null): DataFileWriteResult {
+    // Sometimes the destination is a file that's already in use, sometimes it's not.
+    // To avoid writing to a file while it's in-use, we write to a temp file and then rename it to the destination file at the end.
+    val tempFile = newDataFile(context)
+
     return try {
-      // Sometimes the destination is a file that's already in use, sometimes it's not.
-      // To avoid writing to a file while it's in-use, we write to a temp file and then rename it to the destination file at the end.
-      val tempFile = newDataFile(context)
       val messageDigest = MessageDigest.getInstance("SHA-256")
       val digestInputStream = DigestInputStream(inputStream, messageDigest)
 
@@ -2762,10 +2781,15 @@ class AttachmentTable(
       val random = encryptingStreamData.first
       val encryptingOutputStream = encryptingStreamData.second
 
-      val length = digestInputStream.copyTo(encryptingOutputStream, closeInputStream)
+      val length = if (progressListener != null) {
+        digestInputStream.copyToWithProgress(encryptingOutputStream, closeInputStream) { written -> progressListener.onDataFileProgress(tempFile, random, written) }
+      } else {
+        digestInputStream.copyTo(encryptingOutputStream, closeInputStream)
+      }
       val hash = Base64.encodeWithPadding(digestInputStream.messageDigest.digest())
 
-      if (!tempFile.renameTo(destination)) {
+      val renamed = progressListener?.onDataFileFinished(tempFile, destination, random, length) ?: tempFile.renameTo(destination)
+      if (!renamed) {
         Log.w(TAG, "[writeToDataFile] Couldn't rename ${tempFile.path} to ${destination.path}")
         tempFile.delete()
         throw IllegalStateException("Couldn't rename ${tempFile.path} to ${destination.path}")
@@ -2779,8 +2803,10 @@ class AttachmentTable(
         transformProperties = transformProperties
       )
     } catch (e: IOException) {
+      tempFile.delete()
       throw MmsException(e)
     } catch (e: NoSuchAlgorithmException) {
+      tempFile.delete()
       throw MmsException(e)
     }
   }
@@ -2876,7 +2902,7 @@ class AttachmentTable(
         }
       }
 
-      val rowId = db.insert(TABLE_NAME, null, contentValues)
+      val rowId = db.insertPrepared(TABLE_NAME, contentValues)
       AttachmentId(rowId)
     }
 
@@ -3060,7 +3086,7 @@ class AttachmentTable(
         }
       }
 
-      val rowId = db.insert(TABLE_NAME, null, contentValues)
+      val rowId = db.insertPrepared(TABLE_NAME, contentValues)
       AttachmentId(rowId)
     }
 
@@ -3903,6 +3929,26 @@ class AttachmentTable(
     return newDataFileInfo.file.absolutePath
   }
 
+  /**
+   * Notified as plaintext is written into a new data file, so it can be read before the write has finished.
+   */
+  fun interface DataFileProgressListener {
+    /**
+     * @param length The number of plaintext bytes that have been flushed to [file] so far.
+     */
+    fun onDataFileProgress(file: File, random: ByteArray, length: Long)
+
+    /**
+     * Called once all [length] bytes have been written, to move the data file from [from] to its final location at [to].
+     * Implementations that have handed out [from] should switch over to [to] as part of the move, so no reader is left with a path that's gone.
+     *
+     * @return True if the file was moved.
+     */
+    fun onDataFileFinished(from: File, to: File, random: ByteArray, length: Long): Boolean {
+      return from.renameTo(to)
+    }
+  }
+
   class DataFileWriteResult(
     val file: File,
     val length: Long,
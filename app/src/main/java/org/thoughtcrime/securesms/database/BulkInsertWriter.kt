@@ -0,0 +1,229 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.database.SQLException
+import org.signal.core.util.SqlUtil
+
+/**
+ * Buffers rows for a fixed set of columns and writes them with multi-row INSERTs, as many rows per statement as the argument limit allows.
+ *
+ * It's meant for bulk writes like restoring a backup, where building a [android.content.ContentValues] per row, boxing every value into it,
+ * and turning the batch into SQL with the values inlined ends up costing more than the insert itself. Here values are written straight into
+ * flat arrays that are kept between batches, numbers are never boxed, and every statement of the same shape is compiled once and reused
+ * through [SQLiteDatabase.insertPrepared].
+ *
+ * A cell that's never written is inserted as NULL, not the column default, same as [SqlUtil.buildBulkInsert].
+ */
+class BulkInsertWriter(
+  private val tableName: String,
+  private val columns: Array<String>,
+  initialCapacity: Int = 64
+) {
+
+  companion object {
+    private const val TYPE_NULL: Byte = 0
+    private const val TYPE_LONG: Byte = 1
+    private const val TYPE_OBJECT: Byte = 2
+  }
+
+  private val columnIndices: Map<String, Int> = columns.withIndex().associate { it.value to it.index }
+  private val rowsPerStatement = SqlUtil.MAX_QUERY_ARGS / columns.size
+  private val fullStatementSql: String by lazy { buildSql(rowsPerStatement) }
+
+  private var capacity = maxOf(initialCapacity, 1)
+  private var types = ByteArray(capacity * columns.size)
+  private var longs = LongArray(capacity * columns.size)
+  private var objects = arrayOfNulls<Any>(capacity * columns.size)
+
+  /** The number of rows buffered since the last [clear]. */
+  var size: Int = 0
+    private set
+
+  /**
+   * Adds a row with every column set to NULL.
+   *
+   * @return The index of the new row, to pass to [put] and friends.
+   */
+  fun addRow(): Int {
+    if (size == capacity) {
+      grow()
+    }
+    return size++
+  }
+
+  fun put(row: Int, column: String, value: Long) {
+    val cell = cellOf(row, column)
+    types[cell] = TYPE_LONG
+    longs[cell] = value
+  }
+
+  fun put(row: Int, column: String, value: Int) {
+    put(row, column, value.toLong())
+  }
+
+  fun put(row: Int, column: String, value: Long?) {
+    if (value == null) putNull(row, column) else put(row, column, value)
+  }
+
+  fun put(row: Int, column: String, value: Int?) {
+    if (value == null) putNull(row, column) else put(row, column, value.toLong())
+  }
+
+  fun put(row: Int, column: String, value: String?) {
+    putObject(row, column, value)
+  }
+
+  fun put(row: Int, column: String, value: ByteArray?) {
+    putObject(row, column, value)
+  }
+
+  fun putNull(row: Int, column: String) {
+    val cell = cellOf(row, column)
+    types[cell] = TYPE_NULL
+    objects[cell] = null
+  }
+
+  /**
+   * @return The number in [column] of [row], or 0 if it's NULL. Like [android.content.ContentValues.getAsLong], a number stored as a
+   *         string is parsed.
+   */
+  fun getLong(row: Int, column: String): Long {
+    val cell = cellOf(row, column)
+    return when (types[cell]) {
+      TYPE_LONG -> longs[cell]
+      TYPE_OBJECT -> (objects[cell] as? String)?.toLongOrNull() ?: 0
+      else -> 0
+    }
+  }
+
+  fun isNull(row: Int, column: String): Boolean {
+    return types[cellOf(row, column)] == TYPE_NULL
+  }
+
+  /**
+   * Drops every row that doesn't match [predicate], keeping the rest in order. Meant for the rare case where rows have to be pulled from a
+   * batch after the fact, so it simply shifts the kept rows down.
+   */
+  inline fun retainRows(predicate: (row: Int) -> Boolean) {
+    var kept = 0
+    for (row in 0 until size) {
+      if (predicate(row)) {
+        if (kept != row) {
+          moveRow(row, kept)
+        }
+        kept++
+      }
+    }
+    truncate(kept)
+  }
+
+  /**
+   * Inserts every buffered row. Rows go in as few statements as possible, in the order they were added.
+   *
+   * @param onRowFailed If set, a statement that fails is retried one row at a time, and each row that still fails is handed to this instead
+   *                    of throwing. Rows from statements that went through before the failure stay inserted either way.
+   */
+  fun write(db: SQLiteDatabase, onRowFailed: ((row: Int, e: SQLException) -> Unit)? = null) {
+    var start = 0
+    while (start < size) {
+      val count = minOf(rowsPerStatement, size - start)
+      val sql = if (count == rowsPerStatement) fullStatementSql else buildSql(count)
+
+      try {
+        db.insertPrepared(tableName, sql) { args -> bindRows(args, start, count) }
+      } catch (e: SQLException) {
+        if (onRowFailed == null) {
+          throw e
+        }
+        writeRowsIndividually(db, start, count, onRowFailed)
+      }
+
+      start += count
+    }
+  }
+
+  /** Forgets every buffered row, keeping the arrays for the next batch. */
+  fun clear() {
+    truncate(0)
+  }
+
+  @PublishedApi
+  internal fun moveRow(from: Int, to: Int) {
+    val width = columns.size
+    System.arraycopy(types, from * width, types, to * width, width)
+    System.arraycopy(longs, from * width, longs, to * width, width)
+    System.arraycopy(objects, from * width, objects, to * width, width)
+  }
+
+  @PublishedApi
+  internal fun truncate(rows: Int) {
+    // Resetting the types is enough for the next rows to start out NULL, and dropping the objects lets the strings and blobs of a finished batch be collected
+    objects.fill(null, rows * columns.size, size * columns.size)
+    types.fill(TYPE_NULL, rows * columns.size, size * columns.size)
+    size = rows
+  }
+
+  private fun writeRowsIndividually(db: SQLiteDatabase, start: Int, count: Int, onRowFailed: (row: Int, e: SQLException) -> Unit) {
+    val sql = buildSql(1)
+    for (row in start until start + count) {
+      try {
+        db.insertPrepared(tableName, sql) { args -> bindRows(args, row, 1) }
+      } catch (e: SQLException) {
+        onRowFailed(row, e)
+      }
+    }
+  }
+
+  private fun bindRows(args: StatementArgs, start: Int, count: Int) {
+    val end = (start + count) * columns.size
+    for (cell in start * columns.size until end) {
+      when (types[cell]) {
+        TYPE_LONG -> args.bind(longs[cell])
+        TYPE_OBJECT -> when (val value = objects[cell]) {
+          is String -> args.bind(value)
+          is ByteArray -> args.bind(value)
+          else -> args.bindValue(value)
+        }
+        else -> args.bindNull()
+      }
+    }
+  }
+
+  private fun putObject(row: Int, column: String, value: Any?) {
+    val cell = cellOf(row, column)
+    types[cell] = if (value == null) TYPE_NULL else TYPE_OBJECT
+    objects[cell] = value
+  }
+
+  private fun cellOf(row: Int, column: String): Int {
+    if (row < 0 || row >= size) {
+      throw IndexOutOfBoundsException("Row $row of $size")
+    }
+    val index = columnIndices[column] ?: throw IllegalArgumentException("$column isn't one of the columns being inserted into $tableName")
+    return row * columns.size + index
+  }
+
+  private fun grow() {
+    capacity *= 2
+    types = types.copyOf(capacity * columns.size)
+    longs = longs.copyOf(capacity * columns.size)
+    objects = objects.copyOf(capacity * columns.size)
+  }
+
+  private fun buildSql(rows: Int): String {
+    val row = columns.joinToString(separator = ", ", prefix = "(", postfix = ")") { "?" }
+    return buildString {
+      append("INSERT INTO ").append(tableName).append(" (").append(columns.joinToString(separator = ", ")).append(") VALUES ")
+      for (i in 0 until rows) {
+        if (i > 0) {
+          append(", ")
+        }
+        append(row)
+      }
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import androidx.sqlite.db.SupportSQLiteStatement
+import org.signal.core.util.bindValue
+
+/**
+ * Compiled statements kept around for one thread, keyed by their SQL, so that hot write paths don't have to build, compile and
+ * throw away the same statement for every row.
+ *
+ * A statement isn't tied to a connection, and only gets one for as long as it runs, so it's safe to reuse across transactions. It
+ * isn't safe to share between threads though, since the bound arguments live on the statement, hence one cache per thread. The
+ * cache belongs to one database; [SQLiteDatabase] swaps it for a new one if it's asked for a statement on a different database.
+ */
+internal class CompiledStatementCache(val owner: Any) {
+
+  companion object {
+    private const val MAX_SIZE = 32
+  }
+
+  private val statements = object : LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, CachedStatement>): Boolean {
+      if (size <= MAX_SIZE || eldest.value.inUse) {
+        return false
+      }
+
+      eldest.value.statement.close()
+      return true
+    }
+  }
+
+  /**
+   * @return The cached statement for [sql], ready to bind, or null if there isn't one free. Pass a freshly compiled statement to
+   *         [add] in that case. Either way, call [CachedStatement.release] once it's been run.
+   */
+  fun acquire(sql: String): CachedStatement? {
+    val cached = statements[sql] ?: return null
+
+    if (cached.inUse) {
+      return null
+    }
+
+    cached.inUse = true
+    cached.args.reset()
+    return cached
+  }
+
+  fun add(sql: String, statement: SupportSQLiteStatement): CachedStatement {
+    // A statement for the same SQL that's still running further up the stack stays where it is, and this one is thrown away after use.
+    val cached = CachedStatement(statement, isCached = sql !in statements)
+
+    if (cached.isCached) {
+      statements[sql] = cached
+    }
+
+    cached.inUse = true
+    return cached
+  }
+
+  internal class CachedStatement(val statement: SupportSQLiteStatement, val isCached: Boolean) {
+    val args = StatementArgs(statement)
+    var inUse = false
+
+    /** Hands the statement back to the cache once it's been run, or closes it if it was never cached. */
+    fun release() {
+      if (isCached) {
+        statement.clearBindings()
+        inUse = false
+      } else {
+        statement.close()
+      }
+    }
+  }
+}
+
+/**
+ * Binds the arguments of a statement run through [SQLiteDatabase.insertPrepared] or [SQLiteDatabase.updatePrepared].
+ */
+fun interface StatementBinder {
+  fun bind(args: StatementArgs)
+}
+
+/**
+ * Binds arguments to a compiled statement in order, one call per `?`, without boxing them. Nulls are bound as NULL.
+ */
+class StatementArgs internal constructor(private val statement: SupportSQLiteStatement) {
+  private var index = 0
+
+  internal fun reset() {
+    index = 0
+  }
+
+  fun bind(value: Long): StatementArgs {
+    statement.bindLong(++index, value)
+    return this
+  }
+
+  fun bind(value: Int): StatementArgs {
+    return bind(value.toLong())
+  }
+
+  fun bind(value: Boolean): StatementArgs {
+    return bind(if (value) 1L else 0L)
+  }
+
+  fun bind(value: Double): StatementArgs {
+    statement.bindDouble(++index, value)
+    return this
+  }
+
+  fun bind(value: String?): StatementArgs {
+    if (value == null) {
+      statement.bindNull(++index)
+    } else {
+      statement.bindString(++index, value)
+    }
+    return this
+  }
+
+  fun bind(value: ByteArray?): StatementArgs {
+    if (value == null) {
+      statement.bindNull(++index)
+    } else {
+      statement.bindBlob(++index, value)
+    }
+    return this
+  }
+
+  fun bindNull(): StatementArgs {
+    statement.bindNull(++index)
+    return this
+  }
+
+  /**
+   * Binds a value of any type the way [android.content.ContentValues] would. Only for when the type isn't known up front.
+   */
+  fun bindValue(value: Any?): StatementArgs {
+    statement.bindValue(++index, value)
+    return this
+  }
+}
@@ -1,9 +1,7 @@
 package org.thoughtcrime.securesms.database
 
-import android.content.ContentValues
 import android.content.Context
 import android.database.Cursor
-import androidx.core.content.contentValuesOf
 import org.signal.core.util.SqlUtil
 import org.signal.core.util.delete
 import org.signal.core.util.deleteAll
@@ -53,33 +51,35 @@ class GroupReceiptTable(context: Context?, databaseHelper: SignalDatabase?) : Da
     val CREATE_INDEXES = arrayOf(
       "CREATE INDEX IF NOT EXISTS group_receipt_mms_id_index ON $TABLE_NAME ($MMS_ID);"
     )
+
+    private val INSERT_COLUMNS = arrayOf(MMS_ID, RECIPIENT_ID, STATUS, TIMESTAMP)
+    private const val UPDATE_STATUS = "UPDATE $TABLE_NAME SET $STATUS = ?, $TIMESTAMP = ? WHERE $MMS_ID = ? AND $RECIPIENT_ID = ? AND $STATUS < ?"
   }
 
   fun insert(recipientIds: Collection<RecipientId>, mmsId: Long, status: Int, timestamp: Long) {
-    val contentValues: List<ContentValues> = recipientIds.map { recipientId ->
-      contentValuesOf(
-        MMS_ID to mmsId,
-        RECIPIENT_ID to recipientId.serialize(),
-        STATUS to status,
-        TIMESTAMP to timestamp
-      )
+    val writer = BulkInsertWriter(TABLE_NAME, INSERT_COLUMNS, initialCapacity = recipientIds.size)
+    for (recipientId in recipientIds) {
+      val row = writer.addRow()
+      writer.put(row, MMS_ID, mmsId)
+      writer.put(row, RECIPIENT_ID, recipientId.toLong())
+      writer.put(row, STATUS, status)
+      writer.put(row, TIMESTAMP, timestamp)
     }
 
-    val statements = SqlUtil.buildBulkInsert(TABLE_NAME, arrayOf(MMS_ID, RECIPIENT_ID, STATUS, TIMESTAMP), contentValues)
     writableDatabase.withinTransaction { db ->
-      statements.forEach { db.execSQL(it.where, it.whereArgs) }
+      writer.write(db)
     }
   }
 
   fun update(recipientId: RecipientId, mmsId: Long, status: Int, timestamp: Long) {
-    writableDatabase
-      .update(TABLE_NAME)
-      .values(
-        STATUS to status,
-        TIMESTAMP to timestamp
-      )
-      .where("$MMS_ID = ? AND $RECIPIENT_ID = ? AND $STATUS < ?", mmsId.toString(), recipientId.serialize(), status.toString())
-      .run()
+    writableDatabase.updatePrepared(TABLE_NAME, UPDATE_STATUS) { args ->
+      args
+        .bind(status)
+        .bind(timestamp)
+        .bind(mmsId)
+        .bind(recipientId.toLong())
+        .bind(status)
+    }
   }
 
   fun setUnidentified(results: Collection<Pair<RecipientId, Boolean>>, mmsId: Long) {
@@ -222,6 +222,31 @@ class GroupTable(context: Context?, databaseHelper: SignalDatabase?) :
     return getGroup(SqlUtil.Query("$TABLE_NAME.$GROUP_ID = ?", buildArgs(groupId)))
   }
 
+  /**
+   * Bulk version of [getGroup] for a set of group recipients, reading every group in a single query.
+   * Groups whose membership still references remapped recipients are re-read individually through [getGroup], which fixes them up.
+   */
+  fun getGroups(recipientIds: Collection<RecipientId>): Map<RecipientId, GroupRecord> {
+    if (recipientIds.isEmpty()) {
+      return emptyMap()
+    }
+
+    val query = SqlUtil.buildFastCollectionQuery("$TABLE_NAME.$RECIPIENT_ID", recipientIds.map { it.serialize() })
+
+    return readableDatabase
+      .query("${joinedGroupSelect()} WHERE ${query.where}", query.whereArgs)
+      .readToList { cursor -> Reader(cursor).getCurrent() }
+      .filterNotNull()
+      .mapNotNull { group ->
+        if (RemappedRecords.getInstance().areAnyRemapped(group.members)) {
+          getGroup(group.recipientId).orElse(null)
+        } else {
+          group
+        }
+      }
+      .associateBy { it.recipientId }
+  }
+
   private fun getGroup(query: SqlUtil.Query): Optional<GroupRecord> {
     //language=sql
     val select = "${joinedGroupSelect()} WHERE ${query.where}"
@@ -430,9 +455,26 @@ class GroupTable(context: Context?, databaseHelper: SignalDatabase?) :
       query += " AND $MMS = 0"
     }
 
+    val candidates = RecipientSearchIndex.getCandidateClause("$TABLE_NAME.$RECIPIENT_ID", *inputQuery.split(" ").filter { it.isNotEmpty() }.toTypedArray())
+    if (candidates != null) {
+      query += " AND $candidates"
+    }
+
     return SqlUtil.Query(query, queryArgs)
   }
 
+  /**
+   * Reads the title of each group matching [query], keyed by the group's recipient ID, for [RecipientSearchIndex].
+   */
+  fun getSearchIndexTitles(query: SqlUtil.Query): Map<Long, String?> {
+    return readableDatabase
+      .select(RECIPIENT_ID, TITLE)
+      .from(TABLE_NAME)
+      .where(query.where, query.whereArgs)
+      .run()
+      .readToMap { cursor -> cursor.requireLong(RECIPIENT_ID) to cursor.requireString(TITLE) }
+  }
+
   fun getOrCreateDistributionId(groupId: GroupId.V2): DistributionId {
     readableDatabase
       .select(DISTRIBUTION_ID)
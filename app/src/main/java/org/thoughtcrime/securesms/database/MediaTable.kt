@@ -4,6 +4,7 @@ import android.annotation.SuppressLint
 import android.content.Context
 import android.database.Cursor
 import androidx.compose.runtime.Immutable
+import org.signal.core.util.SqlUtil
 import org.signal.core.util.logging.Log
 import org.signal.core.util.requireInt
 import org.signal.core.util.requireLong
@@ -21,8 +22,9 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
     const val ALL_THREADS = -1
     private const val THREAD_RECIPIENT_ID = "THREAD_RECIPIENT_ID"
     private const val MEDIA_MESSAGE_ID = "media_message_id"
-    private val BASE_MEDIA_QUERY = """
-      SELECT
+    private const val HAS_LINK_PREVIEW = "has_link_preview"
+
+    private val FULL_COLUMNS = """
         ${AttachmentTable.TABLE_NAME}.${AttachmentTable.ID} AS ${AttachmentTable.ID},
         ${AttachmentTable.TABLE_NAME}.${AttachmentTable.CONTENT_TYPE},
         ${AttachmentTable.TABLE_NAME}.${AttachmentTable.MESSAGE_ID},
@@ -66,7 +68,28 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
         ${MessageTable.TABLE_NAME}.${MessageTable.THREAD_ID},
         ${MessageTable.TABLE_NAME}.${MessageTable.FROM_RECIPIENT_ID},
         ${ThreadTable.TABLE_NAME}.${ThreadTable.RECIPIENT_ID} as $THREAD_RECIPIENT_ID,
-        ${MessageTable.TABLE_NAME}.${MessageTable.LINK_PREVIEWS},
+        ${MessageTable.TABLE_NAME}.${MessageTable.LINK_PREVIEWS}
+    """
+
+    /**
+     * Just enough to lay out the media overview and compute its sections. Full rows are loaded a page at a time with
+     * [getMediaRecords].
+     */
+    private val INDEX_COLUMNS = """
+        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.ID} AS ${AttachmentTable.ID},
+        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.CONTENT_TYPE},
+        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.DATA_SIZE},
+        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.BLUR_HASH},
+        ${MessageTable.TABLE_NAME}.${MessageTable.TYPE},
+        ${MessageTable.TABLE_NAME}.${MessageTable.DATE_SENT},
+        ${MessageTable.TABLE_NAME}.${MessageTable.DATE_RECEIVED},
+        ${ThreadTable.TABLE_NAME}.${ThreadTable.RECIPIENT_ID} as $THREAD_RECIPIENT_ID,
+        ${MessageTable.TABLE_NAME}.${MessageTable.LINK_PREVIEWS} IS NOT NULL as $HAS_LINK_PREVIEW
+    """
+
+    private val BASE_MEDIA_QUERY = """
+      SELECT
+        __COLUMNS__,
         ${AttachmentTable.TABLE_NAME}.${AttachmentTable.MESSAGE_ID} as $MEDIA_MESSAGE_ID
       FROM
         ${AttachmentTable.TABLE_NAME} __INDEX_HINT__
@@ -138,50 +161,7 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
 
     private val LINK_MEDIA_QUERY = """
       SELECT
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.ID} AS ${AttachmentTable.ID},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.CONTENT_TYPE},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.MESSAGE_ID},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.TRANSFER_STATE},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.DATA_SIZE},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.FILE_NAME},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.DATA_FILE},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.THUMBNAIL_FILE},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.CDN_NUMBER},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.REMOTE_LOCATION},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.REMOTE_KEY},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.REMOTE_DIGEST},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.FAST_PREFLIGHT_ID},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.VOICE_NOTE},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.BORDERLESS},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.VIDEO_GIF},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.WIDTH},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.HEIGHT},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.QUOTE},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.QUOTE_TARGET_CONTENT_TYPE},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.STICKER_PACK_ID},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.STICKER_PACK_KEY},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.STICKER_ID},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.STICKER_EMOJI},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.BLUR_HASH},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.TRANSFORM_PROPERTIES},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.DISPLAY_ORDER},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.CAPTION},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.UPLOAD_TIMESTAMP},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.REMOTE_INCREMENTAL_DIGEST},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.REMOTE_INCREMENTAL_DIGEST_CHUNK_SIZE},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.DATA_HASH_END},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.ARCHIVE_CDN},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.THUMBNAIL_RESTORE_STATE},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.ARCHIVE_TRANSFER_STATE},
-        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.ATTACHMENT_UUID},
-        ${MessageTable.TABLE_NAME}.${MessageTable.TYPE},
-        ${MessageTable.TABLE_NAME}.${MessageTable.DATE_SENT},
-        ${MessageTable.TABLE_NAME}.${MessageTable.DATE_RECEIVED},
-        ${MessageTable.TABLE_NAME}.${MessageTable.DATE_SERVER},
-        ${MessageTable.TABLE_NAME}.${MessageTable.THREAD_ID},
-        ${MessageTable.TABLE_NAME}.${MessageTable.FROM_RECIPIENT_ID},
-        ${ThreadTable.TABLE_NAME}.${ThreadTable.RECIPIENT_ID} as $THREAD_RECIPIENT_ID,
-        ${MessageTable.TABLE_NAME}.${MessageTable.LINK_PREVIEWS},
+        __COLUMNS__,
         ${MessageTable.TABLE_NAME}.${MessageTable.ID} as $MEDIA_MESSAGE_ID
       FROM
         ${MessageTable.TABLE_NAME}
@@ -216,9 +196,38 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
         )"""
     )
 
-    private fun applyEqualityOperator(threadId: Long, query: String): String {
+    private val MEDIA_BY_ATTACHMENT_QUERY = """
+      SELECT
+        $FULL_COLUMNS,
+        ${AttachmentTable.TABLE_NAME}.${AttachmentTable.MESSAGE_ID} as $MEDIA_MESSAGE_ID
+      FROM
+        ${AttachmentTable.TABLE_NAME}
+        LEFT JOIN ${MessageTable.TABLE_NAME} ON ${AttachmentTable.TABLE_NAME}.${AttachmentTable.MESSAGE_ID} = ${MessageTable.TABLE_NAME}.${MessageTable.ID}
+        LEFT JOIN ${ThreadTable.TABLE_NAME} ON ${ThreadTable.TABLE_NAME}.${ThreadTable.ID} = ${MessageTable.TABLE_NAME}.${MessageTable.THREAD_ID}
+      """
+
+    private val MEDIA_BY_LINK_MESSAGE_QUERY = """
+      SELECT
+        $FULL_COLUMNS,
+        ${MessageTable.TABLE_NAME}.${MessageTable.ID} as $MEDIA_MESSAGE_ID
+      FROM
+        ${MessageTable.TABLE_NAME}
+        LEFT JOIN ${AttachmentTable.TABLE_NAME} ON ${AttachmentTable.TABLE_NAME}.${AttachmentTable.MESSAGE_ID} = ${MessageTable.TABLE_NAME}.${MessageTable.ID}
+          AND ${AttachmentTable.TABLE_NAME}.${AttachmentTable.QUOTE} = 0
+          AND ${AttachmentTable.TABLE_NAME}.${AttachmentTable.STICKER_PACK_ID} IS NULL
+        LEFT JOIN ${ThreadTable.TABLE_NAME} ON ${ThreadTable.TABLE_NAME}.${ThreadTable.ID} = ${MessageTable.TABLE_NAME}.${MessageTable.THREAD_ID}
+      """
+
+    private fun applyEqualityOperator(threadId: Long, query: String, projection: Projection): String {
       val isAllThreads = threadId == ALL_THREADS.toLong()
       return query
+        .replace(
+          "__COLUMNS__",
+          when (projection) {
+            Projection.FULL -> FULL_COLUMNS
+            Projection.INDEX -> INDEX_COLUMNS
+          }
+        )
         .replace(
           "__THREAD_FILTER__",
           if (isAllThreads) {
@@ -237,8 +246,8 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
   }
 
   @JvmOverloads
-  fun getGalleryMediaForThread(threadId: Long, sorting: Sorting, limit: Int = 0): Cursor {
-    var query = sorting.applyToQuery(applyEqualityOperator(threadId, GALLERY_MEDIA_QUERY_INCLUDING_TEMP_VIDEOS))
+  fun getGalleryMediaForThread(threadId: Long, sorting: Sorting, limit: Int = 0, projection: Projection = Projection.FULL): Cursor {
+    var query = sorting.applyToQuery(applyEqualityOperator(threadId, GALLERY_MEDIA_QUERY_INCLUDING_TEMP_VIDEOS, projection))
     val args = arrayOf(threadId.toString() + "")
 
     if (limit > 0) {
@@ -249,8 +258,8 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
   }
 
   @JvmOverloads
-  fun getDocumentMediaForThread(threadId: Long, sorting: Sorting, limit: Int = 0): Cursor {
-    var query = sorting.applyToQuery(applyEqualityOperator(threadId, DOCUMENT_MEDIA_QUERY))
+  fun getDocumentMediaForThread(threadId: Long, sorting: Sorting, limit: Int = 0, projection: Projection = Projection.FULL): Cursor {
+    var query = sorting.applyToQuery(applyEqualityOperator(threadId, DOCUMENT_MEDIA_QUERY, projection))
     val args = arrayOf(threadId.toString() + "")
 
     if (limit > 0) {
@@ -261,8 +270,8 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
   }
 
   @JvmOverloads
-  fun getAudioMediaForThread(threadId: Long, sorting: Sorting, limit: Int = 0): Cursor {
-    var query = sorting.applyToQuery(applyEqualityOperator(threadId, AUDIO_MEDIA_QUERY))
+  fun getAudioMediaForThread(threadId: Long, sorting: Sorting, limit: Int = 0, projection: Projection = Projection.FULL): Cursor {
+    var query = sorting.applyToQuery(applyEqualityOperator(threadId, AUDIO_MEDIA_QUERY, projection))
     val args = arrayOf(threadId.toString() + "")
 
     if (limit > 0) {
@@ -272,21 +281,22 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
     return readableDatabase.rawQuery(query, args)
   }
 
-  fun getLinkMediaForThread(threadId: Long, sorting: Sorting): Cursor {
+  @JvmOverloads
+  fun getLinkMediaForThread(threadId: Long, sorting: Sorting, projection: Projection = Projection.FULL): Cursor {
     val orderBy = when (sorting) {
       Sorting.Newest -> " ORDER BY ${MessageTable.TABLE_NAME}.${MessageTable.DATE_SENT} DESC"
       Sorting.Oldest -> " ORDER BY ${MessageTable.TABLE_NAME}.${MessageTable.DATE_SENT} ASC"
       Sorting.Largest -> " ORDER BY ${AttachmentTable.TABLE_NAME}.${AttachmentTable.DATA_SIZE} DESC"
     }
-    val query = applyEqualityOperator(threadId, LINK_MEDIA_QUERY) + orderBy
+    val query = applyEqualityOperator(threadId, LINK_MEDIA_QUERY, projection) + orderBy
     val args = arrayOf(threadId.toString())
     return readableDatabase.rawQuery(query, args)
   }
 
   @JvmOverloads
-  fun getAllMediaForThread(threadId: Long, sorting: Sorting, limit: Int = 0): Cursor {
-    val allMediaSubquery = applyEqualityOperator(threadId, applyIndexHint(ALL_MEDIA_QUERY, threadId, sorting))
-    val linkSubquery = applyEqualityOperator(threadId, LINK_MEDIA_QUERY)
+  fun getAllMediaForThread(threadId: Long, sorting: Sorting, limit: Int = 0, projection: Projection = Projection.FULL): Cursor {
+    val allMediaSubquery = applyEqualityOperator(threadId, applyIndexHint(ALL_MEDIA_QUERY, threadId, sorting), projection)
+    val linkSubquery = applyEqualityOperator(threadId, LINK_MEDIA_QUERY, projection)
 
     val orderBy = when (sorting) {
       Sorting.Newest -> " ORDER BY $MEDIA_MESSAGE_ID DESC"
@@ -304,6 +314,36 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
     return readableDatabase.rawQuery(query, args)
   }
 
+  /**
+   * Loads the full [MediaRecord]s for rows of a [MediaIndex]. Link previews without an attachment are looked up by their
+   * message instead. Rows that no longer exist are skipped, and the results are in no particular order.
+   */
+  fun getMediaRecords(attachmentIds: Collection<Long>, linkMessageIds: Collection<Long>): List<MediaRecord> {
+    val records = ArrayList<MediaRecord>(attachmentIds.size + linkMessageIds.size)
+
+    if (attachmentIds.isNotEmpty()) {
+      val query = SqlUtil.buildFastCollectionQuery("${AttachmentTable.TABLE_NAME}.${AttachmentTable.ID}", attachmentIds)
+
+      readableDatabase.rawQuery("$MEDIA_BY_ATTACHMENT_QUERY WHERE ${query.where}", query.whereArgs).use { cursor ->
+        while (cursor.moveToNext()) {
+          records += MediaRecord.from(cursor)
+        }
+      }
+    }
+
+    if (linkMessageIds.isNotEmpty()) {
+      val query = SqlUtil.buildFastCollectionQuery("${MessageTable.TABLE_NAME}.${MessageTable.ID}", linkMessageIds)
+
+      readableDatabase.rawQuery("$MEDIA_BY_LINK_MESSAGE_QUERY WHERE ${query.where} AND ${AttachmentTable.TABLE_NAME}.${AttachmentTable.ID} IS NULL", query.whereArgs).use { cursor ->
+        while (cursor.moveToNext()) {
+          records += MediaRecord.from(cursor)
+        }
+      }
+    }
+
+    return records
+  }
+
   fun getStorageBreakdown(): StorageBreakdown {
     var photoSize: Long = 0
     var videoSize: Long = 0
@@ -386,6 +426,101 @@ class MediaTable internal constructor(context: Context?, databaseHelper: SignalD
     }
   }
 
+  /**
+   * The rows of a media query read with [Projection.INDEX], stored column by column so that tens of thousands of items
+   * stay cheap to hold and walk.
+   */
+  class MediaIndex private constructor(
+    val size: Int,
+    private val attachmentIds: LongArray,
+    private val messageIds: LongArray,
+    private val dates: LongArray,
+    private val sizes: LongArray,
+    private val contentTypes: Array<String?>,
+    private val blurHashes: Array<String?>,
+    private val linkPreviews: BooleanArray
+  ) {
+
+    /**
+     * @return The attachment ID, or 0 for a link preview without an attachment.
+     */
+    fun getAttachmentId(row: Int): Long = attachmentIds[row]
+
+    fun getMessageId(row: Int): Long = messageIds[row]
+
+    fun getDate(row: Int): Long = dates[row]
+
+    fun getSize(row: Int): Long = sizes[row]
+
+    fun getContentType(row: Int): String? = contentTypes[row]
+
+    fun getBlurHash(row: Int): String? = blurHashes[row]
+
+    fun hasLinkPreview(row: Int): Boolean = linkPreviews[row]
+
+    /**
+     * @return True if [record] is the full version of [row].
+     */
+    fun matches(row: Int, record: MediaRecord): Boolean {
+      val attachment = record.attachment
+
+      return if (attachment != null) {
+        attachment.attachmentId.id == attachmentIds[row]
+      } else {
+        attachmentIds[row] == 0L && record.messageId == messageIds[row]
+      }
+    }
+
+    companion object {
+      @JvmStatic
+      fun from(cursor: Cursor): MediaIndex {
+        val count = cursor.count
+        val attachmentIds = LongArray(count)
+        val messageIds = LongArray(count)
+        val dates = LongArray(count)
+        val sizes = LongArray(count)
+        val contentTypes = arrayOfNulls<String>(count)
+        val blurHashes = arrayOfNulls<String>(count)
+        val linkPreviews = BooleanArray(count)
+
+        val idColumn = cursor.getColumnIndexOrThrow(AttachmentTable.ID)
+        val messageIdColumn = cursor.getColumnIndexOrThrow(MEDIA_MESSAGE_ID)
+        val typeColumn = cursor.getColumnIndexOrThrow(MessageTable.TYPE)
+        val dateSentColumn = cursor.getColumnIndexOrThrow(MessageTable.DATE_SENT)
+        val dateReceivedColumn = cursor.getColumnIndexOrThrow(MessageTable.DATE_RECEIVED)
+        val sizeColumn = cursor.getColumnIndexOrThrow(AttachmentTable.DATA_SIZE)
+        val contentTypeColumn = cursor.getColumnIndexOrThrow(AttachmentTable.CONTENT_TYPE)
+        val blurHashColumn = cursor.getColumnIndexOrThrow(AttachmentTable.BLUR_HASH)
+        val linkPreviewColumn = cursor.getColumnIndexOrThrow(HAS_LINK_PREVIEW)
+
+        // There are only a handful of distinct content types, so share one instance of each
+        val contentTypePool = HashMap<String, String>()
+
+        var row = 0
+        while (row < count && cursor.moveToNext()) {
+          attachmentIds[row] = cursor.getLong(idColumn)
+          messageIds[row] = cursor.getLong(messageIdColumn)
+          dates[row] = if (MessageTypes.isPushType(cursor.getLong(typeColumn))) cursor.getLong(dateSentColumn) else cursor.getLong(dateReceivedColumn)
+          sizes[row] = cursor.getLong(sizeColumn)
+          contentTypes[row] = cursor.getString(contentTypeColumn)?.let { contentTypePool.getOrPut(it) { it } }
+          blurHashes[row] = cursor.getString(blurHashColumn)
+          linkPreviews[row] = cursor.getInt(linkPreviewColumn) != 0
+          row++
+        }
+
+        return MediaIndex(row, attachmentIds, messageIds, dates, sizes, contentTypes, blurHashes, linkPreviews)
+      }
+    }
+  }
+
+  enum class Projection {
+    /** Every column needed to build a [MediaRecord]. */
+    FULL,
+
+    /** Only the columns read by [MediaIndex]. */
+    INDEX
+  }
+
   enum class Sorting(order: String) {
     Newest(
       """
@@ -5,7 +5,6 @@ import android.database.Cursor
 import org.signal.core.util.SqlUtil
 import org.signal.core.util.delete
 import org.signal.core.util.deleteAll
-import org.signal.core.util.insertInto
 import org.signal.core.util.logging.Log
 import org.signal.core.util.readToList
 import org.signal.core.util.requireInt
@@ -47,20 +46,21 @@ class MentionTable(context: Context, databaseHelper: SignalDatabase) : DatabaseT
       "CREATE INDEX IF NOT EXISTS $MESSAGE_ID_INDEX ON $TABLE_NAME ($MESSAGE_ID);",
       "CREATE INDEX IF NOT EXISTS $RECIPIENT_ID_INDEX ON $TABLE_NAME ($RECIPIENT_ID, $THREAD_ID);"
     )
+
+    private const val INSERT = "INSERT INTO $TABLE_NAME ($THREAD_ID, $MESSAGE_ID, $RECIPIENT_ID, $RANGE_START, $RANGE_LENGTH) VALUES (?, ?, ?, ?, ?)"
   }
 
   fun insert(threadId: Long, messageId: Long, mentions: Collection<Mention>) {
     writableDatabase.withinTransaction { db ->
       for (mention in mentions) {
-        db.insertInto(TABLE_NAME)
-          .values(
-            THREAD_ID to threadId,
-            MESSAGE_ID to messageId,
-            RECIPIENT_ID to mention.recipientId.toLong(),
-            RANGE_START to mention.start,
-            RANGE_LENGTH to mention.length
-          )
-          .run()
+        db.insertPrepared(TABLE_NAME, INSERT) { args ->
+          args
+            .bind(threadId)
+            .bind(messageId)
+            .bind(mention.recipientId.toLong())
+            .bind(mention.start)
+            .bind(mention.length)
+        }
       }
     }
   }
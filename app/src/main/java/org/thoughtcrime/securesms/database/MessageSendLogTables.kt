@@ -85,7 +85,7 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
       )
     """
 
-    /** Created for [deleteEntriesForRecipient] */
+    /** Created for [deleteEntries] */
     val CREATE_INDEXES = arrayOf(
       "CREATE INDEX msl_payload_date_sent_index ON $TABLE_NAME ($DATE_SENT)"
     )
@@ -126,7 +126,7 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
       )
     """
 
-    /** Created for [deleteEntriesForRecipient] */
+    /** Created for [deleteEntries] */
     val CREATE_INDEXES = arrayOf(
       "CREATE INDEX msl_recipient_recipient_index ON $TABLE_NAME ($RECIPIENT_ID, $DEVICE, $PAYLOAD_ID)",
       "CREATE INDEX msl_recipient_payload_index ON $TABLE_NAME ($PAYLOAD_ID)"
@@ -325,33 +325,43 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
     db.delete(MslPayloadTable.TABLE_NAME, query, args)
   }
 
-  fun deleteEntryForRecipient(dateSent: Long, recipientId: RecipientId, device: Int) {
-    deleteEntriesForRecipient(listOf(dateSent), recipientId, device)
-  }
+  /**
+   * Deletes the recipient rows matching each (dateSent, recipient, device) entry with a single statement, then removes the payloads that
+   * no longer have any recipients in one sweep. Meant to be called with everything delivered in a batch of receipts, where a single
+   * message sent to a large group will show up once per member.
+   */
+  fun deleteEntries(entries: Collection<DeliveredEntry>) {
+    if (entries.isEmpty()) {
+      return
+    }
 
-  fun deleteEntriesForRecipient(dateSent: List<Long>, recipientId: RecipientId, device: Int) {
     val db = databaseHelper.signalWritableDatabase
     db.beginTransaction()
     try {
       val query = """
-        DELETE FROM ${MslRecipientTable.TABLE_NAME} WHERE
-        ${MslRecipientTable.RECIPIENT_ID} = ? AND
-        ${MslRecipientTable.DEVICE} = ? AND
-        ${MslRecipientTable.PAYLOAD_ID} IN (
-          SELECT ${MslPayloadTable.ID} 
-          FROM ${MslPayloadTable.TABLE_NAME} 
-          WHERE ${MslPayloadTable.DATE_SENT} IN (${dateSent.joinToString(",")}) 
+        DELETE FROM ${MslRecipientTable.TABLE_NAME} WHERE ${MslRecipientTable.ID} IN (
+          SELECT r.${MslRecipientTable.ID}
+          FROM json_each(?) e
+          INNER JOIN ${MslPayloadTable.TABLE_NAME} p ON p.${MslPayloadTable.DATE_SENT} = json_extract(e.value, '$[0]')
+          INNER JOIN ${MslRecipientTable.TABLE_NAME} r ON
+            r.${MslRecipientTable.RECIPIENT_ID} = json_extract(e.value, '$[1]') AND
+            r.${MslRecipientTable.DEVICE} = json_extract(e.value, '$[2]') AND
+            r.${MslRecipientTable.PAYLOAD_ID} = p.${MslPayloadTable.ID}
         )
         RETURNING ${MslRecipientTable.PAYLOAD_ID}"""
-      val args = SqlUtil.buildArgs(recipientId, device)
+      val tuples = entries.joinToString(separator = ",", prefix = "[", postfix = "]") { "[${it.dateSent},${it.recipientId.toLong()},${it.device}]" }
 
-      val payloadIds = db.rawQuery(query, args).readToList {
+      val payloadIds: Set<Long> = db.rawQuery(query, arrayOf(tuples)).readToList {
         it.requireLong(MslRecipientTable.PAYLOAD_ID)
-      }
-
-      val queries = SqlUtil.buildCollectionQuery(MslPayloadTable.ID, payloadIds)
-      queries.forEach {
-        db.delete(MslPayloadTable.TABLE_NAME, "${it.where} AND ${MslPayloadTable.ID} NOT IN (SELECT ${MslRecipientTable.PAYLOAD_ID} FROM ${MslRecipientTable.TABLE_NAME})", it.whereArgs)
+      }.toSet()
+
+      if (payloadIds.isNotEmpty()) {
+        val payloadQuery = SqlUtil.buildFastCollectionQuery(MslPayloadTable.ID, payloadIds)
+        db.delete(
+          MslPayloadTable.TABLE_NAME,
+          "${payloadQuery.where} AND NOT EXISTS (SELECT 1 FROM ${MslRecipientTable.TABLE_NAME} WHERE ${MslRecipientTable.PAYLOAD_ID} = ${MslPayloadTable.TABLE_NAME}.${MslPayloadTable.ID})",
+          payloadQuery.whereArgs
+        )
       }
       db.setTransactionSuccessful()
     } finally {
@@ -431,4 +441,7 @@ class MessageSendLogTables constructor(context: Context?, databaseHelper: Signal
   }
 
   private data class RecipientDevice(val recipientId: RecipientId, val devices: List<Int>)
+
+  /** A message sent at [dateSent] that [recipientId] has confirmed delivery of on [device]. */
+  data class DeliveredEntry(val dateSent: Long, val recipientId: RecipientId, val device: Int)
 }
@@ -3773,7 +3773,7 @@ open class MessageTable(context: Context?, databaseHelper: SignalDatabase) : Dat
     }
 
     val (messageId, insertedAttachments) = writableDatabase.withinTransaction { db ->
-      val messageId = db.insert(TABLE_NAME, null, contentValues)
+      val messageId = db.insertPrepared(TABLE_NAME, contentValues)
       if (messageId < 0) {
         Log.w(TAG, "Tried to insert media message but failed. Assuming duplicate.")
         return@withinTransaction -1L to null
@@ -0,0 +1,412 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import androidx.annotation.VisibleForTesting
+import org.thoughtcrime.securesms.dependencies.AppDependencies
+import org.thoughtcrime.securesms.util.LocalMetrics
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * Always-on latency statistics for every statement that goes through [SQLiteDatabase], grouped by the *shape* of the statement,
+ * i.e. its SQL with literals, placeholders and IN-lists collapsed, so that every call site ends up with one entry no matter
+ * which arguments it uses.
+ *
+ * Recording is meant to be cheap enough to leave on for everyone:
+ *  - Shapes are looked up by the identity of the SQL string, which for almost every call site is a constant. A miss normalizes
+ *    the SQL into a per-thread buffer and finds the shape by the hash of the result, so it only allocates for a shape it hasn't
+ *    seen yet, or when it takes over a cache slot.
+ *  - Cache slots get a second chance, so SQL that's built on every call can't keep pushing out the constants.
+ *  - Each shape keeps fixed-bucket histograms, so recording a statement is a handful of atomic increments and never allocates.
+ *
+ * Statements that take at least [SLOW_STATEMENT_MS] are additionally written to [LocalMetrics], so they survive restarts, and the
+ * first one of each shape gets its query plan captured.
+ */
+object QueryStatistics {
+
+  const val SLOW_STATEMENT_MS = 100L
+
+  private const val IDENTITY_CACHE_SIZE = 1024
+  private const val MAX_SHAPES = 500
+  private const val SHAPE_TABLE_SIZE = 1024
+  private const val MAX_SHAPE_LENGTH = 500
+  private const val MAX_SAMPLE_LENGTH = 10_000
+
+  private val SLOW_STATEMENT_NS = TimeUnit.MILLISECONDS.toNanos(SLOW_STATEMENT_MS)
+
+  private val identityCache: Array<CacheEntry?> = arrayOfNulls(IDENTITY_CACHE_SIZE)
+  private val slowStatementCount = AtomicLong()
+
+  /** Open-addressed by [Shape.hash], with linear probing. Slots are only ever filled, never cleared. */
+  private val shapeTable = AtomicReferenceArray<Shape>(SHAPE_TABLE_SIZE)
+  private val shapeCount = AtomicInteger()
+
+  private val nameBuffer = object : ThreadLocal<StringBuilder>() {
+    override fun initialValue(): StringBuilder = StringBuilder(MAX_SHAPE_LENGTH + 64)
+  }
+
+  /** Everything that didn't fit once we're tracking [MAX_SHAPES] shapes. */
+  private val OTHER = Shape(Kind.RAW, "(other)", null, null)
+
+  /** Write transactions. The wait time is spent acquiring the write lock, the execution time is how long it was held. */
+  @JvmField
+  val TRANSACTION = Shape(Kind.TRANSACTION, "BEGIN TRANSACTION", null, null)
+
+  /**
+   * @param table The table of a structured statement, or null for raw SQL.
+   * @param query The full SQL for [Kind.RAW], or the where-clause for everything else.
+   */
+  @JvmStatic
+  fun shapeOf(kind: Kind, table: String?, query: String?): Shape {
+    val key: Any = query ?: table ?: kind
+    val slot = System.identityHashCode(key) and (IDENTITY_CACHE_SIZE - 1)
+    val entry = identityCache[slot]
+
+    if (entry != null && entry.query === query && entry.table === table && entry.kind == kind) {
+      entry.used = true
+      return entry.shape
+    }
+
+    val shape = lookup(kind, table, query)
+
+    if (entry == null || !entry.used) {
+      identityCache[slot] = CacheEntry(kind, table, query, shape)
+    } else {
+      entry.used = false
+    }
+
+    return shape
+  }
+
+  /**
+   * @return Every shape seen so far, most expensive first.
+   */
+  @JvmStatic
+  fun getShapes(): List<Shape> {
+    val shapes = (0 until SHAPE_TABLE_SIZE).mapNotNull { shapeTable.get(it) }
+
+    return (shapes + OTHER + TRANSACTION)
+      .filter { it.count > 0 }
+      .sortedByDescending { it.totalNs }
+  }
+
+  private fun lookup(kind: Kind, table: String?, query: String?): Shape {
+    val name = nameBuffer.get()!!
+    name.setLength(0)
+
+    when (kind) {
+      Kind.SELECT -> appendWhere(name.append("SELECT FROM ").append(table), query)
+      Kind.INSERT -> name.append("INSERT INTO ").append(table)
+      Kind.UPDATE -> appendWhere(name.append("UPDATE ").append(table), query)
+      Kind.DELETE -> appendWhere(name.append("DELETE FROM ").append(table), query)
+      Kind.RAW -> normalizeInto(query ?: "", name)
+      Kind.TRANSACTION -> return TRANSACTION
+    }
+
+    val hash = hash(name)
+    var index = (hash xor (hash ushr 32)).toInt() and (SHAPE_TABLE_SIZE - 1)
+
+    while (true) {
+      val shape = shapeTable.get(index)
+
+      if (shape == null) {
+        if (shapeCount.get() >= MAX_SHAPES) {
+          return OTHER
+        }
+
+        val created = Shape(kind, name.toString(), table, query?.takeIf { it.length <= MAX_SAMPLE_LENGTH }, hash)
+        if (shapeTable.compareAndSet(index, null, created)) {
+          shapeCount.incrementAndGet()
+          return created
+        }
+      } else if (shape.hash == hash) {
+        return shape
+      } else {
+        index = (index + 1) and (SHAPE_TABLE_SIZE - 1)
+      }
+    }
+  }
+
+  private fun appendWhere(out: StringBuilder, selection: String?) {
+    if (!selection.isNullOrBlank()) {
+      normalizeInto(selection, out.append(" WHERE "))
+    }
+  }
+
+  /** 64-bit FNV-1a, which is wide enough that two shapes sharing a hash isn't a concern. */
+  private fun hash(chars: CharSequence): Long {
+    var hash = -0x340d631b7bdddcdbL
+    for (i in 0 until chars.length) {
+      hash = (hash xor chars[i].code.toLong()) * 0x100000001b3L
+    }
+    return hash
+  }
+
+  /**
+   * Collapses whitespace, replaces literals and placeholders with a single `?`, and collapses lists of them (e.g. `IN (?, ?, ?)`
+   * or multi-row `VALUES`), so the result only depends on the call site and not its arguments.
+   */
+  @VisibleForTesting
+  fun normalize(sql: String): String {
+    return StringBuilder(minOf(sql.length, MAX_SHAPE_LENGTH)).also { normalizeInto(sql, it) }.toString()
+  }
+
+  /**
+   * Appends the normalized [sql] to [out], which may already hold a prefix.
+   */
+  private fun normalizeInto(sql: String, out: StringBuilder) {
+    val start = out.length
+    val length = sql.length
+    var i = 0
+
+    while (i < length && out.length - start < MAX_SHAPE_LENGTH) {
+      val c = sql[i]
+
+      when {
+        c == '-' && i + 1 < length && sql[i + 1] == '-' -> {
+          while (i < length && sql[i] != '\n') {
+            i++
+          }
+        }
+        c.isWhitespace() -> {
+          while (i < length && sql[i].isWhitespace()) {
+            i++
+          }
+          if (out.length > start && out.last() != ' ' && i < length) {
+            out.append(' ')
+          }
+        }
+        c == '\'' -> {
+          i++
+          while (i < length) {
+            if (sql[i] == '\'') {
+              if (i + 1 < length && sql[i + 1] == '\'') {
+                i += 2
+              } else {
+                i++
+                break
+              }
+            } else {
+              i++
+            }
+          }
+          appendPlaceholder(out)
+        }
+        c == '"' || c == '`' || c == '[' -> {
+          val close = if (c == '[') ']' else c
+          val end = sql.indexOf(close, i + 1).let { if (it == -1) length else it + 1 }
+          out.append(sql, i, end)
+          i = end
+        }
+        c == '?' || (c.isDigit() && (out.length == start || !isIdentifierPart(out.last()))) -> {
+          i++
+          while (i < length && (sql[i].isLetterOrDigit() || sql[i] == '.')) {
+            i++
+          }
+          appendPlaceholder(out)
+        }
+        else -> {
+          out.append(c)
+          i++
+          if (c == ')') {
+            collapseRepeatedRows(out)
+          }
+        }
+      }
+    }
+
+    while (out.length > start && out.last().isWhitespace()) {
+      out.setLength(out.length - 1)
+    }
+  }
+
+  private fun appendPlaceholder(out: StringBuilder) {
+    if (out.endsWith("?, ")) {
+      out.setLength(out.length - 2)
+    } else if (out.endsWith("?,")) {
+      out.setLength(out.length - 1)
+    } else {
+      out.append('?')
+    }
+  }
+
+  private fun collapseRepeatedRows(out: StringBuilder) {
+    if (out.endsWith("(?), (?)")) {
+      out.setLength(out.length - 5)
+    } else if (out.endsWith("(?),(?)")) {
+      out.setLength(out.length - 4)
+    }
+  }
+
+  private fun isIdentifierPart(c: Char): Boolean {
+    return c.isLetterOrDigit() || c == '_'
+  }
+
+  private fun onSlowStatement(shape: Shape, waitNs: Long, executionNs: Long) {
+    if (!AppDependencies.isInitialized) {
+      return
+    }
+
+    val id = "sql-${slowStatementCount.incrementAndGet()}"
+
+    LocalMetrics.start(id, "sql: ${shape.name.take(120)}")
+    LocalMetrics.splitWithDuration(id, "wait", waitNs, TimeUnit.NANOSECONDS)
+    LocalMetrics.splitWithDuration(id, "execute", executionNs, TimeUnit.NANOSECONDS)
+    LocalMetrics.end(id)
+  }
+
+  enum class Kind {
+    SELECT,
+    INSERT,
+    UPDATE,
+    DELETE,
+    RAW,
+    TRANSACTION
+  }
+
+  class Shape internal constructor(
+    val kind: Kind,
+    val name: String,
+    private val table: String?,
+    private val sample: String?,
+    internal val hash: Long = 0
+  ) {
+    /** For reads, the time to get a connection and compile the statement. For writes, included in [executionTime]. */
+    @JvmField
+    val waitTime = Histogram()
+
+    @JvmField
+    val executionTime = Histogram()
+
+    private val planClaimed = AtomicBoolean(false)
+
+    @Volatile
+    var queryPlan: String? = null
+
+    val count: Long
+      get() = maxOf(waitTime.count, executionTime.count)
+
+    val totalNs: Long
+      get() = waitTime.totalNs + executionTime.totalNs
+
+    /**
+     * @return True if the statement was slow and this is the first slow one for its shape, meaning the caller should capture
+     *         the [queryPlan].
+     */
+    fun record(waitNs: Long, executionNs: Long): Boolean {
+      waitTime.record(waitNs)
+      executionTime.record(executionNs)
+
+      if (waitNs + executionNs < SLOW_STATEMENT_NS) {
+        return false
+      }
+
+      onSlowStatement(this, waitNs, executionNs)
+
+      return planClaimed.compareAndSet(false, true) && explainableSql != null
+    }
+
+    /**
+     * SQL that `EXPLAIN QUERY PLAN` can be run against, with arguments left unbound. Structured updates and deletes are
+     * explained as the equivalent lookup, and structured selects ignore any ordering or limit.
+     */
+    val explainableSql: String?
+      get() {
+        if (this === OTHER || sample == null && kind == Kind.RAW) {
+          return null
+        }
+
+        val where = if (sample.isNullOrBlank()) "" else " WHERE $sample"
+
+        return when (kind) {
+          Kind.SELECT -> "SELECT * FROM $table$where"
+          Kind.UPDATE, Kind.DELETE -> "SELECT rowid FROM $table$where"
+          Kind.RAW -> sample!!.takeIf { EXPLAINABLE.containsMatchIn(it) }
+          Kind.INSERT, Kind.TRANSACTION -> null
+        }
+      }
+  }
+
+  /**
+   * A latency histogram with fixed, roughly logarithmic buckets from 50us to 5s. Percentiles are reported as the upper bound of
+   * the bucket they fall in.
+   */
+  class Histogram {
+    private val counts = AtomicLongArray(BUCKET_BOUNDS_NS.size + 1)
+    private val total = AtomicLong()
+    private val max = AtomicLong()
+
+    val count: Long
+      get() = (0 until counts.length()).sumOf { counts.get(it) }
+
+    val totalNs: Long
+      get() = total.get()
+
+    val maxNs: Long
+      get() = max.get()
+
+    fun record(durationNs: Long) {
+      var bucket = 0
+      while (bucket < BUCKET_BOUNDS_NS.size && durationNs > BUCKET_BOUNDS_NS[bucket]) {
+        bucket++
+      }
+
+      counts.incrementAndGet(bucket)
+      total.addAndGet(durationNs)
+
+      var current = max.get()
+      while (durationNs > current && !max.compareAndSet(current, durationNs)) {
+        current = max.get()
+      }
+    }
+
+    /**
+     * @param percent In the range (0, 100].
+     * @return The upper bound of the bucket the percentile falls in, capped at the largest value seen.
+     */
+    fun percentileNs(percent: Int): Long {
+      val snapshot = LongArray(counts.length()) { counts.get(it) }
+      val total = snapshot.sum()
+
+      if (total == 0L) {
+        return 0
+      }
+
+      val target = (total * percent + 99) / 100
+      var seen = 0L
+
+      for (bucket in snapshot.indices) {
+        seen += snapshot[bucket]
+        if (seen >= target) {
+          return if (bucket < BUCKET_BOUNDS_NS.size) minOf(BUCKET_BOUNDS_NS[bucket], maxNs) else maxNs
+        }
+      }
+
+      return maxNs
+    }
+
+    private companion object {
+      val BUCKET_BOUNDS_NS: LongArray = longArrayOf(
+        50, 100, 250, 500,
+        1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000,
+        1_000_000, 2_500_000, 5_000_000
+      ).map { TimeUnit.MICROSECONDS.toNanos(it) }.toLongArray()
+    }
+  }
+
+  /** [used] is set on every hit and cleared by a miss that wanted the slot, which gets it on the next miss unless there's a hit first. */
+  private class CacheEntry(val kind: Kind, val table: String?, val query: String?, val shape: Shape) {
+    @Volatile
+    var used = false
+  }
+
+  private val EXPLAINABLE = Regex("^\\s*(SELECT|WITH|INSERT|REPLACE|UPDATE|DELETE)\\b", RegexOption.IGNORE_CASE)
+}
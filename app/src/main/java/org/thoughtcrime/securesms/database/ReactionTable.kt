@@ -1,8 +1,8 @@
 package org.thoughtcrime.securesms.database
 
-import android.content.ContentValues
 import android.content.Context
 import android.database.Cursor
+import android.database.SQLException
 import org.signal.core.util.CursorUtil
 import org.signal.core.util.SqlUtil
 import org.signal.core.util.delete
@@ -50,6 +50,8 @@ class ReactionTable(context: Context, databaseHelper: SignalDatabase) : Database
       "CREATE INDEX IF NOT EXISTS reaction_author_id_index ON $TABLE_NAME ($AUTHOR_ID)"
     )
 
+    private const val INSERT = "INSERT INTO $TABLE_NAME ($MESSAGE_ID, $EMOJI, $AUTHOR_ID, $DATE_SENT, $DATE_RECEIVED) VALUES (?, ?, ?, ?, ?)"
+
     private fun readReaction(cursor: Cursor): ReactionRecord {
       return ReactionRecord(
         emoji = CursorUtil.requireString(cursor, EMOJI),
@@ -108,15 +110,19 @@ class ReactionTable(context: Context, databaseHelper: SignalDatabase) : Database
   fun addReaction(messageId: MessageId, reaction: ReactionRecord) {
     writableDatabase.beginTransaction()
     try {
-      val values = ContentValues().apply {
-        put(MESSAGE_ID, messageId.id)
-        put(EMOJI, reaction.emoji)
-        put(AUTHOR_ID, reaction.author.serialize())
-        put(DATE_SENT, reaction.dateSent)
-        put(DATE_RECEIVED, reaction.dateReceived)
+      try {
+        writableDatabase.insertPrepared(TABLE_NAME, INSERT) { args ->
+          args
+            .bind(messageId.id)
+            .bind(reaction.emoji)
+            .bind(reaction.author.toLong())
+            .bind(reaction.dateSent)
+            .bind(reaction.dateReceived)
+        }
+      } catch (e: SQLException) {
+        Log.w(TAG, "Failed to insert reaction.", e)
       }
 
-      writableDatabase.insert(TABLE_NAME, null, values)
       SignalDatabase.messages.updateReactionsUnread(writableDatabase, messageId.id, hasReactions(messageId), false)
 
       writableDatabase.setTransactionSuccessful()
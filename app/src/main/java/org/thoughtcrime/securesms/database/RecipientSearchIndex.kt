@@ -0,0 +1,139 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import androidx.annotation.WorkerThread
+import org.signal.core.util.SqlUtil
+import org.signal.core.util.logging.Log
+import org.thoughtcrime.securesms.recipients.RecipientId
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Keeps a [TrigramSearchIndex] over the searchable text of every recipient, plus the title of every group under its recipient ID, so that contact and group
+ * pickers can narrow a search down to a handful of rows rather than running a GLOB over the whole table on every keystroke.
+ *
+ * The index is loaded the first time it's searched and then kept up to date from recipient refreshes, which is how changes to both recipients and groups
+ * are announced. New rows are picked up by ID. Callers still apply their GLOB to the rows the index returns, so a stale entry can at worst hide a row,
+ * never show the wrong one.
+ */
+object RecipientSearchIndex {
+
+  private val TAG = Log.tag(RecipientSearchIndex::class.java)
+
+  /** Shorter queries can't use trigrams, and tend to match most recipients anyway. */
+  private const val MIN_QUERY_LENGTH = 3
+
+  /** Past this many candidates, an IN list stops being cheaper than just scanning. */
+  private const val MAX_CANDIDATES = 1000
+
+  private val index = TrigramSearchIndex()
+  private val dirty: MutableSet<Long> = ConcurrentHashMap.newKeySet()
+
+  @Volatile
+  private var invalidated = true
+
+  /** Guarded by [index]. */
+  private var maxRecipientId = 0L
+
+  @JvmStatic
+  fun onRecipientChanged(id: RecipientId) {
+    if (!id.isUnknown) {
+      dirty += id.toLong()
+    }
+  }
+
+  /**
+   * Drops everything, to be reloaded on the next search. For when many recipients change at once without individual notifications.
+   */
+  @JvmStatic
+  fun invalidate() {
+    invalidated = true
+  }
+
+  /**
+   * @return The IDs of recipients with a name, username, email or number containing [query], best matches first, or null if the query is too short or matches
+   *         so many recipients that the index isn't worth using.
+   */
+  @WorkerThread
+  fun search(query: String): List<Long>? {
+    val trimmed = query.trim()
+    if (trimmed.length < MIN_QUERY_LENGTH) {
+      return null
+    }
+
+    val results = synchronized(index) {
+      catchUp()
+      index.search(trimmed)
+    }
+
+    return if (results.size > MAX_CANDIDATES) null else results
+  }
+
+  /**
+   * Builds a clause restricting [column] to the recipients that could match every one of [queries], or null if there's nothing to restrict by.
+   */
+  @WorkerThread
+  fun getCandidateClause(column: String, vararg queries: String): String? {
+    var candidates: Set<Long>? = null
+
+    for (query in queries) {
+      val results = search(query) ?: continue
+      candidates = candidates?.intersect(results.toSet()) ?: results.toSet()
+    }
+
+    return candidates?.let { "$column IN (${it.joinToString(",")})" }
+  }
+
+  private fun catchUp() {
+    if (invalidated) {
+      val startTime = System.currentTimeMillis()
+
+      invalidated = false
+      dirty.clear()
+      index.clear()
+      maxRecipientId = 0
+      loadNewRecipients()
+
+      Log.d(TAG, "Indexed ${index.size} recipients in ${System.currentTimeMillis() - startTime} ms.")
+      return
+    }
+
+    if (dirty.isNotEmpty()) {
+      val ids: List<Long> = dirty.toList()
+      dirty.removeAll(ids.toSet())
+
+      for (id in ids) {
+        index.remove(id)
+      }
+
+      val recipientQueries = SqlUtil.buildCollectionQuery(RecipientTable.ID, ids)
+      val groupQueries = SqlUtil.buildCollectionQuery(GroupTable.RECIPIENT_ID, ids)
+
+      for ((recipientQuery, groupQuery) in recipientQueries.zip(groupQueries)) {
+        load(recipientQuery, groupQuery)
+      }
+    }
+
+    loadNewRecipients()
+  }
+
+  private fun loadNewRecipients() {
+    load(
+      recipientQuery = SqlUtil.Query("${RecipientTable.ID} > ?", SqlUtil.buildArgs(maxRecipientId)),
+      groupQuery = SqlUtil.Query("${GroupTable.RECIPIENT_ID} > ?", SqlUtil.buildArgs(maxRecipientId))
+    )
+  }
+
+  private fun load(recipientQuery: SqlUtil.Query, groupQuery: SqlUtil.Query) {
+    val fields: Map<Long, List<String?>> = SignalDatabase.recipients.getSearchIndexFields(recipientQuery)
+    val titles: Map<Long, String?> = SignalDatabase.groups.getSearchIndexTitles(groupQuery)
+
+    for ((id, recipientFields) in fields) {
+      index.put(id, recipientFields + titles[id])
+      maxRecipientId = maxOf(maxRecipientId, id)
+    }
+  }
+}
@@ -28,6 +28,7 @@ import org.signal.core.util.nullIfEmpty
 import org.signal.core.util.optionalString
 import org.signal.core.util.or
 import org.signal.core.util.readToList
+import org.signal.core.util.readToMap
 import org.signal.core.util.readToSet
 import org.signal.core.util.readToSingleBoolean
 import org.signal.core.util.readToSingleInt
@@ -345,6 +346,19 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
 
     private val ID_PROJECTION = arrayOf(ID)
 
+    private val SEARCH_INDEX_PROJECTION = arrayOf(
+      ID,
+      NICKNAME_JOINED_NAME,
+      NICKNAME_GIVEN_NAME,
+      SYSTEM_JOINED_NAME,
+      SYSTEM_GIVEN_NAME,
+      PROFILE_JOINED_NAME,
+      PROFILE_GIVEN_NAME,
+      USERNAME,
+      EMAIL,
+      E164
+    )
+
     private val SEARCH_PROJECTION_WITHOUT_SELF_REMAP = arrayOf(
       ID,
       SYSTEM_JOINED_NAME,
@@ -1386,6 +1400,34 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
     return BulkOperationsHandle(writableDatabase)
   }
 
+  /**
+   * Like [beginBulkSystemContactUpdate], but only clears the saved contact details of recipients whose [SYSTEM_CONTACT_URI] matches [clearInfoFor] and that
+   * haven't been updated by the time finish() is called. Meant for incremental syncs, where only the contacts that changed are read again.
+   */
+  fun beginBulkSystemContactUpdate(clearInfoFor: (String) -> Boolean): BulkOperationsHandle {
+    writableDatabase.beginTransaction()
+
+    val ids: List<Long> = writableDatabase
+      .select(ID, SYSTEM_CONTACT_URI)
+      .from(TABLE_NAME)
+      .where("$SYSTEM_CONTACT_URI NOT NULL")
+      .run()
+      .readToList { cursor ->
+        if (clearInfoFor(cursor.requireNonNullString(SYSTEM_CONTACT_URI))) cursor.requireLong(ID) else null
+      }
+      .filterNotNull()
+
+    for (query in SqlUtil.buildCollectionQuery(ID, ids)) {
+      writableDatabase
+        .update(TABLE_NAME)
+        .values(SYSTEM_INFO_PENDING to 1)
+        .where(query.where, query.whereArgs)
+        .run()
+    }
+
+    return BulkOperationsHandle(writableDatabase)
+  }
+
   fun onUpdatedChatColors(chatColors: ChatColors) {
     val where = "$CUSTOM_CHAT_COLORS_ID = ?"
     val args = SqlUtil.buildArgs(chatColors.id.longValue)
@@ -3601,6 +3643,7 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
       .withVerified(true)
       .excludeId(if (contactSearchQuery.includeSelfMode.includeSelf) null else Recipient.self().id)
       .withSearchQuery(query)
+      .withCandidates(getSearchCandidates(contactSearchQuery.query, contactSearchQuery.includeSelfMode))
       .build()
     val selection = searchSelection.where
     val args = searchSelection.args
@@ -3703,6 +3746,7 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
       .withGroupMembers(true)
       .excludeId(Recipient.self().id)
       .withSearchQuery(query)
+      .withCandidates(getSearchCandidates(inputQuery, IncludeSelfMode.Exclude))
       .build()
 
     val selection = searchSelection.where
@@ -3733,6 +3777,7 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
 
   fun queryAllContacts(inputQuery: String, includeSelfMode: IncludeSelfMode): Cursor? {
     val query = SqlUtil.buildCaseInsensitiveGlobPattern(inputQuery)
+    val candidates = getSearchCandidates(inputQuery, includeSelfMode)
     val selection =
       """
         $BLOCKED = ? AND
@@ -3742,6 +3787,7 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
           ${ContactSearchSelection.E164_SEARCH} OR 
           $EMAIL GLOB ?
         )
+        ${if (candidates != null) "AND $candidates" else ""}
       """
     val args = SqlUtil.buildArgs(0, query, query, query, query)
     return readableDatabase.query(TABLE_NAME, searchProjection(includeSelfMode), selection, args, null, null, null)
@@ -3752,6 +3798,7 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
    */
   fun getAllContactsSubquery(inputQuery: String, includeSelfMode: IncludeSelfMode): SqlUtil.Query {
     val query = SqlUtil.buildCaseInsensitiveGlobPattern(inputQuery)
+    val candidates = getSearchCandidates(inputQuery, includeSelfMode)
 
     //language=sql
     val subquery = """SELECT $ID FROM (
@@ -3762,7 +3809,8 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
           $USERNAME GLOB ? OR 
           ${ContactSearchSelection.E164_SEARCH} OR 
           $EMAIL GLOB ?
-      ))
+      )
+      ${if (candidates != null) "AND $candidates" else ""})
     """
 
     return SqlUtil.Query(subquery, SqlUtil.buildArgs(0, 0, query, query, query, query))
@@ -3773,6 +3821,7 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
    */
   fun getAllContactsWithoutThreads(inputQuery: String): Cursor {
     val query = SqlUtil.buildCaseInsensitiveGlobPattern(inputQuery)
+    val candidates = getSearchCandidates(inputQuery, IncludeSelfMode.Exclude)
 
     //language=sql
     val subquery = """
@@ -3784,11 +3833,38 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
           ${ContactSearchSelection.E164_SEARCH} OR 
           $EMAIL GLOB ?
       )
+      ${if (candidates != null) "AND $candidates" else ""}
     """
 
     return readableDatabase.query(subquery, SqlUtil.buildArgs(0, 0, RegisteredState.NOT_REGISTERED.id, query, query, query, query))
   }
 
+  /**
+   * Narrows a contact search down to the rows [RecipientSearchIndex] says could match. Self is always kept when its name is remapped, since the index
+   * doesn't know about that name.
+   */
+  private fun getSearchCandidates(inputQuery: String, includeSelfMode: IncludeSelfMode): String? {
+    val candidates = RecipientSearchIndex.getCandidateClause("$TABLE_NAME.$ID", inputQuery) ?: return null
+
+    return if (includeSelfMode is IncludeSelfMode.IncludeWithRemap) {
+      "($candidates OR $TABLE_NAME.$ID = ${Recipient.self().id.toLong()})"
+    } else {
+      candidates
+    }
+  }
+
+  /**
+   * Reads the text [RecipientSearchIndex] indexes for each recipient matching [query], keyed by recipient ID.
+   */
+  fun getSearchIndexFields(query: SqlUtil.Query): Map<Long, List<String?>> {
+    return readableDatabase
+      .select(*SEARCH_INDEX_PROJECTION)
+      .from(TABLE_NAME)
+      .where(query.where, query.whereArgs)
+      .run()
+      .readToMap { cursor -> cursor.requireLong(ID) to (1 until SEARCH_INDEX_PROJECTION.size).map { cursor.getString(it) } }
+  }
+
   @JvmOverloads
   fun queryRecipientsForMentions(inputQuery: String, recipientIds: List<RecipientId>? = null): List<Recipient> {
     val query = SqlUtil.buildCaseInsensitiveGlobPattern(inputQuery)
@@ -4799,6 +4875,7 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
       private var excludeId: RecipientId? = null
       private var excludeGroups = false
       private var searchQuery: String? = null
+      private var candidates: String? = null
 
       fun withRegistered(includeRegistered: Boolean): Builder {
         this.includeRegistered = includeRegistered
@@ -4835,6 +4912,14 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
         return this
       }
 
+      /**
+       * Restricts the results to rows matching [candidates], on top of the search query, such as a clause from [RecipientSearchIndex].
+       */
+      fun withCandidates(candidates: String?): Builder {
+        this.candidates = candidates
+        return this
+      }
+
       fun build(): ContactSearchSelection {
         check(!(!includeRegistered && !includeNonRegistered && !includeGroupMembers && !includeVerified)) { "Must include either registered, non-registered, group member, or verified recipients in search" }
         val stringBuilder = StringBuilder("(")
@@ -4933,6 +5018,10 @@ open class RecipientTable(context: Context, databaseHelper: SignalDatabase) : Da
           args.add(excludeId!!.serialize())
         }
 
+        if (candidates != null) {
+          stringBuilder.append(" AND ").append(candidates)
+        }
+
         return ContactSearchSelection(stringBuilder.toString(), args.map { obj: Any? -> obj.toString() }.toTypedArray())
       }
     }
@@ -10,20 +10,20 @@ import android.util.Pair;
 import androidx.annotation.NonNull;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 import androidx.sqlite.db.SupportSQLiteQuery;
+import androidx.sqlite.db.SupportSQLiteStatement;
 
 import net.zetetic.database.sqlcipher.SQLiteStatement;
 import net.zetetic.database.sqlcipher.SQLiteTransactionListener;
 
 import org.signal.core.util.ThreadUtil;
+import org.signal.core.util.concurrent.SignalExecutors;
 import org.signal.core.util.logging.Log;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
@@ -43,17 +43,14 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
   public static final int CONFLICT_REPLACE  = 5;
   public static final int CONFLICT_NONE     = 0;
 
-  private static final String KEY_QUERY  = "query";
-  private static final String KEY_TABLE  = "table";
-  private static final String KEY_THREAD = "thread";
-  private static final String NAME_LOCK  = "LOCK";
-
   private final net.zetetic.database.sqlcipher.SQLiteDatabase wrapped;
 
   private static final ThreadLocal<Long>          TRANSACTION_HOLD_START_NS = new ThreadLocal<>();
   private static final ThreadLocal<Set<Runnable>> PENDING_POST_SUCCESSFUL_TRANSACTION_TASKS;
   private static final ThreadLocal<Set<Runnable>> POST_SUCCESSFUL_TRANSACTION_TASKS;
 
+  private static final ThreadLocal<CompiledStatementCache> COMPILED_STATEMENTS = new ThreadLocal<>();
+
   static {
     PENDING_POST_SUCCESSFUL_TRANSACTION_TASKS = new ThreadLocal<>();
     POST_SUCCESSFUL_TRANSACTION_TASKS         = new ThreadLocal<>();
@@ -80,8 +77,9 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
       traceLockStart();
     }
 
-    long startNs = locked ? System.nanoTime() : 0L;
+    long startNs = System.nanoTime();
     returnable.run();
+    recordStatement(QueryStatistics.shapeOf(QueryStatistics.Kind.RAW, null, query), 0, System.nanoTime() - startNs);
     if (locked) {
       warnIfSlowDirectWrite(methodName, null, query, startNs);
     }
@@ -92,27 +90,24 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
   }
 
   private <E> E traceSql(String methodName, String query, boolean locked, Returnable<E> returnable) {
-    return traceSql(methodName, null, query, locked, returnable);
+    return traceSql(methodName, QueryStatistics.Kind.RAW, null, query, locked, returnable);
   }
 
-  private <E> E traceSql(String methodName, String table, String query, boolean locked, Returnable<E> returnable) {
+  private <E> E traceSql(String methodName, QueryStatistics.Kind kind, String table, String query, boolean locked, Returnable<E> returnable) {
     if (locked) {
       traceLockStart();
     }
 
-    Map<String, String> params = new HashMap<>();
-    if (query != null) {
-      params.put(KEY_QUERY, query);
-    }
-    if (table != null) {
-      params.put(KEY_TABLE, table);
-    }
-
-    long startNs = System.nanoTime();
-    E result = returnable.run();
+    long startNs     = System.nanoTime();
+    E    result      = returnable.run();
+    long executionNs = System.nanoTime();
     if (result instanceof Cursor) {
-      // Triggers filling the window (which is about to be done anyway), but lets us capture that time inside the trace
+      // Triggers filling the window (which is about to be done anyway), so that the statement is actually run inside the trace.
+      // Everything before this is getting a connection and compiling the statement.
       ((Cursor) result).getCount();
+      recordStatement(QueryStatistics.shapeOf(kind, table, query), executionNs - startNs, System.nanoTime() - executionNs);
+    } else {
+      recordStatement(QueryStatistics.shapeOf(kind, table, query), 0, System.nanoTime() - startNs);
     }
     if (locked) {
       warnIfSlowDirectWrite(methodName, table, query, startNs);
@@ -127,6 +122,39 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
     return result;
   }
 
+  private void recordStatement(@NonNull QueryStatistics.Shape shape, long waitNs, long executionNs) {
+    if (shape.record(waitNs, executionNs)) {
+      SignalExecutors.BOUNDED.execute(() -> captureQueryPlan(shape));
+    }
+  }
+
+  /**
+   * Runs in the background, off the thread that ran the slow statement, which may be holding a transaction or be waited on.
+   * Explains the shape's stored sample SQL, and goes straight to the wrapped database so that it isn't recorded itself.
+   */
+  private void captureQueryPlan(@NonNull QueryStatistics.Shape shape) {
+    String sql = shape.getExplainableSql();
+    if (sql == null) {
+      return;
+    }
+
+    try (Cursor cursor = wrapped.rawQuery("EXPLAIN QUERY PLAN " + sql, (String[]) null)) {
+      StringBuilder plan   = new StringBuilder();
+      int           detail = cursor.getColumnIndexOrThrow("detail");
+
+      while (cursor.moveToNext()) {
+        if (plan.length() > 0) {
+          plan.append('\n');
+        }
+        plan.append(cursor.getString(detail));
+      }
+
+      shape.setQueryPlan(plan.toString());
+    } catch (SQLException | IllegalArgumentException | IllegalStateException e) {
+      Log.w(TAG, "Failed to capture the query plan for a slow statement.", e);
+    }
+  }
+
   public net.zetetic.database.sqlcipher.SQLiteDatabase getSqlCipherDatabase() {
     return wrapped;
   }
@@ -178,6 +206,103 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
     return tasks;
   }
 
+  /**
+   * Runs an INSERT through a compiled statement that's kept for the next call on this thread with the same SQL, rather than
+   * building and compiling the statement each time like {@link #insert(String, String, ContentValues)}. Meant for hot paths,
+   * with {@code sql} being a constant with a {@code ?} for every argument {@code binder} binds.
+   *
+   * @return The row ID of the new row. Unlike {@link #insert(String, String, ContentValues)}, failures are thrown.
+   */
+  public long insertPrepared(@NonNull String table, @NonNull String sql, @NonNull StatementBinder binder) {
+    return traceSql("insertPrepared()", QueryStatistics.Kind.INSERT, table, null, true, () -> {
+      CompiledStatementCache.CachedStatement statement = acquireStatement(sql);
+      try {
+        binder.bind(statement.getArgs());
+        return statement.getStatement().executeInsert();
+      } finally {
+        statement.release();
+      }
+    });
+  }
+
+  /**
+   * Does the same as {@link #insert(String, String, ContentValues)}, including returning -1 if the insert fails, but reuses the
+   * compiled statement for the next insert on this thread with the same set of columns. For inserts whose columns depend on
+   * what's being inserted; prefer {@link #insertPrepared(String, String, StatementBinder)} when they don't.
+   */
+  public long insertPrepared(@NonNull String table, @NonNull ContentValues values) {
+    if (values.isEmpty()) {
+      return insert(table, null, values);
+    }
+
+    Set<String>   columns = values.keySet();
+    StringBuilder sql     = new StringBuilder(32 + table.length() + columns.size() * 24);
+
+    sql.append("INSERT INTO ").append(table).append(" (");
+    for (String column : columns) {
+      sql.append(column).append(", ");
+    }
+    sql.setLength(sql.length() - 2);
+    sql.append(") VALUES (?");
+    for (int i = 1; i < columns.size(); i++) {
+      sql.append(", ?");
+    }
+    sql.append(')');
+
+    try {
+      return insertPrepared(table, sql.toString(), args -> {
+        for (String column : columns) {
+          args.bindValue(values.get(column));
+        }
+      });
+    } catch (SQLException e) {
+      Log.w(TAG, "Failed to insert into " + table, e);
+      return -1;
+    }
+  }
+
+  /**
+   * The UPDATE or DELETE counterpart to {@link #insertPrepared(String, String, StatementBinder)}.
+   *
+   * @return The number of rows changed.
+   */
+  public int updatePrepared(@NonNull String table, @NonNull String sql, @NonNull StatementBinder binder) {
+    return traceSql("updatePrepared()", QueryStatistics.Kind.UPDATE, table, sql, true, () -> {
+      CompiledStatementCache.CachedStatement statement = acquireStatement(sql);
+      try {
+        binder.bind(statement.getArgs());
+        return statement.getStatement().executeUpdateDelete();
+      } finally {
+        statement.release();
+      }
+    });
+  }
+
+  /**
+   * Compiles a statement that will be kept and reused by {@link #insertPrepared(String, String, StatementBinder)} and friends.
+   */
+  protected @NonNull SupportSQLiteStatement compileReusableStatement(@NonNull String sql) {
+    return wrapped.compileStatement(sql);
+  }
+
+  private @NonNull CompiledStatementCache.CachedStatement acquireStatement(@NonNull String sql) {
+    // Every access to the database makes a new wrapper, so the cache goes by what's being wrapped
+    Object                 owner = wrapped != null ? wrapped : this;
+    CompiledStatementCache cache = COMPILED_STATEMENTS.get();
+
+    if (cache == null || cache.getOwner() != owner) {
+      cache = new CompiledStatementCache(owner);
+      COMPILED_STATEMENTS.set(cache);
+    }
+
+    CompiledStatementCache.CachedStatement statement = cache.acquire(sql);
+    if (statement == null) {
+      statement = cache.add(sql, compileReusableStatement(sql));
+    }
+
+    return statement;
+  }
+
   private interface Returnable<E> {
     E run();
   }
@@ -240,13 +365,13 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
   @Override
   public Cursor query(SupportSQLiteQuery query) {
     DatabaseMonitor.onSql(query.getSql(), null);
-    return traceSql("query(SupportSQLiteQuery)", null, query.getSql(), false, () -> wrapped.query(query));
+    return traceSql("query(SupportSQLiteQuery)", QueryStatistics.Kind.RAW, null, query.getSql(), false, () -> wrapped.query(query));
   }
 
   @Override
   public Cursor query(SupportSQLiteQuery query, CancellationSignal cancellationSignal) {
     DatabaseMonitor.onSql(query.getSql(), null);
-    return traceSql("query(SupportSQLiteQuery, CancellationSignal)", null, query.getSql(), false, () -> wrapped.query(query, cancellationSignal));
+    return traceSql("query(SupportSQLiteQuery, CancellationSignal)", QueryStatistics.Kind.RAW, null, query.getSql(), false, () -> wrapped.query(query, cancellationSignal));
   }
 
   @Override
@@ -315,7 +440,9 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
             getPendingPostSuccessfulTransactionTasks().clear();
           }
         });
-        long waitMs = (System.nanoTime() - waitStartNs) / 1_000_000L;
+        long waitNs = System.nanoTime() - waitStartNs;
+        long waitMs = waitNs / 1_000_000L;
+        QueryStatistics.TRANSACTION.waitTime.record(waitNs);
         if (waitMs >= IssueReporter.SLOW_LOCK_LOW_PRIORITY_MS) {
           Throwable throwable = new Throwable();
           Log.w(TAG, "Slow write-lock acquire: waited " + waitMs + "ms to BEGIN", throwable);
@@ -332,7 +459,9 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
     traceLockEnd();
     if (holdStartNs != null && !wrapped.inTransaction()) {
       TRANSACTION_HOLD_START_NS.remove();
-      long holdMs = (System.nanoTime() - holdStartNs) / 1_000_000L;
+      long holdNs = System.nanoTime() - holdStartNs;
+      long holdMs = holdNs / 1_000_000L;
+      QueryStatistics.TRANSACTION.executionTime.record(holdNs);
       if (holdMs >= IssueReporter.SLOW_WRITE_LOW_PRIORITY_MS) {
         Throwable throwable = new Throwable();
         Log.w(TAG, "Slow transaction: held write lock for " + holdMs + "ms", throwable);
@@ -352,77 +481,77 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
 
   public Cursor query(boolean distinct, String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
     DatabaseMonitor.onQuery(distinct, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
-    return traceSql("query(9)", table, selection, false, () -> wrapped.query(distinct, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit));
+    return traceSql("query(9)", QueryStatistics.Kind.SELECT, table, selection, false, () -> wrapped.query(distinct, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit));
   }
 
   public Cursor queryWithFactory(net.zetetic.database.sqlcipher.SQLiteDatabase.CursorFactory cursorFactory, boolean distinct, String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
     DatabaseMonitor.onQuery(distinct, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
-    return traceSql("queryWithFactory()", table, selection, false, () -> wrapped.queryWithFactory(cursorFactory, distinct, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit));
+    return traceSql("queryWithFactory()", QueryStatistics.Kind.SELECT, table, selection, false, () -> wrapped.queryWithFactory(cursorFactory, distinct, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit));
   }
 
   public Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy) {
     DatabaseMonitor.onQuery(false, table, columns, selection, selectionArgs, groupBy, having, orderBy, null);
-    return traceSql("query(7)", table, selection, false, () -> wrapped.query(table, columns, selection, selectionArgs, groupBy, having, orderBy));
+    return traceSql("query(7)", QueryStatistics.Kind.SELECT, table, selection, false, () -> wrapped.query(table, columns, selection, selectionArgs, groupBy, having, orderBy));
   }
 
   public Cursor query(String table, String[] columns, String selection, String[] selectionArgs, String groupBy, String having, String orderBy, String limit) {
     DatabaseMonitor.onQuery(false, table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
-    return traceSql("query(8)", table, selection, false, () -> wrapped.query(table, columns, selection, selectionArgs, groupBy, having, orderBy, limit));
+    return traceSql("query(8)", QueryStatistics.Kind.SELECT, table, selection, false, () -> wrapped.query(table, columns, selection, selectionArgs, groupBy, having, orderBy, limit));
   }
 
   public Cursor rawQuery(String sql, String[] selectionArgs) {
     DatabaseMonitor.onSql(sql, selectionArgs);
-    return traceSql("rawQuery(2a)", null, sql, false, () -> wrapped.rawQuery(sql, selectionArgs));
+    return traceSql("rawQuery(2a)", QueryStatistics.Kind.RAW, null, sql, false, () -> wrapped.rawQuery(sql, selectionArgs));
   }
 
   public Cursor rawQuery(String sql, Object... args) {
     DatabaseMonitor.onSql(sql, args);
-    return traceSql("rawQuery(2b)", null, sql, false, () -> wrapped.rawQuery(sql, args));
+    return traceSql("rawQuery(2b)", QueryStatistics.Kind.RAW, null, sql, false, () -> wrapped.rawQuery(sql, args));
   }
 
   public Cursor rawQueryWithFactory(net.zetetic.database.sqlcipher.SQLiteDatabase.CursorFactory cursorFactory, String sql, String[] selectionArgs, String editTable) {
     DatabaseMonitor.onSql(sql, selectionArgs);
-    return traceSql("rawQueryWithFactory()", null, sql, false, () -> wrapped.rawQueryWithFactory(cursorFactory, sql, selectionArgs, editTable));
+    return traceSql("rawQueryWithFactory()", QueryStatistics.Kind.RAW, null, sql, false, () -> wrapped.rawQueryWithFactory(cursorFactory, sql, selectionArgs, editTable));
   }
 
   public Cursor rawQuery(String sql, String[] selectionArgs, int initialRead, int maxRead) {
     DatabaseMonitor.onSql(sql, selectionArgs);
-    return traceSql("rawQuery(4)", null, sql, false, () -> wrapped.rawQuery(sql, selectionArgs, initialRead, maxRead));
+    return traceSql("rawQuery(4)", QueryStatistics.Kind.RAW, null, sql, false, () -> wrapped.rawQuery(sql, selectionArgs, initialRead, maxRead));
   }
 
   public long insert(String table, String nullColumnHack, ContentValues values) {
-    return traceSql("insert()", table, null, true, () -> wrapped.insert(table, nullColumnHack, values));
+    return traceSql("insert()", QueryStatistics.Kind.INSERT, table, null, true, () -> wrapped.insert(table, nullColumnHack, values));
   }
 
   public long insertOrThrow(String table, String nullColumnHack, ContentValues values) throws SQLException {
-    return traceSql("insertOrThrow()", table, null, true, () -> wrapped.insertOrThrow(table, nullColumnHack, values));
+    return traceSql("insertOrThrow()", QueryStatistics.Kind.INSERT, table, null, true, () -> wrapped.insertOrThrow(table, nullColumnHack, values));
   }
 
   public long replace(String table, String nullColumnHack, ContentValues initialValues) {
-    return traceSql("replace()", table, null, true,() -> wrapped.replace(table, nullColumnHack, initialValues));
+    return traceSql("replace()", QueryStatistics.Kind.INSERT, table, null, true,() -> wrapped.replace(table, nullColumnHack, initialValues));
   }
 
   public long replaceOrThrow(String table, String nullColumnHack, ContentValues initialValues) throws SQLException {
-    return traceSql("replaceOrThrow()", table, null, true, () -> wrapped.replaceOrThrow(table, nullColumnHack, initialValues));
+    return traceSql("replaceOrThrow()", QueryStatistics.Kind.INSERT, table, null, true, () -> wrapped.replaceOrThrow(table, nullColumnHack, initialValues));
   }
 
   public long insertWithOnConflict(String table, String nullColumnHack, ContentValues initialValues, int conflictAlgorithm) {
-    return traceSql("insertWithOnConflict()", table, null, true, () -> wrapped.insertWithOnConflict(table, nullColumnHack, initialValues, conflictAlgorithm));
+    return traceSql("insertWithOnConflict()", QueryStatistics.Kind.INSERT, table, null, true, () -> wrapped.insertWithOnConflict(table, nullColumnHack, initialValues, conflictAlgorithm));
   }
 
   public int delete(String table, String whereClause, String[] whereArgs) {
     DatabaseMonitor.onDelete(table, whereClause, whereArgs);
-    return traceSql("delete()", table, whereClause, true, () -> wrapped.delete(table, whereClause, whereArgs));
+    return traceSql("delete()", QueryStatistics.Kind.DELETE, table, whereClause, true, () -> wrapped.delete(table, whereClause, whereArgs));
   }
 
   public int update(String table, ContentValues values, String whereClause, String[] whereArgs) {
     DatabaseMonitor.onUpdate(table, values, whereClause, whereArgs);
-    return traceSql("update()", table, whereClause, true, () -> wrapped.update(table, values, whereClause, whereArgs));
+    return traceSql("update()", QueryStatistics.Kind.UPDATE, table, whereClause, true, () -> wrapped.update(table, values, whereClause, whereArgs));
   }
 
   public int updateWithOnConflict(String table, ContentValues values, String whereClause, String[] whereArgs, int conflictAlgorithm) {
     DatabaseMonitor.onUpdate(table, values, whereClause, whereArgs);
-    return traceSql("updateWithOnConflict()", table, whereClause, true, () -> wrapped.updateWithOnConflict(table, values, whereClause, whereArgs, conflictAlgorithm));
+    return traceSql("updateWithOnConflict()", QueryStatistics.Kind.UPDATE, table, whereClause, true, () -> wrapped.updateWithOnConflict(table, values, whereClause, whereArgs, conflictAlgorithm));
   }
 
   public void execSQL(String sql) throws SQLException {
@@ -542,7 +671,7 @@ public class SQLiteDatabase implements SupportSQLiteDatabase {
   }
 
   private void warnIfSlowDirectWrite(String methodName, String table, String query, long startNs) {
-    if (wrapped.inTransaction()) {
+    if (inTransaction()) {
       return;
     }
 
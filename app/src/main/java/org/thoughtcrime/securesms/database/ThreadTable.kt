@@ -65,6 +65,7 @@ import org.thoughtcrime.securesms.jobs.DeleteAbandonedAttachmentsJob
 import org.thoughtcrime.securesms.jobs.MultiDeviceDeleteSyncJob
 import org.thoughtcrime.securesms.jobs.OptimizeMessageSearchIndexJob
 import org.thoughtcrime.securesms.keyvalue.SignalStore
+import org.thoughtcrime.securesms.linkpreview.LinkPreviewCache
 import org.thoughtcrime.securesms.mms.SlideDeck
 import org.thoughtcrime.securesms.mms.StickerSlide
 import org.thoughtcrime.securesms.notifications.v2.ConversationId
@@ -1410,6 +1411,7 @@ class ThreadTable(context: Context, databaseHelper: SignalDatabase) : DatabaseTa
 
     notifyConversationListListeners()
     ConversationUtil.clearAllShortcuts(context)
+    LinkPreviewCache.instance.clear()
   }
 
   fun getThreadIdIfExistsFor(recipientId: RecipientId): Long {
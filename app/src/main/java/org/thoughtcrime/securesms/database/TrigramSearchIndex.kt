@@ -0,0 +1,225 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import org.signal.core.util.SqlUtil
+
+/**
+ * An in-memory substring index over a few short text fields per ID, meant for search-as-you-type over names.
+ *
+ * Fields are run through [fold] and broken into trigrams. A query of three or more characters only has to look at the IDs that have every one of its
+ * trigrams, while shorter ones fall back to checking every entry, which is still far cheaper than scanning a table. Either way, every candidate is checked
+ * for an actual substring match, so results are exact with respect to the folded text.
+ *
+ * Not thread safe.
+ */
+class TrigramSearchIndex(private val fold: (String) -> String = SqlUtil::foldForSearch) {
+
+  companion object {
+    private const val RANK_SHIFT = 56
+    private const val ID_MASK = (1L shl RANK_SHIFT) - 1
+  }
+
+  private val entries: MutableMap<Long, Entry> = HashMap()
+  private val postings: MutableMap<Long, SortedLongList> = HashMap()
+
+  val size: Int
+    get() = entries.size
+
+  /**
+   * Adds or replaces the fields for [id]. An ID without any non-empty fields is removed.
+   */
+  fun put(id: Long, fields: List<String?>) {
+    remove(id)
+
+    val folded: List<String> = fields.mapNotNull { field -> if (field.isNullOrEmpty()) null else fold(field) }
+    if (folded.isEmpty()) {
+      return
+    }
+
+    val trigrams: MutableSet<Long> = HashSet()
+    for (field in folded) {
+      for (i in 0..field.length - 3) {
+        trigrams += trigramAt(field, i)
+      }
+    }
+
+    val entry = Entry(folded, trigrams.toLongArray())
+    entries[id] = entry
+
+    for (trigram in entry.trigrams) {
+      postings.getOrPut(trigram) { SortedLongList() }.add(id)
+    }
+  }
+
+  fun remove(id: Long) {
+    val entry = entries.remove(id) ?: return
+
+    for (trigram in entry.trigrams) {
+      val posting = postings[trigram] ?: continue
+      posting.remove(id)
+
+      if (posting.size == 0) {
+        postings.remove(trigram)
+      }
+    }
+  }
+
+  fun clear() {
+    entries.clear()
+    postings.clear()
+  }
+
+  /**
+   * @return The IDs with a field containing [query], best matches first: a field equal to the query, then a field starting with it, then a word starting with
+   *         it, then anything else. Ties are broken by ID. An empty query matches nothing.
+   */
+  fun search(query: String): List<Long> {
+    val folded = fold(query)
+
+    if (folded.isEmpty()) {
+      return emptyList()
+    }
+
+    // Rank in the high bits and ID in the low ones, so a plain sort orders by both
+    var ranked = LongArray(16)
+    var count = 0
+
+    fun add(id: Long, entry: Entry) {
+      val rank = entry.rank(folded)
+      if (rank >= 0) {
+        if (count == ranked.size) {
+          ranked = ranked.copyOf(count * 2)
+        }
+        ranked[count++] = (rank.toLong() shl RANK_SHIFT) or id
+      }
+    }
+
+    if (folded.length < 3) {
+      for ((id, entry) in entries) {
+        add(id, entry)
+      }
+    } else {
+      val candidates = intersectPostings(folded) ?: return emptyList()
+      for (id in candidates) {
+        add(id, entries.getValue(id))
+      }
+    }
+
+    ranked.sort(0, count)
+
+    return LongArray(count) { ranked[it] and ID_MASK }.asList()
+  }
+
+  /**
+   * @return The IDs that have every trigram in [folded], or null if some trigram isn't in the index at all.
+   */
+  private fun intersectPostings(folded: String): LongArray? {
+    val lists: MutableList<SortedLongList> = ArrayList()
+    for (i in 0..folded.length - 3) {
+      lists += postings[trigramAt(folded, i)] ?: return null
+    }
+
+    lists.sortBy { it.size }
+
+    val smallest = lists[0]
+    val result = LongArray(smallest.size)
+    var count = 0
+
+    for (i in 0 until smallest.size) {
+      val id = smallest[i]
+      var inAll = true
+
+      for (j in 1 until lists.size) {
+        if (!lists[j].contains(id)) {
+          inAll = false
+          break
+        }
+      }
+
+      if (inAll) {
+        result[count++] = id
+      }
+    }
+
+    return result.copyOf(count)
+  }
+
+  private fun trigramAt(text: String, i: Int): Long {
+    return (text[i].code.toLong() shl 32) or (text[i + 1].code.toLong() shl 16) or text[i + 2].code.toLong()
+  }
+
+  private class Entry(val fields: List<String>, val trigrams: LongArray) {
+    /**
+     * @return 0 for a field equal to [query], 1 for a field starting with it, 2 for a word starting with it, 3 for any other match, or -1 for no match.
+     */
+    fun rank(query: String): Int {
+      var best = -1
+
+      for (field in fields) {
+        val index = field.indexOf(query)
+        if (index < 0) {
+          continue
+        }
+
+        val rank = when {
+          index == 0 && field.length == query.length -> 0
+          index == 0 -> 1
+          field[index - 1] == ' ' || field.indexOf(" $query", index) >= 0 -> 2
+          else -> 3
+        }
+
+        if (best < 0 || rank < best) {
+          best = rank
+        }
+      }
+
+      return best
+    }
+  }
+
+  /**
+   * A growable, sorted array of IDs. Most posting lists are short, and IDs mostly arrive in increasing order, so inserts are cheap in practice.
+   */
+  private class SortedLongList {
+    private var values = LongArray(4)
+
+    var size = 0
+      private set
+
+    operator fun get(index: Int): Long = values[index]
+
+    fun contains(value: Long): Boolean {
+      return values.binarySearch(value, 0, size) >= 0
+    }
+
+    fun add(value: Long) {
+      val search = values.binarySearch(value, 0, size)
+      if (search >= 0) {
+        return
+      }
+
+      val insertAt = -(search + 1)
+      if (size == values.size) {
+        values = values.copyOf(size * 2)
+      }
+
+      System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt)
+      values[insertAt] = value
+      size++
+    }
+
+    fun remove(value: Long) {
+      val index = values.binarySearch(value, 0, size)
+      if (index < 0) {
+        return
+      }
+
+      System.arraycopy(values, index + 1, values, index, size - index - 1)
+      size--
+    }
+  }
+}
@@ -2,9 +2,11 @@ package org.thoughtcrime.securesms.database.loaders;
 
 import android.content.Context;
 import android.database.Cursor;
-import android.util.SparseArray;
+import android.util.SparseIntArray;
 
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.loader.content.AsyncTaskLoader;
 
 import org.signal.core.util.ThreadUtil;
@@ -17,10 +19,14 @@ import org.thoughtcrime.securesms.util.CalendarDateOnly;
 
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 
+/**
+ * Loads a compact, column-wise index of a thread's media and groups it into sections. The full {@link MediaTable.MediaRecord}s
+ * are not part of the result; they're loaded a page at a time as the items are shown and handed to
+ * {@link GroupedThreadMedia#setRecords(List, RangeListener)}.
+ */
 public final class GroupedThreadMediaLoader extends AsyncTaskLoader<GroupedThreadMediaLoader.GroupedThreadMedia> {
 
   @SuppressWarnings("unused")
@@ -30,19 +36,16 @@ public final class GroupedThreadMediaLoader extends AsyncTaskLoader<GroupedThrea
   private final MediaLoader.MediaType mediaType;
   private final MediaTable.Sorting    sorting;
   private final long                  threadId;
-  private final int                   limit;
 
   public GroupedThreadMediaLoader(@NonNull Context context,
                                   long threadId,
                                   @NonNull MediaLoader.MediaType mediaType,
-                                  @NonNull MediaTable.Sorting sorting,
-                                  int limit)
+                                  @NonNull MediaTable.Sorting sorting)
   {
     super(context);
     this.threadId  = threadId;
     this.mediaType = mediaType;
     this.sorting   = sorting;
-    this.limit     = limit;
     this.observer  = () -> ThreadUtil.runOnMain(this::onContentChanged);
 
     onContentChanged();
@@ -72,26 +75,21 @@ public final class GroupedThreadMediaLoader extends AsyncTaskLoader<GroupedThrea
                                     ? new RoughSizeGroupingMethod(context)
                                     : new DateGroupingMethod(context, CalendarDateOnly.getInstance());
 
-    PopulatedGroupedThreadMedia mediaGrouping = new PopulatedGroupedThreadMedia(groupingMethod);
-
     AppDependencies.getDatabaseObserver().registerAttachmentUpdatedObserver(observer);
 
-    try (Cursor cursor = ThreadMediaLoader.createThreadMediaCursor(context, threadId, mediaType, sorting, limit)) {
-      while (cursor != null && cursor.moveToNext()) {
-        mediaGrouping.add(MediaTable.MediaRecord.from(cursor));
-      }
+    MediaTable.MediaIndex index;
+    try (Cursor cursor = ThreadMediaLoader.createThreadMediaCursor(context, threadId, mediaType, sorting, MediaTable.Projection.INDEX)) {
+      index = MediaTable.MediaIndex.from(cursor);
     }
 
-    if (sorting == MediaTable.Sorting.Oldest || sorting == MediaTable.Sorting.Largest) {
-      return new ReversedGroupedThreadMedia(mediaGrouping);
-    } else {
-      return mediaGrouping;
-    }
+    boolean reverseSections = sorting == MediaTable.Sorting.Oldest || sorting == MediaTable.Sorting.Largest;
+
+    return PopulatedGroupedThreadMedia.create(index, groupingMethod, reverseSections);
   }
 
   public interface GroupingMethod {
 
-   int groupForRecord(@NonNull MediaTable.MediaRecord mediaRecord);
+   int groupFor(long date, long size);
 
    @NonNull String groupName(int groupNo);
   }
@@ -124,9 +122,7 @@ public final class GroupedThreadMediaLoader extends AsyncTaskLoader<GroupedThrea
     }
 
     @Override
-    public int groupForRecord(@NonNull MediaTable.MediaRecord mediaRecord) {
-      long date = mediaRecord.getDate();
-
+    public int groupFor(long date, long size) {
       if (date > todayStart)     return TODAY;
       if (date > yesterdayStart) return YESTERDAY;
       if (date > thisWeekStart)  return THIS_WEEK;
@@ -184,10 +180,7 @@ public final class GroupedThreadMediaLoader extends AsyncTaskLoader<GroupedThrea
     }
 
     @Override
-    public int groupForRecord(@NonNull MediaTable.MediaRecord mediaRecord) {
-      if (mediaRecord.getAttachment() == null) return SMALL;
-      long size = mediaRecord.getAttachment().size;
-
+    public int groupFor(long date, long size) {
       if (size < MB)      return SMALL;
       if (size < 20 * MB) return MEDIUM;
 
@@ -211,10 +204,52 @@ public final class GroupedThreadMediaLoader extends AsyncTaskLoader<GroupedThrea
 
     public abstract int getSectionItemCount(int section);
 
-    public abstract @NonNull MediaTable.MediaRecord get(int section, int item);
-
     public abstract @NonNull String getName(int section);
 
+    /**
+     * @return The full record, or null if it hasn't been loaded yet.
+     */
+    public abstract @Nullable MediaTable.MediaRecord get(int section, int item);
+
+    public abstract @Nullable String getContentType(int section, int item);
+
+    public abstract @Nullable String getBlurHash(int section, int item);
+
+    public abstract boolean hasLinkPreview(int section, int item);
+
+    /**
+     * @return The position of an item across all sections, which is what pages are loaded by.
+     */
+    public abstract int getPosition(int section, int item);
+
+    public abstract int getItemCount();
+
+    /**
+     * @return The attachment ID at {@code position}, or 0 for a link preview without an attachment.
+     */
+    public abstract long getAttachmentId(int position);
+
+    public abstract long getMessageId(int position);
+
+    /**
+     * Takes on a newly loaded set of records, one per position, with null for anything not loaded yet.
+     *
+     * @param listener Told about every range of items whose record changed.
+     */
+    @MainThread
+    public abstract void setRecords(@NonNull List<MediaTable.MediaRecord> records, @NonNull RangeListener listener);
+
+    /**
+     * Keeps showing the records of the media this one replaces until its own are loaded, so that a reload doesn't flash
+     * placeholders. Records that no longer line up with the index are ignored by {@link #get(int, int)}.
+     */
+    @MainThread
+    public void retainRecordsFrom(@NonNull GroupedThreadMedia previous) {
+    }
+  }
+
+  public interface RangeListener {
+    void onRangeChanged(int section, int item, int count);
   }
 
   public static class EmptyGroupedThreadMedia extends GroupedThreadMedia {
@@ -230,90 +265,217 @@ public final class GroupedThreadMediaLoader extends AsyncTaskLoader<GroupedThrea
     }
 
     @Override
-    public @NonNull MediaTable.MediaRecord get(int section, int item) {
+    public @NonNull String getName(int section) {
       throw new AssertionError();
     }
 
     @Override
-    public @NonNull String getName(int section) {
+    public @Nullable MediaTable.MediaRecord get(int section, int item) {
       throw new AssertionError();
     }
-  }
 
-  public static class ReversedGroupedThreadMedia extends GroupedThreadMedia {
+    @Override
+    public @Nullable String getContentType(int section, int item) {
+      throw new AssertionError();
+    }
 
-    private final GroupedThreadMedia decorated;
+    @Override
+    public @Nullable String getBlurHash(int section, int item) {
+      throw new AssertionError();
+    }
 
-    ReversedGroupedThreadMedia(@NonNull GroupedThreadMedia decorated) {
-      this.decorated = decorated;
+    @Override
+    public boolean hasLinkPreview(int section, int item) {
+      throw new AssertionError();
     }
 
     @Override
-    public int getSectionCount() {
-      return decorated.getSectionCount();
+    public int getPosition(int section, int item) {
+      throw new AssertionError();
     }
 
     @Override
-    public int getSectionItemCount(int section) {
-      return decorated.getSectionItemCount(getReversedSection(section));
+    public int getItemCount() {
+      return 0;
     }
 
     @Override
-    public @NonNull MediaTable.MediaRecord get(int section, int item) {
-      return decorated.get(getReversedSection(section), item);
+    public long getAttachmentId(int position) {
+      throw new AssertionError();
     }
 
     @Override
-    public @NonNull String getName(int section) {
-      return decorated.getName(getReversedSection(section));
+    public long getMessageId(int position) {
+      throw new AssertionError();
     }
 
-    private int getReversedSection(int section) {
-      return decorated.getSectionCount() - 1 - section;
+    @Override
+    public void setRecords(@NonNull List<MediaTable.MediaRecord> records, @NonNull RangeListener listener) {
     }
   }
 
-  private static class PopulatedGroupedThreadMedia extends GroupedThreadMedia {
+  static final class PopulatedGroupedThreadMedia extends GroupedThreadMedia {
 
-    @NonNull
-    private final GroupingMethod groupingMethod;
+    private final MediaTable.MediaIndex index;
+    private final GroupingMethod        groupingMethod;
+    private final int[]                 sectionKeys;
+    private final int[]                 sectionStarts;
+    private final int[]                 rows;
 
-    private final SparseArray<List<MediaTable.MediaRecord>> records = new SparseArray<>();
+    private List<MediaTable.MediaRecord> records;
 
-    private PopulatedGroupedThreadMedia(@NonNull GroupingMethod groupingMethod) {
+    private PopulatedGroupedThreadMedia(@NonNull MediaTable.MediaIndex index,
+                                        @NonNull GroupingMethod groupingMethod,
+                                        @NonNull int[] sectionKeys,
+                                        @NonNull int[] sectionStarts,
+                                        @NonNull int[] rows)
+    {
+      this.index          = index;
       this.groupingMethod = groupingMethod;
+      this.sectionKeys    = sectionKeys;
+      this.sectionStarts  = sectionStarts;
+      this.rows           = rows;
     }
 
-    private void add(@NonNull MediaTable.MediaRecord mediaRecord) {
-      int groupNo = groupingMethod.groupForRecord(mediaRecord);
+    /**
+     * Groups the rows of {@code index} in a single pass. Sections are ordered by group number, or the reverse, and rows
+     * keep their query order within a section.
+     */
+    static @NonNull PopulatedGroupedThreadMedia create(@NonNull MediaTable.MediaIndex index, @NonNull GroupingMethod groupingMethod, boolean reverseSections) {
+      int            size   = index.getSize();
+      int[]          groups = new int[size];
+      SparseIntArray counts = new SparseIntArray();
+
+      for (int row = 0; row < size; row++) {
+        int group = groupingMethod.groupFor(index.getDate(row), index.getSize(row));
 
-      List<MediaTable.MediaRecord> mediaRecords = records.get(groupNo);
-      if (mediaRecords == null) {
-        mediaRecords = new LinkedList<>();
-        records.put(groupNo, mediaRecords);
+        groups[row] = group;
+        counts.put(group, counts.get(group) + 1);
       }
 
-      mediaRecords.add(mediaRecord);
+      int            sectionCount   = counts.size();
+      int[]          sectionKeys    = new int[sectionCount];
+      int[]          sectionStarts  = new int[sectionCount + 1];
+      int[]          nextPositions  = new int[sectionCount];
+      SparseIntArray groupToSection = new SparseIntArray(sectionCount);
+
+      for (int section = 0; section < sectionCount; section++) {
+        int keyIndex = reverseSections ? sectionCount - 1 - section : section;
+
+        sectionKeys[section]       = counts.keyAt(keyIndex);
+        sectionStarts[section + 1] = sectionStarts[section] + counts.valueAt(keyIndex);
+        nextPositions[section]     = sectionStarts[section];
+        groupToSection.put(sectionKeys[section], section);
+      }
+
+      int[] rows = new int[size];
+
+      for (int row = 0; row < size; row++) {
+        int section = groupToSection.get(groups[row]);
+        rows[nextPositions[section]++] = row;
+      }
+
+      return new PopulatedGroupedThreadMedia(index, groupingMethod, sectionKeys, sectionStarts, rows);
     }
 
     @Override
     public int getSectionCount() {
-      return records.size();
+      return sectionKeys.length;
     }
 
     @Override
     public int getSectionItemCount(int section) {
-      return records.get(records.keyAt(section)).size();
+      return sectionStarts[section + 1] - sectionStarts[section];
     }
 
     @Override
-    public @NonNull MediaTable.MediaRecord get(int section, int item) {
-      return records.get(records.keyAt(section)).get(item);
+    public @NonNull String getName(int section) {
+      return groupingMethod.groupName(sectionKeys[section]);
     }
 
     @Override
-    public @NonNull String getName(int section) {
-      return groupingMethod.groupName(records.keyAt(section));
+    public @Nullable MediaTable.MediaRecord get(int section, int item) {
+      int position = getPosition(section, item);
+
+      if (records == null) {
+        return null;
+      }
+
+      MediaTable.MediaRecord record = records.get(position);
+
+      return record != null && index.matches(rows[position], record) ? record : null;
+    }
+
+    @Override
+    public @Nullable String getContentType(int section, int item) {
+      return index.getContentType(rows[getPosition(section, item)]);
+    }
+
+    @Override
+    public @Nullable String getBlurHash(int section, int item) {
+      return index.getBlurHash(rows[getPosition(section, item)]);
+    }
+
+    @Override
+    public boolean hasLinkPreview(int section, int item) {
+      return index.hasLinkPreview(rows[getPosition(section, item)]);
+    }
+
+    @Override
+    public int getPosition(int section, int item) {
+      return sectionStarts[section] + item;
+    }
+
+    @Override
+    public int getItemCount() {
+      return rows.length;
+    }
+
+    @Override
+    public long getAttachmentId(int position) {
+      return index.getAttachmentId(rows[position]);
+    }
+
+    @Override
+    public long getMessageId(int position) {
+      return index.getMessageId(rows[position]);
+    }
+
+    @Override
+    public void retainRecordsFrom(@NonNull GroupedThreadMedia previous) {
+      if (records == null && previous instanceof PopulatedGroupedThreadMedia) {
+        List<MediaTable.MediaRecord> previousRecords = ((PopulatedGroupedThreadMedia) previous).records;
+
+        if (previousRecords != null && previousRecords.size() == rows.length) {
+          records = previousRecords;
+        }
+      }
+    }
+
+    @Override
+    public void setRecords(@NonNull List<MediaTable.MediaRecord> records, @NonNull RangeListener listener) {
+      if (records.size() != rows.length) {
+        // Loaded for a previous index. The invalidation that came with this one will bring the right records.
+        return;
+      }
+
+      List<MediaTable.MediaRecord> previous = this.records;
+      this.records = records;
+
+      for (int section = 0; section < sectionKeys.length; section++) {
+        int runStart = -1;
+
+        for (int position = sectionStarts[section]; position <= sectionStarts[section + 1]; position++) {
+          boolean changed = position < sectionStarts[section + 1] && (previous == null ? records.get(position) != null : previous.get(position) != records.get(position));
+
+          if (changed && runStart == -1) {
+            runStart = position;
+          } else if (!changed && runStart != -1) {
+            listener.onRangeChanged(section, runStart - sectionStarts[section], position - runStart);
+            runStart = -1;
+          }
+        }
+      }
     }
   }
 }
@@ -27,22 +27,22 @@ public final class ThreadMediaLoader extends MediaLoader {
 
   @Override
   public Cursor getCursor() {
-    return createThreadMediaCursor(context, threadId, mediaType, sorting, 0);
+    return createThreadMediaCursor(context, threadId, mediaType, sorting, MediaTable.Projection.FULL);
   }
 
   static Cursor createThreadMediaCursor(@NonNull Context context,
                                         long threadId,
                                         @NonNull MediaType mediaType,
                                         @NonNull MediaTable.Sorting sorting,
-                                        int limit) {
+                                        @NonNull MediaTable.Projection projection) {
     MediaTable mediaDatabase = SignalDatabase.media();
 
     switch (mediaType) {
-      case GALLERY : return mediaDatabase.getGalleryMediaForThread(threadId, sorting, limit);
-      case DOCUMENT: return mediaDatabase.getDocumentMediaForThread(threadId, sorting, limit);
-      case AUDIO   : return mediaDatabase.getAudioMediaForThread(threadId, sorting, limit);
-      case LINK    : return mediaDatabase.getLinkMediaForThread(threadId, sorting);
-      case ALL     : return mediaDatabase.getAllMediaForThread(threadId, sorting, limit);
+      case GALLERY : return mediaDatabase.getGalleryMediaForThread(threadId, sorting, 0, projection);
+      case DOCUMENT: return mediaDatabase.getDocumentMediaForThread(threadId, sorting, 0, projection);
+      case AUDIO   : return mediaDatabase.getAudioMediaForThread(threadId, sorting, 0, projection);
+      case LINK    : return mediaDatabase.getLinkMediaForThread(threadId, sorting, projection);
+      case ALL     : return mediaDatabase.getAllMediaForThread(threadId, sorting, 0, projection);
       default      : throw new AssertionError();
     }
   }
@@ -12,7 +12,7 @@ import org.greenrobot.eventbus.ThreadMode;
 import org.signal.core.util.crypto.AttachmentSecretProvider;
 import org.signal.core.util.logging.Log;
 import org.signal.devicetransfer.NewDeviceRestoreStatus;
-import org.signal.devicetransfer.ServerTask;
+import org.signal.devicetransfer.ParallelServerTask;
 import org.thoughtcrime.securesms.AppInitialization;
 import org.thoughtcrime.securesms.backup.BackupEvent;
 import org.thoughtcrime.securesms.backup.BackupPassphrase;
@@ -25,12 +25,14 @@ import org.thoughtcrime.securesms.notifications.NotificationChannels;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Performs the restore with the backup data coming in over the input stream. Used in
  * conjunction with {@link org.signal.devicetransfer.DeviceToDeviceTransferService}.
  */
-public final class NewDeviceServerTask implements ServerTask {
+public final class NewDeviceServerTask implements ParallelServerTask {
 
   public NewDeviceServerTask() {}
 
@@ -39,6 +41,16 @@ public final class NewDeviceServerTask implements ServerTask {
 
   @Override
   public void run(@NonNull Context context, @NonNull InputStream inputStream) {
+    restore(context, inputStream, Collections.emptyList());
+  }
+
+  @Override
+  public void run(@NonNull Context context, @NonNull InputStream inputStream, @NonNull List<InputStream> parallelStreams) {
+    Log.i(TAG, "Receiving with " + parallelStreams.size() + " parallel streams");
+    restore(context, inputStream, parallelStreams);
+  }
+
+  private void restore(@NonNull Context context, @NonNull InputStream inputStream, @NonNull List<InputStream> parallelStreams) {
     long start = System.currentTimeMillis();
 
     Log.i(TAG, "Starting backup restore.");
@@ -55,6 +67,7 @@ public final class NewDeviceServerTask implements ServerTask {
                                     AttachmentSecretProvider.getInstance(context, AppAttachmentSecretStore.INSTANCE).getOrCreateAttachmentSecret(),
                                     database,
                                     inputStream,
+                                    parallelStreams,
                                     passphrase,
                                     true);
 
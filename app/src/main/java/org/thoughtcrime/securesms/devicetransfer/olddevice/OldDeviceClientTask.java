@@ -3,13 +3,15 @@ package org.thoughtcrime.securesms.devicetransfer.olddevice;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
+import org.signal.core.util.crypto.AttachmentSecret;
 import org.signal.core.util.crypto.AttachmentSecretProvider;
 import org.signal.core.util.logging.Log;
-import org.signal.devicetransfer.ClientTask;
+import org.signal.devicetransfer.ParallelClientTask;
 import org.thoughtcrime.securesms.backup.BackupEvent;
 import org.thoughtcrime.securesms.backup.FullBackupExporter;
 import org.thoughtcrime.securesms.crypto.AppAttachmentSecretStore;
@@ -19,34 +21,55 @@ import org.thoughtcrime.securesms.net.DeviceTransferBlockingInterceptor;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.List;
 
 /**
  * Create the backup stream of the old device and sends it over the wire via the output stream.
  * Used in conjunction with {@link org.signal.devicetransfer.DeviceToDeviceTransferService}.
+ *
+ * If the new device supports it, attachments, stickers and avatars are sent over extra streams in parallel with the rest of the
+ * backup, roughly one per two cores.
  */
-final class OldDeviceClientTask implements ClientTask {
+final class OldDeviceClientTask implements ParallelClientTask {
 
   private static final String TAG = Log.tag(OldDeviceClientTask.class);
 
   private static final long PROGRESS_UPDATE_THROTTLE = 250;
+  private static final int  MAX_PARALLEL_STREAMS     = 8;
 
   private long lastProgressUpdate = 0;
 
+  @Override
+  public int getParallelStreamCount() {
+    return Math.max(1, Math.min(MAX_PARALLEL_STREAMS, Runtime.getRuntime().availableProcessors() / 2));
+  }
+
   @Override
   public void run(@NonNull Context context, @NonNull OutputStream outputStream) throws IOException {
+    transfer(context, outputStream, null);
+  }
+
+  @Override
+  public void run(@NonNull Context context, @NonNull OutputStream outputStream, @NonNull List<OutputStream> parallelStreams) throws IOException {
+    transfer(context, outputStream, parallelStreams);
+  }
+
+  private void transfer(@NonNull Context context, @NonNull OutputStream outputStream, @Nullable List<OutputStream> parallelStreams) throws IOException {
     DeviceTransferBlockingInterceptor.getInstance().blockNetwork();
 
     long start = System.currentTimeMillis();
 
     EventBus.getDefault().register(this);
     try {
-      String passphrase = SignalStore.account().getAccountEntropyPool().getValue();
-
-      FullBackupExporter.transfer(context,
-                                  AttachmentSecretProvider.getInstance(context, AppAttachmentSecretStore.INSTANCE).getOrCreateAttachmentSecret(),
-                                  SignalDatabase.getBackupDatabase(),
-                                  outputStream,
-                                  passphrase);
+      String           passphrase       = SignalStore.account().getAccountEntropyPool().getValue();
+      AttachmentSecret attachmentSecret = AttachmentSecretProvider.getInstance(context, AppAttachmentSecretStore.INSTANCE).getOrCreateAttachmentSecret();
+
+      if (parallelStreams != null) {
+        Log.i(TAG, "Sending with " + parallelStreams.size() + " parallel streams");
+        FullBackupExporter.transfer(context, attachmentSecret, SignalDatabase.getBackupDatabase(), outputStream, parallelStreams, passphrase);
+      } else {
+        FullBackupExporter.transfer(context, attachmentSecret, SignalDatabase.getBackupDatabase(), outputStream, passphrase);
+      }
     } catch (Exception e) {
       DeviceTransferBlockingInterceptor.getInstance().unblockNetwork();
       throw e;
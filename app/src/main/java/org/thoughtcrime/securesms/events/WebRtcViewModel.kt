@@ -7,6 +7,7 @@ import org.thoughtcrime.securesms.recipients.Recipient
 import org.thoughtcrime.securesms.recipients.RecipientId
 import org.thoughtcrime.securesms.service.webrtc.CallLinkDisconnectReason
 import org.thoughtcrime.securesms.service.webrtc.PendingParticipantCollection
+import org.thoughtcrime.securesms.service.webrtc.state.RemoteParticipants
 import org.thoughtcrime.securesms.service.webrtc.state.WebRtcServiceState
 import org.thoughtcrime.securesms.webrtc.audio.SignalAudioManager
 import org.webrtc.PeerConnection
@@ -99,6 +100,7 @@ class WebRtcViewModel(state: WebRtcServiceState) {
   val isRemoteVideoOffer: Boolean = state.getCallSetupState(state.callInfoState.activePeer?.callId).isRemoteVideoOffer
   val callConnectedTime: Long = state.callInfoState.callConnectedTime
   val remoteParticipants: List<CallParticipant> = state.callInfoState.remoteCallParticipants
+  val remoteParticipantsById: RemoteParticipants = state.callInfoState.remoteParticipants
   val identityChangedParticipants: Set<RecipientId> = state.callInfoState.identityChangedRecipients
   val remoteDevicesCount: Optional<Long> = state.callInfoState.remoteDevicesCount
   val participantLimit: Long? = state.callInfoState.participantLimit
@@ -189,11 +191,12 @@ class WebRtcViewModel(state: WebRtcServiceState) {
       if (isRemoteVideoOffer != previousEvent.isRemoteVideoOffer) builder.append(" isRemoteVideoOffer=$isRemoteVideoOffer\n")
       if (callConnectedTime != previousEvent.callConnectedTime) builder.append(" callConnectedTime=$callConnectedTime\n")
       if (localParticipant != previousEvent.localParticipant) builder.append(" localParticipant=$localParticipant\n")
-      if (remoteParticipants != previousEvent.remoteParticipants) {
+      val remoteParticipantChanges = remoteParticipantsById.changesSince(previousEvent.remoteParticipantsById)
+      if (!remoteParticipantChanges.isEmpty) {
         if (remoteParticipants.size <= 8) {
           builder.append(" remoteParticipants=$remoteParticipants\n")
         } else {
-          builder.append(" remoteParticipants=<Too many:${remoteParticipants.size}>\n")
+          builder.append(" remoteParticipants=<Too many:${remoteParticipants.size}, added=${remoteParticipantChanges.added.size}, updated=${remoteParticipantChanges.updated.size}, removed=${remoteParticipantChanges.removed.size}>\n")
         }
       }
       if (identityChangedParticipants != previousEvent.identityChangedParticipants) builder.append(" identityChangedParticipants=$identityChangedParticipants\n")
@@ -43,17 +43,17 @@ import org.thoughtcrime.securesms.util.MediaUtil;
 import org.thoughtcrime.securesms.util.RemoteConfig;
 import org.thoughtcrime.securesms.video.StreamingTranscoder;
 import org.thoughtcrime.securesms.video.TranscoderOptions;
-import org.thoughtcrime.securesms.video.exceptions.VideoPostProcessingException;
 import org.thoughtcrime.securesms.video.exceptions.VideoSourceException;
 import org.thoughtcrime.securesms.video.interfaces.TranscoderCancelationSignal;
-import org.thoughtcrime.securesms.video.postprocessing.Mp4FaststartPostProcessor;
 import org.thoughtcrime.securesms.video.videoconverter.exceptions.CodecUnavailableException;
 import org.thoughtcrime.securesms.video.videoconverter.exceptions.EncodingException;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
@@ -269,11 +269,10 @@ public final class AttachmentCompressionJob extends BaseJob {
           File file = AttachmentTable.newDataFile(context);
           file.deleteOnExit();
 
-          boolean faststart = false;
           try {
-            int mdatLength;
+            byte[] fastStartHeader;
             try (OutputStream outputStream = ModernEncryptingPartOutputStream.createFor(attachmentSecret, file, true).getSecond()) {
-              mdatLength = (int) transcoder.transcode(percent -> {
+              fastStartHeader = transcoder.transcodeFastStart(percent -> {
                 if (notification != null) {
                   notification.updateProgress(percent / 100f);
                 }
@@ -299,41 +298,22 @@ public final class AttachmentCompressionJob extends BaseJob {
               throw new UndeliverableMessageException("Job is canceled!");
             }
 
-            final Mp4FaststartPostProcessor postProcessor = new Mp4FaststartPostProcessor(() -> {
-              try {
-                return ModernDecryptingPartInputStream.createFor(attachmentSecret, file, 0);
-              } catch (IOException e) {
-                Log.w(TAG, "IOException thrown while creating CipherInputStream.", e);
-                throw new VideoPostProcessingException("Exception while opening InputStream!", e);
-              }
-            });
-
-            final long plaintextLength = ModernEncryptingPartOutputStream.getPlaintextLength(file.length());
-            try (MediaStream mediaStream = new MediaStream(postProcessor.processWithMdatLength(plaintextLength, mdatLength), MimeTypes.VIDEO_MP4, 0, 0, true)) {
+            // The muxer only wrote the mdat contents to the file, so the final fast-started video is the header followed by a
+            // single sequential read of the file.
+            final long        mdatLength = ModernEncryptingPartOutputStream.getPlaintextLength(file.length());
+            final InputStream fastStart  = new SequenceInputStream(new ByteArrayInputStream(fastStartHeader), ModernDecryptingPartInputStream.createFor(attachmentSecret, file, 0));
+            try (MediaStream mediaStream = new MediaStream(fastStart, MimeTypes.VIDEO_MP4, 0, 0, true)) {
               attachmentDatabase.updateAttachmentData(attachment, mediaStream);
-              faststart = true;
-            } catch (VideoPostProcessingException e) {
-              Log.w(TAG, "Exception thrown during post processing.", e);
-              final Throwable cause = e.getCause();
-              if (cause instanceof IOException) {
-                throw (IOException) cause;
-              } else if (cause instanceof EncodingException) {
-                throw (EncodingException) cause;
-              }
             }
 
-            if (!faststart) {
-              try (MediaStream mediaStream = new MediaStream(ModernDecryptingPartInputStream.createFor(attachmentSecret, file, 0), MimeTypes.VIDEO_MP4, 0, 0, false)) {
-                attachmentDatabase.updateAttachmentData(attachment, mediaStream);
-              }
-            }
+            Log.i(TAG, "Fast-start transcode spooled and read back " + mdatLength + " bytes, wrote " + (mdatLength + fastStartHeader.length) + " bytes (header: " + fastStartHeader.length + ")");
           } finally {
             if (!file.delete()) {
               Log.w(TAG, "Failed to delete temp file");
             }
           }
 
-          attachmentDatabase.markAttachmentAsTransformed(attachment.attachmentId, faststart);
+          attachmentDatabase.markAttachmentAsTransformed(attachment.attachmentId, true);
 
           return Objects.requireNonNull(attachmentDatabase.getAttachment(attachment.attachmentId));
         } else {
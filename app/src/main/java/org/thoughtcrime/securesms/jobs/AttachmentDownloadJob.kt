@@ -21,6 +21,7 @@ import org.thoughtcrime.securesms.attachments.Attachment
 import org.thoughtcrime.securesms.attachments.Cdn
 import org.thoughtcrime.securesms.attachments.DatabaseAttachment
 import org.thoughtcrime.securesms.attachments.InvalidAttachmentException
+import org.thoughtcrime.securesms.attachments.ProgressiveAttachments
 import org.thoughtcrime.securesms.database.AttachmentTable
 import org.thoughtcrime.securesms.database.SignalDatabase
 import org.thoughtcrime.securesms.dependencies.AppDependencies
@@ -41,6 +42,7 @@ import org.thoughtcrime.securesms.util.AttachmentUtil
 import org.thoughtcrime.securesms.util.MediaUtil
 import org.thoughtcrime.securesms.util.MessageUtil
 import org.thoughtcrime.securesms.util.RemoteConfig
+import org.whispersystems.signalservice.api.SignalServiceMessageReceiver
 import org.whispersystems.signalservice.api.crypto.AttachmentCipherInputStream.IntegrityCheck
 import org.whispersystems.signalservice.api.crypto.AttachmentCipherStreamUtil
 import org.whispersystems.signalservice.api.messages.AttachmentTransferProgress
@@ -358,18 +360,25 @@ class AttachmentDownloadJob private constructor(
       val expectedCiphertextSize = AttachmentCipherStreamUtil.getCiphertextLength(PaddingInputStream.getPaddedSize(attachment.size))
       val downloadLimit: Long = minOf(expectedCiphertextSize, maxReceiveSize)
 
-      val decryptingStream = AppDependencies
-        .signalServiceMessageReceiver
-        .retrieveAttachment(
-          pointer,
-          attachmentFile,
-          downloadLimit,
-          IntegrityCheck.forEncryptedDigestAndPlaintextHash(attachment.remoteDigest, attachment.dataHash),
-          progressListener
-        )
+      val integrityCheck = IntegrityCheck.forEncryptedDigestAndPlaintextHash(attachment.remoteDigest, attachment.dataHash)
 
-      decryptingStream.use { input ->
-        SignalDatabase.attachments.finalizeAttachmentAfterDownload(messageId, attachmentId, input)
+      if (SignalServiceMessageReceiver.canStreamAttachment(pointer)) {
+        Log.i(TAG, "[$attachmentId] Streaming download straight into the local data file.")
+        retrieveAttachmentStreaming(messageId, attachmentId, pointer, attachmentFile, downloadLimit, integrityCheck, progressListener)
+      } else {
+        val decryptingStream = AppDependencies
+          .signalServiceMessageReceiver
+          .retrieveAttachment(
+            pointer,
+            attachmentFile,
+            downloadLimit,
+            integrityCheck,
+            progressListener
+          )
+
+        decryptingStream.use { input ->
+          SignalDatabase.attachments.finalizeAttachmentAfterDownload(messageId, attachmentId, input)
+        }
       }
     } catch (e: RangeException) {
       Log.w(TAG, "[$attachmentId] Range exception, file size " + attachmentFile.length(), e)
@@ -414,6 +423,51 @@ class AttachmentDownloadJob private constructor(
     attachmentFile.delete()
   }
 
+  /**
+   * Verifies incremental MACs and decrypts while the ciphertext arrives, writing the plaintext straight into the encrypted
+   * local data file. Small attachments are read straight off the network. Large ones are still downloaded into [attachmentFile] in ranges,
+   * and decrypted as the downloaded prefix grows, so that a failed attempt can resume rather than start over.
+   *
+   * Verified plaintext is published through [ProgressiveAttachments] as it's written, so it can be played before the download finishes.
+   */
+  @Throws(IOException::class, InvalidMessageException::class, MissingConfigurationException::class, MmsException::class)
+  private fun retrieveAttachmentStreaming(
+    messageId: Long,
+    attachmentId: AttachmentId,
+    pointer: SignalServiceAttachmentPointer,
+    attachmentFile: File,
+    downloadLimit: Long,
+    integrityCheck: IntegrityCheck,
+    progressListener: SignalServiceAttachment.ProgressListener
+  ) {
+    val progressiveDownload = ProgressiveAttachments.begin(attachmentId, pointer.size.get().toLong())
+
+    try {
+      val decryptingStream = AppDependencies
+        .signalServiceMessageReceiver
+        .retrieveAttachmentStream(pointer, attachmentFile, downloadLimit, integrityCheck, progressListener)
+
+      decryptingStream.use { input ->
+        SignalDatabase.attachments.finalizeAttachmentAfterDownload(messageId, attachmentId, input, dataFileProgressListener = progressiveDownload)
+      }
+
+      progressiveDownload.finish()
+    } catch (e: MmsException) {
+      progressiveDownload.fail(e)
+
+      // Failures while reading the stream get wrapped while writing the data file. Unwrap them so they're handled the same as in the buffered path.
+      when (val cause = e.cause) {
+        is PushNetworkException -> throw cause
+        is NonSuccessfulResponseCodeException -> throw cause
+        is org.signal.libsignal.protocol.incrementalmac.InvalidMacException -> throw cause
+        else -> throw e
+      }
+    } catch (e: Throwable) {
+      progressiveDownload.fail(e)
+      throw e
+    }
+  }
+
   @Throws(InvalidAttachmentException::class)
   private fun createAttachmentPointer(attachment: DatabaseAttachment): SignalServiceAttachmentPointer {
     if (attachment.remoteKey.isNullOrEmpty()) {
@@ -0,0 +1,249 @@
+package org.thoughtcrime.securesms.keyvalue;
+
+import androidx.annotation.NonNull;
+
+import org.signal.core.util.Util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable copy of every value in the {@link KeyValueStore}, safe to read from any thread without locking.
+ *
+ * Each key maps to a slot. Booleans, floats, ints and longs live unboxed in a primitive array, so reading them never
+ * allocates. Blobs and strings live in a parallel object array.
+ *
+ * Writes produce a new snapshot via {@link #apply(KeyValueDataSet, Collection)}. When a write only touches keys that already
+ * exist, the new snapshot shares the key-to-slot map with this one and only the value arrays are copied.
+ */
+final class KeyValueSnapshot implements KeyValueReader {
+
+  static final KeyValueSnapshot EMPTY = new KeyValueSnapshot(Collections.emptyMap(), new byte[0], new long[0], new Object[0]);
+
+  private static final byte TYPE_BLOB    = 1;
+  private static final byte TYPE_BOOLEAN = 2;
+  private static final byte TYPE_FLOAT   = 3;
+  private static final byte TYPE_INTEGER = 4;
+  private static final byte TYPE_LONG    = 5;
+  private static final byte TYPE_STRING  = 6;
+
+  private final Map<String, Integer> slots;
+  private final byte[]               types;
+  private final long[]               primitives;
+  private final Object[]             objects;
+
+  private KeyValueSnapshot(@NonNull Map<String, Integer> slots, @NonNull byte[] types, @NonNull long[] primitives, @NonNull Object[] objects) {
+    this.slots      = slots;
+    this.types      = types;
+    this.primitives = primitives;
+    this.objects    = objects;
+  }
+
+  static @NonNull KeyValueSnapshot of(@NonNull KeyValueDataSet dataSet) {
+    return EMPTY.apply(dataSet, Collections.emptySet());
+  }
+
+  /**
+   * @return A new snapshot with {@code removes} removed and then {@code puts} written on top. This snapshot is unchanged.
+   */
+  @NonNull KeyValueSnapshot apply(@NonNull KeyValueDataSet puts, @NonNull Collection<String> removes) {
+    Map<String, Object> values = puts.getValues();
+
+    boolean removesExisting = false;
+    for (String key : removes) {
+      if (slots.containsKey(key)) {
+        removesExisting = true;
+        break;
+      }
+    }
+
+    Map<String, Integer> newSlots;
+    byte[]               newTypes;
+    long[]               newPrimitives;
+    Object[]             newObjects;
+    int                  size;
+
+    if (removesExisting) {
+      newSlots      = new HashMap<>(slots.size() + values.size());
+      newTypes      = new byte[slots.size() + values.size()];
+      newPrimitives = new long[newTypes.length];
+      newObjects    = new Object[newTypes.length];
+      size          = 0;
+
+      for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+        if (removes.contains(entry.getKey())) {
+          continue;
+        }
+
+        int slot = entry.getValue();
+        newSlots.put(entry.getKey(), size);
+        newTypes[size]      = types[slot];
+        newPrimitives[size] = primitives[slot];
+        newObjects[size]    = objects[slot];
+        size++;
+      }
+    } else {
+      int added = 0;
+      for (String key : values.keySet()) {
+        if (!slots.containsKey(key)) {
+          added++;
+        }
+      }
+
+      newSlots      = added > 0 ? new HashMap<>(slots) : slots;
+      newTypes      = Arrays.copyOf(types, types.length + added);
+      newPrimitives = Arrays.copyOf(primitives, newTypes.length);
+      newObjects    = Arrays.copyOf(objects, newTypes.length);
+      size          = types.length;
+    }
+
+    for (Map.Entry<String, Object> entry : values.entrySet()) {
+      Integer slot = newSlots.get(entry.getKey());
+      if (slot == null) {
+        slot = size++;
+        newSlots.put(entry.getKey(), slot);
+      }
+
+      write(slot, puts.getType(entry.getKey()), entry.getValue(), newTypes, newPrimitives, newObjects);
+    }
+
+    if (size < newTypes.length) {
+      newTypes      = Arrays.copyOf(newTypes, size);
+      newPrimitives = Arrays.copyOf(newPrimitives, size);
+      newObjects    = Arrays.copyOf(newObjects, size);
+    }
+
+    return new KeyValueSnapshot(newSlots, newTypes, newPrimitives, newObjects);
+  }
+
+  int size() {
+    return types.length;
+  }
+
+  @Override
+  public byte[] getBlob(@NonNull String key, byte[] defaultValue) {
+    Integer slot = slots.get(key);
+    if (slot == null) {
+      return defaultValue;
+    }
+
+    return (byte[]) readObject(slot, TYPE_BLOB);
+  }
+
+  @Override
+  public boolean getBoolean(@NonNull String key, boolean defaultValue) {
+    Integer slot = slots.get(key);
+    if (slot == null) {
+      return defaultValue;
+    }
+
+    requireType(slot, TYPE_BOOLEAN);
+    return primitives[slot] != 0;
+  }
+
+  @Override
+  public float getFloat(@NonNull String key, float defaultValue) {
+    Integer slot = slots.get(key);
+    if (slot == null) {
+      return defaultValue;
+    }
+
+    requireType(slot, TYPE_FLOAT);
+    return Float.intBitsToFloat((int) primitives[slot]);
+  }
+
+  @Override
+  public int getInteger(@NonNull String key, int defaultValue) {
+    Integer slot = slots.get(key);
+    if (slot == null) {
+      return defaultValue;
+    }
+
+    switch (types[slot]) {
+      case TYPE_INTEGER: return (int) primitives[slot];
+      case TYPE_LONG:    return Util.toIntExact(primitives[slot]);
+      default:           throw new IllegalArgumentException("Type mismatch!");
+    }
+  }
+
+  @Override
+  public long getLong(@NonNull String key, long defaultValue) {
+    Integer slot = slots.get(key);
+    if (slot == null) {
+      return defaultValue;
+    }
+
+    switch (types[slot]) {
+      case TYPE_INTEGER:
+      case TYPE_LONG:
+        return primitives[slot];
+      default:
+        throw new IllegalArgumentException("Type mismatch!");
+    }
+  }
+
+  @Override
+  public String getString(@NonNull String key, String defaultValue) {
+    Integer slot = slots.get(key);
+    if (slot == null) {
+      return defaultValue;
+    }
+
+    return (String) readObject(slot, TYPE_STRING);
+  }
+
+  @Override
+  public boolean containsKey(@NonNull String key) {
+    return slots.containsKey(key);
+  }
+
+  /**
+   * Matches {@link KeyValueDataSet}: a stored null is returned as null to either nullable getter, regardless of its type.
+   */
+  private Object readObject(int slot, byte expectedType) {
+    Object value = objects[slot];
+
+    if (value == null && (types[slot] == TYPE_BLOB || types[slot] == TYPE_STRING)) {
+      return null;
+    }
+
+    requireType(slot, expectedType);
+    return value;
+  }
+
+  private void requireType(int slot, byte expectedType) {
+    if (types[slot] != expectedType) {
+      throw new IllegalArgumentException("Type mismatch!");
+    }
+  }
+
+  private static void write(int slot, Class<?> type, Object value, byte[] types, long[] primitives, Object[] objects) {
+    primitives[slot] = 0;
+    objects[slot]    = null;
+
+    if (type == byte[].class) {
+      types[slot]   = TYPE_BLOB;
+      objects[slot] = value;
+    } else if (type == Boolean.class) {
+      types[slot]      = TYPE_BOOLEAN;
+      primitives[slot] = (Boolean) value ? 1 : 0;
+    } else if (type == Float.class) {
+      types[slot]      = TYPE_FLOAT;
+      primitives[slot] = Float.floatToRawIntBits((Float) value);
+    } else if (type == Integer.class) {
+      types[slot]      = TYPE_INTEGER;
+      primitives[slot] = (Integer) value;
+    } else if (type == Long.class) {
+      types[slot]      = TYPE_LONG;
+      primitives[slot] = (Long) value;
+    } else if (type == String.class) {
+      types[slot]   = TYPE_STRING;
+      objects[slot] = value;
+    } else {
+      throw new AssertionError("Unknown type: " + type);
+    }
+  }
+}
@@ -3,6 +3,7 @@ package org.thoughtcrime.securesms.keyvalue;
 import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 
 import org.signal.core.util.ThreadUtil;
@@ -15,16 +16,22 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * An replacement for {@link android.content.SharedPreferences} that stores key-value pairs in our
  * encrypted database.
  *
  * Implemented as a write-through cache that is safe to read and write to on the main thread.
+ * Reads never take a lock: they go to an immutable {@link KeyValueSnapshot} that writers replace
+ * wholesale, so a reader is never stuck behind a writer (or behind a {@link Writer#commit()} that is
+ * waiting on the disk).
  *
  * Writes are enqueued on a separate executor, but writes are finished up in
  * {@link SignalUncaughtExceptionHandler}, meaning all write should finish barring a native crash
- * or the system killing us unexpectedly (i.e. a force-stop).
+ * or the system killing us unexpectedly (i.e. a force-stop). Writes that pile up while the
+ * executor is busy are coalesced into a single database transaction.
  */
 public final class KeyValueStore implements KeyValueReader {
 
@@ -32,61 +39,76 @@ public final class KeyValueStore implements KeyValueReader {
 
   private final ExecutorService           executor;
   private final KeyValuePersistentStorage storage;
+  private final ReentrantLock             writeLock;
+  private final Object                    pendingLock;
 
-  private KeyValueDataSet dataSet;
+  private volatile KeyValueSnapshot snapshot;
+
+  private KeyValueDataSet pendingWrites;
+  private Set<String>     pendingRemoves;
+  private int             pendingCount;
+  private KeyValueDataSet persistingWrites;
+  private Set<String>     persistingRemoves;
+
+  private final AtomicLong writes              = new AtomicLong();
+  private final AtomicLong contendedWrites     = new AtomicLong();
+  private final AtomicLong persistTransactions = new AtomicLong();
+  private final AtomicLong persistedWrites     = new AtomicLong();
 
   public KeyValueStore(@NonNull KeyValuePersistentStorage storage) {
-    this.executor = SignalExecutors.newCachedSingleThreadExecutor("signal-KeyValueStore", ThreadUtil.PRIORITY_BACKGROUND_THREAD);
-    this.storage  = storage;
+    this(storage, SignalExecutors.newCachedSingleThreadExecutor("signal-KeyValueStore", ThreadUtil.PRIORITY_BACKGROUND_THREAD));
+  }
+
+  @VisibleForTesting
+  KeyValueStore(@NonNull KeyValuePersistentStorage storage, @NonNull ExecutorService executor) {
+    this.executor       = executor;
+    this.storage        = storage;
+    this.writeLock      = new ReentrantLock();
+    this.pendingLock    = new Object();
+    this.pendingWrites  = new KeyValueDataSet();
+    this.pendingRemoves = new HashSet<>();
   }
 
   @AnyThread
   @Override
-  public synchronized byte[] getBlob(@NonNull String key, byte[] defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getBlob(key, defaultValue);
+  public byte[] getBlob(@NonNull String key, byte[] defaultValue) {
+    return requireSnapshot().getBlob(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized boolean getBoolean(@NonNull String key, boolean defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getBoolean(key, defaultValue);
+  public boolean getBoolean(@NonNull String key, boolean defaultValue) {
+    return requireSnapshot().getBoolean(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized float getFloat(@NonNull String key, float defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getFloat(key, defaultValue);
+  public float getFloat(@NonNull String key, float defaultValue) {
+    return requireSnapshot().getFloat(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized int getInteger(@NonNull String key, int defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getInteger(key, defaultValue);
+  public int getInteger(@NonNull String key, int defaultValue) {
+    return requireSnapshot().getInteger(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized long getLong(@NonNull String key, long defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getLong(key, defaultValue);
+  public long getLong(@NonNull String key, long defaultValue) {
+    return requireSnapshot().getLong(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized String getString(@NonNull String key, String defaultValue) {
-    initializeIfNecessary();
-    return dataSet.getString(key, defaultValue);
+  public String getString(@NonNull String key, String defaultValue) {
+    return requireSnapshot().getString(key, defaultValue);
   }
 
   @AnyThread
   @Override
-  public synchronized boolean containsKey(@NonNull String key) {
-    initializeIfNecessary();
-    return dataSet.containsKey(key);
+  public boolean containsKey(@NonNull String key) {
+    return requireSnapshot().containsKey(key);
   }
 
   /**
@@ -100,24 +122,18 @@ public final class KeyValueStore implements KeyValueReader {
 
   /**
    * @return A reader that lets you read from an immutable snapshot of the store, ensuring that data
-   *         is consistent between reads. If you're only reading a single value, it is more
-   *         efficient to use the various get* methods instead.
+   *         is consistent between reads. Snapshots are immutable, so this is free.
    */
   @AnyThread
-  synchronized @NonNull KeyValueReader beginRead() {
-    initializeIfNecessary();
-
-    KeyValueDataSet copy = new KeyValueDataSet();
-    copy.putAll(dataSet);
-
-    return copy;
+  @NonNull KeyValueReader beginRead() {
+    return requireSnapshot();
   }
 
   /**
    * Ensures that any pending writes (such as those made via {@link Writer#apply()}) are finished.
    */
   @AnyThread
-  synchronized void blockUntilAllWritesFinished() {
+  void blockUntilAllWritesFinished() {
     CountDownLatch latch = new CountDownLatch(1);
 
     executor.execute(latch::countDown);
@@ -132,23 +148,140 @@ public final class KeyValueStore implements KeyValueReader {
   /**
    * Forces the store to re-fetch all of it's data from the database.
    */
-  synchronized void resetCache() {
-    dataSet = null;
-    initializeIfNecessary();
+  void resetCache() {
+    writeLock.lock();
+    try {
+      snapshot = loadSnapshot();
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * @return Counters describing write contention and how well persistence is batching writes.
+   */
+  @AnyThread
+  public @NonNull Metrics getMetrics() {
+    return new Metrics(writes.get(), contendedWrites.get(), persistTransactions.get(), persistedWrites.get());
+  }
+
+  private void write(@NonNull KeyValueDataSet newDataSet, @NonNull Collection<String> removes) {
+    if (!writeLock.tryLock()) {
+      contendedWrites.incrementAndGet();
+      writeLock.lock();
+    }
+
+    try {
+      snapshot = requireSnapshot().apply(newDataSet, removes);
+
+      synchronized (pendingLock) {
+        pendingRemoves.removeAll(newDataSet.getValues().keySet());
+        pendingWrites.removeAll(removes);
+        pendingWrites.putAll(newDataSet);
+        pendingRemoves.addAll(removes);
+        pendingCount++;
+      }
+    } finally {
+      writeLock.unlock();
+    }
+
+    writes.incrementAndGet();
+    executor.execute(this::persistPending);
+  }
+
+  /**
+   * Runs once per write, but persists everything that has piled up since the last run in one go, so later runs are often no-ops.
+   */
+  private void persistPending() {
+    KeyValueDataSet dataSet;
+    Set<String>     removes;
+    int             batched;
+
+    synchronized (pendingLock) {
+      if (pendingCount == 0) {
+        return;
+      }
+
+      dataSet           = pendingWrites;
+      removes           = pendingRemoves;
+      batched           = pendingCount;
+      persistingWrites  = dataSet;
+      persistingRemoves = removes;
+      pendingWrites     = new KeyValueDataSet();
+      pendingRemoves    = new HashSet<>();
+      pendingCount      = 0;
+    }
+
+    try {
+      storage.writeDataSet(dataSet, removes);
+    } finally {
+      synchronized (pendingLock) {
+        persistingWrites  = null;
+        persistingRemoves = null;
+      }
+    }
+
+    persistTransactions.incrementAndGet();
+    persistedWrites.addAndGet(batched);
+
+    if (batched > 1) {
+      Log.d(TAG, "Persisted " + batched + " writes in one transaction.");
+    }
   }
 
-  private synchronized void write(@NonNull KeyValueDataSet newDataSet, @NonNull Collection<String> removes) {
-    initializeIfNecessary();
+  private @NonNull KeyValueSnapshot requireSnapshot() {
+    KeyValueSnapshot current = snapshot;
+    if (current != null) {
+      return current;
+    }
+
+    writeLock.lock();
+    try {
+      if (snapshot == null) {
+        snapshot = loadSnapshot();
+      }
+      return snapshot;
+    } finally {
+      writeLock.unlock();
+    }
+  }
 
-    dataSet.putAll(newDataSet);
-    dataSet.removeAll(removes);
+  /**
+   * Reads everything from disk, with any writes that haven't been persisted yet laid on top so the cache matches what the disk
+   * will hold once they are.
+   *
+   * The disk is read under {@link #pendingLock}, so a batch can't finish persisting between the read and laying the pending writes on
+   * top. Otherwise a batch that landed on disk just after the read would be missing from both. Callers hold {@link #writeLock}, so no
+   * new writes come in before the result is published either.
+   */
+  private @NonNull KeyValueSnapshot loadSnapshot() {
+    synchronized (pendingLock) {
+      KeyValueSnapshot loaded = KeyValueSnapshot.of(storage.getDataSet());
 
-    executor.execute(() -> storage.writeDataSet(newDataSet, removes));
+      if (persistingWrites != null) {
+        loaded = loaded.apply(persistingWrites, persistingRemoves);
+      }
+      return loaded.apply(pendingWrites, pendingRemoves);
+    }
   }
 
-  private void initializeIfNecessary() {
-    if (dataSet != null) return;
-    this.dataSet = storage.getDataSet();
+  public static final class Metrics {
+    public final long writes;
+    public final long contendedWrites;
+    public final long persistTransactions;
+    public final long persistedWrites;
+
+    Metrics(long writes, long contendedWrites, long persistTransactions, long persistedWrites) {
+      this.writes              = writes;
+      this.contendedWrites     = contendedWrites;
+      this.persistTransactions = persistTransactions;
+      this.persistedWrites     = persistedWrites;
+    }
+
+    @Override
+    public @NonNull String toString() {
+      return "writes: " + writes + ", contended: " + contendedWrites + ", transactions: " + persistTransactions + ", persisted: " + persistedWrites;
+    }
   }
 
   class Writer {
@@ -53,6 +53,7 @@ class MiscellaneousValues internal constructor(store: KeyValueStore) : SignalSto
     private const val LAST_SYNC_MESSAGE_SEEN_TIME_MS = "misc.last_sync_message_seen_time"
     private const val LAST_APPLIED_PNI_CHANGE_SERVER_TIMESTAMP = "misc.last_applied_pni_change_server_timestamp"
     private const val LAST_MISSING_PLAY_SERVICES_FCM_VERIFICATION_TIME = "misc.last_missing_play_services_fcm_verification_time"
+    private const val SYSTEM_CONTACTS_SYNC_TIMESTAMP = "misc.system_contacts_sync_timestamp"
   }
 
   public override fun onFirstEverAppLaunch() {
@@ -343,4 +344,10 @@ class MiscellaneousValues internal constructor(store: KeyValueStore) : SignalSto
    * The last time we tried to get an FCM token for a user reporting missing Play Services.
    */
   var lastMissingPlayServicesFcmVerificationTime: Long by longValue(LAST_MISSING_PLAY_SERVICES_FCM_VERIFICATION_TIME, 0)
+
+  /**
+   * High-water mark for syncing recipient info with the system contacts, as returned by
+   * [org.signal.contacts.SystemContactsRepository.getContactChangesSince]. 0 means the next sync has to read every contact.
+   */
+  var systemContactsSyncTimestamp: Long by longValue(SYSTEM_CONTACTS_SYNC_TIMESTAMP, 0)
 }
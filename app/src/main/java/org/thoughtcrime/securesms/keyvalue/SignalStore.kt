@@ -292,6 +292,14 @@ class SignalStore(context: Application, private val store: KeyValueStore) {
       return SignalPreferenceDataStore(instance!!.store)
     }
 
+    /**
+     * Write contention and persistence batching counters, for the debug log.
+     */
+    @JvmStatic
+    fun getStoreMetrics(): KeyValueStore.Metrics {
+      return instance!!.store.metrics
+    }
+
     /**
      * Ensures any pending writes are finished. Only intended to be called by
      * [SignalUncaughtExceptionHandler].
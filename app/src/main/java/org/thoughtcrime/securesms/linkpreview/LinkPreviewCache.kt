@@ -0,0 +1,217 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.linkpreview
+
+import androidx.annotation.VisibleForTesting
+import androidx.annotation.WorkerThread
+import okhttp3.HttpUrl.Companion.toHttpUrlOrNull
+import org.signal.core.util.ByteUnit
+import org.signal.core.util.Hex
+import org.signal.core.util.crypto.AttachmentSecret
+import org.signal.core.util.crypto.AttachmentSecretProvider
+import org.signal.core.util.crypto.ModernDecryptingPartInputStream
+import org.signal.core.util.crypto.ModernEncryptingPartOutputStream
+import org.signal.core.util.logging.Log
+import org.thoughtcrime.securesms.crypto.AppAttachmentSecretStore
+import org.thoughtcrime.securesms.dependencies.AppDependencies
+import org.thoughtcrime.securesms.util.ImageCompressionUtil
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import javax.crypto.Mac
+import javax.crypto.spec.SecretKeySpec
+import kotlin.time.Duration
+import kotlin.time.Duration.Companion.days
+
+/**
+ * A small on-disk cache of link previews built from web pages, so that re-typing or re-sharing a link doesn't mean fetching the page and its image again.
+ *
+ * Entries are keyed by [canonicalize]d URL, encrypted with the attachment secret, and expire after [ttl]. File names are an HMAC of the URL keyed from
+ * the attachment secret, so they can't be matched against a list of known URLs. Once the cache grows past [maxSize], the least recently used entries are
+ * evicted. Sticker, group and call link previews aren't cached, since they reflect state that can change at any time.
+ */
+class LinkPreviewCache @VisibleForTesting constructor(
+  private val directory: File,
+  private val attachmentSecret: () -> AttachmentSecret,
+  private val maxSize: Long = ByteUnit.MEGABYTES.toBytes(10),
+  private val ttl: Duration = 1.days,
+  private val clock: () -> Long = System::currentTimeMillis
+) {
+
+  companion object {
+    private val TAG = Log.tag(LinkPreviewCache::class.java)
+
+    private const val DIRECTORY = "link_previews"
+    private const val VERSION = 1
+    private const val FILE_NAME_CONTEXT = "LinkPreviewCache"
+
+    @JvmStatic
+    val instance: LinkPreviewCache by lazy {
+      val context = AppDependencies.application
+      LinkPreviewCache(
+        directory = File(context.cacheDir, DIRECTORY),
+        attachmentSecret = { AttachmentSecretProvider.getInstance(context, AppAttachmentSecretStore).orCreateAttachmentSecret }
+      )
+    }
+
+    /**
+     * @return The URL without its fragment or any utm_ tracking parameters, neither of which change the page, or null if it isn't a valid HTTP(S) URL.
+     */
+    @JvmStatic
+    fun canonicalize(url: String): String? {
+      val parsed = url.toHttpUrlOrNull() ?: return null
+      val builder = parsed.newBuilder().fragment(null)
+
+      for (name in parsed.queryParameterNames) {
+        if (name.startsWith("utm_")) {
+          builder.removeAllQueryParameters(name)
+        }
+      }
+
+      return builder.build().toString()
+    }
+  }
+
+  @WorkerThread
+  @Synchronized
+  fun get(url: String): Entry? {
+    val key = canonicalize(url) ?: return null
+    val file = fileFor(key)
+
+    if (!file.exists()) {
+      return null
+    }
+
+    val entry: Entry? = try {
+      DataInputStream(ModernDecryptingPartInputStream.createFor(attachmentSecret(), file, 0).buffered()).use { input ->
+        if (input.readInt() != VERSION || input.readUTF() != key) {
+          null
+        } else {
+          val fetchedAt = input.readLong()
+          val age = clock() - fetchedAt
+
+          if (age < 0 || age > ttl.inWholeMilliseconds) {
+            null
+          } else {
+            Entry(
+              title = input.readUTF(),
+              description = input.readUTF(),
+              date = input.readLong(),
+              thumbnail = if (input.readBoolean()) readThumbnail(input) else null
+            )
+          }
+        }
+      }
+    } catch (e: IOException) {
+      Log.w(TAG, "Failed to read cached link preview.", e)
+      null
+    }
+
+    if (entry == null) {
+      file.delete()
+    } else {
+      file.setLastModified(clock())
+    }
+
+    return entry
+  }
+
+  @WorkerThread
+  @Synchronized
+  fun put(url: String, entry: Entry) {
+    val key = canonicalize(url) ?: return
+    val file = fileFor(key)
+    val temp = File(directory, "${file.name}.tmp")
+
+    try {
+      directory.mkdirs()
+
+      DataOutputStream(ModernEncryptingPartOutputStream.createFor(attachmentSecret(), temp, true).second.buffered()).use { output ->
+        output.writeInt(VERSION)
+        output.writeUTF(key)
+        output.writeLong(clock())
+        output.writeUTF(entry.title)
+        output.writeUTF(entry.description)
+        output.writeLong(entry.date)
+        output.writeBoolean(entry.thumbnail != null)
+        entry.thumbnail?.let { writeThumbnail(output, it) }
+      }
+
+      if (!temp.renameTo(file)) {
+        throw IOException("Failed to move cache entry into place.")
+      }
+
+      file.setLastModified(clock())
+    } catch (e: IOException) {
+      Log.w(TAG, "Failed to cache link preview.", e)
+      temp.delete()
+      return
+    }
+
+    trim()
+  }
+
+  /**
+   * Drops every entry. Called when the chat history is deleted, since the cache shows which links were previewed.
+   */
+  @WorkerThread
+  @Synchronized
+  fun clear() {
+    directory.listFiles()?.forEach { it.delete() }
+  }
+
+  private fun trim() {
+    val files = directory.listFiles() ?: return
+    var size = files.sumOf { it.length() }
+
+    if (size <= maxSize) {
+      return
+    }
+
+    for (file in files.sortedBy { it.lastModified() }) {
+      if (size <= maxSize) {
+        break
+      }
+
+      size -= file.length()
+      file.delete()
+    }
+  }
+
+  private fun fileFor(key: String): File {
+    val mac = Mac.getInstance("HmacSHA256")
+    mac.init(SecretKeySpec(attachmentSecret().modernKey, "HmacSHA256"))
+    mac.update(FILE_NAME_CONTEXT.toByteArray())
+
+    return File(directory, Hex.toStringCondensed(mac.doFinal(key.toByteArray())))
+  }
+
+  private fun readThumbnail(input: DataInputStream): ImageCompressionUtil.Result {
+    val mimeType = input.readUTF()
+    val width = input.readInt()
+    val height = input.readInt()
+    val data = ByteArray(input.readInt())
+    input.readFully(data)
+
+    return ImageCompressionUtil.Result(data, mimeType, width, height)
+  }
+
+  private fun writeThumbnail(output: DataOutputStream, thumbnail: ImageCompressionUtil.Result) {
+    output.writeUTF(thumbnail.mimeType)
+    output.writeInt(thumbnail.width)
+    output.writeInt(thumbnail.height)
+    output.writeInt(thumbnail.data.size)
+    output.write(thumbnail.data)
+  }
+
+  class Entry(
+    val title: String,
+    val description: String,
+    val date: Long,
+    val thumbnail: ImageCompressionUtil.Result?
+  )
+}
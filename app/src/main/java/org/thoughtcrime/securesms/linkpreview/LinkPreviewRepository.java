@@ -64,6 +64,7 @@ import org.whispersystems.signalservice.api.util.OptionalUtil;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
@@ -147,31 +148,64 @@ public class LinkPreviewRepository {
     } else if (CallLinks.isCallLink(url)) {
       metadataController = fetchCallLinkPreview(context, url, callback);
     } else {
-      metadataController = fetchMetadata(url, metadata -> {
+      metadataController = fetchOpenGraphLinkPreview(url, callback);
+    }
+
+    compositeController.addController(metadataController);
+    return compositeController;
+  }
+
+  private @NonNull RequestController fetchOpenGraphLinkPreview(@NonNull String url, @NonNull Callback callback) {
+    CompositeRequestController controller = new CompositeRequestController();
+
+    SignalExecutors.BOUNDED_IO.execute(() -> {
+      if (controller.isCanceled()) {
+        return;
+      }
+
+      LinkPreviewCache.Entry cached = LinkPreviewCache.getInstance().get(url);
+      if (cached != null) {
+        Optional<Attachment> thumbnail = Optional.ofNullable(cached.getThumbnail()).map(LinkPreviewRepository::thumbnailToAttachment);
+
+        Log.i(TAG, "Using cached link preview.");
+        callback.onSuccess(new LinkPreview(url, cached.getTitle(), cached.getDescription(), cached.getDate(), thumbnail));
+        return;
+      }
+
+      controller.addController(fetchMetadata(url, metadata -> {
         if (metadata.isEmpty()) {
           callback.onError(Error.PREVIEW_NOT_AVAILABLE);
           return;
         }
 
         if (!metadata.getImageUrl().isPresent()) {
-          callback.onSuccess(new LinkPreview(url, metadata.getTitle().orElse(""), metadata.getDescription().orElse(""), metadata.getDate(), Optional.empty()));
+          onOpenGraphLinkPreviewFetched(url, metadata, Optional.empty(), callback);
           return;
         }
 
-        RequestController imageController = fetchThumbnail(metadata.getImageUrl().get(), attachment -> {
-          if (!metadata.getTitle().isPresent() && !attachment.isPresent()) {
+        controller.addController(fetchThumbnail(metadata.getImageUrl().get(), thumbnail -> {
+          if (!metadata.getTitle().isPresent() && !thumbnail.isPresent()) {
             callback.onError(Error.PREVIEW_NOT_AVAILABLE);
           } else {
-            callback.onSuccess(new LinkPreview(url, metadata.getTitle().orElse(""), metadata.getDescription().orElse(""), metadata.getDate(), attachment));
+            onOpenGraphLinkPreviewFetched(url, metadata, thumbnail, callback);
           }
-        });
+        }));
+      }));
+    });
 
-        compositeController.addController(imageController);
-      });
-    }
+    return controller;
+  }
 
-    compositeController.addController(metadataController);
-    return compositeController;
+  private static void onOpenGraphLinkPreviewFetched(@NonNull String url,
+                                                    @NonNull Metadata metadata,
+                                                    @NonNull Optional<ImageCompressionUtil.Result> thumbnail,
+                                                    @NonNull Callback callback)
+  {
+    String title       = metadata.getTitle().orElse("");
+    String description = metadata.getDescription().orElse("");
+
+    callback.onSuccess(new LinkPreview(url, title, description, metadata.getDate(), thumbnail.map(LinkPreviewRepository::thumbnailToAttachment)));
+    LinkPreviewCache.getInstance().put(url, new LinkPreviewCache.Entry(title, description, metadata.getDate(), thumbnail.orElse(null)));
   }
 
   private @NonNull RequestController fetchMetadata(@NonNull String url, Consumer<Metadata> callback) {
@@ -207,16 +241,18 @@ public class LinkPreviewRepository {
           return;
         }
 
-        String body;
-        try {
-          body = OkHttpUtil.readAsString(response.body(), FAILSAFE_MAX_TEXT_SIZE);
+        OpenGraph openGraph;
+        try (Reader body = OkHttpUtil.openHtmlReader(response.body())) {
+          openGraph = LinkPreviewUtil.parseOpenGraphFields(body, FAILSAFE_MAX_TEXT_SIZE);
+
+          // We only needed the head. Drop the connection rather than have OkHttp drain the rest of the page so it can reuse it.
+          call.cancel();
         } catch (IOException e) {
           Log.w(TAG, "Failed to read body", e);
           callback.accept(Metadata.empty());
           return;
         }
 
-        OpenGraph        openGraph   = LinkPreviewUtil.parseOpenGraphFields(body);
         Optional<String> title       = openGraph.getTitle();
         Optional<String> description = openGraph.getDescription();
         Optional<String> imageUrl    = openGraph.getImageUrl();
@@ -234,7 +270,7 @@ public class LinkPreviewRepository {
     return new CallRequestController(call);
   }
 
-  private @NonNull RequestController fetchThumbnail(@NonNull String imageUrl, @NonNull Consumer<Optional<Attachment>> callback) {
+  private @NonNull RequestController fetchThumbnail(@NonNull String imageUrl, @NonNull Consumer<Optional<ImageCompressionUtil.Result>> callback) {
     Call                  call       = client.newCall(new Request.Builder().url(imageUrl).build());
     CallRequestController controller = new CallRequestController(call);
 
@@ -248,10 +284,10 @@ public class LinkPreviewRepository {
         InputStream bodyStream = response.body().byteStream();
         controller.setStream(bodyStream);
 
-        byte[]                           data        = OkHttpUtil.readAsBytes(bodyStream, FAILSAFE_MAX_IMAGE_SIZE);
-        Bitmap                           bitmap      = BitmapFactory.decodeByteArray(data, 0, data.length);
-        Optional<Attachment>             thumbnail   = Optional.empty();
-        PushMediaConstraints.MediaConfig mediaConfig = PushMediaConstraints.MediaConfig.getDefault(AppDependencies.getApplication());
+        byte[]                                data        = OkHttpUtil.readAsBytes(bodyStream, FAILSAFE_MAX_IMAGE_SIZE);
+        Bitmap                                bitmap      = BitmapFactory.decodeByteArray(data, 0, data.length);
+        Optional<ImageCompressionUtil.Result> thumbnail   = Optional.empty();
+        PushMediaConstraints.MediaConfig      mediaConfig = PushMediaConstraints.MediaConfig.getDefault(AppDependencies.getApplication());
 
         if (bitmap != null) {
           for (final int maxDimension : mediaConfig.getImageSizeTargets()) {
@@ -265,7 +301,7 @@ public class LinkPreviewRepository {
             );
 
             if (result != null) {
-              thumbnail = Optional.of(bytesToAttachment(result.getData(), result.getWidth(), result.getHeight(), result.getMimeType()));
+              thumbnail = Optional.of(result);
               break;
             }
           }
@@ -464,6 +500,10 @@ public class LinkPreviewRepository {
     return Optional.of(bytesToAttachment(bytes, bitmap.getWidth(), bitmap.getHeight(), contentType));
   }
 
+  private static Attachment thumbnailToAttachment(@NonNull ImageCompressionUtil.Result thumbnail) {
+    return bytesToAttachment(thumbnail.getData(), thumbnail.getWidth(), thumbnail.getHeight(), thumbnail.getMimeType());
+  }
+
   private static Attachment bytesToAttachment(byte[] bytes,
                                               int width,
                                               int height,
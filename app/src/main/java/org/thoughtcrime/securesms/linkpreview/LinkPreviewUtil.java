@@ -14,13 +14,15 @@ import org.thoughtcrime.securesms.util.LinkUtil;
 import org.signal.core.util.Util;
 import org.whispersystems.signalservice.api.util.OptionalUtil;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
@@ -28,13 +30,7 @@ import okhttp3.HttpUrl;
 
 public final class LinkPreviewUtil {
 
-  private static final Pattern OPEN_GRAPH_TAG_PATTERN     = Pattern.compile("<\\s*meta[^>]*property\\s*=\\s*\"\\s*og:([^\"]+)\"[^>]*/?\\s*>");
-  private static final Pattern ARTICLE_TAG_PATTERN        = Pattern.compile("<\\s*meta[^>]*property\\s*=\\s*\"\\s*article:([^\"]+)\"[^>]*/?\\s*>");
-  private static final Pattern OPEN_GRAPH_CONTENT_PATTERN = Pattern.compile("content\\s*=\\s*\"([^\"]*)\"");
-  private static final Pattern TITLE_PATTERN              = Pattern.compile("<\\s*title[^>]*>(.*)<\\s*/title[^>]*>");
-  private static final Pattern FAVICON_PATTERN            = Pattern.compile("<\\s*link[^>]*rel\\s*=\\s*\".*icon.*\"[^>]*>");
-  private static final Pattern FAVICON_HREF_PATTERN       = Pattern.compile("href\\s*=\\s*\"([^\"]*)\"");
-  public  static final Pattern MONERO_TX_PATTERN          = Pattern.compile("\\bmonero:[^\\s/]+\\?\\S+\\b");
+  public static final Pattern MONERO_TX_PATTERN = Pattern.compile("\\bmonero:[^\\s/]+\\?\\S+\\b");
 
   public static @Nullable String getTopLevelDomain(@Nullable String urlString) {
     if (!Util.isEmpty(urlString)) {
@@ -67,52 +63,26 @@ public final class LinkPreviewUtil {
       return new OpenGraph(Collections.emptyMap(), null, null);
     }
 
-    Map<String, String> openGraphTags    = new HashMap<>();
-    Matcher             openGraphMatcher = OPEN_GRAPH_TAG_PATTERN.matcher(html);
-
-    while (openGraphMatcher.find()) {
-      String tag      = openGraphMatcher.group();
-      String property = openGraphMatcher.groupCount() > 0 ? openGraphMatcher.group(1) : null;
-
-      if (property != null) {
-        Matcher contentMatcher = OPEN_GRAPH_CONTENT_PATTERN.matcher(tag);
-        if (contentMatcher.find() && contentMatcher.groupCount() > 0) {
-          String content = fromDoubleEncoded(contentMatcher.group(1));
-          openGraphTags.put(property.toLowerCase(), content);
-        }
-      }
-    }
-
-    Matcher articleMatcher = ARTICLE_TAG_PATTERN.matcher(html);
-
-    while (articleMatcher.find()) {
-      String tag      = articleMatcher.group();
-      String property = articleMatcher.groupCount() > 0 ? articleMatcher.group(1) : null;
-
-      if (property != null) {
-        Matcher contentMatcher = OPEN_GRAPH_CONTENT_PATTERN.matcher(tag);
-        if (contentMatcher.find() && contentMatcher.groupCount() > 0) {
-          String content = fromDoubleEncoded(contentMatcher.group(1));
-          openGraphTags.put(property.toLowerCase(), content);
-        }
-      }
+    try {
+      return parseOpenGraphFields(new StringReader(html), Long.MAX_VALUE);
+    } catch (IOException e) {
+      throw new AssertionError(e);
     }
+  }
 
-    String htmlTitle  = "";
-    String faviconUrl = "";
+  /**
+   * Reads OpenGraph fields from the head of a document as it streams in, stopping once the head is done or after reading {@code maxChars}.
+   */
+  public static @NonNull OpenGraph parseOpenGraphFields(@NonNull Reader html, long maxChars) throws IOException {
+    OpenGraphParser.Result result        = OpenGraphParser.parse(html, maxChars);
+    Map<String, String>    openGraphTags = new HashMap<>();
 
-    Matcher titleMatcher = TITLE_PATTERN.matcher(html);
-    if (titleMatcher.find() && titleMatcher.groupCount() > 0) {
-      htmlTitle = fromDoubleEncoded(titleMatcher.group(1));
+    for (Map.Entry<String, String> property : result.getProperties().entrySet()) {
+      openGraphTags.put(property.getKey(), fromDoubleEncoded(property.getValue()));
     }
 
-    Matcher faviconMatcher = FAVICON_PATTERN.matcher(html);
-    if (faviconMatcher.find()) {
-      Matcher faviconHrefMatcher = FAVICON_HREF_PATTERN.matcher(faviconMatcher.group());
-      if (faviconHrefMatcher.find() && faviconHrefMatcher.groupCount() > 0) {
-        faviconUrl = faviconHrefMatcher.group(1);
-      }
-    }
+    String htmlTitle  = result.getTitle() != null ? fromDoubleEncoded(result.getTitle()) : "";
+    String faviconUrl = result.getFaviconUrl() != null ? result.getFaviconUrl() : "";
 
     return new OpenGraph(openGraphTags, htmlTitle, faviconUrl);
   }
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.linkpreview
+
+import java.io.IOException
+import java.io.Reader
+
+/**
+ * Pulls the OpenGraph tags, title and favicon out of an HTML document as it streams in, without holding on to the document itself.
+ *
+ * Everything a link preview uses lives in the head, so parsing stops at `</head>`, after [maxChars], or as soon as every OpenGraph tag we care about has
+ * been seen, whichever comes first. Script, style and comment contents are skipped rather than searched for tags. When a property appears more than once,
+ * the first one wins, as the OpenGraph spec asks.
+ *
+ * Values are returned exactly as they appear in the markup, entities and all.
+ */
+class OpenGraphParser private constructor(private val reader: Reader, private val maxChars: Long) {
+
+  companion object {
+    private val PROPERTY_PREFIXES = listOf("og:", "article:")
+
+    /** Once all of these are in hand, nothing later in the document can change the preview. */
+    private val COMPLETE_PROPERTIES = setOf("title", "description", "image", "published_time")
+
+    private const val EOF = -1
+
+    @JvmStatic
+    @JvmOverloads
+    @Throws(IOException::class)
+    fun parse(reader: Reader, maxChars: Long = Long.MAX_VALUE): Result {
+      return OpenGraphParser(reader, maxChars).parse()
+    }
+  }
+
+  private val buffer = CharArray(8192)
+  private var position = 0
+  private var limit = 0
+  private var consumed = 0L
+  private var pushback = EOF
+
+  private val properties: MutableMap<String, String> = HashMap()
+  private var title: String? = null
+  private var faviconUrl: String? = null
+
+  private fun parse(): Result {
+    while (true) {
+      val c = read()
+      if (c == EOF) {
+        break
+      }
+
+      if (c == '<'.code && !readTag()) {
+        break
+      }
+    }
+
+    return Result(properties, title, faviconUrl)
+  }
+
+  /**
+   * Reads the tag that follows a '<' and records anything of interest in it.
+   *
+   * @return False if parsing should stop.
+   */
+  private fun readTag(): Boolean {
+    val c = skipWhitespace()
+
+    return when {
+      c == '!'.code -> skipDeclaration()
+      c == '/'.code -> {
+        val name = readName(skipWhitespace())
+        if (!skipPast('>')) {
+          false
+        } else {
+          name != "head"
+        }
+      }
+      isNameChar(c) -> {
+        val name = readName(c)
+        val attributes = readAttributes() ?: return pushback == '<'.code
+        onStartTag(name, attributes)
+      }
+      else -> {
+        unread(c)
+        true
+      }
+    }
+  }
+
+  private fun onStartTag(name: String, attributes: Map<String, String>): Boolean {
+    when (name) {
+      "meta" -> {
+        val property = attributes["property"]?.trimStart()?.lowercase()
+        val content = attributes["content"]
+        val prefix = PROPERTY_PREFIXES.firstOrNull { property?.startsWith(it) == true }
+
+        if (property != null && content != null && prefix != null) {
+          properties.putIfAbsent(property.substring(prefix.length), content)
+
+          if (properties.keys.containsAll(COMPLETE_PROPERTIES)) {
+            return false
+          }
+        }
+      }
+
+      "link" -> {
+        val rel = attributes["rel"]
+        val href = attributes["href"]
+
+        if (faviconUrl == null && href != null && rel != null && rel.contains("icon", ignoreCase = true)) {
+          faviconUrl = href
+        }
+      }
+
+      "title" -> {
+        val text = StringBuilder()
+        val closed = skipRawText(name, text)
+
+        if (title == null) {
+          title = text.toString()
+        }
+
+        return closed
+      }
+
+      "script", "style" -> return skipRawText(name, null)
+    }
+
+    return true
+  }
+
+  /**
+   * Reads attributes up to the end of the tag. Names are lowercased and values unquoted, and the first of any repeated attribute wins.
+   *
+   * @return The attributes, or null if the tag was cut off, either by the end of the document or by a '<' that was then left to be read as a new tag.
+   */
+  private fun readAttributes(): Map<String, String>? {
+    val attributes: MutableMap<String, String> = HashMap()
+
+    while (true) {
+      var c = skipWhitespace()
+      while (c == '/'.code) {
+        c = skipWhitespace()
+      }
+
+      when (c) {
+        EOF -> return null
+        '>'.code -> return attributes
+        '<'.code -> {
+          unread(c)
+          return null
+        }
+      }
+
+      val name = StringBuilder()
+      while (c != EOF && c != '='.code && c != '>'.code && c != '/'.code && c != '<'.code && !isWhitespace(c)) {
+        name.append(c.toChar().lowercaseChar())
+        c = read()
+      }
+
+      if (isWhitespace(c)) {
+        c = skipWhitespace()
+      }
+
+      if (c != '='.code) {
+        unread(c)
+        attributes.putIfAbsent(name.toString(), "")
+        continue
+      }
+
+      c = skipWhitespace()
+
+      val value = StringBuilder()
+      if (c == '"'.code || c == '\''.code) {
+        val quote = c
+        c = read()
+        while (c != EOF && c != quote) {
+          value.append(c.toChar())
+          c = read()
+        }
+
+        if (c == EOF) {
+          return null
+        }
+      } else {
+        while (c != EOF && c != '>'.code && c != '<'.code && !isWhitespace(c)) {
+          value.append(c.toChar())
+          c = read()
+        }
+        unread(c)
+      }
+
+      attributes.putIfAbsent(name.toString(), value.toString())
+    }
+  }
+
+  /**
+   * Skips the contents of an element whose body isn't markup, up to and including its closing tag, optionally copying the contents into [sink].
+   *
+   * @return False if the document ended first.
+   */
+  private fun skipRawText(name: String, sink: StringBuilder?): Boolean {
+    val closing = "</$name"
+    var matched = 0
+
+    while (true) {
+      val c = read()
+      if (c == EOF) {
+        return false
+      }
+
+      if (c.toChar().lowercaseChar() == closing[matched]) {
+        matched++
+        if (matched == closing.length) {
+          return skipPast('>')
+        }
+        continue
+      }
+
+      sink?.append(closing, 0, matched)
+      matched = 0
+
+      if (c == '<'.code) {
+        matched = 1
+      } else {
+        sink?.append(c.toChar())
+      }
+    }
+  }
+
+  /**
+   * Skips a comment, doctype or other `<!...>` declaration.
+   */
+  private fun skipDeclaration(): Boolean {
+    val first = read()
+    val second = if (first == '-'.code) read() else EOF
+
+    if (first != '-'.code || second != '-'.code) {
+      unread(if (first == '-'.code) second else first)
+      return skipPast('>')
+    }
+
+    var dashes = 0
+    while (true) {
+      when (read()) {
+        EOF -> return false
+        '-'.code -> dashes++
+        '>'.code -> if (dashes >= 2) return true else dashes = 0
+        else -> dashes = 0
+      }
+    }
+  }
+
+  private fun readName(first: Int): String {
+    val name = StringBuilder()
+    var c = first
+
+    while (isNameChar(c)) {
+      name.append(c.toChar().lowercaseChar())
+      c = read()
+    }
+
+    unread(c)
+    return name.toString()
+  }
+
+  private fun skipPast(end: Char): Boolean {
+    while (true) {
+      when (read()) {
+        EOF -> return false
+        end.code -> return true
+      }
+    }
+  }
+
+  private fun skipWhitespace(): Int {
+    var c = read()
+    while (isWhitespace(c)) {
+      c = read()
+    }
+    return c
+  }
+
+  private fun read(): Int {
+    if (pushback != EOF) {
+      val c = pushback
+      pushback = EOF
+      return c
+    }
+
+    if (position == limit) {
+      if (consumed >= maxChars) {
+        return EOF
+      }
+
+      val length = reader.read(buffer, 0, minOf(buffer.size.toLong(), maxChars - consumed).toInt())
+      if (length <= 0) {
+        return EOF
+      }
+
+      position = 0
+      limit = length
+      consumed += length
+    }
+
+    return buffer[position++].code
+  }
+
+  private fun unread(c: Int) {
+    pushback = c
+  }
+
+  private fun isNameChar(c: Int): Boolean {
+    return c != EOF && (Character.isLetterOrDigit(c) || c == '-'.code || c == ':'.code)
+  }
+
+  private fun isWhitespace(c: Int): Boolean {
+    return c != EOF && Character.isWhitespace(c)
+  }
+
+  /**
+   * @param properties OpenGraph and article properties, keyed by name without the `og:` or `article:` prefix.
+   */
+  class Result(
+    val properties: Map<String, String>,
+    val title: String?,
+    val faviconUrl: String?
+  )
+}
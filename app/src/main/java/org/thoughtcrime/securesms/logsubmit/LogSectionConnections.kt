@@ -0,0 +1,32 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.logsubmit
+
+import android.content.Context
+import org.thoughtcrime.securesms.dependencies.AppDependencies
+
+/**
+ * Prints connection reuse, TLS handshake and in-flight call counts for each group of HTTP clients (service, storage, CDNs).
+ */
+class LogSectionConnections : LogSection {
+  override fun getTitle(): String = "CONNECTIONS"
+
+  override fun getContent(context: Context): CharSequence {
+    val snapshots = AppDependencies.pushServiceSocket.connectionMetrics.snapshots
+    if (snapshots.isEmpty()) {
+      return "No connections yet."
+    }
+
+    val padding = snapshots.keys.maxOf { it.length }
+    val output = StringBuilder()
+
+    snapshots.forEach { (label, snapshot) ->
+      output.append(label.padEnd(padding)).append(" : ").append(snapshot).append('\n')
+    }
+
+    return output
+  }
+}
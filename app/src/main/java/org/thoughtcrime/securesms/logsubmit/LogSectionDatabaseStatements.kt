@@ -0,0 +1,63 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.logsubmit
+
+import android.content.Context
+import org.thoughtcrime.securesms.database.QueryStatistics
+import java.util.concurrent.TimeUnit
+
+/**
+ * Lists the most expensive statement shapes recorded by [QueryStatistics] since the process started, along with the query plan
+ * of any that have been slow.
+ */
+class LogSectionDatabaseStatements : LogSection {
+
+  companion object {
+    private const val MAX_SHAPES = 30
+  }
+
+  override fun getTitle(): String = "DATABASE STATEMENTS"
+
+  override fun getContent(context: Context): CharSequence {
+    val shapes = QueryStatistics.getShapes()
+
+    if (shapes.isEmpty()) {
+      return "None"
+    }
+
+    val header = "Showing ${minOf(shapes.size, MAX_SHAPES)} of ${shapes.size} shapes, most total time first. Percentiles are bucket upper bounds.\n\n"
+
+    return header + shapes.take(MAX_SHAPES).joinToString(separator = "\n\n") { shape ->
+      val summary = """
+        -- ${shape.name}
+        Count     : ${shape.count}
+        Total     : ${shape.totalNs.toMillis()}ms
+        Wait      : ${shape.waitTime.describe()}
+        Execution : ${shape.executionTime.describe()}
+      """.trimIndent()
+
+      val plan = shape.queryPlan
+
+      if (plan != null) {
+        summary + "\nPlan      :\n" + plan.lines().joinToString(separator = "\n") { "  $it" }
+      } else {
+        summary
+      }
+    }
+  }
+
+  private fun QueryStatistics.Histogram.describe(): String {
+    if (count == 0L) {
+      return "n/a"
+    }
+
+    return "p50 ${percentileNs(50).toMillis()}ms, p90 ${percentileNs(90).toMillis()}ms, p99 ${percentileNs(99).toMillis()}ms, max ${maxNs.toMillis()}ms"
+  }
+
+  private fun Long.toMillis(): String {
+    return "%.2f".format(this / TimeUnit.MILLISECONDS.toNanos(1).toDouble())
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.logsubmit
+
+import android.content.Context
+import org.signal.core.util.concurrent.InstrumentedThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+/**
+ * Shows how busy each [InstrumentedThreadPoolExecutor] has been since the process started, and which tasks spent the most time
+ * on it.
+ */
+class LogSectionExecutors : LogSection {
+
+  companion object {
+    private const val MAX_TASKS = 10
+  }
+
+  override fun getTitle(): String = "EXECUTORS"
+
+  override fun getContent(context: Context): CharSequence {
+    val executors = InstrumentedThreadPoolExecutor.getAll().filter { it.executedCount > 0 }
+
+    if (executors.isEmpty()) {
+      return "None"
+    }
+
+    return executors.sortedByDescending { it.executedCount }.joinToString(separator = "\n\n") { executor ->
+      val summary = """
+        -- ${executor.name}
+        Threads   : ${executor.activeCount} active, ${executor.poolSize} alive, ${executor.maximumPoolSize.describeMax()} max
+        Queued    : ${executor.queue.size} now, ${executor.peakQueueSize} peak
+        Executed  : ${executor.executedCount}
+        Saturated : ${executor.saturatedCount}
+        Rejected  : ${executor.rejectedCount}
+      """.trimIndent()
+
+      val tasks = executor.taskStats.take(MAX_TASKS).joinToString(separator = "\n") { task ->
+        "  ${task.name}: count ${task.count}, " +
+          "wait avg ${(task.totalWaitNs / task.count).toMillis()}ms max ${task.maxWaitNs.toMillis()}ms, " +
+          "run avg ${(task.totalRunNs / task.count).toMillis()}ms max ${task.maxRunNs.toMillis()}ms"
+      }
+
+      "$summary\nTop tasks by run time:\n$tasks"
+    }
+  }
+
+  private fun Int.describeMax(): String {
+    return if (this == Int.MAX_VALUE) "no" else toString()
+  }
+
+  private fun Long.toMillis(): Long {
+    return TimeUnit.NANOSECONDS.toMillis(this)
+  }
+}
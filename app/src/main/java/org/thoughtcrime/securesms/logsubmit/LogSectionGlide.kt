@@ -0,0 +1,27 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.logsubmit
+
+import android.content.Context
+import org.signal.glide.cache.MeteredDiskCache
+
+/**
+ * Prints how well Glide's disk cache is serving thumbnail binds.
+ */
+class LogSectionGlide : LogSection {
+  override fun getTitle(): String = "GLIDE"
+
+  override fun getContent(context: Context): CharSequence {
+    val stats = MeteredDiskCache.stats()
+
+    return """
+      Disk cache hits    : ${stats.hits}
+      Disk cache misses  : ${stats.misses}
+      Disk cache writes  : ${stats.writes}
+      Disk cache hit rate: ${"%.1f".format(stats.hitRate * 100)}%
+    """.trimIndent()
+  }
+}
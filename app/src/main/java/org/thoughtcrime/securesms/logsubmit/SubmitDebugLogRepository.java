@@ -88,12 +88,15 @@ public class SubmitDebugLogRepository {
     add(new LogSectionNotifications());
     add(new LogSectionNotificationProfiles());
     add(new LogSectionExoPlayerPool());
+    add(new LogSectionGlide());
+    add(new LogSectionConnections());
     add(new LogSectionKeyPreferences());
     add(new LogSectionStories());
     add(new LogSectionChatFolders());
     add(new LogSectionRemoteBackups());
     add(new LogSectionPermissions());
     add(new LogSectionThreads());
+    add(new LogSectionExecutors());
     add(new LogSectionSuspiciousThreadDump());
     add(new LogSectionCurrentThreadDump());
     if (RemoteConfig.internalUser()) {
@@ -102,6 +105,7 @@ public class SubmitDebugLogRepository {
     add(new LogSectionDatabaseSchema());
     add(new LogSectionRemappedRecords());
     add(new LogSectionDatabaseIssues());
+    add(new LogSectionDatabaseStatements());
     add(new LogSectionLogcat());
     add(new LogSectionLoggerHeader());
     // MOLLY: For new sections, override getContentLocked() if content must be visible while locked.
@@ -39,7 +39,9 @@ import com.codewaves.stickyheadergrid.StickyHeaderGridAdapter;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.signal.blurhash.BlurHash;
 import org.signal.core.util.ByteSize;
+import org.signal.paging.PagingController;
 import org.thoughtcrime.securesms.R;
 import org.thoughtcrime.securesms.attachments.DatabaseAttachment;
 import org.thoughtcrime.securesms.components.AudioView;
@@ -83,6 +85,7 @@ final class MediaGalleryAllAdapter extends StickyHeaderGridAdapter {
   private final AudioItemListener                   audioItemListener;
 
   private GroupedThreadMedia media;
+  private PagingController   pagingController;
   private boolean            showFileSizes;
   private boolean            detailView;
 
@@ -127,9 +130,21 @@ final class MediaGalleryAllAdapter extends StickyHeaderGridAdapter {
   }
 
   public void setMedia(GroupedThreadMedia media) {
+    media.retainRecordsFrom(this.media);
     this.media = media;
   }
 
+  public void setPagingController(@Nullable PagingController pagingController) {
+    this.pagingController = pagingController;
+  }
+
+  /**
+   * Hands a freshly loaded set of records to the current media, and rebinds only the items whose record changed.
+   */
+  public void setRecords(@NonNull List<MediaRecord> records) {
+    media.setRecords(records, (section, item, count) -> notifyItemRangeChanged(getSectionItemPosition(section, item), count));
+  }
+
   @Override
   public HeaderViewHolder onCreateHeaderViewHolder(ViewGroup parent, int headerType) {
     return new HeaderHolder(LayoutInflater.from(context).inflate(R.layout.media_overview_item_header, parent, false));
@@ -153,18 +168,22 @@ final class MediaGalleryAllAdapter extends StickyHeaderGridAdapter {
 
   @Override
   public int getSectionItemViewType(int section, int offset) {
-    MediaTable.MediaRecord mediaRecord = media.get(section, offset);
-
-    if (mediaRecord.getLinkPreviewJson() != null) return LINK_DETAIL;
-    if (mediaRecord.getAttachment() == null) return 0;
-
-    Slide slide = MediaUtil.getSlideForAttachment(mediaRecord.getAttachment());
-
-    if (slide.hasAudio()) return AUDIO_DETAIL;
-    if (slide.hasImage() || slide.hasVideo()) return detailView ? GALLERY_DETAIL : GALLERY;
-    if (slide.hasDocument()) return DOCUMENT_DETAIL;
-
-    return 0;
+    if (media.hasLinkPreview(section, offset)) return LINK_DETAIL;
+    if (media.getAttachmentId(media.getPosition(section, offset)) == 0) return 0;
+
+    switch (MediaUtil.getSlideTypeFromContentType(media.getContentType(section, offset))) {
+      case AUDIO:
+        return AUDIO_DETAIL;
+      case GIF:
+      case IMAGE:
+      case MMS:
+      case VIDEO:
+        return detailView ? GALLERY_DETAIL : GALLERY;
+      case DOCUMENT:
+        return DOCUMENT_DETAIL;
+      default:
+        return 0;
+    }
   }
 
   @Override
@@ -184,8 +203,18 @@ final class MediaGalleryAllAdapter extends StickyHeaderGridAdapter {
 
   @Override
   public void onBindItemViewHolder(ItemViewHolder viewHolder, int section, int offset) {
+    if (pagingController != null) {
+      pagingController.onDataNeededAroundIndex(media.getPosition(section, offset));
+    }
+
     MediaTable.MediaRecord mediaRecord = media.get(section, offset);
-    Slide                  slide       = mediaRecord.getAttachment() != null ? MediaUtil.getSlideForAttachment(mediaRecord.getAttachment()) : null;
+
+    if (mediaRecord == null) {
+      ((SelectableViewHolder) viewHolder).bindPlaceholder(BlurHash.Companion.parseOrNull(media.getBlurHash(section, offset)));
+      return;
+    }
+
+    Slide slide = mediaRecord.getAttachment() != null ? MediaUtil.getSlideForAttachment(mediaRecord.getAttachment()) : null;
 
     ((SelectableViewHolder) viewHolder).bind(context, mediaRecord, slide);
   }
@@ -245,14 +274,9 @@ final class MediaGalleryAllAdapter extends StickyHeaderGridAdapter {
     notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTED);
   }
 
-  void selectAllMedia() {
-    int sectionCount = media.getSectionCount();
-    for (int section = 0; section < sectionCount; section++) {
-      int sectionItemCount = media.getSectionItemCount(section);
-      for (int item = 0; item < sectionItemCount; item++) {
-        MediaRecord mediaRecord = media.get(section, item);
-        selected.put(MediaSelectionKey.from(mediaRecord), mediaRecord);
-      }
+  void selectAllMedia(@NonNull List<MediaRecord> mediaRecords) {
+    for (MediaRecord mediaRecord : mediaRecords) {
+      selected.put(MediaSelectionKey.from(mediaRecord), mediaRecord);
     }
     this.notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTED);
   }
@@ -287,6 +311,19 @@ final class MediaGalleryAllAdapter extends StickyHeaderGridAdapter {
       bound = true;
     }
 
+    /**
+     * Shows an item whose record is still being loaded. It can't be clicked or selected until it's bound for real.
+     */
+    void bindPlaceholder(@Nullable BlurHash blurHash) {
+      if (bound) {
+        unbind();
+      }
+      this.mediaRecord = null;
+      itemView.setOnClickListener(null);
+      itemView.setOnLongClickListener(null);
+      updateSelectedView();
+    }
+
     void rebind() {
       bound = true;
     }
@@ -296,7 +333,7 @@ final class MediaGalleryAllAdapter extends StickyHeaderGridAdapter {
     }
 
     protected boolean isSelected() {
-      return selected.containsKey(MediaSelectionKey.from(mediaRecord));
+      return mediaRecord != null && selected.containsKey(MediaSelectionKey.from(mediaRecord));
     }
 
     protected void updateSelectedView() {
@@ -330,7 +367,7 @@ final class MediaGalleryAllAdapter extends StickyHeaderGridAdapter {
     }
 
     void onAttached() {
-      if (!bound) {
+      if (!bound && mediaRecord != null) {
         rebind();
       }
     }
@@ -371,6 +408,15 @@ final class MediaGalleryAllAdapter extends StickyHeaderGridAdapter {
       thumbnailView.setOnLongClickListener(view -> onLongClick());
     }
 
+    @Override
+    void bindPlaceholder(@Nullable BlurHash blurHash) {
+      super.bindPlaceholder(blurHash);
+      imageFileSize.setVisibility(View.GONE);
+      thumbnailView.setPlaceholder(requestManager, blurHash);
+      thumbnailView.setOnClickListener(null);
+      thumbnailView.setOnLongClickListener(null);
+    }
+
     @Override
     protected void updateSelectedView() {
       super.updateSelectedView();
@@ -446,6 +492,13 @@ final class MediaGalleryAllAdapter extends StickyHeaderGridAdapter {
       liveDataPair.observeForever(this);
     }
 
+    @Override
+    void bindPlaceholder(@Nullable BlurHash blurHash) {
+      super.bindPlaceholder(blurHash);
+      line1.setText(null);
+      line2.setText(null);
+    }
+
     @Override
     void rebind() {
       liveDataPair.observeForever(this);
@@ -557,6 +610,12 @@ final class MediaGalleryAllAdapter extends StickyHeaderGridAdapter {
         }
       }
     }
+
+    @Override
+    void bindPlaceholder(@Nullable BlurHash blurHash) {
+      super.bindPlaceholder(blurHash);
+      documentType.setText(null);
+    }
   }
 
   private class AudioDetailViewHolder extends DetailViewHolder {
@@ -582,6 +641,8 @@ final class MediaGalleryAllAdapter extends StickyHeaderGridAdapter {
 
       long mmsId = Objects.requireNonNull(mediaRecord.getAttachment()).mmsId;
 
+      audioView.setVisibility(View.VISIBLE);
+
       audioItemListener.unregisterPlaybackStateObserver(audioView.getPlaybackStateObserver());
       audioView.setAudio((AudioSlide) slide, new AudioViewCallbacksAdapter(audioItemListener, mmsId), true, true);
       audioView.setDownloadClickListener((v, s) -> {
@@ -611,6 +672,13 @@ final class MediaGalleryAllAdapter extends StickyHeaderGridAdapter {
       }
     }
 
+    @Override
+    void bindPlaceholder(@Nullable BlurHash blurHash) {
+      super.bindPlaceholder(blurHash);
+      audioView.setVisibility(View.INVISIBLE);
+      audioView.setOnClickListener(null);
+    }
+
     @Override
     protected @NonNull String getMediaTitle() {
       return context.getString(R.string.ThreadRecord_voice_message);
@@ -654,6 +722,14 @@ final class MediaGalleryAllAdapter extends StickyHeaderGridAdapter {
       thumbnailView.setOnLongClickListener(view -> onLongClick());
     }
 
+    @Override
+    void bindPlaceholder(@Nullable BlurHash blurHash) {
+      super.bindPlaceholder(blurHash);
+      thumbnailView.setPlaceholder(requestManager, blurHash);
+      thumbnailView.setOnClickListener(null);
+      thumbnailView.setOnLongClickListener(null);
+    }
+
     @Override
     protected @NonNull View getTransitionAnchor() {
       MediaPreviewCache.INSTANCE.setDrawable(null);
@@ -722,6 +798,16 @@ final class MediaGalleryAllAdapter extends StickyHeaderGridAdapter {
       line2View.setText(DateUtils.formatDateWithoutDayOfWeek(Locale.getDefault(), mediaRecord.getDate()));
     }
 
+    @Override
+    void bindPlaceholder(@Nullable BlurHash blurHash) {
+      super.bindPlaceholder(blurHash);
+      slide = null;
+      thumbnailView.setVisibility(View.GONE);
+      thumbnailView.setOnClickListener(null);
+      thumbnailView.setOnLongClickListener(null);
+      linkUrlView.setVisibility(View.GONE);
+    }
+
     @Override
     protected @Nullable String getMediaTitle() {
       if (linkTitle != null && !linkTitle.isEmpty()) {
@@ -33,8 +33,12 @@ import org.signal.core.ui.compose.SignalIcons;
 import org.signal.core.util.ByteSize;
 import org.signal.core.util.DimensionUnit;
 import org.signal.core.util.concurrent.LifecycleDisposable;
+import org.signal.core.util.concurrent.SimpleTask;
 import org.signal.core.util.logging.Log;
 import org.signal.core.ui.logging.LoggingFragment;
+import org.signal.paging.LivePagedData;
+import org.signal.paging.PagedData;
+import org.signal.paging.PagingConfig;
 import org.thoughtcrime.securesms.R;
 import org.thoughtcrime.securesms.attachments.DatabaseAttachment;
 import org.thoughtcrime.securesms.components.SignalProgressDialog;
@@ -81,8 +85,7 @@ public final class MediaOverviewPageFragment extends LoggingFragment
   private static final String THREAD_ID_EXTRA       = "thread_id";
   private static final String MEDIA_TYPE_EXTRA      = "media_type";
   private static final String GRID_MODE             = "grid_mode";
-  private static final int    INITIAL_LOAD_LIMIT    = 500;
-  private static final int    LOAD_MORE_THRESHOLD   = 50;
+  private static final int    PAGE_SIZE             = 60;
 
   private final ActionModeCallback            actionModeCallback = new ActionModeCallback();
   private       MediaTable.Sorting            sorting            = MediaTable.Sorting.Newest;
@@ -100,11 +103,11 @@ public final class MediaOverviewPageFragment extends LoggingFragment
   private       SignalProgressDialog          selectAllProgress;
   private       LifecycleDisposable           lifecycleDisposable;
   private       boolean                       pendingLoad = true;
-  private       int                           loadLimit;
-  private       boolean                       allLoaded;
-  private       boolean                       loadingMore;
   private       boolean                       pendingSelectAll;
 
+  private final MediaOverviewPagedDataSource                               dataSource = new MediaOverviewPagedDataSource();
+  private       LivePagedData<MediaSelectionKey, MediaTable.MediaRecord> pagedData;
+
   public static @NonNull Fragment newInstance(long threadId,
                                               @NonNull MediaLoader.MediaType mediaType,
                                               @NonNull GridMode gridMode)
@@ -131,8 +134,10 @@ public final class MediaOverviewPageFragment extends LoggingFragment
 
     if (threadId == Long.MIN_VALUE) throw new AssertionError();
 
-    loadLimit = threadId == MediaTable.ALL_THREADS ? INITIAL_LOAD_LIMIT : 0;
-    allLoaded = loadLimit == 0;
+    pagedData = PagedData.createForLiveData(dataSource,
+                                            new PagingConfig.Builder().setPageSize(PAGE_SIZE)
+                                                                      .setBufferPages(2)
+                                                                      .build());
   }
 
   @Override
@@ -172,27 +177,14 @@ public final class MediaOverviewPageFragment extends LoggingFragment
                                               this,
                                               sorting.isRelatedToFileSize(),
                                               threadId == MediaTable.ALL_THREADS);
+    this.adapter.setPagingController(pagedData.getController());
     this.recyclerView.setAdapter(adapter);
     this.recyclerView.setLayoutManager(gridManager);
     this.recyclerView.setHasFixedSize(true);
     this.recyclerView.addItemDecoration(new MediaGridDividerDecoration(spans, ViewUtil.dpToPx(4), adapter));
     this.recyclerView.addItemDecoration(new BottomOffsetDecoration(ViewUtil.dpToPx(160)));
-    this.recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
-      @Override
-      public void onScrolled(@NonNull RecyclerView rv, int dx, int dy) {
-        if (allLoaded || loadingMore) return;
 
-        int scrollRange  = rv.computeVerticalScrollRange();
-        int scrollOffset = rv.computeVerticalScrollOffset();
-        int scrollExtent = rv.computeVerticalScrollExtent();
-
-        if (scrollRange > 0 && scrollOffset + scrollExtent * 2 >= scrollRange) {
-          loadingMore = true;
-          loadLimit *= 2;
-          LoaderManager.getInstance(MediaOverviewPageFragment.this).restartLoader(0, null, MediaOverviewPageFragment.this);
-        }
-      }
-    });
+    pagedData.getData().observe(getViewLifecycleOwner(), adapter::setRecords);
 
     MediaOverviewViewModel viewModel = MediaOverviewViewModel.getMediaOverviewViewModel(requireActivity());
 
@@ -200,8 +192,6 @@ public final class MediaOverviewPageFragment extends LoggingFragment
       .observe(getViewLifecycleOwner(), sorting -> {
         if (sorting != null) {
           this.sorting = sorting;
-          this.loadLimit = threadId == MediaTable.ALL_THREADS ? INITIAL_LOAD_LIMIT : 0;
-          this.allLoaded = loadLimit == 0;
           adapter.setShowFileSizes(sorting.isRelatedToFileSize());
           if (isResumed()) {
             LoaderManager.getInstance(this).restartLoader(0, null, this);
@@ -244,7 +234,7 @@ public final class MediaOverviewPageFragment extends LoggingFragment
 
   @Override
   public @NonNull Loader<GroupedThreadMediaLoader.GroupedThreadMedia> onCreateLoader(int i, Bundle bundle) {
-    return new GroupedThreadMediaLoader(requireContext(), threadId, mediaType, sorting, loadLimit);
+    return new GroupedThreadMediaLoader(requireContext(), threadId, mediaType, sorting);
   }
 
   @Override
@@ -252,24 +242,8 @@ public final class MediaOverviewPageFragment extends LoggingFragment
     ((MediaGalleryAllAdapter) recyclerView.getAdapter()).setMedia(groupedThreadMedia);
     ((MediaGalleryAllAdapter) recyclerView.getAdapter()).notifyAllSectionsDataSetChanged();
 
-    if (loadLimit > 0) {
-      int totalMediaItems = 0;
-      for (int i = 0; i < groupedThreadMedia.getSectionCount(); i++) {
-        totalMediaItems += groupedThreadMedia.getSectionItemCount(i);
-      }
-      allLoaded = totalMediaItems < loadLimit;
-    } else {
-      allLoaded = true;
-    }
-
-    loadingMore = false;
-
-    if (pendingSelectAll) {
-      pendingSelectAll = false;
-      dismissSelectAllProgress();
-      getListAdapter().selectAllMedia();
-      updateMultiSelect();
-    }
+    dataSource.setMedia(groupedThreadMedia);
+    pagedData.getController().onDataInvalidated();
 
     noMedia.setVisibility(recyclerView.getAdapter().getItemCount() > 0 ? View.GONE : View.VISIBLE);
     getActivity().invalidateOptionsMenu();
@@ -278,6 +252,8 @@ public final class MediaOverviewPageFragment extends LoggingFragment
   @Override
   public void onLoaderReset(@NonNull Loader<GroupedThreadMediaLoader.GroupedThreadMedia> cursorLoader) {
     ((MediaGalleryAllAdapter) recyclerView.getAdapter()).setMedia(new GroupedThreadMediaLoader.EmptyGroupedThreadMedia());
+    dataSource.setMedia(new GroupedThreadMediaLoader.EmptyGroupedThreadMedia());
+    pagedData.getController().onDataInvalidated();
   }
 
   @Override
@@ -470,15 +446,23 @@ public final class MediaOverviewPageFragment extends LoggingFragment
   }
 
   private void handleSelectAllMedia() {
-    if (allLoaded) {
-      getListAdapter().selectAllMedia();
-      updateMultiSelect();
-    } else {
-      pendingSelectAll = true;
-      selectAllProgress = SignalProgressDialog.show(requireContext(), null, null, true);
-      loadLimit = 0;
-      LoaderManager.getInstance(this).restartLoader(0, null, this);
+    if (pendingSelectAll) {
+      return;
     }
+
+    pendingSelectAll  = true;
+    selectAllProgress = SignalProgressDialog.show(requireContext(), null, null, true);
+
+    SimpleTask.run(getViewLifecycleOwner().getLifecycle(), dataSource::loadAll, records -> {
+      if (!pendingSelectAll) {
+        return;
+      }
+
+      pendingSelectAll = false;
+      dismissSelectAllProgress();
+      getListAdapter().selectAllMedia(records);
+      updateMultiSelect();
+    });
   }
 
   private String getActionModeTitle() {
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.mediaoverview
+
+import org.signal.core.models.database.AttachmentId
+import org.signal.paging.PagedDataSource
+import org.thoughtcrime.securesms.database.MediaTable.MediaRecord
+import org.thoughtcrime.securesms.database.SignalDatabase
+import org.thoughtcrime.securesms.database.loaders.GroupedThreadMediaLoader.EmptyGroupedThreadMedia
+import org.thoughtcrime.securesms.database.loaders.GroupedThreadMediaLoader.GroupedThreadMedia
+
+/**
+ * Loads full [MediaRecord]s for the positions of a [GroupedThreadMedia], a page at a time, so the overview only has to hold
+ * the compact index for everything that isn't on screen.
+ */
+class MediaOverviewPagedDataSource : PagedDataSource<MediaSelectionKey, MediaRecord> {
+
+  @Volatile
+  private var media: GroupedThreadMedia = EmptyGroupedThreadMedia()
+
+  /**
+   * Must be followed by invalidating the paging controller, so that it picks up the new size.
+   */
+  fun setMedia(media: GroupedThreadMedia) {
+    this.media = media
+  }
+
+  override fun size(): Int {
+    return media.itemCount
+  }
+
+  override fun load(start: Int, length: Int, totalSize: Int, cancellationSignal: PagedDataSource.CancellationSignal): List<MediaRecord?> {
+    val media = this.media
+
+    if (media.itemCount != totalSize) {
+      return emptyList()
+    }
+
+    return load(media, start, minOf(start + length, totalSize))
+  }
+
+  override fun load(key: MediaSelectionKey): MediaRecord? {
+    return when (key) {
+      is MediaSelectionKey.Attachment -> SignalDatabase.media.getMediaRecords(listOf(key.attachmentId.id), emptyList())
+      is MediaSelectionKey.Message -> SignalDatabase.media.getMediaRecords(emptyList(), listOf(key.messageId))
+    }.firstOrNull()
+  }
+
+  override fun getKey(data: MediaRecord): MediaSelectionKey {
+    return MediaSelectionKey.from(data)
+  }
+
+  /**
+   * @return Every record of the current media, in order. Used for selecting everything at once.
+   */
+  fun loadAll(): List<MediaRecord> {
+    val media = this.media
+    return load(media, 0, media.itemCount).filterNotNull()
+  }
+
+  /**
+   * @return One entry per position from [start] to [end]. Rows that have been deleted since the index was built are null, and
+   *         stay placeholders until the index is reloaded without them.
+   */
+  private fun load(media: GroupedThreadMedia, start: Int, end: Int): List<MediaRecord?> {
+    val attachmentIds = ArrayList<Long>(end - start)
+    val linkMessageIds = ArrayList<Long>()
+
+    for (position in start until end) {
+      val attachmentId = media.getAttachmentId(position)
+
+      if (attachmentId != 0L) {
+        attachmentIds += attachmentId
+      } else {
+        linkMessageIds += media.getMessageId(position)
+      }
+    }
+
+    val byKey: Map<MediaSelectionKey, MediaRecord> = SignalDatabase.media.getMediaRecords(attachmentIds, linkMessageIds).associateBy { MediaSelectionKey.from(it) }
+    val records = ArrayList<MediaRecord?>(end - start)
+
+    for (position in start until end) {
+      val attachmentId = media.getAttachmentId(position)
+      records += if (attachmentId != 0L) {
+        byKey[MediaSelectionKey.Attachment(AttachmentId(attachmentId))]
+      } else {
+        byKey[MediaSelectionKey.Message(media.getMessageId(position))]
+      }
+    }
+
+    return records
+  }
+}
@@ -7,6 +7,7 @@ package org.thoughtcrime.securesms.messages
 
 import org.signal.libsignal.zkgroup.groups.GroupMasterKey
 import org.signal.libsignal.zkgroup.groups.GroupSecretParams
+import org.thoughtcrime.securesms.database.MessageSendLogTables
 import org.thoughtcrime.securesms.database.MessageTable
 import org.thoughtcrime.securesms.database.SignalDatabase
 import org.thoughtcrime.securesms.database.model.GroupRecord
@@ -72,8 +73,8 @@ abstract class BatchCache {
     SignalDatabase.threads.updateForMessageInsert(threadId, unarchive = true)
   }
 
-  protected fun flushMslDelete(recipientId: RecipientId, device: Int, timestamps: List<Long>) {
-    SignalDatabase.messageLog.deleteEntriesForRecipient(timestamps, recipientId, device)
+  protected fun flushMslDeletes(entries: Collection<MessageSendLogTables.DeliveredEntry>) {
+    SignalDatabase.messageLog.deleteEntries(entries)
   }
 
   abstract fun addJob(job: Job)
@@ -97,7 +98,7 @@ class OneTimeBatchCache : BatchCache() {
   }
 
   override fun addMslDelete(recipientId: RecipientId, device: Int, timestamps: List<Long>) {
-    flushMslDelete(recipientId, device, timestamps)
+    flushMslDeletes(timestamps.map { MessageSendLogTables.DeliveredEntry(it, recipientId, device) })
   }
 }
 
@@ -110,13 +111,16 @@ class OneTimeBatchCache : BatchCache() {
  *
  * Why thread updates? Thread updating has always been the longest thing to do in message processing. Deduping allows
  * us to only call it once per thread in a batch instead of X times a message for that thread is in the batch.
+ *
+ * Why MSL deletes? A message sent to a large group gets a delivery receipt from every member. Collecting them lets us prune
+ * the send log with one set-based delete and one orphaned payload sweep per batch instead of one of each per receipt.
  */
 class ReusedBatchCache : BatchCache() {
   override val batchThreadUpdates: Boolean = true
 
   private val batchedJobs = ArrayList<Job>(BATCH_SIZE)
   private val threadUpdates = HashSet<Long>(BATCH_SIZE)
-  private val mslDeletes = HashMap<Pair<RecipientId, Int>, MutableList<Long>>(BATCH_SIZE)
+  private val mslDeletes = LinkedHashSet<MessageSendLogTables.DeliveredEntry>(BATCH_SIZE)
 
   override fun addJob(job: Job) {
     batchedJobs += job
@@ -127,7 +131,7 @@ class ReusedBatchCache : BatchCache() {
   }
 
   override fun addMslDelete(recipientId: RecipientId, device: Int, timestamps: List<Long>) {
-    mslDeletes.getOrPut(recipientId to device) { mutableListOf() } += timestamps
+    timestamps.forEach { mslDeletes += MessageSendLogTables.DeliveredEntry(it, recipientId, device) }
   }
 
   override fun flushAndClear() {
@@ -141,7 +145,7 @@ class ReusedBatchCache : BatchCache() {
     if (threadUpdates.isNotEmpty() || mslDeletes.isNotEmpty()) {
       SignalDatabase.runInTransaction {
         threadUpdates.forEach { flushIncomingMessageInsertThreadUpdate(it) }
-        mslDeletes.forEach { (key, timestamps) -> flushMslDelete(key.first, key.second, timestamps) }
+        flushMslDeletes(mslDeletes)
       }
     }
     threadUpdates.clear()
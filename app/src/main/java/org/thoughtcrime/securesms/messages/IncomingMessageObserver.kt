@@ -274,7 +274,7 @@ class IncomingMessageObserver(
   fun processEnvelope(bufferedProtocolStore: BufferedProtocolStore, envelope: Envelope, serverDeliveredTimestamp: Long, batchCache: BatchCache): ProcessingResult? {
     return when (envelope.type) {
       Envelope.Type.SERVER_DELIVERY_RECEIPT -> {
-        processReceipt(envelope)
+        processReceipt(envelope, batchCache)
         null
       }
 
@@ -370,7 +370,7 @@ class IncomingMessageObserver(
     return result.content.syncMessage?.pniChangeNumber != null && SignalStore.account.pni != pniAtBatchStart
   }
 
-  private fun processReceipt(envelope: Envelope) {
+  private fun processReceipt(envelope: Envelope, batchCache: BatchCache) {
     val serviceId = ServiceId.parseOrNull(envelope.sourceServiceId, envelope.sourceServiceIdBinary)
     if (serviceId == null) {
       Log.w(TAG, "Invalid envelope sourceServiceId!")
@@ -381,7 +381,7 @@ class IncomingMessageObserver(
 
     Log.i(TAG, "Received server receipt. Sender: $senderId, Device: ${envelope.sourceDeviceId}, Timestamp: ${envelope.clientTimestamp}")
     SignalDatabase.messages.incrementDeliveryReceiptCount(envelope.clientTimestamp!!, senderId, System.currentTimeMillis())
-    SignalDatabase.messageLog.deleteEntryForRecipient(envelope.clientTimestamp!!, senderId, envelope.sourceDeviceId!!)
+    batchCache.addMslDelete(senderId, envelope.sourceDeviceId!!, listOf(envelope.clientTimestamp!!))
   }
 
   private fun MessageDecryptor.Result.toMessageState(): MessageState {
@@ -10,6 +10,7 @@ import androidx.lifecycle.Observer;
 
 import org.signal.core.util.ThreadUtil;
 import org.signal.core.util.logging.Log;
+import org.thoughtcrime.securesms.database.RecipientSearchIndex;
 import org.thoughtcrime.securesms.database.RecipientTable;
 import org.thoughtcrime.securesms.database.SignalDatabase;
 import org.thoughtcrime.securesms.database.model.RecipientRecord;
@@ -170,6 +171,8 @@ public final class LiveRecipient {
       Log.w(TAG, "[Refresh][MAIN] " + id, new Throwable());
     }
 
+    RecipientSearchIndex.onRecipientChanged(id);
+
     Recipient recipient = fetchAndCacheRecipientFromDisk(id);
     set(recipient);
     forceNotifySubject.onNext(new Object());
@@ -12,6 +12,7 @@ import androidx.annotation.WorkerThread;
 import org.signal.core.util.ThreadUtil;
 import org.signal.core.util.concurrent.SignalExecutors;
 import org.signal.core.util.logging.Log;
+import org.thoughtcrime.securesms.database.RecipientSearchIndex;
 import org.thoughtcrime.securesms.database.RecipientTable;
 import org.thoughtcrime.securesms.database.RecipientTable.MissingRecipientException;
 import org.thoughtcrime.securesms.database.SignalDatabase;
@@ -110,6 +111,8 @@ public final class LiveRecipientCache {
    */
   @WorkerThread
   public void refresh(@NonNull Collection<RecipientId> recipientIds) {
+    recipientIds.forEach(RecipientSearchIndex::onRecipientChanged);
+
     Set<RecipientId> cachedIds;
     synchronized (recipients) {
       cachedIds = recipientIds.stream().filter(recipients::containsKey).collect(Collectors.toSet());
@@ -128,6 +131,35 @@ public final class LiveRecipientCache {
     }
   }
 
+  /**
+   * Resolves every recipient in the collection that isn't already cached and resolved, using a fixed number of queries rather
+   * than one or two per recipient.
+   */
+  @WorkerThread
+  public void warm(@NonNull Collection<RecipientId> recipientIds) {
+    Set<RecipientId> needsResolve;
+    synchronized (recipients) {
+      needsResolve = recipientIds.stream()
+                                 .filter(id -> !id.isUnknown())
+                                 .filter(id -> {
+                                   LiveRecipient live = recipients.get(id);
+                                   return live == null || live.get().isResolving();
+                                 })
+                                 .collect(Collectors.toSet());
+    }
+
+    if (needsResolve.isEmpty()) {
+      return;
+    }
+
+    List<Recipient> resolved = RecipientCreator.forRecords(context, recipientTable.getExistingRecords(needsResolve).values());
+    for (Recipient recipient : resolved) {
+      RecipientIdCache.INSTANCE.put(recipient);
+    }
+
+    addToCache(resolved);
+  }
+
   /**
    * Adds a recipient to the cache if we don't have an entry. This will also update a cache entry
    * if the provided recipient is resolved, or if the existing cache entry is unresolved.
@@ -246,34 +278,40 @@ public final class LiveRecipientCache {
     Stopwatch stopwatch = new Stopwatch("recipient-warm-up");
 
     SignalExecutors.BOUNDED.execute(() -> {
-      ThreadTable     threadTable = SignalDatabase.threads();
-      List<Recipient> recipients  = new ArrayList<>();
+      ThreadTable       threadTable = SignalDatabase.threads();
+      List<Recipient>   recipients  = new ArrayList<>();
+      List<RecipientId> unresolved  = new ArrayList<>();
 
       try (ThreadTable.Reader reader = threadTable.readerFor(threadTable.getRecentConversationList(THREAD_CACHE_WARM_MAX, false, false))) {
         int                 i      = 0;
         ThreadWithRecipient record = null;
 
         while ((record = reader.getNext()) != null && i < THREAD_CACHE_WARM_MAX) {
-          recipients.add(record.getRecipient());
+          if (record.getRecipient().isResolving()) {
+            unresolved.add(record.getRecipient().getId());
+          } else {
+            recipients.add(record.getRecipient());
+          }
           i++;
         }
       }
 
-      Log.d(TAG, "Warming up " + recipients.size() + " thread recipients.");
+      Log.d(TAG, "Warming up " + (recipients.size() + unresolved.size()) + " thread recipients.");
       addToCache(recipients);
+      warm(unresolved);
 
       stopwatch.split("thread");
 
       if (SignalStore.registration().isRegistrationComplete() && SignalStore.account().getAci() != null) {
         try (Cursor cursor = SignalDatabase.recipients().getNonGroupContacts(RecipientTable.IncludeSelfMode.Exclude.INSTANCE)) {
-          int count = 0;
-          while (cursor != null && cursor.moveToNext() && count < CONTACT_CACHE_WARM_MAX) {
-            RecipientId id = RecipientId.from(CursorUtil.requireLong(cursor, RecipientTable.ID));
-            Recipient.resolved(id);
-            count++;
+          List<RecipientId> contacts = new ArrayList<>(CONTACT_CACHE_WARM_MAX);
+          while (cursor != null && cursor.moveToNext() && contacts.size() < CONTACT_CACHE_WARM_MAX) {
+            contacts.add(RecipientId.from(CursorUtil.requireLong(cursor, RecipientTable.ID)));
           }
 
-          Log.d(TAG, "Warmed up " + count + " contact recipient.");
+          warm(contacts);
+
+          Log.d(TAG, "Warmed up " + contacts.size() + " contact recipient.");
 
           stopwatch.split("contact");
         }
@@ -295,6 +333,8 @@ public final class LiveRecipientCache {
     synchronized (recipients) {
       recipients.clear();
     }
+
+    RecipientSearchIndex.invalidate();
   }
 
   private boolean isValidForCache(@NonNull Recipient recipient) {
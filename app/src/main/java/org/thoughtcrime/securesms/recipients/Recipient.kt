@@ -951,9 +951,15 @@ class Recipient(
       return live(id).resolve()
     }
 
+    /**
+     * Returns fully-populated [Recipient]s for each id. Anything not already cached is read from disk in bulk.
+     */
     @JvmStatic
     @WorkerThread
     fun resolvedList(ids: Collection<RecipientId>): List<Recipient> {
+      if (ids.size > 1) {
+        AppDependencies.recipientCache.warm(ids)
+      }
       return ids.map { resolved(it) }
     }
 
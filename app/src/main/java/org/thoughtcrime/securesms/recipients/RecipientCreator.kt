@@ -124,6 +124,23 @@ object RecipientCreator {
     return recipient
   }
 
+  /**
+   * Bulk version of [forRecord]. The group details for every group record are read in a single query instead of one per group.
+   */
+  @JvmStatic
+  @WorkerThread
+  fun forRecords(context: Context, records: Collection<RecipientRecord>): List<Recipient> {
+    val groups: Map<RecipientId, GroupRecord> = SignalDatabase.groups.getGroups(records.filter { it.groupId != null }.map { it.id })
+
+    return records.map { record ->
+      if (record.groupId != null) {
+        groups[record.id]?.let { forGroup(it, record) } ?: forUnknownGroup(record.id, record.groupId)
+      } else {
+        forRecord(context, record)
+      }
+    }
+  }
+
   @JvmStatic
   fun forUnknownGroup(id: RecipientId, groupId: GroupId?): Recipient {
     return Recipient(
@@ -3,6 +3,7 @@ package org.thoughtcrime.securesms.service.webrtc;
 import android.util.LongSparseArray;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.util.stream.Collectors;
 
@@ -19,6 +20,7 @@ import org.thoughtcrime.securesms.groups.GroupManager;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.recipients.RecipientId;
 import org.thoughtcrime.securesms.ringrtc.RemotePeer;
+import org.thoughtcrime.securesms.service.webrtc.state.RemoteParticipants;
 import org.thoughtcrime.securesms.service.webrtc.state.VideoState;
 import org.thoughtcrime.securesms.service.webrtc.state.WebRtcServiceState;
 import org.thoughtcrime.securesms.service.webrtc.state.WebRtcServiceStateBuilder;
@@ -69,8 +71,8 @@ public class GroupActionProcessor extends DeviceAwareActionProcessor {
   protected @NonNull WebRtcServiceState handleGroupRemoteDeviceStateChanged(@NonNull WebRtcServiceState currentState) {
     Log.i(tag, "handleGroupRemoteDeviceStateChanged():");
 
-    GroupCall                               groupCall    = currentState.getCallInfoState().requireGroupCall();
-    Map<CallParticipantId, CallParticipant> participants = currentState.getCallInfoState().getRemoteCallParticipantsMap();
+    GroupCall          groupCall    = currentState.getCallInfoState().requireGroupCall();
+    RemoteParticipants participants = currentState.getCallInfoState().getRemoteCallParticipantsMap();
 
     LongSparseArray<GroupCall.RemoteDeviceState> remoteDevices = groupCall.getRemoteDeviceStates();
 
@@ -79,10 +81,6 @@ public class GroupActionProcessor extends DeviceAwareActionProcessor {
       return currentState;
     }
 
-    WebRtcServiceStateBuilder.CallInfoStateBuilder builder = currentState.builder()
-                                                                         .changeCallInfoState()
-                                                                         .clearParticipantMap();
-
     List<GroupCall.RemoteDeviceState> remoteDeviceStates = new ArrayList<>(remoteDevices.size());
     for (int i = 0; i < remoteDevices.size(); i++) {
       remoteDeviceStates.add(remoteDevices.get(remoteDevices.keyAt(i)));
@@ -92,10 +90,13 @@ public class GroupActionProcessor extends DeviceAwareActionProcessor {
     Set<Recipient> seen = new HashSet<>();
     seen.add(Recipient.self());
 
+    List<CallParticipant> updatedParticipants = new ArrayList<>(remoteDeviceStates.size());
+
     for (GroupCall.RemoteDeviceState device : remoteDeviceStates) {
-      Recipient         recipient         = Recipient.externalPush(ACI.from(device.getUserId()));
+      CallParticipant   existing          = participants.getByDemuxId(device.getDemuxId());
+      Recipient         recipient         = getRemoteRecipient(existing, ACI.from(device.getUserId()));
       CallParticipantId callParticipantId = new CallParticipantId(device.getDemuxId(), recipient.getId());
-      CallParticipant   callParticipant   = participants.get(callParticipantId);
+      CallParticipant   callParticipant   = callParticipantId.equals(existing != null ? existing.getCallParticipantId() : null) ? existing : null;
 
       BroadcastVideoSink videoSink;
       VideoTrack         videoTrack = device.getVideoTrack();
@@ -107,30 +108,34 @@ public class GroupActionProcessor extends DeviceAwareActionProcessor {
                                                                                                                                                    currentState.getLocalDeviceState().getOrientation().getDegrees());
         videoTrack.addSink(videoSink);
       } else {
-        videoSink = new BroadcastVideoSink();
+        videoSink = (callParticipant != null && callParticipant.getVideoSink().getLockableEglBase().getEglBase() == null) ? callParticipant.getVideoSink()
+                                                                                                                          : new BroadcastVideoSink();
       }
 
       long handRaisedTimestamp = callParticipant != null ? callParticipant.getHandRaisedTimestamp() : CallParticipant.HAND_LOWERED;
 
-      builder.putParticipant(callParticipantId,
-                             CallParticipant.createRemote(callParticipantId,
-                                                          recipient,
-                                                          null,
-                                                          videoSink,
-                                                          device.getForwardingVideo() == null || device.getForwardingVideo(),
-                                                          Boolean.FALSE.equals(device.getAudioMuted()),
-                                                          Boolean.FALSE.equals(device.getVideoMuted()),
-                                                          handRaisedTimestamp,
-                                                          device.getSpeakerTime(),
-                                                          device.getMediaKeysReceived(),
-                                                          device.getAddedTime(),
-                                                          Boolean.TRUE.equals(device.getPresenting()),
-                                                          seen.contains(recipient) ? CallParticipant.DeviceOrdinal.SECONDARY
-                                                                                   : CallParticipant.DeviceOrdinal.PRIMARY));
+      updatedParticipants.add(CallParticipant.createRemote(callParticipantId,
+                                                           recipient,
+                                                           null,
+                                                           videoSink,
+                                                           device.getForwardingVideo() == null || device.getForwardingVideo(),
+                                                           Boolean.FALSE.equals(device.getAudioMuted()),
+                                                           Boolean.FALSE.equals(device.getVideoMuted()),
+                                                           handRaisedTimestamp,
+                                                           device.getSpeakerTime(),
+                                                           device.getMediaKeysReceived(),
+                                                           device.getAddedTime(),
+                                                           Boolean.TRUE.equals(device.getPresenting()),
+                                                           seen.contains(recipient) ? CallParticipant.DeviceOrdinal.SECONDARY
+                                                                                    : CallParticipant.DeviceOrdinal.PRIMARY));
 
       seen.add(recipient);
     }
 
+    WebRtcServiceStateBuilder.CallInfoStateBuilder builder = currentState.builder()
+                                                                         .changeCallInfoState()
+                                                                         .replaceParticipants(updatedParticipants);
+
     builder.remoteDevicesCount(remoteDevices.size());
 
     WebRtcServiceState updatedState = builder.build();
@@ -144,6 +149,17 @@ public class GroupActionProcessor extends DeviceAwareActionProcessor {
     return updatedState;
   }
 
+  /**
+   * Devices usually belong to the same user from one update to the next, so re-resolve the recipient we already have rather than looking it up by ACI.
+   */
+  private static @NonNull Recipient getRemoteRecipient(@Nullable CallParticipant existing, @NonNull ACI aci) {
+    if (existing != null && aci.equals(existing.getRecipient().getAci().orElse(null))) {
+      return Recipient.resolved(existing.getRecipient().getId());
+    }
+
+    return Recipient.externalPush(aci);
+  }
+
   @Override
   protected @NonNull WebRtcServiceState handleGroupRequestMembershipProof(@NonNull WebRtcServiceState currentState, int groupCallHashCode) {
     Log.i(tag, "handleGroupRequestMembershipProof():");
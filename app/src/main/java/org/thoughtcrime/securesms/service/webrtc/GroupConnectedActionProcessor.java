@@ -22,13 +22,13 @@ import org.thoughtcrime.securesms.recipients.RecipientId;
 import org.thoughtcrime.securesms.ringrtc.OutgoingVideoSourceRouter;
 import org.thoughtcrime.securesms.ringrtc.RemotePeer;
 import org.thoughtcrime.securesms.service.webrtc.state.LocalDeviceState;
+import org.thoughtcrime.securesms.service.webrtc.state.RemoteParticipants;
 import org.thoughtcrime.securesms.service.webrtc.state.WebRtcEphemeralState;
 import org.thoughtcrime.securesms.service.webrtc.state.WebRtcServiceState;
 import org.thoughtcrime.securesms.service.webrtc.state.WebRtcServiceStateBuilder;
 import org.thoughtcrime.securesms.webrtc.CallNotificationBuilder;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -215,44 +215,41 @@ public class GroupConnectedActionProcessor extends GroupActionProcessor {
   protected @NonNull WebRtcServiceState handleRemoteMuteRequest(@NonNull WebRtcServiceState currentState, long sourceDemuxId) {
     Log.i(tag, "handleRemoteMuteRequest():");
 
-    GroupCall                               groupCall    = currentState.getCallInfoState().requireGroupCall();
-    Map<CallParticipantId, CallParticipant> participants = currentState.getCallInfoState().getRemoteCallParticipantsMap();
+    GroupCall       groupCall = currentState.getCallInfoState().requireGroupCall();
+    CallParticipant source    = currentState.getCallInfoState().getRemoteCallParticipantsMap().getByDemuxId(sourceDemuxId);
 
     if (!currentState.getLocalDeviceState().isMicrophoneEnabled()) {
       // Nothing to do.
       return currentState;
     }
 
-    for (Map.Entry<CallParticipantId, CallParticipant> entry : participants.entrySet()) {
-      if (entry.getKey().demuxId == sourceDemuxId) {
-        try {
-          groupCall.setOutgoingAudioMutedRemotely(sourceDemuxId);
-        } catch (CallException e) {
-          return groupCallFailure(currentState, "Unable to set attribution of remote mute", e);
-        }
-        return currentState.builder().changeLocalDeviceState().setRemoteMutedBy(entry.getValue()).build();
-      }
+    if (source == null) {
+      return currentState;
     }
 
-    return currentState;
+    try {
+      groupCall.setOutgoingAudioMutedRemotely(sourceDemuxId);
+    } catch (CallException e) {
+      return groupCallFailure(currentState, "Unable to set attribution of remote mute", e);
+    }
+    return currentState.builder().changeLocalDeviceState().setRemoteMutedBy(source).build();
   }
 
   @Override
   protected @NonNull WebRtcServiceState handleObservedRemoteMute(@NonNull WebRtcServiceState currentState, long sourceDemuxId, long targetDemuxId) {
     Log.i(tag, "handleObservedRemoteMute not processed");
 
-    GroupCall                               groupCall    = currentState.getCallInfoState().requireGroupCall();
-    Map<CallParticipantId, CallParticipant> participants = currentState.getCallInfoState().getRemoteCallParticipantsMap();
+    GroupCall          groupCall    = currentState.getCallInfoState().requireGroupCall();
+    RemoteParticipants participants = currentState.getCallInfoState().getRemoteCallParticipantsMap();
 
     Long      selfDemuxId = groupCall.getLocalDeviceState().getDemuxId();
     Recipient source      = null;
     if (selfDemuxId != null && sourceDemuxId == selfDemuxId) {
       source = Recipient.self();
     } else {
-      for (Map.Entry<CallParticipantId, CallParticipant> entry : participants.entrySet()) {
-        if (entry.getKey().demuxId == sourceDemuxId) {
-          source = entry.getValue().getRecipient();
-        }
+      CallParticipant sourceParticipant = participants.getByDemuxId(sourceDemuxId);
+      if (sourceParticipant != null) {
+        source = sourceParticipant.getRecipient();
       }
     }
     if (source == null) {
@@ -260,14 +257,12 @@ public class GroupConnectedActionProcessor extends GroupActionProcessor {
       return currentState;
     }
 
-    for (Map.Entry<CallParticipantId, CallParticipant> entry : participants.entrySet()) {
-      if (entry.getKey().demuxId == targetDemuxId) {
-        WebRtcServiceStateBuilder.CallInfoStateBuilder builder = currentState.builder().changeCallInfoState().putParticipant(entry.getKey(), entry.getValue().withRemotelyMutedBy(source));
-        return builder.build();
-      }
+    CallParticipant target = participants.getByDemuxId(targetDemuxId);
+    if (target == null) {
+      return currentState;
     }
 
-    return currentState;
+    return currentState.builder().changeCallInfoState().putParticipant(target.getCallParticipantId(), target.withRemotelyMutedBy(source)).build();
   }
 
   @Override
@@ -275,16 +270,19 @@ public class GroupConnectedActionProcessor extends GroupActionProcessor {
     GroupCall                                    groupCall          = currentState.getCallInfoState().requireGroupCall();
     LongSparseArray<GroupCall.RemoteDeviceState> remoteDeviceStates = groupCall.getRemoteDeviceStates();
 
-    CallParticipant.AudioLevel localAudioLevel = CallParticipant.AudioLevel.fromRawAudioLevel(groupCall.getLocalDeviceState().getAudioLevel());
+    RemoteParticipants                                 participants      = currentState.getCallInfoState().getRemoteCallParticipantsMap();
+    CallParticipant.AudioLevel                         localAudioLevel   = CallParticipant.AudioLevel.fromRawAudioLevel(groupCall.getLocalDeviceState().getAudioLevel());
+    Map<CallParticipantId, CallParticipant.AudioLevel> remoteAudioLevels = ephemeralState.getRemoteAudioLevels();
 
-    HashMap<CallParticipantId, CallParticipant.AudioLevel> remoteAudioLevels = new HashMap<>();
-    for (CallParticipant participant : currentState.getCallInfoState().getRemoteCallParticipants()) {
-      CallParticipantId callParticipantId = participant.getCallParticipantId();
+    if (haveAudioLevelsChanged(participants, remoteDeviceStates, remoteAudioLevels)) {
+      remoteAudioLevels = new HashMap<>();
 
       if (remoteDeviceStates != null) {
-        GroupCall.RemoteDeviceState state = remoteDeviceStates.get(callParticipantId.demuxId);
-        if (state != null) {
-          remoteAudioLevels.put(callParticipantId, CallParticipant.AudioLevel.fromRawAudioLevel(state.getAudioLevel()));
+        for (int i = 0; i < remoteDeviceStates.size(); i++) {
+          CallParticipant participant = participants.getByDemuxId(remoteDeviceStates.keyAt(i));
+          if (participant != null) {
+            remoteAudioLevels.put(participant.getCallParticipantId(), CallParticipant.AudioLevel.fromRawAudioLevel(remoteDeviceStates.valueAt(i).getAudioLevel()));
+          }
         }
       }
     }
@@ -292,6 +290,32 @@ public class GroupConnectedActionProcessor extends GroupActionProcessor {
     return ephemeralState.copy(localAudioLevel, remoteAudioLevels, ephemeralState.getUnexpiredReactions());
   }
 
+  /**
+   * Audio levels arrive many times a second and mostly stay in the same bucket, so check against the previous levels before building a new map of them.
+   */
+  private static boolean haveAudioLevelsChanged(@NonNull RemoteParticipants participants,
+                                                @Nullable LongSparseArray<GroupCall.RemoteDeviceState> remoteDeviceStates,
+                                                @NonNull Map<CallParticipantId, CallParticipant.AudioLevel> previousLevels)
+  {
+    int count = 0;
+
+    if (remoteDeviceStates != null) {
+      for (int i = 0; i < remoteDeviceStates.size(); i++) {
+        CallParticipant participant = participants.getByDemuxId(remoteDeviceStates.keyAt(i));
+        if (participant == null) {
+          continue;
+        }
+
+        if (previousLevels.get(participant.getCallParticipantId()) != CallParticipant.AudioLevel.fromRawAudioLevel(remoteDeviceStates.valueAt(i).getAudioLevel())) {
+          return true;
+        }
+        count++;
+      }
+    }
+
+    return count != previousLevels.size();
+  }
+
   @Override
   protected @NonNull WebRtcServiceState handleGroupJoinedMembershipChanged(@NonNull WebRtcServiceState currentState) {
     Log.i(tag, "handleGroupJoinedMembershipChanged():");
@@ -391,7 +415,7 @@ public class GroupConnectedActionProcessor extends GroupActionProcessor {
   @Override
   protected @NonNull WebRtcEphemeralState handleGroupCallReaction(@NonNull WebRtcServiceState currentState, @NonNull WebRtcEphemeralState ephemeralState, List<GroupCall.Reaction> reactions) {
     List<GroupCallReactionEvent> reactionList  = ephemeralState.getUnexpiredReactions();
-    List<CallParticipant>        participants  = currentState.getCallInfoState().getRemoteCallParticipants();
+    RemoteParticipants           participants  = currentState.getCallInfoState().getRemoteCallParticipantsMap();
 
     for (GroupCall.Reaction reaction : reactions) {
       final GroupCallReactionEvent event = createGroupCallReaction(participants, reaction);
@@ -404,8 +428,8 @@ public class GroupConnectedActionProcessor extends GroupActionProcessor {
   }
 
   @Nullable
-  private GroupCallReactionEvent createGroupCallReaction(Collection<CallParticipant> participants, final GroupCall.Reaction reaction) {
-    CallParticipant participant = participants.stream().filter(it -> it.getCallParticipantId().demuxId == reaction.demuxId).findFirst().orElse(null);
+  private GroupCallReactionEvent createGroupCallReaction(RemoteParticipants participants, final GroupCall.Reaction reaction) {
+    CallParticipant participant = participants.getByDemuxId(reaction.demuxId);
     if (participant == null) {
       Log.v(TAG, "Could not find CallParticipantId in list of call participants based on demuxId for reaction.");
       return null;
@@ -423,16 +447,20 @@ public class GroupConnectedActionProcessor extends GroupActionProcessor {
     WebRtcServiceStateBuilder.CallInfoStateBuilder callInfoBuilder = currentState.builder().changeCallInfoState();
     Long                                           localDemuxId    = currentState.getCallInfoState().requireGroupCall().getLocalDeviceState().getDemuxId();
 
-    List<CallParticipant> participants = currentState.getCallInfoState().getRemoteCallParticipants();
+    Map<Long, Integer> raisedHandIndexes = new HashMap<>(raisedHands.size());
+    for (int i = raisedHands.size() - 1; i >= 0; i--) {
+      raisedHandIndexes.put(raisedHands.get(i), i);
+    }
 
-    for (CallParticipant updatedParticipant : participants) {
-      int raisedHandIndex = raisedHands.indexOf(updatedParticipant.getCallParticipantId().demuxId);
-      boolean wasHandAlreadyRaised  = updatedParticipant.isHandRaised();
+    for (CallParticipant updatedParticipant : currentState.getCallInfoState().getRemoteCallParticipants()) {
+      Integer index                = raisedHandIndexes.get(updatedParticipant.getCallParticipantId().demuxId);
+      int     raisedHandIndex      = index != null ? index : -1;
+      boolean wasHandAlreadyRaised = updatedParticipant.isHandRaised();
 
       if (wasHandAlreadyRaised) {
         playSound = false;
       }
-      
+
       if (raisedHandIndex >= 0 && !wasHandAlreadyRaised) {
         callInfoBuilder.putParticipant(updatedParticipant.getCallParticipantId(), updatedParticipant.withHandRaisedTimestamp(now + raisedHandIndex));
       } else if (raisedHandIndex < 0 && wasHandAlreadyRaised) {
@@ -17,13 +17,14 @@ import java.util.Optional
 /**
  * General state of ongoing calls.
  *
+ * @param remoteParticipants Shared between duplicates rather than copied, since updating it always produces a new instance.
  * @param pendingParticipants A list of pending users wishing to join a given call link.
  */
 data class CallInfoState(
   var callState: WebRtcViewModel.State = WebRtcViewModel.State.IDLE,
   var callRecipient: Recipient = Recipient.UNKNOWN,
   var callConnectedTime: Long = -1,
-  @get:JvmName("getRemoteCallParticipantsMap") var remoteParticipants: MutableMap<CallParticipantId, CallParticipant> = mutableMapOf(),
+  @get:JvmName("getRemoteCallParticipantsMap") var remoteParticipants: RemoteParticipants = RemoteParticipants.EMPTY,
   var peerMap: MutableMap<Int, RemotePeer> = mutableMapOf(),
   var activePeer: RemotePeer? = null,
   var groupCall: GroupCall? = null,
@@ -38,7 +39,7 @@ data class CallInfoState(
 ) {
 
   val remoteCallParticipants: List<CallParticipant>
-    get() = ArrayList(remoteParticipants.values)
+    get() = remoteParticipants.list
 
   fun getRemoteCallParticipant(recipient: Recipient): CallParticipant? {
     return getRemoteCallParticipant(CallParticipantId(recipient))
@@ -65,7 +66,6 @@ data class CallInfoState(
   }
 
   fun duplicate(): CallInfoState = copy(
-    remoteParticipants = remoteParticipants.toMutableMap(),
     peerMap = peerMap.toMutableMap(),
     identityChangedRecipients = identityChangedRecipients.toMutableSet()
   )
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.service.webrtc.state
+
+import kotlinx.collections.immutable.PersistentMap
+import kotlinx.collections.immutable.persistentHashMapOf
+import org.thoughtcrime.securesms.events.CallParticipant
+import org.thoughtcrime.securesms.events.CallParticipantId
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * The remote participants of a call, keyed by [CallParticipantId], indexed by demux ID, and listed in the order they were added.
+ *
+ * Instances are immutable, and each update shares everything it didn't touch with the instance it came from. That makes copying the call state on every
+ * event free, and means an event that changes one participant in a large call only costs that one participant. An update that leaves a participant as it
+ * was keeps the existing instance, and an update that changes nothing returns the same [RemoteParticipants].
+ *
+ * Each instance also remembers what changed to make it from the one before, so that whoever publishes it can pass along just the changes with
+ * [changesSince]. Iterating the map itself is in no particular order; use [list] for the order participants were added.
+ */
+class RemoteParticipants private constructor(
+  private val participants: PersistentMap<CallParticipantId, CallParticipant>,
+  private val demuxIds: PersistentMap<Long, CallParticipantId>,
+
+  /** The participants in the order they were added. Shared, rather than copied, by every state that hasn't changed a participant since. */
+  val list: List<CallParticipant>,
+
+  private val parentVersion: Long,
+  private val changes: Changes
+) : Map<CallParticipantId, CallParticipant> by participants {
+
+  companion object {
+    private val nextVersion = AtomicLong()
+
+    @JvmField
+    val EMPTY = RemoteParticipants(persistentHashMapOf(), persistentHashMapOf(), emptyList(), -1, Changes.NONE)
+
+    /**
+     * A participant is only replaced if it changed. Recipient equality only looks at the ID, so a fresher recipient snapshot counts as a change too.
+     */
+    private fun isUnchanged(existing: CallParticipant, participant: CallParticipant): Boolean {
+      return existing === participant || (existing == participant && existing.recipient === participant.recipient)
+    }
+  }
+
+  private val version: Long = nextVersion.getAndIncrement()
+
+  override val values: Collection<CallParticipant>
+    get() = list
+
+  fun getByDemuxId(demuxId: Long): CallParticipant? {
+    return demuxIds[demuxId]?.let { participants[it] }
+  }
+
+  fun putParticipant(id: CallParticipantId, participant: CallParticipant): RemoteParticipants {
+    val existing = participants[id]
+    if (existing != null && isUnchanged(existing, participant)) {
+      return this
+    }
+
+    val updatedList: List<CallParticipant> = if (existing != null) {
+      list.map { if (it === existing) participant else it }
+    } else {
+      list + participant
+    }
+
+    return RemoteParticipants(
+      participants = participants.put(id, participant),
+      demuxIds = demuxIds.put(id.demuxId, id),
+      list = updatedList,
+      parentVersion = version,
+      changes = if (existing != null) Changes(emptyList(), listOf(id), emptyList()) else Changes(listOf(id), emptyList(), emptyList())
+    )
+  }
+
+  fun removeParticipant(id: CallParticipantId): RemoteParticipants {
+    val existing = participants[id] ?: return this
+
+    return RemoteParticipants(
+      participants = participants.remove(id),
+      demuxIds = if (demuxIds[id.demuxId] == id) demuxIds.remove(id.demuxId) else demuxIds,
+      list = list.filter { it !== existing },
+      parentVersion = version,
+      changes = Changes(emptyList(), emptyList(), listOf(id))
+    )
+  }
+
+  /**
+   * Makes [updated] the full set of participants, in that order. Participants that are unchanged keep their existing instance, and only the ones that were
+   * added, changed or removed are written to the map.
+   */
+  fun replaceParticipants(updated: List<CallParticipant>): RemoteParticipants {
+    val participantsBuilder = participants.builder()
+    val demuxIdsBuilder = demuxIds.builder()
+    val added: MutableList<CallParticipantId> = ArrayList(0)
+    val changed: MutableList<CallParticipantId> = ArrayList(0)
+    var updatedList: Array<CallParticipant?>? = if (updated.size != list.size) arrayOfNulls(updated.size) else null
+    var retained = 0
+
+    for ((i, participant) in updated.withIndex()) {
+      val id = participant.callParticipantId
+      val existing = participants[id]
+      var next = participant
+
+      if (existing == null) {
+        added += id
+      } else if (isUnchanged(existing, participant)) {
+        next = existing
+        retained++
+      } else {
+        changed += id
+        retained++
+      }
+
+      if (next !== existing) {
+        participantsBuilder[id] = next
+        demuxIdsBuilder[id.demuxId] = id
+      }
+
+      if (updatedList == null && next !== list[i]) {
+        updatedList = arrayOfNulls(updated.size)
+        for (j in 0 until i) {
+          updatedList[j] = list[j]
+        }
+      }
+
+      updatedList?.set(i, next)
+    }
+
+    val removed: MutableList<CallParticipantId> = ArrayList(0)
+    if (retained < participants.size) {
+      val ids: MutableSet<CallParticipantId> = HashSet(updated.size)
+      updated.mapTo(ids) { it.callParticipantId }
+
+      for (participant in list) {
+        val id = participant.callParticipantId
+        if (id !in ids) {
+          participantsBuilder.remove(id)
+          if (demuxIdsBuilder[id.demuxId] == id) {
+            demuxIdsBuilder.remove(id.demuxId)
+          }
+          removed += id
+        }
+      }
+    }
+
+    if (updatedList == null) {
+      return this
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    return RemoteParticipants(
+      participants = participantsBuilder.build(),
+      demuxIds = demuxIdsBuilder.build(),
+      list = (updatedList as Array<CallParticipant>).asList(),
+      parentVersion = version,
+      changes = Changes(added, changed, removed)
+    )
+  }
+
+  fun clearParticipants(): RemoteParticipants {
+    if (isEmpty()) {
+      return this
+    }
+
+    return RemoteParticipants(
+      participants = participants.clear(),
+      demuxIds = demuxIds.clear(),
+      list = emptyList(),
+      parentVersion = version,
+      changes = Changes(emptyList(), emptyList(), list.map { it.callParticipantId })
+    )
+  }
+
+  /**
+   * @return Which participants were added, replaced or removed to get from [previous] to this. Free when [previous] is the instance this one was made from,
+   *         otherwise a walk over both lists.
+   */
+  fun changesSince(previous: RemoteParticipants): Changes {
+    if (previous === this) {
+      return Changes.NONE
+    }
+
+    if (previous.version == parentVersion) {
+      return changes
+    }
+
+    val added: MutableList<CallParticipantId> = ArrayList()
+    val updated: MutableList<CallParticipantId> = ArrayList()
+    val removed: MutableList<CallParticipantId> = ArrayList()
+
+    for (participant in list) {
+      val old = previous.participants[participant.callParticipantId]
+      if (old == null) {
+        added += participant.callParticipantId
+      } else if (old !== participant) {
+        updated += participant.callParticipantId
+      }
+    }
+
+    for (participant in previous.list) {
+      if (participant.callParticipantId !in participants) {
+        removed += participant.callParticipantId
+      }
+    }
+
+    return Changes(added, updated, removed)
+  }
+
+  override fun equals(other: Any?): Boolean {
+    return this === other || participants == other
+  }
+
+  override fun hashCode(): Int {
+    return participants.hashCode()
+  }
+
+  override fun toString(): String {
+    return list.toString()
+  }
+
+  class Changes(
+    val added: List<CallParticipantId>,
+    val updated: List<CallParticipantId>,
+    val removed: List<CallParticipantId>
+  ) {
+    companion object {
+      @JvmField
+      val NONE = Changes(emptyList(), emptyList(), emptyList())
+    }
+
+    val isEmpty: Boolean
+      get() = added.isEmpty() && updated.isEmpty() && removed.isEmpty()
+
+    override fun toString(): String {
+      return "Changes(added=$added, updated=$updated, removed=$removed)"
+    }
+  }
+}
@@ -314,17 +314,22 @@ public class WebRtcServiceStateBuilder {
     }
 
     public @NonNull CallInfoStateBuilder putParticipant(@NonNull CallParticipantId callParticipantId, @NonNull CallParticipant callParticipant) {
-      toBuild.getRemoteCallParticipantsMap().put(callParticipantId, callParticipant);
+      toBuild.setRemoteParticipants(toBuild.getRemoteCallParticipantsMap().putParticipant(callParticipantId, callParticipant));
       return this;
     }
 
     public @NonNull CallInfoStateBuilder putParticipant(@NonNull Recipient recipient, @NonNull CallParticipant callParticipant) {
-      toBuild.getRemoteCallParticipantsMap().put(new CallParticipantId(recipient), callParticipant);
+      toBuild.setRemoteParticipants(toBuild.getRemoteCallParticipantsMap().putParticipant(new CallParticipantId(recipient), callParticipant));
+      return this;
+    }
+
+    public @NonNull CallInfoStateBuilder replaceParticipants(@NonNull List<CallParticipant> callParticipants) {
+      toBuild.setRemoteParticipants(toBuild.getRemoteCallParticipantsMap().replaceParticipants(callParticipants));
       return this;
     }
 
     public @NonNull CallInfoStateBuilder clearParticipantMap() {
-      toBuild.getRemoteCallParticipantsMap().clear();
+      toBuild.setRemoteParticipants(toBuild.getRemoteCallParticipantsMap().clearParticipants());
       return this;
     }
 
@@ -7,15 +7,24 @@ import android.os.Looper;
 import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 
-import org.signal.core.util.Stopwatch;
+import org.signal.core.util.ThreadUtil;
 import org.signal.core.util.concurrent.SignalExecutors;
 import org.signal.core.util.logging.Log;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Manages our app startup flow.
+ *
+ * Blocking tasks form a dependency graph: each one names the tasks that must finish before it can start, and whether it
+ * has to run on the main thread. Tasks whose dependencies are satisfied run in parallel on a small startup pool, while the
+ * main thread runs the main-thread tasks and helps out with the rest. {@link #execute()} still returns only once every
+ * blocking task has finished.
  */
 public final class AppStartup {
 
@@ -29,10 +38,25 @@ public final class AppStartup {
 
   private static final AppStartup INSTANCE = new AppStartup();
 
-  private final List<Task> blocking;
-  private final List<Task> nonBlocking;
-  private final List<Task> postRender;
-  private final Handler    postRenderHandler;
+  /** The most threads the startup pool will use, in addition to the main thread. */
+  private static final int MAX_STARTUP_THREADS = 3;
+
+  private static final String TRACE_PREFIX = "AppStartup-";
+
+  public enum Affinity {
+    /** The task touches something that may only be used from the main thread, e.g. LiveData or lifecycle observers. */
+    MAIN_THREAD,
+
+    /** The task may run on any thread, and so may run in parallel with other tasks. */
+    ANY_THREAD
+  }
+
+  private final List<String> blockingNames;
+  private final List<Task>   nonBlocking;
+  private final List<Task>   postRender;
+  private final Handler      postRenderHandler;
+
+  private StartupGraph blocking;
 
   private int outstandingCriticalRenderEvents;
 
@@ -45,7 +69,8 @@ public final class AppStartup {
   }
 
   private AppStartup() {
-    this.blocking          = new LinkedList<>();
+    this.blockingNames     = new ArrayList<>();
+    this.blocking          = new StartupGraph();
     this.nonBlocking       = new LinkedList<>();
     this.postRender        = new LinkedList<>();
     this.postRenderHandler = new Handler(Looper.getMainLooper());
@@ -56,14 +81,39 @@ public final class AppStartup {
   }
 
   /**
-   * Schedules a task that must happen during app startup in a blocking fashion.
+   * Schedules a task that must happen during app startup in a blocking fashion. It will run on the main thread after every
+   * blocking task that was added before it.
    */
   @MainThread
   public @NonNull AppStartup addBlocking(@NonNull String name, @NonNull Runnable task) {
-    blocking.add(new Task(name, task));
+    return addBlocking(name, Affinity.MAIN_THREAD, blockingNames.toArray(new String[0]), task);
+  }
+
+  /**
+   * Schedules a task that must happen during app startup in a blocking fashion. It will start as soon as every task named in
+   * {@code dependencies} has finished, possibly in parallel with other tasks. See {@link #after(String...)}.
+   */
+  @MainThread
+  public @NonNull AppStartup addBlocking(@NonNull String name, @NonNull Affinity affinity, @NonNull String[] dependencies, @NonNull Runnable task) {
+    blocking.add(name, affinity, Arrays.asList(dependencies), () -> {
+      SignalTrace.beginSection(TRACE_PREFIX + name);
+      try {
+        task.run();
+      } finally {
+        SignalTrace.endSection();
+      }
+    });
+    blockingNames.add(name);
     return this;
   }
 
+  /**
+   * Convenience for naming the dependencies of a task in {@link #addBlocking(String, Affinity, String[], Runnable)}.
+   */
+  public static @NonNull String[] after(@NonNull String... dependencies) {
+    return dependencies;
+  }
+
   /**
    * Schedules a task that should not block app startup, but should still happen as quickly as
    * possible.
@@ -139,28 +189,55 @@ public final class AppStartup {
    */
   @MainThread
   public void execute() {
-    Stopwatch stopwatch = new Stopwatch("init");
-
-    for (Task task : blocking) {
-      task.getRunnable().run();
-      stopwatch.split(task.getName());
-    }
-    blocking.clear();
+    executeBlocking();
 
     for (Task task : nonBlocking) {
       SignalExecutors.BOUNDED.execute(task.getRunnable());
     }
     nonBlocking.clear();
 
-    stopwatch.split("schedule-non-blocking");
-    stopwatch.stop(TAG);
-
     postRenderHandler.postDelayed(() -> {
       Log.i(TAG, "Assuming the application has started in the background. Running post-render tasks.");
       executePostRender();
     }, UI_WAIT_TIME);
   }
 
+  private void executeBlocking() {
+    StartupGraph graph = blocking;
+
+    blocking = new StartupGraph();
+    blockingNames.clear();
+
+    if (graph.isEmpty()) {
+      return;
+    }
+
+    int                 threads = Math.max(1, Math.min(MAX_STARTUP_THREADS, Runtime.getRuntime().availableProcessors() - 1));
+    ExecutorService     pool    = SignalExecutors.newCachedBoundedExecutor("signal-startup", ThreadUtil.PRIORITY_UI_BLOCKING_THREAD, 1, threads, 1);
+    StartupGraph.Result result;
+
+    try {
+      result = graph.execute(pool);
+    } finally {
+      pool.shutdown();
+    }
+
+    StringBuilder criticalPath = new StringBuilder();
+    for (StartupGraph.Timing timing : result.getCriticalPath()) {
+      if (criticalPath.length() > 0) {
+        criticalPath.append(" -> ");
+      }
+      criticalPath.append(timing.getName());
+    }
+
+    Log.d(TAG, "[init] Blocking tasks took " + TimeUnit.NANOSECONDS.toMillis(result.getTotalNanos()) + " ms on " + threads + " startup thread(s) plus main. Critical path: " + criticalPath);
+    for (StartupGraph.Timing timing : result.getTimings()) {
+      Log.d(TAG, "[init] " + timing);
+    }
+
+    SignalLocalMetrics.ColdStart.onBlockingTasksFinished(result);
+  }
+
   private void executePostRender() {
     for (Task task : postRender) {
       SignalExecutors.BOUNDED.execute(task.getRunnable());
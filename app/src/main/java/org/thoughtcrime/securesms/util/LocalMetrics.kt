@@ -30,10 +30,12 @@ import java.util.concurrent.TimeUnit
 object LocalMetrics {
   private val TAG: String = Log.tag(LocalMetrics::class.java)
 
+  const val EXECUTOR_NAME = "signal-LocalMetrics"
+
   private val eventsById: MutableMap<String, LocalMetricsEvent> = LRUCache(200)
   private val lastSplitTimeById: MutableMap<String, Long> = LRUCache(200)
 
-  private val executor: Executor = SignalExecutors.newCachedSingleThreadExecutor("signal-LocalMetrics", ThreadUtil.PRIORITY_BACKGROUND_THREAD)
+  private val executor: Executor = SignalExecutors.newCachedSingleThreadExecutor(EXECUTOR_NAME, ThreadUtil.PRIORITY_BACKGROUND_THREAD)
   private val db: LocalMetricsDatabase by lazy { LocalMetricsDatabase.getInstance(AppDependencies.application) }
 
   @JvmStatic
@@ -6,6 +6,8 @@ import androidx.core.text.HtmlCompat;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Objects;
@@ -14,12 +16,16 @@ import java.util.regex.Pattern;
 
 import okhttp3.MediaType;
 import okhttp3.ResponseBody;
+import okio.BufferedSource;
 import org.signal.core.util.ByteUnit;
 
 public final class OkHttpUtil {
 
   private static final Pattern CHARSET_PATTERN = Pattern.compile("charset=[\"']?([a-zA-Z0-9\\\\-]+)[\"']?");
 
+  /** Browsers only look this far into a document for a charset declaration, so pages put it early. */
+  private static final long CHARSET_SNIFF_SIZE = 1024;
+
   private OkHttpUtil() {}
 
   public static byte[] readAsBytes(@NonNull InputStream bodyStream, long sizeLimit) throws IOException {
@@ -40,18 +46,23 @@ public final class OkHttpUtil {
 
     return outputStream.toByteArray();
   }
-  public static String readAsString(@NonNull ResponseBody body, long sizeLimit) throws IOException {
-    if (body.contentLength() > sizeLimit) {
-      throw new IOException("Content-Length exceeded maximum size!");
-    }
 
-    byte[]    data        = readAsBytes(body.byteStream(), sizeLimit);
-    MediaType contentType = body.contentType();
-    Charset   charset     = contentType != null ? contentType.charset(null) : null;
-
-    charset = charset == null ? getHtmlCharset(new String(data)) : charset;
+  /**
+   * Opens a reader over an HTML body without reading it all in, decoding it with the charset from the Content-Type header or, failing that, one declared
+   * near the top of the document.
+   */
+  public static @NonNull Reader openHtmlReader(@NonNull ResponseBody body) throws IOException {
+    MediaType      contentType = body.contentType();
+    Charset        charset     = contentType != null ? contentType.charset(null) : null;
+    BufferedSource source      = body.source();
+
+    if (charset == null) {
+      source.request(CHARSET_SNIFF_SIZE);
+      long sniffSize = Math.min(source.getBuffer().size(), CHARSET_SNIFF_SIZE);
+      charset = getHtmlCharset(source.getBuffer().snapshot((int) sniffSize).utf8());
+    }
 
-    return new String(data, Objects.requireNonNull(charset));
+    return new InputStreamReader(source.inputStream(), charset);
   }
 
   private static @NonNull Charset getHtmlCharset(String html) {
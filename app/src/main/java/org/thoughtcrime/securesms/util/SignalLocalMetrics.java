@@ -23,11 +23,14 @@ public final class SignalLocalMetrics {
   public static final class ColdStart {
     private static final String NAME_CONVERSATION_LIST = "cold-start-conversation-list";
     private static final String NAME_OTHER             = "cold-start-other";
+    private static final String NAME_BLOCKING_TASKS    = "cold-start-blocking-tasks";
+    private static final String NAME_CRITICAL_PATH     = "cold-start-critical-path";
 
     private static final String SPLIT_APPLICATION_CREATE = "application-create";
     private static final String SPLIT_ACTIVITY_CREATE    = "start-activity";
     private static final String SPLIT_DATA_LOADED        = "data-loaded";
     private static final String SPLIT_RENDER             = "render";
+    private static final String SPLIT_SCHEDULING         = "scheduling";
 
     private static String conversationListId;
     private static String otherId;
@@ -49,6 +52,32 @@ public final class SignalLocalMetrics {
       LocalMetrics.getInstance().split(otherId, SPLIT_APPLICATION_CREATE);
     }
 
+    /**
+     * Records how long each blocking {@link AppStartup} task took, and the chain of tasks that made up the critical path. The
+     * critical path ends with a split covering whatever time its tasks spent waiting for a thread.
+     */
+    @MainThread
+    static void onBlockingTasksFinished(@NonNull StartupGraph.Result result) {
+      long   now            = System.currentTimeMillis();
+      String tasksId        = NAME_BLOCKING_TASKS + "-" + now;
+      String criticalPathId = NAME_CRITICAL_PATH + "-" + now;
+
+      LocalMetrics.getInstance().start(tasksId, NAME_BLOCKING_TASKS);
+      for (StartupGraph.Timing timing : result.getTimings()) {
+        LocalMetrics.getInstance().splitWithDuration(tasksId, timing.getName(), timing.getDurationNanos(), TimeUnit.NANOSECONDS);
+      }
+      LocalMetrics.getInstance().end(tasksId);
+
+      long pathNanos = 0;
+      LocalMetrics.getInstance().start(criticalPathId, NAME_CRITICAL_PATH);
+      for (StartupGraph.Timing timing : result.getCriticalPath()) {
+        LocalMetrics.getInstance().splitWithDuration(criticalPathId, timing.getName(), timing.getDurationNanos(), TimeUnit.NANOSECONDS);
+        pathNanos += timing.getDurationNanos();
+      }
+      LocalMetrics.getInstance().splitWithDuration(criticalPathId, SPLIT_SCHEDULING, Math.max(0, result.getTotalNanos() - pathNanos), TimeUnit.NANOSECONDS);
+      LocalMetrics.getInstance().end(criticalPathId);
+    }
+
     @MainThread
     public static void onRenderStart() {
       LocalMetrics.getInstance().split(conversationListId, SPLIT_ACTIVITY_CREATE);
@@ -548,4 +577,32 @@ public final class SignalLocalMetrics {
       LocalMetrics.getInstance().end(NAME + id);
     }
   }
+
+  /**
+   * Tracks tasks on a {@link org.signal.core.util.concurrent.InstrumentedThreadPoolExecutor} that spent a long time queued
+   * and/or running, as one event per executor.
+   */
+  public static final class ExecutorTask {
+    private static final String NAME = "executor-slow-task-";
+
+    private static final String SPLIT_QUEUE_WAIT = "queue-wait";
+    private static final String SPLIT_RUN        = "run";
+
+    private static final AtomicInteger ID = new AtomicInteger();
+
+    public static void onSlowTask(@NonNull String executorName, @NonNull String taskName, long queueWaitNs, long runNs) {
+      // Reporting on our own executor would feed back into itself
+      if (LocalMetrics.EXECUTOR_NAME.equals(executorName)) {
+        return;
+      }
+
+      String id = NAME + executorName + "-" + ID.incrementAndGet();
+
+      LocalMetrics.getInstance().start(id, NAME + executorName);
+      LocalMetrics.getInstance().setLabel(id, taskName);
+      LocalMetrics.getInstance().splitWithDuration(id, SPLIT_QUEUE_WAIT, queueWaitNs, TimeUnit.NANOSECONDS);
+      LocalMetrics.getInstance().splitWithDuration(id, SPLIT_RUN, runNs, TimeUnit.NANOSECONDS);
+      LocalMetrics.getInstance().end(id);
+    }
+  }
 }
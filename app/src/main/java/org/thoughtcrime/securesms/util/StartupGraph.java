@@ -0,0 +1,325 @@
+package org.thoughtcrime.securesms.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a set of named tasks that declare their dependencies on one another, as quickly as the dependencies allow.
+ *
+ * {@link #execute(Executor)} blocks the calling thread until every task has finished. Tasks marked
+ * {@link AppStartup.Affinity#MAIN_THREAD} only ever run on the calling thread. Every other task is handed to the executor as
+ * soon as its dependencies finish, and the calling thread also picks them up itself whenever it would otherwise be idle.
+ *
+ * A graph can only be executed once.
+ */
+final class StartupGraph {
+
+  private final Map<String, Node> nodes = new LinkedHashMap<>();
+
+  void add(@NonNull String name, @NonNull AppStartup.Affinity affinity, @NonNull List<String> dependencies, @NonNull Runnable runnable) {
+    if (nodes.containsKey(name)) {
+      throw new IllegalArgumentException("Duplicate startup task: " + name);
+    }
+
+    nodes.put(name, new Node(name, affinity, dependencies, runnable));
+  }
+
+  boolean isEmpty() {
+    return nodes.isEmpty();
+  }
+
+  /**
+   * Runs every task and returns how long each one took. If a task throws, that exception is rethrown here once the calling
+   * thread notices, and no task that depends on it is started.
+   */
+  @NonNull Result execute(@NonNull Executor executor) {
+    link();
+
+    long                startNanos = System.nanoTime();
+    BlockingQueue<Node> completed  = new LinkedBlockingQueue<>();
+    Deque<Node>         mainReady  = new ArrayDeque<>();
+    Deque<Node>         anyReady   = new ArrayDeque<>();
+    int                 finished   = 0;
+
+    for (Node node : nodes.values()) {
+      if (node.remainingDependencies == 0) {
+        makeReady(node, startNanos, executor, completed, mainReady, anyReady);
+      }
+    }
+
+    while (finished < nodes.size()) {
+      Node next = mainReady.pollFirst();
+
+      while (next == null && !anyReady.isEmpty()) {
+        Node candidate = anyReady.pollFirst();
+        if (candidate.claim()) {
+          next = candidate;
+        }
+      }
+
+      Node done;
+      if (next != null) {
+        next.run(startNanos);
+        done = next;
+      } else {
+        try {
+          done = completed.take();
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      }
+
+      if (done.error != null) {
+        throw rethrow(done);
+      }
+
+      finished++;
+
+      for (Node dependent : done.dependents) {
+        dependent.remainingDependencies--;
+        if (dependent.remainingDependencies == 0) {
+          makeReady(dependent, startNanos, executor, completed, mainReady, anyReady);
+        }
+      }
+    }
+
+    return new Result(nodes.values(), System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Resolves dependency names to nodes and verifies that the graph has no unknown dependencies and no cycles.
+   */
+  private void link() {
+    for (Node node : nodes.values()) {
+      for (String dependencyName : node.dependencyNames) {
+        Node dependency = nodes.get(dependencyName);
+        if (dependency == null) {
+          throw new IllegalStateException("Startup task " + node.name + " depends on unknown task " + dependencyName);
+        }
+
+        node.dependencies.add(dependency);
+        dependency.dependents.add(node);
+      }
+      node.remainingDependencies = node.dependencies.size();
+    }
+
+    Map<Node, Integer> remaining = new LinkedHashMap<>();
+    Deque<Node>        ready     = new ArrayDeque<>();
+    int                visited   = 0;
+
+    for (Node node : nodes.values()) {
+      remaining.put(node, node.remainingDependencies);
+      if (node.remainingDependencies == 0) {
+        ready.add(node);
+      }
+    }
+
+    while (!ready.isEmpty()) {
+      Node node = ready.removeFirst();
+      visited++;
+
+      for (Node dependent : node.dependents) {
+        int count = remaining.get(dependent) - 1;
+        remaining.put(dependent, count);
+        if (count == 0) {
+          ready.add(dependent);
+        }
+      }
+    }
+
+    if (visited != nodes.size()) {
+      List<String> cyclic = new ArrayList<>();
+      for (Map.Entry<Node, Integer> entry : remaining.entrySet()) {
+        if (entry.getValue() > 0) {
+          cyclic.add(entry.getKey().name);
+        }
+      }
+      throw new IllegalStateException("Startup tasks have a dependency cycle: " + cyclic);
+    }
+  }
+
+  private static void makeReady(@NonNull Node node, long startNanos, @NonNull Executor executor, @NonNull BlockingQueue<Node> completed, @NonNull Deque<Node> mainReady, @NonNull Deque<Node> anyReady) {
+    if (node.affinity == AppStartup.Affinity.MAIN_THREAD) {
+      mainReady.add(node);
+      return;
+    }
+
+    anyReady.add(node);
+    executor.execute(() -> {
+      if (node.claim()) {
+        node.run(startNanos);
+        completed.add(node);
+      }
+    });
+  }
+
+  private static RuntimeException rethrow(@NonNull Node node) {
+    if (node.error instanceof RuntimeException) {
+      throw (RuntimeException) node.error;
+    } else if (node.error instanceof Error) {
+      throw (Error) node.error;
+    } else {
+      throw new RuntimeException("Startup task " + node.name + " failed", node.error);
+    }
+  }
+
+  private static final class Node {
+    private final String              name;
+    private final AppStartup.Affinity affinity;
+    private final List<String>        dependencyNames;
+    private final Runnable            runnable;
+    private final List<Node>          dependencies = new ArrayList<>();
+    private final List<Node>          dependents   = new ArrayList<>();
+    private final AtomicBoolean       claimed      = new AtomicBoolean(false);
+
+    private int remainingDependencies;
+
+    private volatile String    threadName;
+    private volatile long      startOffsetNanos;
+    private volatile long      endOffsetNanos;
+    private volatile Throwable error;
+
+    private Node(@NonNull String name, @NonNull AppStartup.Affinity affinity, @NonNull List<String> dependencyNames, @NonNull Runnable runnable) {
+      this.name            = name;
+      this.affinity        = affinity;
+      this.dependencyNames = dependencyNames;
+      this.runnable        = runnable;
+    }
+
+    private boolean claim() {
+      return claimed.compareAndSet(false, true);
+    }
+
+    private void run(long graphStartNanos) {
+      threadName       = Thread.currentThread().getName();
+      startOffsetNanos = System.nanoTime() - graphStartNanos;
+
+      try {
+        runnable.run();
+      } catch (Throwable t) {
+        error = t;
+      }
+
+      endOffsetNanos = System.nanoTime() - graphStartNanos;
+    }
+  }
+
+  /**
+   * The timings of a finished graph. All times are relative to the moment the graph started executing.
+   */
+  static final class Result {
+
+    private final List<Timing> timings;
+    private final List<Timing> criticalPath;
+    private final long         totalNanos;
+
+    private Result(@NonNull Iterable<Node> nodes, long totalNanos) {
+      Map<Node, Timing> timingsByNode = new LinkedHashMap<>();
+      Node              last          = null;
+
+      for (Node node : nodes) {
+        timingsByNode.put(node, new Timing(node.name, node.threadName, node.startOffsetNanos, node.endOffsetNanos));
+        if (last == null || node.endOffsetNanos > last.endOffsetNanos) {
+          last = node;
+        }
+      }
+
+      List<Timing> path = new ArrayList<>();
+      while (last != null) {
+        path.add(timingsByNode.get(last));
+        last = latestDependency(last);
+      }
+      Collections.reverse(path);
+
+      this.timings      = Collections.unmodifiableList(new ArrayList<>(timingsByNode.values()));
+      this.criticalPath = Collections.unmodifiableList(path);
+      this.totalNanos   = totalNanos;
+    }
+
+    /**
+     * Every task, in the order it was added.
+     */
+    @NonNull List<Timing> getTimings() {
+      return timings;
+    }
+
+    /**
+     * The chain of tasks that determined how long the graph took: the task that finished last, the dependency of that task
+     * that finished last, and so on back to a task with no dependencies.
+     */
+    @NonNull List<Timing> getCriticalPath() {
+      return criticalPath;
+    }
+
+    long getTotalNanos() {
+      return totalNanos;
+    }
+
+    private static @Nullable Node latestDependency(@NonNull Node node) {
+      Node latest = null;
+      for (Node dependency : node.dependencies) {
+        if (latest == null || dependency.endOffsetNanos > latest.endOffsetNanos) {
+          latest = dependency;
+        }
+      }
+      return latest;
+    }
+  }
+
+  static final class Timing {
+    private final String name;
+    private final String threadName;
+    private final long   startNanos;
+    private final long   endNanos;
+
+    private Timing(@NonNull String name, @NonNull String threadName, long startNanos, long endNanos) {
+      this.name       = name;
+      this.threadName = threadName;
+      this.startNanos = startNanos;
+      this.endNanos   = endNanos;
+    }
+
+    @NonNull String getName() {
+      return name;
+    }
+
+    @NonNull String getThreadName() {
+      return threadName;
+    }
+
+    long getStartNanos() {
+      return startNanos;
+    }
+
+    long getEndNanos() {
+      return endNanos;
+    }
+
+    long getDurationNanos() {
+      return endNanos - startNanos;
+    }
+
+    @Override
+    public @NonNull String toString() {
+      return String.format(Locale.US, "%s: %.2f ms (start %.2f ms, %s)", name, toMillis(getDurationNanos()), toMillis(startNanos), threadName);
+    }
+
+    private static double toMillis(long nanos) {
+      return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+  }
+}
@@ -6,12 +6,14 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import org.signal.core.util.crypto.AttachmentSecret;
-import org.signal.core.util.crypto.ModernDecryptingPartInputStream;
+import org.signal.core.util.crypto.EncryptedPartFile;
+import org.signal.core.util.logging.Log;
 import org.thoughtcrime.securesms.video.videoconverter.mediadatasource.InputStreamMediaDataSource;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * Create via {@link EncryptedMediaDataSource}.
@@ -20,14 +22,21 @@ import java.io.InputStream;
  * <p>
  * It is "modern" compared to the {@link ClassicEncryptedMediaDataSource}. And "modern" refers to
  * the presence of a random part of the key supplied in the constructor.
+ * <p>
+ * The file is opened once, on the first read, and every {@link #readAt(long, byte[], int, int)} after that is a positional read
+ * of just the requested range.
  */
 final class ModernEncryptedMediaDataSource extends InputStreamMediaDataSource {
 
+  private static final String TAG = Log.tag(ModernEncryptedMediaDataSource.class);
+
   private final AttachmentSecret attachmentSecret;
   private final File             mediaFile;
   private final byte[]           random;
   private final long             length;
 
+  private EncryptedPartFile partFile;
+
   ModernEncryptedMediaDataSource(@NonNull AttachmentSecret attachmentSecret, @NonNull File mediaFile, @Nullable byte[] random, long length) {
     this.attachmentSecret = attachmentSecret;
     this.mediaFile        = mediaFile;
@@ -36,7 +45,36 @@ final class ModernEncryptedMediaDataSource extends InputStreamMediaDataSource {
   }
 
   @Override
-  public void close() {}
+  public int readAt(long position, byte[] bytes, int offset, int size) throws IOException {
+    if (position >= length) {
+      return -1;
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, (int) Math.min(size, length - position));
+    int        total  = 0;
+
+    while (buffer.hasRemaining()) {
+      int read = getPartFile().read(buffer, position + total);
+      if (read == -1) {
+        break;
+      }
+      total += read;
+    }
+
+    return total == 0 ? -1 : total;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (partFile != null) {
+      try {
+        partFile.close();
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to close media file", e);
+      }
+      partFile = null;
+    }
+  }
 
   @Override
   public long getSize() {
@@ -45,10 +83,14 @@ final class ModernEncryptedMediaDataSource extends InputStreamMediaDataSource {
 
   @NonNull
   public InputStream createInputStream(long position) throws IOException {
-    if (random == null) {
-      return ModernDecryptingPartInputStream.createFor(attachmentSecret, mediaFile, position);
-    } else {
-      return ModernDecryptingPartInputStream.createFor(attachmentSecret, random, mediaFile, position);
+    return getPartFile().newInputStream(position);
+  }
+
+  private synchronized @NonNull EncryptedPartFile getPartFile() throws IOException {
+    if (partFile == null) {
+      partFile = random == null ? EncryptedPartFile.open(attachmentSecret, mediaFile)
+                                : EncryptedPartFile.open(attachmentSecret, random, mediaFile);
     }
+    return partFile;
   }
 }
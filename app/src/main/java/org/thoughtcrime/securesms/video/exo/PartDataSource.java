@@ -25,8 +25,10 @@ import org.signal.core.models.backup.MediaRootBackupKey;
 import org.whispersystems.signalservice.api.crypto.AttachmentCipherInputStream;
 import org.whispersystems.signalservice.api.crypto.AttachmentCipherInputStream.IntegrityCheck;
 import org.whispersystems.signalservice.api.crypto.AttachmentCipherStreamUtil;
+import org.signal.core.util.stream.LimitedInputStream;
 import org.signal.core.util.stream.TailerInputStream;
 import org.whispersystems.signalservice.internal.crypto.PaddingInputStream;
+import org.whispersystems.signalservice.internal.push.RangedCdnDownload;
 
 import java.io.EOFException;
 import java.io.File;
@@ -71,7 +73,12 @@ class PartDataSource implements DataSource {
     final String  attachmentKey        = attachment.remoteKey;
     final boolean hasData              = attachment.hasData;
 
-    if (inProgress && !hasData && hasIncrementalDigest && attachmentKey != null) {
+    InputStream progressiveStream = inProgress && !hasData ? attachmentDatabase.getProgressiveAttachmentStream(attachment.attachmentId, dataSpec.position) : null;
+
+    if (progressiveStream != null) {
+      Log.d(TAG, "Playing partial video content from the local data file.");
+      this.inputStream = progressiveStream;
+    } else if (inProgress && !hasData && hasIncrementalDigest && attachmentKey != null) {
       final byte[] decodedKey = Base64.decode(attachmentKey);
       
       if (attachment.transferState == AttachmentTable.TRANSFER_RESTORE_IN_PROGRESS && attachment.archiveTransferState == AttachmentTable.ArchiveTransferState.FINISHED) {
@@ -97,7 +104,8 @@ class PartDataSource implements DataSource {
         final File transferFile = attachmentDatabase.getOrCreateTransferFile(attachment.attachmentId);
         try {
           long                                       streamLength   = AttachmentCipherStreamUtil.getCiphertextLength(PaddingInputStream.getPaddedSize(attachment.size));
-          AttachmentCipherInputStream.StreamSupplier streamSupplier = () -> new TailerInputStream(() -> new FileInputStream(transferFile), streamLength);
+          // A large transfer file is downloaded in ranges and preallocated with zeros, so only the part that's actually been written is tailed
+          AttachmentCipherInputStream.StreamSupplier streamSupplier = () -> new TailerInputStream(() -> new LimitedInputStream(new FileInputStream(transferFile), RangedCdnDownload.getContiguousLength(transferFile)), streamLength);
 
           if (attachment.remoteDigest == null && attachment.dataHash == null) {
             throw new InvalidMessageException("Missing digest and plaintextHash!");
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.attachments
+
+import assertk.assertThat
+import assertk.assertions.isEqualTo
+import assertk.assertions.isFalse
+import assertk.assertions.isInstanceOf
+import assertk.assertions.isLessThan
+import assertk.assertions.isNotNull
+import assertk.assertions.isNull
+import assertk.assertions.isTrue
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.signal.core.models.database.AttachmentId
+import org.signal.core.util.copyToWithProgress
+import org.signal.core.util.crypto.AttachmentSecret
+import org.signal.core.util.crypto.ModernEncryptingPartOutputStream
+import org.signal.core.util.readFully
+import java.io.ByteArrayInputStream
+import java.io.File
+import java.io.FilterInputStream
+import java.io.IOException
+import java.io.InputStream
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.concurrent.thread
+import kotlin.random.Random
+
+class ProgressiveAttachmentsTest {
+
+  private val attachmentId = AttachmentId(1L)
+  private val attachmentSecret = AttachmentSecret(Random.nextBytes(32), Random.nextBytes(32), Random.nextBytes(32))
+  private val plaintext = Random(1).nextBytes(PLAINTEXT_LENGTH)
+
+  private lateinit var dataFile: File
+
+  @Before
+  fun setUp() {
+    dataFile = File.createTempFile("progressive", ".data")
+  }
+
+  @After
+  fun tearDown() {
+    dataFile.delete()
+    ProgressiveAttachments.get(attachmentId)?.finish()
+  }
+
+  @Test
+  fun givenAThrottledDownload_whenIReadFromTheStart_thenIGetTheFirstBytesBeforeTheDownloadFinishes() {
+    val download = ProgressiveAttachments.begin(attachmentId, PLAINTEXT_LENGTH.toLong())
+    val writer = startThrottledWriter(download)
+
+    val stream = download.openStream(attachmentSecret, 0)
+    val firstByte = stream.read()
+    val firstByteAt = System.nanoTime()
+
+    val rest = stream.readFully()
+    writer.join()
+
+    assertThat(firstByte).isEqualTo(plaintext[0].toInt() and 0xFF)
+    assertThat(rest).isEqualTo(plaintext.copyOfRange(1, plaintext.size))
+    assertThat(firstByteAt).isLessThan(writerFinishedAt)
+  }
+
+  @Test
+  fun givenAThrottledDownload_whenIReadFromAnOffset_thenIGetTheBytesAtThatOffset() {
+    val download = ProgressiveAttachments.begin(attachmentId, PLAINTEXT_LENGTH.toLong())
+    val writer = startThrottledWriter(download)
+
+    val offset = PLAINTEXT_LENGTH / 2L + 7
+    val output = download.openStream(attachmentSecret, offset).readFully()
+    writer.join()
+
+    assertThat(output).isEqualTo(plaintext.copyOfRange(offset.toInt(), plaintext.size))
+  }
+
+  @Test
+  fun givenABlockedReader_whenTheDownloadFails_thenTheReaderThrows() {
+    val download = ProgressiveAttachments.begin(attachmentId, PLAINTEXT_LENGTH.toLong())
+    val started = CountDownLatch(1)
+    var error: Throwable? = null
+
+    val reader = thread {
+      started.countDown()
+      try {
+        download.openStream(attachmentSecret, 0).read()
+      } catch (e: Throwable) {
+        error = e
+      }
+    }
+
+    started.await(1, TimeUnit.SECONDS)
+    Thread.sleep(50)
+    download.fail(IOException("Network went away"))
+    reader.join(1000)
+
+    assertThat(error).isNotNull().isInstanceOf(IOException::class)
+    assertThat(ProgressiveAttachments.get(attachmentId)).isNull()
+  }
+
+  @Test
+  fun givenAFinishedDownload_whenILookItUp_thenItIsNoLongerRegistered() {
+    val download = ProgressiveAttachments.begin(attachmentId, PLAINTEXT_LENGTH.toLong())
+    startThrottledWriter(download).join()
+
+    assertThat(ProgressiveAttachments.get(attachmentId)).isNull()
+  }
+
+  @Test
+  fun givenAWrittenDataFile_whenItIsMovedBeforeTheDownloadFinishes_thenNewReadersReadFromTheNewPath() {
+    val download = ProgressiveAttachments.begin(attachmentId, PLAINTEXT_LENGTH.toLong())
+    val (random, output) = ModernEncryptingPartOutputStream.createFor(attachmentSecret, dataFile, false)
+    val written = ByteArrayInputStream(plaintext).copyToWithProgress(output) { written -> download.onDataFileProgress(dataFile, random, written) }
+
+    val finalFile = File(dataFile.path + ".final")
+    try {
+      assertThat(download.onDataFileFinished(dataFile, finalFile, random, written)).isTrue()
+      assertThat(dataFile.exists()).isFalse()
+
+      val offset = PLAINTEXT_LENGTH - 100L
+      assertThat(download.openStream(attachmentSecret, offset).readFully()).isEqualTo(plaintext.copyOfRange(offset.toInt(), plaintext.size))
+    } finally {
+      finalFile.delete()
+    }
+  }
+
+  @Volatile
+  private var writerFinishedAt: Long = 0
+
+  /**
+   * Stands in for the CDN + decrypting pipeline: hands out verified plaintext in [CHUNK_SIZE] pieces with a delay between each.
+   */
+  private fun startThrottledWriter(download: ProgressiveAttachments.Download): Thread {
+    return thread {
+      val source = ThrottledInputStream(ByteArrayInputStream(plaintext))
+      val (random, output) = ModernEncryptingPartOutputStream.createFor(attachmentSecret, dataFile, false)
+
+      source.copyToWithProgress(output) { written -> download.onDataFileProgress(dataFile, random, written) }
+
+      writerFinishedAt = System.nanoTime()
+      download.finish()
+    }
+  }
+
+  private class ThrottledInputStream(wrapped: InputStream) : FilterInputStream(wrapped) {
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+      Thread.sleep(CHUNK_DELAY_MS)
+      return super.read(b, off, minOf(len, CHUNK_SIZE))
+    }
+  }
+
+  companion object {
+    private const val PLAINTEXT_LENGTH = 256 * 1024 + 3
+    private const val CHUNK_SIZE = 16 * 1024
+    private const val CHUNK_DELAY_MS = 10L
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.backup
+
+import android.app.Application
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.models.database.AttachmentId
+import org.thoughtcrime.securesms.backup.proto.SqlStatement
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.InputStream
+import java.io.InterruptedIOException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class BackupFrameOutputStreamTest {
+
+  companion object {
+    private const val PASSPHRASE = "000000000000000000000000000000"
+    private val SALT = Random(1).nextBytes(32)
+    private val IV = Random(2).nextBytes(16)
+  }
+
+  @Test
+  fun givenQueuedAttachments_whenIWriteEverything_thenIExpectTheSameBytesAsWritingInline() {
+    val blobs = listOf(0, 1, 15, 4096, 100_000, 3 * 1024 * 1024, 70_000, 33).mapIndexed { i, size -> Random(i).nextBytes(size) }
+
+    val inline = writeBackup(encryptionThreads = 0, blobs)
+    val queued = writeBackup(encryptionThreads = 2, blobs)
+
+    assertArrayEquals(inline, queued)
+  }
+
+  @Test
+  fun givenAnAttachmentStillEncrypting_whenIAbort_thenIExpectOnlyWholeWritesBeforeIt() {
+    val blob = Random(3).nextBytes(10_000)
+
+    // Where the inline output would stand right before the attachment, and how long its frame is without the blob
+    val inline = ByteArrayOutputStream()
+    val inlineStream = BackupFrameOutputStream(inline, PASSPHRASE, 0, SALT, IV)
+    inlineStream.writeDatabaseVersion(1)
+    inlineStream.write(statement(0))
+    val beforeAttachment = inline.size()
+    inlineStream.queue(AttachmentId(1), ByteArrayInputStream(blob), blob.size.toLong())
+    val attachmentFrameLength = inline.size() - beforeAttachment - blob.size - 10
+    inlineStream.write(statement(1))
+    inlineStream.writeEnd()
+    inlineStream.close()
+
+    val output = ByteArrayOutputStream()
+    val blocked = BlockingInputStream(blob)
+    val stream = BackupFrameOutputStream(output, PASSPHRASE, 2, SALT, IV)
+    stream.writeDatabaseVersion(1)
+    stream.write(statement(0))
+    stream.queue(AttachmentId(1), blocked, blob.size.toLong())
+    stream.write(statement(1))
+
+    assertTrue(blocked.started.await(5, TimeUnit.SECONDS))
+    stream.abortPending()
+
+    assertEquals(beforeAttachment + attachmentFrameLength, output.size())
+    assertArrayEquals(inline.toByteArray().copyOf(output.size()), output.toByteArray())
+    assertTrue(blocked.closed.await(5, TimeUnit.SECONDS))
+  }
+
+  private fun writeBackup(encryptionThreads: Int, blobs: List<ByteArray>): ByteArray {
+    val output = ByteArrayOutputStream()
+
+    BackupFrameOutputStream(output, PASSPHRASE, encryptionThreads, SALT, IV).apply {
+      writeDatabaseVersion(1)
+      for ((i, blob) in blobs.withIndex()) {
+        write(statement(i))
+        queue(AttachmentId(i.toLong()), ByteArrayInputStream(blob), blob.size.toLong())
+      }
+      write("avatar", ByteArrayInputStream(blobs[2]), blobs[2].size.toLong())
+      queue(AttachmentId(100), ByteArrayInputStream(blobs[3]), blobs[3].size.toLong())
+      writeSticker(1, ByteArrayInputStream(blobs[4]), blobs[4].size.toLong())
+      writeEnd()
+      close()
+    }
+
+    return output.toByteArray()
+  }
+
+  private fun statement(i: Int): SqlStatement {
+    return SqlStatement.Builder().statement("INSERT INTO part VALUES ($i)").build()
+  }
+
+  /** Doesn't give up any data until interrupted, like a read from a slow disk that gets canceled. */
+  private class BlockingInputStream(data: ByteArray) : InputStream() {
+    private val wrapped = ByteArrayInputStream(data)
+    private val released = CountDownLatch(1)
+
+    val started = CountDownLatch(1)
+    val closed = CountDownLatch(1)
+
+    override fun read(): Int {
+      awaitRelease()
+      return wrapped.read()
+    }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+      awaitRelease()
+      return wrapped.read(b, off, len)
+    }
+
+    override fun close() {
+      closed.countDown()
+    }
+
+    private fun awaitRelease() {
+      started.countDown()
+      try {
+        released.await()
+      } catch (e: InterruptedException) {
+        throw InterruptedIOException()
+      }
+    }
+  }
+}
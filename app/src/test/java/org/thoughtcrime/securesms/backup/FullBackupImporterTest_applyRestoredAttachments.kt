@@ -0,0 +1,100 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.backup
+
+import android.app.Application
+import android.content.ContentValues
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.util.readToSingleObject
+import org.signal.core.util.requireBlob
+import org.signal.core.util.requireString
+import org.signal.core.util.select
+import org.thoughtcrime.securesms.database.AttachmentTable
+import org.thoughtcrime.securesms.testutil.MockAppDependenciesRule
+import org.thoughtcrime.securesms.testutil.SignalDatabaseRule
+import java.io.File
+
+@Suppress("ClassName")
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class FullBackupImporterTest_applyRestoredAttachments {
+
+  companion object {
+    private const val OLD_FILE = "/old/device/part1.mms"
+    private const val HASH_END = "hash_end"
+
+    private val RESTORED_FILE = File("/new/device/part1.mms")
+    private val RESTORED_RANDOM = byteArrayOf(1, 2, 3)
+  }
+
+  @get:Rule val appDependencies = MockAppDependenciesRule()
+
+  @get:Rule val signalDatabaseRule = SignalDatabaseRule()
+
+  @Test
+  fun givenRowsSharingTheSentFileOrHash_whenTheBlobIsRestored_thenIExpectThemAllToPointAtTheRestoredFile() {
+    val sent = insert(OLD_FILE, HASH_END)
+    val sameFile = insert(OLD_FILE, null)
+    val sameHash = insert("/old/device/part2.mms", HASH_END)
+    val unrelated = insert("/old/device/part3.mms", "other_hash_end")
+
+    apply(TransferBlobReader.RestoredBlob(sent, RESTORED_FILE, RESTORED_RANDOM, 10))
+
+    for (rowId in listOf(sent, sameFile, sameHash)) {
+      val (file, random) = read(rowId)
+      assertEquals(RESTORED_FILE.absolutePath, file)
+      assertArrayEquals(RESTORED_RANDOM, random)
+    }
+    assertEquals("/old/device/part3.mms", read(unrelated).first)
+  }
+
+  @Test
+  fun givenRowsSharingTheSentFileOrHash_whenTheBlobHasABadMac_thenIExpectThemAllToBeCleared() {
+    val sent = insert(OLD_FILE, HASH_END)
+    val sameFile = insert(OLD_FILE, null)
+    val sameHash = insert("/old/device/part2.mms", HASH_END)
+    val unrelated = insert("/old/device/part3.mms", "other_hash_end")
+
+    apply(TransferBlobReader.RestoredBlob(sent, null, null, 0))
+
+    for (rowId in listOf(sent, sameFile, sameHash)) {
+      val (file, random) = read(rowId)
+      assertNull(file)
+      assertNull(random)
+    }
+    assertEquals("/old/device/part3.mms", read(unrelated).first)
+  }
+
+  private fun apply(blob: TransferBlobReader.RestoredBlob) {
+    FullBackupImporter.applyRestoredAttachments(signalDatabaseRule.signalDatabase.supportWritableDatabase, listOf(blob))
+  }
+
+  private fun insert(dataFile: String, hashEnd: String?): Long {
+    val values = ContentValues().apply {
+      put(AttachmentTable.DATA_FILE, dataFile)
+      put(AttachmentTable.DATA_RANDOM, dataFile.toByteArray())
+      put(AttachmentTable.DATA_HASH_END, hashEnd)
+    }
+
+    return signalDatabaseRule.writeableDatabase.insert(AttachmentTable.TABLE_NAME, null, values)
+  }
+
+  private fun read(rowId: Long): Pair<String?, ByteArray?> {
+    return signalDatabaseRule.writeableDatabase
+      .select(AttachmentTable.DATA_FILE, AttachmentTable.DATA_RANDOM)
+      .from(AttachmentTable.TABLE_NAME)
+      .where("${AttachmentTable.ID} = ?", rowId)
+      .run()
+      .readToSingleObject { it.requireString(AttachmentTable.DATA_FILE) to it.requireBlob(AttachmentTable.DATA_RANDOM) }!!
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.backup
+
+import android.app.Application
+import androidx.test.core.app.ApplicationProvider
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.models.database.AttachmentId
+import org.signal.core.util.crypto.AttachmentSecret
+import org.signal.core.util.crypto.ModernDecryptingPartInputStream
+import org.signal.core.util.crypto.ModernEncryptingPartOutputStream
+import java.io.File
+import java.io.InputStream
+import java.io.OutputStream
+import java.io.PipedInputStream
+import java.io.PipedOutputStream
+import kotlin.random.Random
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class TransferBlobReaderTest {
+
+  companion object {
+    private const val PASSPHRASE = "000000000000000000000000000000"
+    private const val STREAM_COUNT = 3
+    private const val ATTACHMENT_COUNT = 10
+  }
+
+  private val context: Application = ApplicationProvider.getApplicationContext()
+  private val attachmentSecret = AttachmentSecret(null, null, Random(1).nextBytes(32))
+  private val files = mutableListOf<File>()
+
+  @After
+  fun tearDown() {
+    files.forEach { it.delete() }
+  }
+
+  @Test
+  fun givenAttachmentsSpreadOverSeveralStreams_whenIReadThemBack_thenIExpectEveryOneRestoredToItsRow() {
+    val contents = (1L..ATTACHMENT_COUNT).associateWith { Random(it).nextBytes(1024 * it.toInt() + 7) }
+
+    val inputs = mutableListOf<InputStream>()
+    val outputs = mutableListOf<OutputStream>()
+    repeat(STREAM_COUNT) {
+      val input = PipedInputStream(64 * 1024)
+      inputs += input
+      outputs += PipedOutputStream(input)
+    }
+
+    val reader = TransferBlobReader(context, attachmentSecret, inputs, PASSPHRASE)
+    reader.start()
+
+    val writer = TransferBlobWriter(attachmentSecret, outputs, PASSPHRASE)
+    for ((rowId, content) in contents) {
+      val (random, file) = encrypt(content)
+      writer.writeAttachment(AttachmentId(rowId), random, file.absolutePath, content.size.toLong())
+    }
+
+    assertEquals(ATTACHMENT_COUNT, writer.finish())
+    assertTrue(reader.await(10_000))
+
+    val restored = reader.getAttachments().associateBy { it.rowId }
+    files += restored.values.mapNotNull { it.file }
+
+    assertEquals(contents.keys, restored.keys)
+    for ((rowId, content) in contents) {
+      val blob = restored.getValue(rowId)
+      val read = ModernDecryptingPartInputStream.createFor(attachmentSecret, blob.random, blob.file, 0).use { it.readBytes() }
+
+      assertEquals(content.size.toLong(), blob.length)
+      assertArrayEquals(content, read)
+    }
+  }
+
+  private fun encrypt(content: ByteArray): Pair<ByteArray, File> {
+    val file = File.createTempFile("transfer", ".mms").also { files += it }
+    val output = ModernEncryptingPartOutputStream.createFor(attachmentSecret, file, false)
+    output.second.use { it.write(content) }
+    return output.first to file
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.backup.v2.importer
+
+import android.app.Application
+import io.mockk.every
+import io.mockk.mockkObject
+import io.mockk.unmockkObject
+import okio.ByteString.Companion.toByteString
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.archive.proto.ChatItem
+import org.signal.archive.proto.ChatUpdateMessage
+import org.signal.archive.proto.GroupChangeChatUpdate
+import org.signal.archive.proto.GroupNameUpdate
+import org.signal.core.models.backup.MediaRootBackupKey
+import org.signal.core.util.readToSingleObject
+import org.signal.core.util.requireBlob
+import org.signal.core.util.requireLong
+import org.signal.core.util.requireString
+import org.signal.core.util.select
+import org.signal.core.util.withinTransaction
+import org.thoughtcrime.securesms.backup.v2.ImportState
+import org.thoughtcrime.securesms.database.MessageTable
+import org.thoughtcrime.securesms.database.MessageTypes
+import org.thoughtcrime.securesms.database.model.databaseprotos.MessageExtras
+import org.thoughtcrime.securesms.recipients.Recipient
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.thoughtcrime.securesms.testutil.MockAppDependenciesRule
+import org.thoughtcrime.securesms.testutil.SignalDatabaseRule
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class ChatItemArchiveImporterTest {
+
+  companion object {
+    private const val AUTHOR_BACKUP_ID = 10L
+    private const val CHAT_ID = 20L
+    private const val GROUP_BACKUP_ID = 30L
+    private const val THREAD_ID = 1L
+
+    private val SELF_ID = RecipientId.from(1)
+    private val AUTHOR_ID = RecipientId.from(2)
+    private val GROUP_ID = RecipientId.from(3)
+  }
+
+  @get:Rule
+  val appDependencies = MockAppDependenciesRule()
+
+  @get:Rule
+  val signalDatabaseRule = SignalDatabaseRule()
+
+  private lateinit var importState: ImportState
+
+  @Before
+  fun setUp() {
+    mockkObject(Recipient.Companion)
+    every { Recipient.self() } returns Recipient(id = SELF_ID, isSelf = true)
+
+    importState = ImportState(MediaRootBackupKey(ByteArray(32))).apply {
+      remoteToLocalRecipientId[AUTHOR_BACKUP_ID] = AUTHOR_ID
+      chatIdToLocalRecipientId[CHAT_ID] = GROUP_ID
+      chatIdToLocalThreadId[CHAT_ID] = THREAD_ID
+      chatIdToBackupRecipientId[CHAT_ID] = GROUP_BACKUP_ID
+    }
+  }
+
+  @After
+  fun tearDown() {
+    unmockkObject(Recipient.Companion)
+  }
+
+  @Test
+  fun givenAGroupChangeChatItem_whenIImportIt_thenIExpectAGroupUpdateWithTheChangeInItsExtras() {
+    val groupChange = GroupChangeChatUpdate(
+      updates = listOf(
+        GroupChangeChatUpdate.Update(
+          groupNameUpdate = GroupNameUpdate(
+            updaterAci = ByteArray(16).toByteString(),
+            newGroupName = "Restored"
+          )
+        )
+      )
+    )
+
+    val chatItem = ChatItem(
+      chatId = CHAT_ID,
+      authorId = AUTHOR_BACKUP_ID,
+      dateSent = 1000,
+      directionless = ChatItem.DirectionlessMessageDetails(),
+      updateMessage = ChatUpdateMessage(groupChange = groupChange)
+    )
+
+    val db = signalDatabaseRule.writeableDatabase
+    db.withinTransaction {
+      val importer = ChatItemArchiveImporter(it, importState, batchSize = 10)
+      importer.import(chatItem)
+      assertTrue(importer.flush())
+    }
+
+    val (type, body, extras) = db
+      .select(MessageTable.TYPE, MessageTable.BODY, MessageTable.MESSAGE_EXTRAS)
+      .from(MessageTable.TABLE_NAME)
+      .where("${MessageTable.DATE_SENT} = ?", 1000)
+      .run()
+      .readToSingleObject { Triple(it.requireLong(MessageTable.TYPE), it.requireString(MessageTable.BODY), it.requireBlob(MessageTable.MESSAGE_EXTRAS)) }!!
+
+    assertEquals(MessageTypes.GROUP_V2_BIT, type and MessageTypes.GROUP_V2_BIT)
+    assertEquals(MessageTypes.GROUP_UPDATE_BIT, type and MessageTypes.GROUP_UPDATE_BIT)
+    assertEquals("", body)
+    assertNotNull(extras)
+    assertEquals(groupChange, MessageExtras.ADAPTER.decode(extras!!).gv2UpdateDescription?.groupChangeUpdate)
+  }
+}
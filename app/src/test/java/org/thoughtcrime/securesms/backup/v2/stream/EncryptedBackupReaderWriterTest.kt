@@ -56,6 +56,36 @@ class EncryptedBackupReaderWriterTest {
     }
   }
 
+  @Test
+  fun `can read back all of the frames we write with parallel compression`() {
+    val key = MessageBackupKey(Util.getSecretBytes(32))
+    val aci = ACI.from(UUID.randomUUID())
+
+    val outputStream = ByteArrayOutputStream()
+
+    val frameCount = 50_000
+    EncryptedBackupWriter.createForLocalOrLinking(key, aci, outputStream, append = { outputStream.write(it) }, compressionThreads = 4).use { writer ->
+      writer.write(BackupInfo(version = 1, backupTimeMs = 1000L))
+
+      for (i in 0 until frameCount) {
+        writer.write(Frame(account = AccountData(username = "username-$i")))
+      }
+    }
+
+    val ciphertext: ByteArray = outputStream.toByteArray()
+
+    val frames: List<Frame> = EncryptedBackupReader.createForLocalOrLinking(key, aci, ciphertext.size.toLong()) { ciphertext.inputStream() }.use { reader ->
+      assertEquals(reader.backupInfo?.version, 1L)
+      reader.asSequence().toList()
+    }
+
+    assertEquals(frameCount, frames.size)
+
+    for (i in 0 until frameCount) {
+      assertEquals("username-$i", frames[i].account?.username)
+    }
+  }
+
   @Test
   fun `padding limits number of sizes`() {
     val key = MessageBackupKey(Util.getSecretBytes(32))
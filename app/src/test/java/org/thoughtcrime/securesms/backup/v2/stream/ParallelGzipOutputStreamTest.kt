@@ -0,0 +1,88 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.backup.v2.stream
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.signal.archive.stream.ParallelGzipOutputStream
+import java.io.ByteArrayOutputStream
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+import kotlin.random.Random
+
+class ParallelGzipOutputStreamTest {
+
+  companion object {
+    private const val BLOCK_SIZE = ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE
+  }
+
+  @Test
+  fun `can read back data of any length with GZIPInputStream`() {
+    val sizes = listOf(0, 1, 1000, BLOCK_SIZE - 1, BLOCK_SIZE, BLOCK_SIZE + 1, 10 * BLOCK_SIZE + 17)
+
+    for (size in sizes) {
+      val input = frameLikeData(size)
+      val compressed = ByteArrayOutputStream()
+
+      ParallelGzipOutputStream(compressed, threads = 4).use { it.write(input) }
+
+      assertArrayEquals("size $size", input, gunzip(compressed.toByteArray()))
+    }
+  }
+
+  @Test
+  fun `can read back data written a byte at a time`() {
+    val input = frameLikeData(3 * BLOCK_SIZE + 5)
+    val compressed = ByteArrayOutputStream()
+
+    ParallelGzipOutputStream(compressed, threads = 2).use { stream ->
+      input.forEach { stream.write(it.toInt()) }
+    }
+
+    assertArrayEquals(input, gunzip(compressed.toByteArray()))
+  }
+
+  @Test
+  fun `incompressible data can be read back`() {
+    val input = Random(1).nextBytes(4 * BLOCK_SIZE + 3)
+    val compressed = ByteArrayOutputStream()
+
+    ParallelGzipOutputStream(compressed, threads = 3).use { it.write(input) }
+
+    assertArrayEquals(input, gunzip(compressed.toByteArray()))
+  }
+
+  @Test
+  fun `compresses about as well as GZIPOutputStream`() {
+    val input = frameLikeData(20 * BLOCK_SIZE)
+
+    val serial = ByteArrayOutputStream()
+    GZIPOutputStream(serial).use { it.write(input) }
+
+    val parallel = ByteArrayOutputStream()
+    ParallelGzipOutputStream(parallel, threads = 4).use { it.write(input) }
+
+    assertTrue(parallel.size() < serial.size() * 1.02)
+  }
+
+  /** Repetitive but not trivially so, a bit like a run of encoded frames. */
+  private fun frameLikeData(size: Int): ByteArray {
+    val random = Random(size)
+    val output = ByteArrayOutputStream(size)
+    var i = 0
+    while (output.size() < size) {
+      output.write("message-$i body ${random.nextInt(1000)} from ${random.nextInt(50)} at ${1_700_000_000_000L + i * 1000L};".toByteArray())
+      output.write(random.nextBytes(random.nextInt(16)))
+      i++
+    }
+    return output.toByteArray().copyOf(size)
+  }
+
+  private fun gunzip(data: ByteArray): ByteArray {
+    return GZIPInputStream(data.inputStream()).use { it.readBytes() }
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.app.Application
+import android.content.ContentValues
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.util.readToList
+import org.signal.core.util.readToSingleLong
+import org.signal.core.util.requireLong
+import org.signal.core.util.select
+import org.signal.core.util.withinTransaction
+import org.thoughtcrime.securesms.testutil.MockAppDependenciesRule
+import org.thoughtcrime.securesms.testutil.SignalDatabaseRule
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class BulkInsertWriterTest {
+
+  companion object {
+    private val MENTION_COLUMNS = arrayOf(
+      MentionTable.ID,
+      MentionTable.THREAD_ID,
+      MentionTable.MESSAGE_ID,
+      MentionTable.RECIPIENT_ID,
+      MentionTable.RANGE_START,
+      MentionTable.RANGE_LENGTH
+    )
+  }
+
+  @get:Rule
+  val appDependencies = MockAppDependenciesRule()
+
+  @get:Rule
+  val signalDatabaseRule = SignalDatabaseRule()
+
+  @Test
+  fun givenMoreRowsThanFitInOneStatement_whenIWrite_thenIExpectEveryRowInOrder() {
+    val writer = BulkInsertWriter(MentionTable.TABLE_NAME, MENTION_COLUMNS, initialCapacity = 1)
+
+    for (i in 1L..500L) {
+      val row = writer.addRow()
+      writer.put(row, MentionTable.ID, i)
+      writer.put(row, MentionTable.THREAD_ID, 1)
+      writer.put(row, MentionTable.MESSAGE_ID, i * 10)
+      writer.put(row, MentionTable.RECIPIENT_ID, if (i % 2 == 0L) i else null)
+    }
+
+    signalDatabaseRule.writeableDatabase.withinTransaction { writer.write(it) }
+
+    val rows = readMentions()
+    assertEquals((1L..500L).toList(), rows.map { it.first })
+    assertEquals((1L..500L).map { it * 10 }, rows.map { it.second })
+    assertEquals(250L, countWhere("${MentionTable.RECIPIENT_ID} IS NULL"))
+  }
+
+  @Test
+  fun givenARowThatFails_whenIWriteWithAFallback_thenIExpectTheRestInsertedAndThatRowReported() {
+    val db = signalDatabaseRule.writeableDatabase
+    db.insertPrepared(MentionTable.TABLE_NAME, ContentValues().apply { put(MentionTable.ID, 7L); put(MentionTable.THREAD_ID, 2L) })
+
+    val writer = BulkInsertWriter(MentionTable.TABLE_NAME, MENTION_COLUMNS)
+    for (i in 1L..10L) {
+      val row = writer.addRow()
+      writer.put(row, MentionTable.ID, i)
+      writer.put(row, MentionTable.THREAD_ID, 1)
+    }
+
+    val failed = mutableListOf<Long>()
+    writer.write(db) { row, _ -> failed += writer.getLong(row, MentionTable.ID) }
+
+    assertEquals(listOf(7L), failed)
+    assertEquals(9L, countWhere("${MentionTable.THREAD_ID} = 1"))
+  }
+
+  @Test(expected = android.database.SQLException::class)
+  fun givenARowThatFails_whenIWriteWithoutAFallback_thenIExpectAnException() {
+    val db = signalDatabaseRule.writeableDatabase
+    val writer = BulkInsertWriter(MentionTable.TABLE_NAME, MENTION_COLUMNS)
+    repeat(2) {
+      val row = writer.addRow()
+      writer.put(row, MentionTable.ID, 1)
+    }
+
+    writer.write(db)
+  }
+
+  @Test
+  fun givenRowsToDrop_whenIRetainTheRest_thenIExpectOnlyThoseWrittenAndClearToStartFresh() {
+    val writer = BulkInsertWriter(MentionTable.TABLE_NAME, MENTION_COLUMNS)
+    for (i in 1L..10L) {
+      val row = writer.addRow()
+      writer.put(row, MentionTable.ID, i)
+      writer.put(row, MentionTable.MESSAGE_ID, i)
+    }
+
+    writer.retainRows { writer.getLong(it, MentionTable.MESSAGE_ID) % 3 == 0L }
+    writer.write(signalDatabaseRule.writeableDatabase)
+
+    assertEquals(listOf(3L, 6L, 9L), readMentions().map { it.first })
+
+    writer.clear()
+    val row = writer.addRow()
+    assertEquals(0, row)
+    assertTrue(writer.isNull(row, MentionTable.MESSAGE_ID))
+  }
+
+  private fun readMentions(): List<Pair<Long, Long>> {
+    return signalDatabaseRule.readableDatabase
+      .select(MentionTable.ID, MentionTable.MESSAGE_ID)
+      .from(MentionTable.TABLE_NAME)
+      .orderBy("${MentionTable.ID} ASC")
+      .run()
+      .readToList { it.requireLong(MentionTable.ID) to it.requireLong(MentionTable.MESSAGE_ID) }
+  }
+
+  private fun countWhere(where: String): Long {
+    return signalDatabaseRule.readableDatabase
+      .select("COUNT(*)")
+      .from(MentionTable.TABLE_NAME)
+      .where(where)
+      .run()
+      .readToSingleLong()
+  }
+}
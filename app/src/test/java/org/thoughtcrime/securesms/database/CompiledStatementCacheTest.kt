@@ -0,0 +1,117 @@
+package org.thoughtcrime.securesms.database
+
+import androidx.sqlite.db.SupportSQLiteStatement
+import assertk.assertThat
+import assertk.assertions.containsExactly
+import assertk.assertions.isEqualTo
+import assertk.assertions.isFalse
+import assertk.assertions.isNotSameInstanceAs
+import assertk.assertions.isNull
+import assertk.assertions.isSameInstanceAs
+import assertk.assertions.isTrue
+import org.junit.Test
+
+class CompiledStatementCacheTest {
+
+  @Test
+  fun givenAReleasedStatement_whenIAcquireTheSameSql_thenIExpectItBackWithNoBindings() {
+    val cache = CompiledStatementCache(Any())
+    val first = cache.add("INSERT 1", FakeStatement())
+
+    first.args.bind(1L).bind("a")
+    first.release()
+
+    val second = cache.acquire("INSERT 1")!!
+    second.args.bind(2L)
+
+    assertThat(second).isSameInstanceAs(first)
+    assertThat((second.statement as FakeStatement).bindings).containsExactly(1 to 2L)
+    assertThat((second.statement as FakeStatement).closed).isFalse()
+  }
+
+  @Test
+  fun givenAStatementInUse_whenIAddTheSameSql_thenIExpectAThrowawayStatement() {
+    val cache = CompiledStatementCache(Any())
+    val outer = cache.add("INSERT 1", FakeStatement())
+
+    assertThat(cache.acquire("INSERT 1")).isNull()
+
+    val inner = cache.add("INSERT 1", FakeStatement())
+    inner.release()
+    outer.release()
+
+    assertThat(inner).isNotSameInstanceAs(outer)
+    assertThat((inner.statement as FakeStatement).closed).isTrue()
+    assertThat(cache.acquire("INSERT 1")).isSameInstanceAs(outer)
+  }
+
+  @Test
+  fun givenAFullCache_whenIAddAnother_thenIExpectTheLeastRecentlyUsedToBeClosed() {
+    val cache = CompiledStatementCache(Any())
+    val statements = (0 until 33).map { i -> cache.add("INSERT $i", FakeStatement()).also { it.release() } }
+
+    assertThat((statements[0].statement as FakeStatement).closed).isTrue()
+    assertThat(cache.acquire("INSERT 0")).isNull()
+    assertThat((statements[1].statement as FakeStatement).closed).isFalse()
+    assertThat(cache.acquire("INSERT 32")).isSameInstanceAs(statements[32])
+  }
+
+  @Test
+  fun givenNullsAndMixedTypes_whenIBind_thenIExpectThemInOrder() {
+    val statement = FakeStatement()
+    val cache = CompiledStatementCache(Any())
+    val cached = cache.add("INSERT 1", statement)
+
+    cached.args
+      .bind(5)
+      .bind(null as String?)
+      .bind(true)
+      .bind(byteArrayOf(1))
+      .bindValue(2.5)
+
+    assertThat(statement.bindings.map { it.first }).containsExactly(1, 2, 3, 4, 5)
+    assertThat(statement.bindings[0].second).isEqualTo(5L)
+    assertThat(statement.bindings[1].second).isNull()
+    assertThat(statement.bindings[2].second).isEqualTo(1L)
+    assertThat(statement.bindings[4].second).isEqualTo(2.5)
+  }
+
+  private class FakeStatement : SupportSQLiteStatement {
+    val bindings = mutableListOf<Pair<Int, Any?>>()
+    var closed = false
+
+    override fun bindNull(index: Int) {
+      bindings += index to null
+    }
+
+    override fun bindLong(index: Int, value: Long) {
+      bindings += index to value
+    }
+
+    override fun bindDouble(index: Int, value: Double) {
+      bindings += index to value
+    }
+
+    override fun bindString(index: Int, value: String) {
+      bindings += index to value
+    }
+
+    override fun bindBlob(index: Int, value: ByteArray) {
+      bindings += index to value
+    }
+
+    override fun clearBindings() {
+      bindings.clear()
+    }
+
+    override fun close() {
+      closed = true
+    }
+
+    override fun execute() = Unit
+    override fun executeUpdateDelete(): Int = 1
+    override fun executeInsert(): Long = 1
+    override fun simpleQueryForLong(): Long = 0
+    override fun simpleQueryForString(): String? = null
+  }
+}
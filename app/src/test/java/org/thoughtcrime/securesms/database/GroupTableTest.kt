@@ -122,6 +122,35 @@ class GroupTableTest {
     assertEquals(setOf(recipients.self, bob), groupRecord.members.toSet())
   }
 
+  @Test
+  fun givenTwoGroups_whenIGetGroupsByRecipientId_thenIExpectBothInOneMap() {
+    val v2Group = insertPushGroup()
+    val mmsGroup = insertMmsGroup(members = listOf(bob))
+    val v2Recipient = SignalDatabase.recipients.getByGroupId(v2Group).get()
+    val mmsRecipient = SignalDatabase.recipients.getByGroupId(mmsGroup).get()
+
+    val groups = groupTable.getGroups(listOf(v2Recipient, mmsRecipient, alice))
+
+    assertEquals(setOf(v2Recipient, mmsRecipient), groups.keys)
+    assertEquals(v2Group, groups[v2Recipient]!!.id)
+    assertEquals(setOf(recipients.self, alice), groups[v2Recipient]!!.members.toSet())
+    assertEquals(listOf(bob), groups[mmsRecipient]!!.members)
+  }
+
+  @Test
+  fun givenAGroupAndARemap_whenIGetGroupsByRecipientId_thenIExpectRemap() {
+    val v2Group = insertPushGroup()
+    val v2Recipient = SignalDatabase.recipients.getByGroupId(v2Group).get()
+
+    groupTable.writableDatabase.withinTransaction {
+      RemappedRecords.getInstance().addRecipient(alice, bob)
+    }
+
+    val groups = groupTable.getGroups(listOf(v2Recipient))
+
+    assertEquals(setOf(recipients.self, bob), groups[v2Recipient]!!.members.toSet())
+  }
+
   @Test
   fun givenAGroup_whenIRemapRecipientsThatHaveAConflict_thenIExpectDeletion() {
     val v2Group = insertPushGroupWithSelfAndOthers(listOf(alice, bob))
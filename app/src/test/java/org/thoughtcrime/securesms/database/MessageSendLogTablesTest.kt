@@ -0,0 +1,128 @@
+package org.thoughtcrime.securesms.database
+
+import android.app.Application
+import assertk.assertThat
+import assertk.assertions.isEqualTo
+import assertk.assertions.isNotNull
+import assertk.assertions.isNull
+import io.mockk.every
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.models.ServiceId.ACI
+import org.signal.core.util.count
+import org.signal.core.util.readToSingleInt
+import org.thoughtcrime.securesms.database.MessageSendLogTables.DeliveredEntry
+import org.thoughtcrime.securesms.database.model.MessageId
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.thoughtcrime.securesms.testutil.RecipientTestRule
+import org.thoughtcrime.securesms.util.RemoteConfig
+import org.whispersystems.signalservice.api.crypto.ContentHint
+import org.whispersystems.signalservice.api.messages.SendMessageResult
+import org.whispersystems.signalservice.api.push.SignalServiceAddress
+import org.whispersystems.signalservice.internal.push.Content
+import org.whispersystems.signalservice.internal.push.DataMessage
+import java.util.Optional
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class MessageSendLogTablesTest {
+
+  @get:Rule
+  val recipients = RecipientTestRule()
+
+  private lateinit var messageLog: MessageSendLogTables
+
+  private val dateSent1 = System.currentTimeMillis()
+  private val dateSent2 = dateSent1 + 1
+
+  @Before
+  fun setUp() {
+    every { RemoteConfig.retryReceipts } returns true
+    every { RemoteConfig.retryRespondMaxAge } returns TimeUnit.DAYS.toMillis(1)
+
+    messageLog = SignalDatabase.messageLog
+  }
+
+  @Test
+  fun givenAGroupSend_whenAllMembersDeliverInOneBatch_thenIExpectTheEntryToBeRemoved() {
+    val members = insertGroupSend(dateSent1, memberCount = 20, devices = listOf(1, 2))
+
+    messageLog.deleteEntries(members.flatMap { listOf(DeliveredEntry(dateSent1, it, 1), DeliveredEntry(dateSent1, it, 2)) })
+
+    assertThat(getRecipientCount()).isEqualTo(0)
+    assertThat(getPayloadCount()).isEqualTo(0)
+  }
+
+  @Test
+  fun givenAGroupSend_whenSomeMembersDeliver_thenIExpectOnlyTheirEntriesToBeRemoved() {
+    val members = insertGroupSend(dateSent1, memberCount = 10, devices = listOf(1, 2))
+
+    messageLog.deleteEntries(members.take(5).map { DeliveredEntry(dateSent1, it, 1) })
+
+    assertThat(getRecipientCount()).isEqualTo(15)
+    assertThat(getPayloadCount()).isEqualTo(1)
+    assertThat(messageLog.getLogEntry(members[0], 1, dateSent1)).isNull()
+    assertThat(messageLog.getLogEntry(members[0], 2, dateSent1)).isNotNull()
+    assertThat(messageLog.getLogEntry(members[9], 1, dateSent1)).isNotNull()
+  }
+
+  @Test
+  fun givenTwoSends_whenOneIsFullyDelivered_thenIExpectTheOtherPayloadToRemain() {
+    val members1 = insertGroupSend(dateSent1, memberCount = 5, devices = listOf(1))
+    val members2 = insertGroupSend(dateSent2, memberCount = 5, devices = listOf(1))
+
+    messageLog.deleteEntries(members1.map { DeliveredEntry(dateSent1, it, 1) } + DeliveredEntry(dateSent2, members2[0], 1))
+
+    assertThat(getRecipientCount()).isEqualTo(4)
+    assertThat(getPayloadCount()).isEqualTo(1)
+    assertThat(messageLog.getLogEntry(members2[1], 1, dateSent2)).isNotNull()
+  }
+
+  @Test
+  fun givenEntriesThatDoNotMatch_whenIDelete_thenIExpectNothingToBeRemoved() {
+    val members = insertGroupSend(dateSent1, memberCount = 3, devices = listOf(1))
+
+    messageLog.deleteEntries(
+      listOf(
+        DeliveredEntry(dateSent2, members[0], 1),
+        DeliveredEntry(dateSent1, members[0], 2),
+        DeliveredEntry(dateSent1, RecipientId.from(Long.MAX_VALUE), 1)
+      )
+    )
+
+    assertThat(getRecipientCount()).isEqualTo(3)
+    assertThat(getPayloadCount()).isEqualTo(1)
+  }
+
+  private fun insertGroupSend(dateSent: Long, memberCount: Int, devices: List<Int>): List<RecipientId> {
+    val content = Content(dataMessage = DataMessage(body = "hello", timestamp = dateSent))
+    val members = (1..memberCount).map { ACI.from(UUID.randomUUID()) }
+    val memberIds = members.map { SignalDatabase.recipients.getOrInsertFromServiceId(it) }
+
+    var payloadId = -1L
+    members.forEachIndexed { i, aci ->
+      val result = SendMessageResult.success(SignalServiceAddress(aci), devices, false, false, 0, Optional.of(content))
+      payloadId = if (payloadId == -1L) {
+        messageLog.insertIfPossible(memberIds[i], dateSent, result, ContentHint.RESENDABLE, MessageId(dateSent), true)
+      } else {
+        messageLog.addRecipientToExistingEntryIfPossible(payloadId, memberIds[i], dateSent, result, ContentHint.RESENDABLE, MessageId(dateSent), true)
+      }
+    }
+
+    return memberIds
+  }
+
+  private fun getRecipientCount(): Int {
+    return messageLog.readableDatabase.count().from("msl_recipient").run().readToSingleInt(0)
+  }
+
+  private fun getPayloadCount(): Int {
+    return messageLog.readableDatabase.count().from("msl_payload").run().readToSingleInt(0)
+  }
+}
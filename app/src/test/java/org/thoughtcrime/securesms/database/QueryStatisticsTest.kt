@@ -0,0 +1,85 @@
+package org.thoughtcrime.securesms.database
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class QueryStatisticsTest {
+
+  @Test
+  fun givenLiteralsAndPlaceholders_whenINormalize_thenIExpectPlaceholders() {
+    val shape = QueryStatistics.normalize("SELECT * FROM message WHERE thread_id = 12 AND body = 'it''s' AND date_sent > ?")
+
+    assertEquals("SELECT * FROM message WHERE thread_id = ? AND body = ? AND date_sent > ?", shape)
+  }
+
+  @Test
+  fun givenInListsOfDifferentLengths_whenINormalize_thenIExpectTheSameShape() {
+    val short = QueryStatistics.normalize("DELETE FROM part WHERE _id IN (1, 2)")
+    val long = QueryStatistics.normalize("DELETE FROM part WHERE _id IN (?,?,?,?,?)")
+
+    assertEquals("DELETE FROM part WHERE _id IN (?)", short)
+    assertEquals(short, long)
+  }
+
+  @Test
+  fun givenMultiRowValues_whenINormalize_thenIExpectASingleRow() {
+    val shape = QueryStatistics.normalize("INSERT INTO mention (thread_id, message_id) VALUES (1, 2), (3, 4), (5, 6)")
+
+    assertEquals("INSERT INTO mention (thread_id, message_id) VALUES (?)", shape)
+  }
+
+  @Test
+  fun givenWhitespaceCommentsAndIdentifiers_whenINormalize_thenIExpectThemCollapsedButIdentifiersKept() {
+    val shape = QueryStatistics.normalize("  SELECT \"table 1\".col2\n\t FROM  t1 -- trailing 42\n WHERE x1 = 0x1F  ")
+
+    assertEquals("SELECT \"table 1\".col2 FROM t1 WHERE x1 = ?", shape)
+  }
+
+  @Test
+  fun givenTheSameString_whenIGetItsShapeTwice_thenIExpectTheSameInstance() {
+    val where = "recipient_id = ?"
+
+    val first = QueryStatistics.shapeOf(QueryStatistics.Kind.SELECT, "thread", where)
+    val second = QueryStatistics.shapeOf(QueryStatistics.Kind.SELECT, "thread", where)
+    val update = QueryStatistics.shapeOf(QueryStatistics.Kind.UPDATE, "thread", where)
+
+    assertSame(first, second)
+    assertEquals("SELECT FROM thread WHERE recipient_id = ?", first.name)
+    assertEquals("UPDATE thread WHERE recipient_id = ?", update.name)
+  }
+
+  @Test
+  fun givenEqualStrings_whenIGetTheirShapes_thenIExpectTheSameShape() {
+    val first = QueryStatistics.shapeOf(QueryStatistics.Kind.RAW, null, StringBuilder("SELECT 1 FROM sms WHERE _id = 5").toString())
+    val second = QueryStatistics.shapeOf(QueryStatistics.Kind.RAW, null, StringBuilder("SELECT 1 FROM sms WHERE _id = 6").toString())
+
+    assertSame(first, second)
+  }
+
+  @Test
+  fun givenStructuredStatements_whenIGetTheirExplainableSql_thenIExpectALookup() {
+    assertEquals("SELECT * FROM groups WHERE group_id = ?", QueryStatistics.shapeOf(QueryStatistics.Kind.SELECT, "groups", "group_id = ?").explainableSql)
+    assertEquals("SELECT rowid FROM groups WHERE active = ?", QueryStatistics.shapeOf(QueryStatistics.Kind.DELETE, "groups", "active = ?").explainableSql)
+    assertNull(QueryStatistics.shapeOf(QueryStatistics.Kind.INSERT, "groups", null).explainableSql)
+    assertNull(QueryStatistics.shapeOf(QueryStatistics.Kind.RAW, null, "PRAGMA foreign_keys = ON").explainableSql)
+  }
+
+  @Test
+  fun givenRecordedDurations_whenIGetPercentiles_thenIExpectBucketUpperBounds() {
+    val histogram = QueryStatistics.Histogram()
+
+    repeat(90) { histogram.record(TimeUnit.MICROSECONDS.toNanos(80)) }
+    repeat(9) { histogram.record(TimeUnit.MILLISECONDS.toNanos(4)) }
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(40))
+
+    assertEquals(100, histogram.count)
+    assertEquals(TimeUnit.MICROSECONDS.toNanos(100), histogram.percentileNs(50))
+    assertEquals(TimeUnit.MICROSECONDS.toNanos(100), histogram.percentileNs(90))
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(5), histogram.percentileNs(99))
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(40), histogram.percentileNs(100))
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(40), histogram.maxNs)
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import android.app.Application
+import androidx.core.content.contentValuesOf
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.util.readToSingleLong
+import org.signal.core.util.select
+import org.thoughtcrime.securesms.database.model.Mention
+import org.thoughtcrime.securesms.recipients.RecipientId
+import org.thoughtcrime.securesms.testutil.MockAppDependenciesRule
+import org.thoughtcrime.securesms.testutil.SignalDatabaseRule
+
+@Suppress("ClassName")
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class SQLiteDatabaseTest_insertPrepared {
+
+  @get:Rule
+  val appDependencies = MockAppDependenciesRule()
+
+  @get:Rule
+  val signalDatabaseRule = SignalDatabaseRule()
+
+  @Test
+  fun givenMentions_whenIInsertThem_thenIExpectToReadThemBack() {
+    val mentions = listOf(Mention(RecipientId.from(5), 0, 3), Mention(RecipientId.from(6), 4, 2))
+
+    SignalDatabase.mentions.insert(threadId = 1, messageId = 10, mentions = mentions)
+    SignalDatabase.mentions.insert(threadId = 1, messageId = 11, mentions = mentions.take(1))
+
+    assertEquals(mentions, SignalDatabase.mentions.getMentionsForMessage(10))
+    assertEquals(mentions.take(1), SignalDatabase.mentions.getMentionsForMessage(11))
+  }
+
+  @Test
+  fun givenGroupReceipts_whenIInsertThem_thenIExpectOneRowPerRecipient() {
+    val recipients = (1L..300L).map { RecipientId.from(it) }
+
+    SignalDatabase.groupReceipts.insert(recipients, mmsId = 7, status = GroupReceiptTable.STATUS_UNDELIVERED, timestamp = 123)
+
+    val receipts = SignalDatabase.groupReceipts.getGroupReceiptInfo(7)
+    assertEquals(recipients, receipts.map { it.recipientId })
+    assertTrue(receipts.all { it.status == GroupReceiptTable.STATUS_UNDELIVERED && it.timestamp == 123L })
+  }
+
+  @Test
+  fun givenAGroupReceipt_whenIUpdateItsStatus_thenIExpectItToOnlyMoveForward() {
+    val recipients = listOf(RecipientId.from(1), RecipientId.from(2))
+    SignalDatabase.groupReceipts.insert(recipients, mmsId = 7, status = GroupReceiptTable.STATUS_UNDELIVERED, timestamp = 1)
+
+    SignalDatabase.groupReceipts.update(recipients[0], mmsId = 7, status = GroupReceiptTable.STATUS_READ, timestamp = 2)
+    SignalDatabase.groupReceipts.update(recipients[0], mmsId = 7, status = GroupReceiptTable.STATUS_DELIVERED, timestamp = 3)
+
+    val receipts = SignalDatabase.groupReceipts.getGroupReceiptInfo(7)
+    assertEquals(listOf(GroupReceiptTable.STATUS_READ, GroupReceiptTable.STATUS_UNDELIVERED), receipts.map { it.status })
+    assertEquals(listOf(2L, 1L), receipts.map { it.timestamp })
+  }
+
+  @Test
+  fun givenDifferentColumns_whenIInsertContentValues_thenIExpectEachToKeepItsOwnColumns() {
+    val db = signalDatabaseRule.writeableDatabase
+
+    val first = db.insertPrepared(MentionTable.TABLE_NAME, contentValuesOf(MentionTable.THREAD_ID to 1, MentionTable.MESSAGE_ID to 2))
+    val second = db.insertPrepared(MentionTable.TABLE_NAME, contentValuesOf(MentionTable.THREAD_ID to 3, MentionTable.RANGE_START to 4))
+    val third = db.insertPrepared(MentionTable.TABLE_NAME, contentValuesOf(MentionTable.THREAD_ID to 5, MentionTable.MESSAGE_ID to 6))
+
+    assertEquals(listOf(1L, 2L, 3L), listOf(first, second, third))
+    assertEquals(2L, messageIdOf(first))
+    assertEquals(0L, messageIdOf(second))
+    assertEquals(6L, messageIdOf(third))
+  }
+
+  @Test
+  fun givenAConstraintFailure_whenIInsertContentValues_thenIExpectMinusOneLikeInsert() {
+    val db = signalDatabaseRule.writeableDatabase
+
+    db.insertPrepared(MentionTable.TABLE_NAME, contentValuesOf(MentionTable.ID to 1, MentionTable.THREAD_ID to 1))
+    val duplicate = db.insertPrepared(MentionTable.TABLE_NAME, contentValuesOf(MentionTable.ID to 1, MentionTable.THREAD_ID to 2))
+    val next = db.insertPrepared(MentionTable.TABLE_NAME, contentValuesOf(MentionTable.ID to 2, MentionTable.THREAD_ID to 3))
+
+    assertEquals(-1L, duplicate)
+    assertEquals(2L, next)
+  }
+
+  private fun messageIdOf(id: Long): Long {
+    return signalDatabaseRule.readableDatabase
+      .select(MentionTable.MESSAGE_ID)
+      .from(MentionTable.TABLE_NAME)
+      .where("${MentionTable.ID} = ?", id)
+      .run()
+      .readToSingleLong()
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.database
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.signal.core.util.SqlUtil
+import java.util.Random
+
+class TrigramSearchIndexTest {
+
+  @Test
+  fun givenFieldsWithAccentsAndCase_whenISearch_thenIExpectFoldedSubstringMatches() {
+    val index = TrigramSearchIndex()
+    index.put(1, listOf("Zoë Ångström", null, "zoe@example.com"))
+    index.put(2, listOf("Chloe", "+15555550123"))
+    index.put(3, listOf(null, ""))
+
+    assertEquals(listOf(1L), index.search("ANGST"))
+    assertEquals(listOf(1L), index.search("zoe "))
+    assertEquals(listOf(1L, 2L), index.search("oe"))
+    assertEquals(listOf(2L), index.search("5550"))
+    assertEquals(emptyList<Long>(), index.search("zzz"))
+    assertEquals(2, index.size)
+  }
+
+  @Test
+  fun givenAQuery_whenISearch_thenIExpectExactThenPrefixThenWordThenSubstringMatches() {
+    val index = TrigramSearchIndex()
+    index.put(10, listOf("Sam Anderson"))
+    index.put(11, listOf("Anders"))
+    index.put(12, listOf("Sanders"))
+    index.put(13, listOf("Andersen"))
+
+    assertEquals(listOf(11L, 13L, 10L, 12L), index.search("anders"))
+  }
+
+  @Test
+  fun givenAnUpdatedEntry_whenISearch_thenIExpectOnlyItsNewFieldsToMatch() {
+    val index = TrigramSearchIndex()
+    index.put(1, listOf("Book club"))
+    index.put(1, listOf("Climbing"))
+
+    assertEquals(emptyList<Long>(), index.search("book"))
+    assertEquals(listOf(1L), index.search("climb"))
+
+    index.remove(1)
+
+    assertEquals(emptyList<Long>(), index.search("climb"))
+    assertEquals(0, index.size)
+  }
+
+  @Test
+  fun givenAGlobPatternMatch_whenIFoldBothSides_thenIExpectASubstringMatch() {
+    val text = "Łukasz Øster Ærø Đorđe İlkay Σοφία"
+
+    for (query in listOf("lukasz", "oster", "dorde", "ilkay", "σοφια", "ΣΟΦΊΑ")) {
+      assertTrue(query, SqlUtil.foldForSearch(text).contains(SqlUtil.foldForSearch(query)))
+    }
+  }
+
+  /**
+   * Types out a handful of queries one keystroke at a time against a thousand recipients and a hundred groups, checking every result against a plain scan
+   * of the folded text.
+   */
+  @Test
+  fun givenManyRecipientsAndGroups_whenITypeQueries_thenIExpectScanResultsPerKeystroke() {
+    val random = Random(42)
+    val firstNames = listOf("Alice", "Bob", "Carla", "Dmitri", "Émile", "Fatima", "Guðrún", "Hiroshi", "Ines", "José", "Kwame", "Léa", "Mateo", "Nadia", "Oğuz", "Priya")
+    val lastNames = listOf("Anderson", "Björk", "Chen", "Díaz", "Evans", "Fischer", "García", "Haddad", "Ivanova", "Jensen", "Kowalski", "López", "Müller", "Nakamura")
+    val words = listOf("Book", "Club", "Family", "Hiking", "Team", "Weekend", "Climbing", "Parents", "Soccer", "Neighbours", "Project", "Trip")
+
+    val index = TrigramSearchIndex()
+    val documents: MutableMap<Long, List<String>> = HashMap()
+
+    for (id in 1L..1_000L) {
+      val first = firstNames[random.nextInt(firstNames.size)]
+      val last = lastNames[random.nextInt(lastNames.size)]
+      documents[id] = listOf("$first $last", "$first$id".lowercase() + ".${random.nextInt(100)}", "+1555" + random.nextInt(10_000_000).toString().padStart(7, '0'))
+    }
+
+    for (id in 1_001L..1_100L) {
+      documents[id] = listOf("${words[random.nextInt(words.size)]} ${words[random.nextInt(words.size)]} $id")
+    }
+
+    documents.forEach { (id, fields) -> index.put(id, fields) }
+    assertEquals(documents.size, index.size)
+
+    val folded: Map<Long, List<String>> = documents.mapValues { (_, fields) -> fields.map { SqlUtil.foldForSearch(it) } }
+
+    for (query in listOf("muller", "jose diaz", "club", "5550", "guðrun", "weekend trip")) {
+      for (length in 1..query.length) {
+        val keystroke = query.substring(0, length)
+        val foldedQuery = SqlUtil.foldForSearch(keystroke)
+        val expected = folded.filterValues { fields -> fields.any { it.contains(foldedQuery) } }.keys
+
+        assertEquals(keystroke, expected, index.search(keystroke).toSet())
+      }
+    }
+  }
+}
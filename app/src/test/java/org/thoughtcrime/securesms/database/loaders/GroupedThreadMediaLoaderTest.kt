@@ -0,0 +1,92 @@
+package org.thoughtcrime.securesms.database.loaders
+
+import android.app.Application
+import android.database.MatrixCursor
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.thoughtcrime.securesms.database.MediaTable
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class GroupedThreadMediaLoaderTest {
+
+  /** Groups by the hundreds digit of the size. */
+  private val groupingMethod = object : GroupedThreadMediaLoader.GroupingMethod {
+    override fun groupFor(date: Long, size: Long): Int = (size / 100).toInt()
+    override fun groupName(groupNo: Int): String = groupNo.toString()
+  }
+
+  @Test
+  fun givenRowsInQueryOrder_whenIGroup_thenIExpectSectionsInGroupOrderAndRowsInQueryOrder() {
+    val index = index(sizes = listOf(250, 120, 280, 110, 10))
+
+    val media = GroupedThreadMediaLoader.PopulatedGroupedThreadMedia.create(index, groupingMethod, false)
+
+    assertEquals(listOf("0", "1", "2"), sectionNames(media))
+    assertEquals(listOf(listOf(5L), listOf(2L, 4L), listOf(1L, 3L)), attachmentIdsBySection(media))
+    assertEquals(5, media.itemCount)
+  }
+
+  @Test
+  fun givenReversedSections_whenIGroup_thenIExpectSectionsInReverseGroupOrder() {
+    val index = index(sizes = listOf(250, 120, 280, 110, 10))
+
+    val media = GroupedThreadMediaLoader.PopulatedGroupedThreadMedia.create(index, groupingMethod, true)
+
+    assertEquals(listOf("2", "1", "0"), sectionNames(media))
+    assertEquals(listOf(listOf(1L, 3L), listOf(2L, 4L), listOf(5L)), attachmentIdsBySection(media))
+  }
+
+  @Test
+  fun givenNoRecords_whenIGet_thenIExpectNull() {
+    val media = GroupedThreadMediaLoader.PopulatedGroupedThreadMedia.create(index(sizes = listOf(10, 20)), groupingMethod, false)
+
+    assertNull(media.get(0, 0))
+    assertEquals("image/jpeg", media.getContentType(0, 1))
+  }
+
+  @Test
+  fun givenRecordsOfTheWrongSize_whenISetThem_thenIExpectNoChanges() {
+    val media = GroupedThreadMediaLoader.PopulatedGroupedThreadMedia.create(index(sizes = listOf(10, 20)), groupingMethod, false)
+    val changes = mutableListOf<Triple<Int, Int, Int>>()
+
+    media.setRecords(listOf(null)) { section, item, count -> changes += Triple(section, item, count) }
+
+    assertEquals(emptyList<Triple<Int, Int, Int>>(), changes)
+  }
+
+  @Test
+  fun givenNoRecordsLoaded_whenISetAllNull_thenIExpectNoChanges() {
+    val media = GroupedThreadMediaLoader.PopulatedGroupedThreadMedia.create(index(sizes = listOf(10, 20, 150)), groupingMethod, false)
+    val changes = mutableListOf<Triple<Int, Int, Int>>()
+
+    media.setRecords(listOf(null, null, null)) { section, item, count -> changes += Triple(section, item, count) }
+
+    assertEquals(emptyList<Triple<Int, Int, Int>>(), changes)
+  }
+
+  private fun index(sizes: List<Long>): MediaTable.MediaIndex {
+    val cursor = MatrixCursor(arrayOf("_id", "media_message_id", "type", "date_sent", "date_received", "data_size", "content_type", "blur_hash", "has_link_preview"))
+
+    sizes.forEachIndexed { i, size ->
+      val id = (i + 1).toLong()
+      cursor.addRow(arrayOf<Any?>(id, id * 10, 0L, id, id, size, "image/jpeg", null, 0))
+    }
+
+    return MediaTable.MediaIndex.from(cursor)
+  }
+
+  private fun sectionNames(media: GroupedThreadMediaLoader.GroupedThreadMedia): List<String> {
+    return (0 until media.sectionCount).map { media.getName(it) }
+  }
+
+  private fun attachmentIdsBySection(media: GroupedThreadMediaLoader.GroupedThreadMedia): List<List<Long>> {
+    return (0 until media.sectionCount).map { section ->
+      (0 until media.getSectionItemCount(section)).map { item -> media.getAttachmentId(media.getPosition(section, item)) }
+    }
+  }
+}
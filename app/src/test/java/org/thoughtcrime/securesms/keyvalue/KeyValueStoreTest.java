@@ -0,0 +1,251 @@
+package org.thoughtcrime.securesms.keyvalue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KeyValueStoreTest {
+
+  private ExecutorService executor;
+  private BlockingStorage storage;
+  private KeyValueStore   subject;
+
+  @Before
+  public void setUp() {
+    KeyValueDataSet initial = new KeyValueDataSet();
+    initial.putLong("existing", 7L);
+
+    executor = Executors.newSingleThreadExecutor();
+    storage  = new BlockingStorage(initial);
+    subject  = new KeyValueStore(storage, executor);
+  }
+
+  @After
+  public void tearDown() {
+    storage.release();
+    executor.shutdown();
+  }
+
+  @Test
+  public void givenAnApply_whenIReadImmediately_thenIExpectTheNewValue() {
+    storage.release();
+
+    subject.beginWrite().putBoolean("a", true).putInteger("b", 3).putFloat("c", 1.5f).putString("d", "spiderman").putBlob("e", new byte[] { 1 }).apply();
+
+    assertTrue(subject.getBoolean("a", false));
+    assertEquals(3, subject.getInteger("b", 0));
+    assertEquals(3L, subject.getLong("b", 0));
+    assertEquals(1.5f, subject.getFloat("c", 0), 0);
+    assertEquals("spiderman", subject.getString("d", null));
+    assertArrayEquals(new byte[] { 1 }, subject.getBlob("e", null));
+    assertEquals(7, subject.getInteger("existing", 0));
+  }
+
+  @Test
+  public void givenARemove_whenIRead_thenIExpectTheDefault() {
+    storage.release();
+
+    subject.beginWrite().remove("existing").apply();
+
+    assertFalse(subject.containsKey("existing"));
+    assertEquals(-1L, subject.getLong("existing", -1L));
+  }
+
+  @Test
+  public void givenAReader_whenAWriteHappensAfterwards_thenIExpectTheReaderToBeUnchanged() {
+    storage.release();
+
+    KeyValueReader reader = subject.beginRead();
+    subject.beginWrite().putLong("existing", 8L).putString("new", "value").apply();
+
+    assertEquals(7L, reader.getLong("existing", 0));
+    assertFalse(reader.containsKey("new"));
+    assertEquals(8L, subject.getLong("existing", 0));
+  }
+
+  @Test
+  public void givenABlockedDisk_whenIRead_thenIDoNotWaitForTheWrite() throws Exception {
+    subject.beginWrite().putLong("existing", 8L).apply();
+    storage.awaitWriteStarted();
+
+    assertEquals(8L, subject.getLong("existing", 0));
+  }
+
+  @Test
+  public void givenWritesQueuedBehindABlockedDisk_whenTheDiskFrees_thenIExpectThemInOneTransaction() throws Exception {
+    subject.beginWrite().putLong("first", 1L).apply();
+    storage.awaitWriteStarted();
+
+    subject.beginWrite().putLong("second", 2L).apply();
+    subject.beginWrite().putLong("second", 3L).remove("existing").apply();
+    subject.beginWrite().putLong("existing", 9L).apply();
+
+    storage.release();
+    subject.blockUntilAllWritesFinished();
+
+    assertEquals(2, storage.transactions.size());
+    assertEquals(3L, storage.dataSet.getLong("second", 0));
+    assertEquals(9L, storage.dataSet.getLong("existing", 0));
+    assertEquals(4, subject.getMetrics().persistedWrites);
+    assertEquals(2, subject.getMetrics().persistTransactions);
+  }
+
+  @Test
+  public void givenConcurrentWriters_whenIReadWithBeginRead_thenIAlwaysSeeWholeWrites() throws Exception {
+    storage.release();
+
+    int                        writers = 4;
+    int                        rounds  = 2_000;
+    AtomicBoolean              done    = new AtomicBoolean(false);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    CountDownLatch             start   = new CountDownLatch(1);
+    List<Thread>               threads = new ArrayList<>();
+
+    Thread reader = new Thread(() -> {
+      while (!done.get()) {
+        KeyValueReader snapshot = subject.beginRead();
+        if (snapshot.getLong("a", 0) != snapshot.getLong("b", 0)) {
+          failure.set(new AssertionError("Saw a partial write"));
+          return;
+        }
+      }
+    });
+    reader.start();
+
+    for (int i = 0; i < writers; i++) {
+      Thread writer = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+
+        for (long value = 1; value <= rounds; value++) {
+          subject.beginWrite().putLong("a", value).putLong("b", value).apply();
+        }
+      });
+      writer.start();
+      threads.add(writer);
+    }
+
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    done.set(true);
+    reader.join();
+    subject.blockUntilAllWritesFinished();
+
+    assertNull(failure.get());
+    assertEquals(writers * rounds, subject.getMetrics().writes);
+    assertEquals(writers * rounds, subject.getMetrics().persistedWrites);
+    assertEquals(subject.getLong("a", 0), storage.dataSet.getLong("a", -1));
+  }
+
+  @Test
+  public void givenPendingWrites_whenIResetTheCache_thenIExpectThemToSurvive() throws Exception {
+    subject.beginWrite().putLong("first", 1L).apply();
+    storage.awaitWriteStarted();
+    subject.beginWrite().putLong("second", 2L).apply();
+
+    subject.resetCache();
+
+    assertEquals(1L, subject.getLong("first", 0));
+    assertEquals(2L, subject.getLong("second", 0));
+  }
+
+  @Test
+  public void givenAWriteThatFinishesWhileReadingTheDisk_whenIResetTheCache_thenIExpectItToSurvive() throws Exception {
+    subject.beginWrite().putLong("first", 1L).apply();
+    storage.awaitWriteStarted();
+
+    // Let the write land on disk right after the disk was read, and give it time to finish before the read returns
+    storage.afterRead = () -> {
+      storage.release();
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    };
+
+    subject.resetCache();
+
+    assertEquals(1L, subject.getLong("first", 0));
+  }
+
+  /**
+   * In-memory storage whose writes block until {@link #release()} is called, to simulate a slow disk.
+   */
+  private static final class BlockingStorage implements KeyValuePersistentStorage {
+
+    private final KeyValueDataSet       dataSet;
+    private final List<KeyValueDataSet> transactions = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch        released     = new CountDownLatch(1);
+    private final CountDownLatch        writeStarted = new CountDownLatch(1);
+
+    private volatile Runnable afterRead;
+
+    private BlockingStorage(KeyValueDataSet dataSet) {
+      this.dataSet = dataSet;
+    }
+
+    void release() {
+      released.countDown();
+    }
+
+    void awaitWriteStarted() throws InterruptedException {
+      writeStarted.await();
+    }
+
+    @Override
+    public void writeDataSet(KeyValueDataSet dataSet, Collection<String> removes) {
+      writeStarted.countDown();
+
+      try {
+        released.await();
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+
+      synchronized (this.dataSet) {
+        this.dataSet.putAll(dataSet);
+        this.dataSet.removeAll(removes);
+      }
+      transactions.add(dataSet);
+    }
+
+    @Override
+    public KeyValueDataSet getDataSet() {
+      KeyValueDataSet copy = new KeyValueDataSet();
+      synchronized (dataSet) {
+        copy.putAll(dataSet);
+      }
+
+      Runnable hook = afterRead;
+      if (hook != null) {
+        afterRead = null;
+        hook.run();
+      }
+
+      return copy;
+    }
+  }
+}
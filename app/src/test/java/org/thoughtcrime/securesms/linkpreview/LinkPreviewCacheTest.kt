@@ -0,0 +1,147 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.linkpreview
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.signal.core.util.crypto.AttachmentSecret
+import org.thoughtcrime.securesms.util.ImageCompressionUtil
+import java.io.File
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+import kotlin.time.Duration.Companion.hours
+
+class LinkPreviewCacheTest {
+
+  @get:Rule
+  val folder = TemporaryFolder()
+
+  private val secret = AttachmentSecret(Random.nextBytes(32), Random.nextBytes(32), Random.nextBytes(32))
+  private var now = TimeUnit.DAYS.toMillis(365)
+
+  private val directory: File by lazy { folder.newFolder("link_previews") }
+
+  private fun cache(maxSize: Long = 1024 * 1024): LinkPreviewCache {
+    return LinkPreviewCache(directory, { secret }, maxSize, ttl = 1.hours, clock = { now })
+  }
+
+  @Test
+  fun givenACachedPreview_whenIGetItBack_thenIExpectEveryField() {
+    val cache = cache()
+    val thumbnail = ImageCompressionUtil.Result(Random.nextBytes(5000), "image/jpeg", 640, 480)
+
+    cache.put("https://example.com/article", LinkPreviewCache.Entry("Daily Bugle", "A newspaper", 694051200000L, thumbnail))
+    val entry = cache.get("https://example.com/article")
+
+    assertNotNull(entry)
+    assertEquals("Daily Bugle", entry!!.title)
+    assertEquals("A newspaper", entry.description)
+    assertEquals(694051200000L, entry.date)
+    assertEquals("image/jpeg", entry.thumbnail!!.mimeType)
+    assertEquals(640, entry.thumbnail!!.width)
+    assertEquals(480, entry.thumbnail!!.height)
+    assertArrayEquals(thumbnail.data, entry.thumbnail!!.data)
+  }
+
+  @Test
+  fun givenACachedPreview_whenIReadItsFile_thenIExpectNoPlaintext() {
+    cache().put("https://example.com/article", LinkPreviewCache.Entry("Daily Bugle", "A newspaper", 0, null))
+
+    val file = directory.listFiles()!!.single()
+
+    assertFalse(String(file.readBytes(), Charsets.ISO_8859_1).contains("Daily Bugle"))
+    assertFalse(file.name.contains("example"))
+  }
+
+  @Test
+  fun givenTheSameUrl_whenICacheItUnderDifferentSecrets_thenIExpectDifferentFileNames() {
+    cache().put("https://example.com/article", LinkPreviewCache.Entry("Daily Bugle", "", 0, null))
+    val first = directory.listFiles()!!.single().name
+
+    val otherSecret = AttachmentSecret(Random.nextBytes(32), Random.nextBytes(32), Random.nextBytes(32))
+    LinkPreviewCache(directory, { otherSecret }, ttl = 1.hours, clock = { now }).put("https://example.com/article", LinkPreviewCache.Entry("Daily Bugle", "", 0, null))
+
+    assertEquals(2, directory.listFiles()!!.size)
+    assertTrue(directory.listFiles()!!.any { it.name != first })
+  }
+
+  @Test
+  fun givenCachedPreviews_whenIClear_thenIExpectNothing() {
+    val cache = cache()
+    cache.put("https://example.com/1", LinkPreviewCache.Entry("1", "", 0, null))
+    cache.put("https://example.com/2", LinkPreviewCache.Entry("2", "", 0, null))
+
+    cache.clear()
+
+    assertEquals(0, directory.listFiles()!!.size)
+    assertNull(cache.get("https://example.com/1"))
+  }
+
+  @Test
+  fun givenEquivalentUrls_whenIGet_thenIExpectTheSameEntry() {
+    val cache = cache()
+    cache.put("https://Example.com/article?id=1&utm_source=share#comments", LinkPreviewCache.Entry("Daily Bugle", "", 0, null))
+
+    assertNotNull(cache.get("https://example.com/article?id=1"))
+    assertNotNull(cache.get("https://example.com:443/article?utm_medium=social&id=1"))
+    assertNull(cache.get("https://example.com/article?id=2"))
+    assertNull(cache.get("http://example.com/article?id=1"))
+  }
+
+  @Test
+  fun givenAnExpiredPreview_whenIGet_thenIExpectNothing() {
+    val cache = cache()
+    cache.put("https://example.com/article", LinkPreviewCache.Entry("Daily Bugle", "", 0, null))
+
+    now += TimeUnit.MINUTES.toMillis(59)
+    assertNotNull(cache.get("https://example.com/article"))
+
+    now += TimeUnit.MINUTES.toMillis(2)
+    assertNull(cache.get("https://example.com/article"))
+    assertEquals(0, directory.listFiles()!!.size)
+  }
+
+  @Test
+  fun givenAFullCache_whenIPut_thenIExpectTheLeastRecentlyUsedEvicted() {
+    val cache = cache(maxSize = 3 * 10_000L)
+    val thumbnail = ImageCompressionUtil.Result(ByteArray(9_000), "image/jpeg", 1, 1)
+
+    for (i in 1..3) {
+      now += 1000
+      cache.put("https://example.com/$i", LinkPreviewCache.Entry("$i", "", 0, thumbnail))
+    }
+
+    now += 1000
+    assertNotNull(cache.get("https://example.com/1"))
+
+    now += 1000
+    cache.put("https://example.com/4", LinkPreviewCache.Entry("4", "", 0, thumbnail))
+
+    assertNotNull(cache.get("https://example.com/1"))
+    assertNull(cache.get("https://example.com/2"))
+    assertNotNull(cache.get("https://example.com/3"))
+    assertNotNull(cache.get("https://example.com/4"))
+  }
+
+  @Test
+  fun givenACorruptFile_whenIGet_thenIExpectNothing() {
+    val cache = cache()
+    cache.put("https://example.com/article", LinkPreviewCache.Entry("Daily Bugle", "", 0, null))
+
+    val file = directory.listFiles()!!.single()
+    file.writeBytes(file.readBytes().copyOf(40))
+
+    assertNull(cache.get("https://example.com/article"))
+    assertFalse(file.exists())
+  }
+}
@@ -0,0 +1,165 @@
+package org.thoughtcrime.securesms.linkpreview
+
+import com.sun.net.httpserver.HttpServer
+import okhttp3.OkHttpClient
+import okhttp3.Request
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.thoughtcrime.securesms.util.OkHttpUtil
+import java.io.IOException
+import java.io.Reader
+import java.io.StringReader
+import java.net.InetSocketAddress
+
+class OpenGraphParserTest {
+
+  companion object {
+    private const val HEAD = "<!DOCTYPE html><html><head>" +
+      "<meta charset=\"utf-8\"><title>Daily Bugle</title>" +
+      "<meta property=\"og:image\" content=\"https://images.com/my-image.jpg\">" +
+      "<link rel=\"icon\" href=\"/favicon.ico\">" +
+      "</head>"
+
+    private val BODY_CHUNK = "<body><div><p>Spider-Man: threat or menace?</p><meta property=\"og:title\" content=\"Not a head tag\"></div>".repeat(100).toByteArray()
+  }
+
+  private lateinit var server: HttpServer
+
+  @Before
+  fun setUp() {
+    server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+    server.createContext("/large") { exchange ->
+      val pageSize = exchange.requestURI.query.substringAfter("size=").toLong()
+
+      exchange.responseHeaders.add("Content-Type", "text/html; charset=utf-8")
+      exchange.sendResponseHeaders(200, 0)
+
+      try {
+        exchange.responseBody.use { output ->
+          output.write(HEAD.toByteArray())
+
+          var written = HEAD.length.toLong()
+          while (written < pageSize) {
+            output.write(BODY_CHUNK)
+            written += BODY_CHUNK.size
+          }
+        }
+      } catch (e: IOException) {
+        // The client hung up once it had what it needed
+      }
+    }
+    server.start()
+  }
+
+  @After
+  fun tearDown() {
+    server.stop(0)
+  }
+
+  @Test
+  fun givenAHead_whenIParse_thenIExpectItsTagsAndNothingAfterIt() {
+    val reader = CountingReader(HEAD + String(BODY_CHUNK))
+
+    val result = OpenGraphParser.parse(reader)
+
+    assertEquals("Daily Bugle", result.title)
+    assertEquals("https://images.com/my-image.jpg", result.properties["image"])
+    assertEquals("/favicon.ico", result.faviconUrl)
+    assertNull(result.properties["title"])
+    assertTrue(reader.charsRead <= HEAD.length + 8192)
+  }
+
+  @Test
+  fun givenTagsInScriptsAndComments_whenIParse_thenIExpectThemIgnored() {
+    val html = "<head><!-- <meta property=\"og:title\" content=\"Comment\"> -->" +
+      "<script>document.write('<meta property=\"og:title\" content=\"Script\">');</script>" +
+      "<style>a > b { color: red }</style>" +
+      "<meta property='og:title' content='Real'></head>"
+
+    assertEquals("Real", OpenGraphParser.parse(StringReader(html)).properties["title"])
+  }
+
+  @Test
+  fun givenRepeatedProperties_whenIParse_thenIExpectTheFirstToWin() {
+    val html = "<meta property=\"og:image\" content=\"first.jpg\"><meta property=\"og:image\" content=\"second.jpg\">" +
+      "<meta property=\"article:published_time\" content=\"1991-12-30\"><meta property=\"og:published_time\" content=\"1991-12-31\">"
+
+    val result = OpenGraphParser.parse(StringReader(html))
+
+    assertEquals("first.jpg", result.properties["image"])
+    assertEquals("1991-12-30", result.properties["published_time"])
+  }
+
+  @Test
+  fun givenUnusualMarkup_whenIParse_thenIExpectTheValues() {
+    val html = "<TITLE>\n  Daily\n  Bugle\n</Title>" +
+      "<meta property=OG:Description content=unquoted>" +
+      "<link rel=\"shortcut icon\" href='/favicon.png'/>" +
+      "<meta property=\"og:title\" <meta property=\"og:image\" content=\"after-broken.jpg\">"
+
+    val result = OpenGraphParser.parse(StringReader(html))
+
+    assertEquals("\n  Daily\n  Bugle\n", result.title)
+    assertEquals("unquoted", result.properties["description"])
+    assertEquals("/favicon.png", result.faviconUrl)
+    assertEquals("after-broken.jpg", result.properties["image"])
+  }
+
+  @Test
+  fun givenEveryPropertyWeNeed_whenIParse_thenIExpectToStopReading() {
+    val head = "<meta property=\"og:title\" content=\"t\"><meta property=\"og:description\" content=\"d\">" +
+      "<meta property=\"og:image\" content=\"i\"><meta property=\"og:published_time\" content=\"p\">"
+    val reader = CountingReader(head + "<meta name=\"filler\">".repeat(10_000))
+
+    OpenGraphParser.parse(reader)
+
+    assertTrue(reader.charsRead <= head.length + 8192)
+  }
+
+  @Test
+  fun givenACharacterLimit_whenIParse_thenIExpectWhatWasFoundWithinIt() {
+    val html = "<title>Daily Bugle</title>" + "<meta name=\"filler\">".repeat(10_000) + "<meta property=\"og:image\" content=\"late.jpg\">"
+    val reader = CountingReader(html)
+
+    val result = OpenGraphParser.parse(reader, maxChars = 1000)
+
+    assertEquals("Daily Bugle", result.title)
+    assertNull(result.properties["image"])
+    assertEquals(1000, reader.charsRead)
+  }
+
+  /**
+   * Serves a page well past the 2 MB that link previews used to read in full before giving up, and checks that the head alone is enough.
+   */
+  @Test
+  fun givenALargePageOverHttp_whenIParse_thenIExpectToReadOnlyTheHead() {
+    val client = OkHttpClient.Builder().build()
+    val pageSize = 3L * 1024 * 1024
+
+    val request = Request.Builder().url("http://127.0.0.1:${server.address.port}/large?size=$pageSize").build()
+
+    val call = client.newCall(request)
+    val result = call.execute().use { response ->
+      OpenGraphParser.parse(OkHttpUtil.openHtmlReader(response.body!!), 2L * 1024 * 1024).also { call.cancel() }
+    }
+
+    assertEquals("Daily Bugle", result.title)
+    assertEquals("https://images.com/my-image.jpg", result.properties["image"])
+    assertNull(result.properties["title"])
+  }
+
+  private class CountingReader(text: String) : Reader() {
+    private val delegate = StringReader(text)
+    var charsRead = 0L
+
+    override fun read(buffer: CharArray, offset: Int, length: Int): Int {
+      return delegate.read(buffer, offset, length).also { if (it > 0) charsRead += it }
+    }
+
+    override fun close() = delegate.close()
+  }
+}
@@ -0,0 +1,261 @@
+package org.thoughtcrime.securesms.service.webrtc.state
+
+import assertk.assertThat
+import assertk.assertions.containsExactly
+import assertk.assertions.isEmpty
+import assertk.assertions.isEqualTo
+import assertk.assertions.isFalse
+import assertk.assertions.isLessThan
+import assertk.assertions.isNull
+import assertk.assertions.isSameInstanceAs
+import assertk.assertions.isTrue
+import org.junit.Test
+import org.thoughtcrime.securesms.components.webrtc.BroadcastVideoSink
+import org.thoughtcrime.securesms.events.CallParticipant
+import org.thoughtcrime.securesms.events.CallParticipantId
+import org.thoughtcrime.securesms.recipients.Recipient
+import org.thoughtcrime.securesms.recipients.RecipientCreator
+import org.thoughtcrime.securesms.recipients.RecipientId
+import kotlin.random.Random
+
+class RemoteParticipantsTest {
+
+  companion object {
+    private const val CALL_SIZE = 75
+    private const val EVENTS = 2_000
+  }
+
+  private val recipients: Map<Long, Recipient> = (1L..CALL_SIZE).associateWith { RecipientCreator.forId(RecipientId.from(it), true) }
+
+  @Test
+  fun givenAParticipant_whenIPutAnEqualOne_thenIExpectTheSameInstance() {
+    val participants = RemoteParticipants.EMPTY.putParticipant(id(1), participant(1))
+
+    val updated = participants.putParticipant(id(1), participant(1).copy(videoSink = participants.getValue(id(1)).videoSink))
+
+    assertThat(updated).isSameInstanceAs(participants)
+    assertThat(updated.changesSince(participants).isEmpty).isTrue()
+  }
+
+  @Test
+  fun givenParticipants_whenIGetByDemuxId_thenIExpectTheMatchingParticipant() {
+    val participants = RemoteParticipants.EMPTY
+      .putParticipant(id(1), participant(1))
+      .putParticipant(id(2), participant(2))
+
+    assertThat(participants.getByDemuxId(102)!!.callParticipantId).isEqualTo(id(2))
+    assertThat(participants.removeParticipant(id(2)).getByDemuxId(102)).isNull()
+    assertThat(participants.getByDemuxId(103)).isNull()
+  }
+
+  @Test
+  fun givenASnapshot_whenIUpdateIt_thenIExpectTheSnapshotUnchanged() {
+    val snapshot = RemoteParticipants.EMPTY
+      .putParticipant(id(1), participant(1))
+      .putParticipant(id(2), participant(2))
+
+    snapshot.putParticipant(id(1), participant(1, audioEnabled = true)).removeParticipant(id(2)).putParticipant(id(3), participant(3))
+
+    assertThat(snapshot.keys.toList()).containsExactly(id(1), id(2))
+    assertThat(snapshot.getValue(id(1)).isMicrophoneEnabled).isFalse()
+    assertThat(snapshot.list.map { it.callParticipantId }).containsExactly(id(1), id(2))
+  }
+
+  @Test
+  fun givenParticipants_whenIReplaceAll_thenIExpectOnlyTheChangesApplied() {
+    val previous = RemoteParticipants.EMPTY.replaceParticipants(listOf(participant(1), participant(2), participant(3)))
+    val unchanged = previous.getValue(id(1))
+
+    val current = previous.replaceParticipants(listOf(unchanged, participant(3, audioEnabled = true), participant(4)))
+    val changes = current.changesSince(previous)
+
+    assertThat(current.list.map { it.callParticipantId }).containsExactly(id(1), id(3), id(4))
+    assertThat(current.getValue(id(1))).isSameInstanceAs(unchanged)
+    assertThat(changes.added).containsExactly(id(4))
+    assertThat(changes.updated).containsExactly(id(3))
+    assertThat(changes.removed).containsExactly(id(2))
+    assertThat(current.getByDemuxId(102)).isNull()
+  }
+
+  @Test
+  fun givenParticipants_whenIReplaceAllInADifferentOrder_thenIExpectTheNewOrder() {
+    val previous = RemoteParticipants.EMPTY.replaceParticipants(listOf(participant(1), participant(2), participant(3)))
+
+    val current = previous.replaceParticipants(listOf(previous.getValue(id(3)), previous.getValue(id(1)), previous.getValue(id(2))))
+
+    assertThat(current.list.map { it.callParticipantId }).containsExactly(id(3), id(1), id(2))
+    assertThat(current.changesSince(previous).isEmpty).isTrue()
+  }
+
+  @Test
+  fun givenAFresherRecipientSnapshot_whenIPut_thenIExpectItReplaced() {
+    val participants = RemoteParticipants.EMPTY.putParticipant(id(1), participant(1))
+    val existing = participants.getValue(id(1))
+
+    val updated = participants.putParticipant(id(1), existing.copy(recipient = RecipientCreator.forId(RecipientId.from(1), true)))
+
+    assertThat(updated.changesSince(participants).updated).containsExactly(id(1))
+  }
+
+  @Test
+  fun givenNoChanges_whenIReplaceAll_thenIExpectTheSameInstance() {
+    val participants = RemoteParticipants.EMPTY.replaceParticipants(listOf(participant(1), participant(2)))
+
+    assertThat(participants.replaceParticipants(participants.list)).isSameInstanceAs(participants)
+    assertThat(participants.replaceParticipants(emptyList())).isEmpty()
+  }
+
+  /**
+   * Replays the remote device updates of a busy 75 person call, generated from a fixed seed, through both the delta updates that the group call processors
+   * now make and the full rebuild they used to make on every update, and checks that they end up in the same place.
+   */
+  @Test
+  fun givenALargeCall_whenIReplayItsDeviceUpdates_thenIExpectOnlyChangedParticipantsTouched() {
+    val stream = recordCall()
+
+    val (rebuilt, membershipChanges) = replayWithRebuilds(stream)
+    val (participants, changes) = replayWithDeltas(stream)
+
+    val touched = changes.sumOf { it.added.size + it.updated.size + it.removed.size }
+
+    assertThat(participants.list.map { it.withoutSink() }).isEqualTo(rebuilt.map { it.withoutSink() })
+    assertThat(changes.sumOf { it.added.size + it.removed.size }).isEqualTo(membershipChanges)
+    assertThat(touched).isLessThan(stream.size * 2)
+  }
+
+  /**
+   * What [org.thoughtcrime.securesms.service.webrtc.GroupActionProcessor] used to do: clear the map, create every participant again, copy the map into the
+   * next state, and copy its values into a list for the UI, which then diffed it against the last list to find who joined and left.
+   */
+  private fun replayWithRebuilds(stream: List<List<Device>>): Pair<List<CallParticipant>, Int> {
+    var participants: Map<CallParticipantId, CallParticipant> = emptyMap()
+    var published: List<CallParticipant> = emptyList()
+    var membershipChanges = 0
+
+    for (devices in stream) {
+      val rebuilt: MutableMap<CallParticipantId, CallParticipant> = LinkedHashMap()
+      for (device in devices.sortedBy { it.addedTime }) {
+        val id = CallParticipantId(device.demuxId, RecipientId.from(device.userId))
+        val existing = participants[id]
+        rebuilt[id] = device.toParticipant(id, recipients.getValue(device.userId), existing?.handRaisedTimestamp ?: CallParticipant.HAND_LOWERED, BroadcastVideoSink())
+      }
+
+      participants = rebuilt.toMutableMap()
+
+      val next = ArrayList(participants.values)
+      if (next != published) {
+        val previousIds = published.mapTo(HashSet()) { it.callParticipantId }
+        val nextIds = next.mapTo(HashSet()) { it.callParticipantId }
+        membershipChanges += (nextIds - previousIds).size + (previousIds - nextIds).size
+        published = next
+      }
+    }
+
+    return published to membershipChanges
+  }
+
+  /**
+   * What the group call processors do now: look each device up by demux ID, and only replace the participants that changed.
+   */
+  private fun replayWithDeltas(stream: List<List<Device>>): Pair<RemoteParticipants, List<RemoteParticipants.Changes>> {
+    var participants = RemoteParticipants.EMPTY
+    val published: MutableList<RemoteParticipants.Changes> = ArrayList(stream.size)
+
+    for (devices in stream) {
+      val updated = devices.sortedBy { it.addedTime }.map { device ->
+        val existing = participants.getByDemuxId(device.demuxId)
+        val id = CallParticipantId(device.demuxId, RecipientId.from(device.userId))
+        val sink = if (existing != null && existing.callParticipantId == id) existing.videoSink else BroadcastVideoSink()
+
+        device.toParticipant(id, recipients.getValue(device.userId), existing?.handRaisedTimestamp ?: CallParticipant.HAND_LOWERED, sink)
+      }
+
+      val next = participants.replaceParticipants(updated)
+      published += next.changesSince(participants)
+      participants = next
+    }
+
+    return participants to published
+  }
+
+  /**
+   * A call that fills up to [CALL_SIZE] people and then, for each update, has one person start or stop talking, toggle their mic or camera, share their
+   * screen, or drop off and rejoin on a new device.
+   */
+  private fun recordCall(): List<List<Device>> {
+    val random = Random(75)
+    val devices: MutableMap<Long, Device> = LinkedHashMap()
+    val stream: MutableList<List<Device>> = ArrayList(EVENTS)
+    var nextDemuxId = 1000L
+    var time = 0L
+
+    for (userId in 1L..CALL_SIZE) {
+      time += random.nextLong(100, 2000)
+      devices[nextDemuxId] = Device(nextDemuxId++, userId, addedTime = time)
+      stream += devices.values.toList()
+    }
+
+    while (stream.size < EVENTS) {
+      time += random.nextLong(10, 500)
+
+      val device = devices.values.elementAt(random.nextInt(devices.size))
+      val roll = random.nextInt(100)
+
+      when {
+        roll < 70 -> devices[device.demuxId] = device.copy(speakerTime = time)
+        roll < 85 -> devices[device.demuxId] = device.copy(audioMuted = !device.audioMuted)
+        roll < 93 -> devices[device.demuxId] = device.copy(videoMuted = !device.videoMuted)
+        roll < 95 -> devices[device.demuxId] = device.copy(presenting = !device.presenting)
+        else -> {
+          devices.remove(device.demuxId)
+          devices[nextDemuxId] = Device(nextDemuxId++, device.userId, addedTime = time)
+        }
+      }
+
+      stream += devices.values.toList()
+    }
+
+    return stream
+  }
+
+  private fun id(recipientId: Long): CallParticipantId {
+    return CallParticipantId(100 + recipientId, RecipientId.from(recipientId))
+  }
+
+  private fun participant(recipientId: Long, audioEnabled: Boolean = false): CallParticipant {
+    return Device(100 + recipientId, recipientId, addedTime = recipientId, audioMuted = !audioEnabled)
+      .toParticipant(id(recipientId), recipients.getValue(recipientId), CallParticipant.HAND_LOWERED, BroadcastVideoSink())
+  }
+
+  private fun CallParticipant.withoutSink(): CallParticipant {
+    return copy(videoSink = CallParticipant.EMPTY.videoSink)
+  }
+
+  private data class Device(
+    val demuxId: Long,
+    val userId: Long,
+    val addedTime: Long,
+    val audioMuted: Boolean = true,
+    val videoMuted: Boolean = true,
+    val presenting: Boolean = false,
+    val speakerTime: Long = 0
+  ) {
+    fun toParticipant(id: CallParticipantId, recipient: Recipient, handRaisedTimestamp: Long, sink: BroadcastVideoSink): CallParticipant {
+      return CallParticipant.createRemote(
+        callParticipantId = id,
+        recipient = recipient,
+        identityKey = null,
+        renderer = sink,
+        isForwardingVideo = true,
+        audioEnabled = !audioMuted,
+        videoEnabled = !videoMuted,
+        handRaisedTimestamp = handRaisedTimestamp,
+        lastSpoke = speakerTime,
+        mediaKeysReceived = true,
+        addedToCallTime = addedTime,
+        isScreenSharing = presenting,
+        deviceOrdinal = CallParticipant.DeviceOrdinal.PRIMARY
+      )
+    }
+  }
+}
@@ -5,6 +5,7 @@ import android.database.Cursor
 import android.database.SQLException
 import androidx.sqlite.db.SupportSQLiteDatabase
 import androidx.sqlite.db.SupportSQLiteQuery
+import androidx.sqlite.db.SupportSQLiteStatement
 import io.mockk.every
 import io.mockk.mockk
 import net.zetetic.database.sqlcipher.SQLiteQueryBuilder
@@ -251,6 +252,10 @@ class TestSignalSQLiteDatabase(private val database: SupportSQLiteDatabase) : Si
     }
   }
 
+  override fun compileReusableStatement(sql: String): SupportSQLiteStatement {
+    return database.compileStatement(sql)
+  }
+
   override val isReadOnly: Boolean
     get() = database.isReadOnly
 
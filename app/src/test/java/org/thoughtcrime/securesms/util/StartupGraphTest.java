@@ -0,0 +1,148 @@
+package org.thoughtcrime.securesms.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.thoughtcrime.securesms.util.AppStartup.Affinity.ANY_THREAD;
+import static org.thoughtcrime.securesms.util.AppStartup.Affinity.MAIN_THREAD;
+
+public class StartupGraphTest {
+
+  private final ExecutorService executor = Executors.newFixedThreadPool(2);
+  private final StartupGraph    graph    = new StartupGraph();
+
+  @After
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void givenTwoIndependentTasks_whenIExecute_thenIExpectThemToRunAtTheSameTime() {
+    CountDownLatch bothStarted = new CountDownLatch(2);
+    List<Boolean>  sawOther    = Collections.synchronizedList(new ArrayList<>());
+
+    Runnable task = () -> {
+      bothStarted.countDown();
+      try {
+        sawOther.add(bothStarted.await(5, TimeUnit.SECONDS));
+      } catch (InterruptedException e) {
+        throw new AssertionError(e);
+      }
+    };
+
+    graph.add("a", ANY_THREAD, deps(), task);
+    graph.add("b", ANY_THREAD, deps(), task);
+    graph.execute(executor);
+
+    assertEquals(Arrays.asList(true, true), sawOther);
+  }
+
+  @Test
+  public void givenADependency_whenIExecute_thenIExpectTheDependencyToFinishFirst() {
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+    graph.add("c", ANY_THREAD, deps("b"), () -> order.add("c"));
+    graph.add("b", ANY_THREAD, deps("a"), () -> order.add("b"));
+    graph.add("a", ANY_THREAD, deps(), () -> order.add("a"));
+    graph.execute(executor);
+
+    assertEquals(Arrays.asList("a", "b", "c"), order);
+  }
+
+  @Test
+  public void givenMainThreadTasks_whenIExecute_thenIExpectThemOnTheCallingThread() {
+    Thread       caller  = Thread.currentThread();
+    List<Thread> threads = Collections.synchronizedList(new ArrayList<>());
+
+    graph.add("background", ANY_THREAD, deps(), () -> sleep(20));
+    graph.add("main-1", MAIN_THREAD, deps("background"), () -> threads.add(Thread.currentThread()));
+    graph.add("main-2", MAIN_THREAD, deps(), () -> threads.add(Thread.currentThread()));
+    graph.execute(executor);
+
+    assertEquals(2, threads.size());
+    assertSame(caller, threads.get(0));
+    assertSame(caller, threads.get(1));
+  }
+
+  @Test
+  public void givenASlowBranch_whenIExecute_thenIExpectItOnTheCriticalPath() {
+    graph.add("slow", ANY_THREAD, deps(), () -> sleep(100));
+    graph.add("fast", ANY_THREAD, deps(), () -> {});
+    graph.add("unrelated", ANY_THREAD, deps("fast"), () -> {});
+    graph.add("join", MAIN_THREAD, deps("slow", "fast"), () -> sleep(10));
+
+    StartupGraph.Result result = graph.execute(executor);
+
+    List<String> path = new ArrayList<>();
+    for (StartupGraph.Timing timing : result.getCriticalPath()) {
+      path.add(timing.getName());
+    }
+
+    assertEquals(Arrays.asList("slow", "join"), path);
+    assertEquals(4, result.getTimings().size());
+    assertTrue(result.getTotalNanos() >= TimeUnit.MILLISECONDS.toNanos(110));
+  }
+
+  @Test
+  public void givenABackgroundTaskThatThrows_whenIExecute_thenIExpectTheExceptionOnTheCallingThread() {
+    IllegalStateException error = new IllegalStateException("Nope");
+    List<String>          ran   = Collections.synchronizedList(new ArrayList<>());
+
+    graph.add("a", ANY_THREAD, deps(), () -> { throw error; });
+    graph.add("b", ANY_THREAD, deps("a"), () -> ran.add("b"));
+
+    try {
+      graph.execute(executor);
+      fail();
+    } catch (IllegalStateException e) {
+      assertSame(error, e);
+    }
+
+    assertTrue(ran.isEmpty());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void givenAnUnknownDependency_whenIExecute_thenIExpectAnException() {
+    graph.add("a", ANY_THREAD, deps("missing"), () -> {});
+    graph.execute(executor);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void givenACycle_whenIExecute_thenIExpectAnException() {
+    graph.add("root", ANY_THREAD, deps(), () -> {});
+    graph.add("a", ANY_THREAD, deps("root", "b"), () -> {});
+    graph.add("b", MAIN_THREAD, deps("a"), () -> {});
+    graph.execute(executor);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void givenADuplicateName_whenIAdd_thenIExpectAnException() {
+    graph.add("a", ANY_THREAD, deps(), () -> {});
+    graph.add("a", MAIN_THREAD, deps(), () -> {});
+  }
+
+  private static List<String> deps(String... names) {
+    return Arrays.asList(names);
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
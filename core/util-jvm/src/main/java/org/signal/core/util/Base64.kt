@@ -5,11 +5,44 @@
 
 package org.signal.core.util
 
+import java.io.ByteArrayInputStream
 import java.io.IOException
-import java.io.UnsupportedEncodingException
+import java.nio.ByteBuffer
+import java.util.zip.GZIPInputStream
 
+/**
+ * A table-driven Base64 codec. Decoding accepts both the standard and url-safe alphabets through a single lookup table, with
+ * or without padding, and skips whitespace. Nothing is allocated besides the result, and the [decode] variants that take a
+ * destination don't allocate at all.
+ *
+ * Like the codec this replaced, the [decode] variants that return a new array gunzip standard alphabet input that decodes to
+ * GZIP data, and fall back to the decoded bytes if it doesn't inflate. The variants that take a destination never do.
+ */
 object Base64 {
 
+  private val STANDARD_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toByteArray(Charsets.US_ASCII)
+  private val URL_SAFE_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toByteArray(Charsets.US_ASCII)
+
+  private const val PADDING = '='.code.toByte()
+
+  private const val INVALID = -1
+  private const val WHITESPACE = -2
+  private const val END = -3
+
+  /** Maps every ASCII character to its 6-bit value in either alphabet, or to one of [INVALID], [WHITESPACE] or [END]. */
+  private val DECODE_TABLE = IntArray(128) { INVALID }.also { table ->
+    for (i in 0 until 64) {
+      table[STANDARD_ALPHABET[i].toInt()] = i
+      table[URL_SAFE_ALPHABET[i].toInt()] = i
+    }
+
+    table[' '.code] = WHITESPACE
+    table['\t'.code] = WHITESPACE
+    table['\n'.code] = WHITESPACE
+    table['\r'.code] = WHITESPACE
+    table['='.code] = END
+  }
+
   /**
    * Encodes the bytes as a normal Base64 string with padding. Not URL safe. For url-safe, use [encodeUrlSafe].
    *
@@ -19,7 +52,7 @@ object Base64 {
   @JvmOverloads
   @JvmStatic
   fun encodeWithPadding(bytes: ByteArray, offset: Int = 0, length: Int = bytes.size): String {
-    return Base64Tools.encodeBytes(bytes, offset, length)
+    return encode(bytes, offset, length, STANDARD_ALPHABET, padding = true)
   }
 
   /**
@@ -27,7 +60,7 @@ object Base64 {
    */
   @JvmStatic
   fun encodeWithoutPadding(bytes: ByteArray): String {
-    return Base64Tools.encodeBytes(bytes).stripPadding()
+    return encode(bytes, 0, bytes.size, STANDARD_ALPHABET, padding = false)
   }
 
   /**
@@ -36,7 +69,7 @@ object Base64 {
    */
   @JvmStatic
   fun encodeUrlSafeWithPadding(bytes: ByteArray): String {
-    return Base64Tools.encodeBytes(bytes, Base64Tools.URL_SAFE or Base64Tools.DONT_GUNZIP)
+    return encode(bytes, 0, bytes.size, URL_SAFE_ALPHABET, padding = true)
   }
 
   /**
@@ -45,7 +78,7 @@ object Base64 {
    */
   @JvmStatic
   fun encodeUrlSafeWithoutPadding(bytes: ByteArray): String {
-    return Base64Tools.encodeBytes(bytes, Base64Tools.URL_SAFE or Base64Tools.DONT_GUNZIP).stripPadding()
+    return encode(bytes, 0, bytes.size, URL_SAFE_ALPHABET, padding = false)
   }
 
   /**
@@ -54,21 +87,76 @@ object Base64 {
   @Throws(IOException::class)
   @JvmStatic
   fun decode(value: String): ByteArray {
-    return if (value.contains('-') || value.contains('_')) {
-      Base64Tools.decode(value.withPaddingIfNeeded(), Base64Tools.URL_SAFE or Base64Tools.DONT_GUNZIP)
-    } else {
-      Base64Tools.decode(value.withPaddingIfNeeded())
-    }
+    val output = ByteArray(decodedLength(value))
+    val written = decode(value.length, { value[it].code }) { i, b -> output[i] = b }
+    val decoded = if (written == output.size) output else output.copyOf(written)
+
+    return if (isGzip(decoded) && !value.contains('-') && !value.contains('_')) gunzipOrSelf(decoded) else decoded
   }
 
+  /**
+   * Decodes Base64 that's still in its ASCII encoded form, without turning it into a string first.
+   */
+  @Throws(IOException::class)
   @JvmStatic
   fun decode(value: ByteArray): ByteArray {
-    // This pattern of trying US_ASCII first mimics how Base64Tools handles strings
-    return try {
-      decode(String(value, Charsets.US_ASCII))
-    } catch (e: UnsupportedEncodingException) {
-      decode(String(value, Charsets.UTF_8))
+    var end = value.size
+    while (end > 0 && isTrailing(value[end - 1].toInt())) {
+      end--
     }
+
+    val output = ByteArray(decodedLength(end))
+    val written = decode(value.size, { value[it].toInt() and 0xFF }) { i, b -> output[i] = b }
+    val decoded = if (written == output.size) output else output.copyOf(written)
+
+    return if (isGzip(decoded) && !value.contains('-'.code.toByte()) && !value.contains('_'.code.toByte())) gunzipOrSelf(decoded) else decoded
+  }
+
+  /**
+   * Decodes [value] into [destination], starting at [offset]. There must be room for at least [decodedLength] bytes.
+   *
+   * @return The number of bytes written.
+   */
+  @Throws(IOException::class)
+  @JvmStatic
+  @JvmOverloads
+  fun decode(value: CharSequence, destination: ByteArray, offset: Int = 0): Int {
+    val required = decodedLength(value)
+    require(offset >= 0 && destination.size - offset >= required) { "Need $required bytes at offset $offset, but the destination only has ${destination.size}" }
+
+    return decode(value.length, { value[it].code }) { i, b -> destination[offset + i] = b }
+  }
+
+  /**
+   * Decodes [value] into [destination] at its current position, and advances the position past what was written. There must
+   * be at least [decodedLength] bytes remaining.
+   *
+   * @return The number of bytes written.
+   */
+  @Throws(IOException::class)
+  @JvmStatic
+  fun decode(value: CharSequence, destination: ByteBuffer): Int {
+    val required = decodedLength(value)
+    require(destination.remaining() >= required) { "Need $required bytes, but the destination only has ${destination.remaining()} remaining" }
+
+    val start = destination.position()
+    val written = decode(value.length, { value[it].code }) { i, b -> destination.put(start + i, b) }
+    destination.position(start + written)
+
+    return written
+  }
+
+  /**
+   * @return The number of bytes [value] decodes to. Exact unless [value] contains whitespace, in which case it's an upper bound.
+   */
+  @JvmStatic
+  fun decodedLength(value: CharSequence): Int {
+    var end = value.length
+    while (end > 0 && isTrailing(value[end - 1].code)) {
+      end--
+    }
+
+    return decodedLength(end)
   }
 
   /**
@@ -119,16 +207,115 @@ object Base64 {
     }
   }
 
-  private fun String.withPaddingIfNeeded(): String {
-    return when (this.length % 4) {
-      2 -> "$this=="
-      3 -> "$this="
-      else -> this
+  private fun encode(bytes: ByteArray, offset: Int, length: Int, alphabet: ByteArray, padding: Boolean): String {
+    require(offset >= 0 && length >= 0 && offset + length <= bytes.size) { "Array with length ${bytes.size} cannot have offset $offset and length $length" }
+
+    val groups = length / 3
+    val remainder = length - groups * 3
+    val output = ByteArray(groups * 4 + if (remainder == 0) 0 else if (padding) 4 else remainder + 1)
+
+    var i = offset
+    var o = 0
+    repeat(groups) {
+      val bits = ((bytes[i].toInt() and 0xFF) shl 16) or ((bytes[i + 1].toInt() and 0xFF) shl 8) or (bytes[i + 2].toInt() and 0xFF)
+      output[o] = alphabet[bits ushr 18]
+      output[o + 1] = alphabet[(bits ushr 12) and 0x3F]
+      output[o + 2] = alphabet[(bits ushr 6) and 0x3F]
+      output[o + 3] = alphabet[bits and 0x3F]
+      i += 3
+      o += 4
+    }
+
+    if (remainder == 1) {
+      val bits = (bytes[i].toInt() and 0xFF) shl 16
+      output[o] = alphabet[bits ushr 18]
+      output[o + 1] = alphabet[(bits ushr 12) and 0x3F]
+      if (padding) {
+        output[o + 2] = PADDING
+        output[o + 3] = PADDING
+      }
+    } else if (remainder == 2) {
+      val bits = ((bytes[i].toInt() and 0xFF) shl 16) or ((bytes[i + 1].toInt() and 0xFF) shl 8)
+      output[o] = alphabet[bits ushr 18]
+      output[o + 1] = alphabet[(bits ushr 12) and 0x3F]
+      output[o + 2] = alphabet[(bits ushr 6) and 0x3F]
+      if (padding) {
+        output[o + 3] = PADDING
+      }
+    }
+
+    // Every byte is ASCII, and Latin-1 is the cheapest charset to build a string from
+    return String(output, Charsets.ISO_8859_1)
+  }
+
+  /**
+   * Decodes [length] characters read through [charAt] and hands each output byte to [put], along with its index. Decoding
+   * stops at the first padding character, so anything after it is ignored.
+   *
+   * @return The number of bytes decoded.
+   */
+  private inline fun decode(length: Int, charAt: (Int) -> Int, put: (Int, Byte) -> Unit): Int {
+    var bits = 0
+    var sextets = 0
+    var written = 0
+
+    for (i in 0 until length) {
+      val c = charAt(i)
+      val value = if (c < 128) DECODE_TABLE[c] else INVALID
+
+      if (value >= 0) {
+        bits = (bits shl 6) or value
+        sextets++
+
+        if (sextets == 4) {
+          put(written, (bits shr 16).toByte())
+          put(written + 1, (bits shr 8).toByte())
+          put(written + 2, bits.toByte())
+          written += 3
+          bits = 0
+          sextets = 0
+        }
+      } else if (value == END) {
+        break
+      } else if (value == INVALID) {
+        throw IOException("Bad Base64 input character '${c.toChar()}' at position $i")
+      }
+    }
+
+    when (sextets) {
+      1 -> throw IOException("Base64 input ends with a partial byte")
+      2 -> {
+        put(written, (bits shr 4).toByte())
+        written += 1
+      }
+      3 -> {
+        put(written, (bits shr 10).toByte())
+        put(written + 1, (bits shr 2).toByte())
+        written += 2
+      }
+    }
+
+    return written
+  }
+
+  private fun decodedLength(significantChars: Int): Int {
+    return (significantChars / 4) * 3 + (significantChars % 4) * 3 / 4
+  }
+
+  private fun isGzip(decoded: ByteArray): Boolean {
+    return decoded.size >= 4 && ((decoded[0].toInt() and 0xFF) or ((decoded[1].toInt() and 0xFF) shl 8)) == GZIPInputStream.GZIP_MAGIC
+  }
+
+  private fun gunzipOrSelf(decoded: ByteArray): ByteArray {
+    return try {
+      GZIPInputStream(ByteArrayInputStream(decoded)).use { it.readBytes() }
+    } catch (e: IOException) {
+      decoded
     }
   }
 
-  private fun String.stripPadding(): String {
-    return this.replace("=", "")
+  private fun isTrailing(c: Int): Boolean {
+    return c < 128 && (DECODE_TABLE[c] == WHITESPACE || DECODE_TABLE[c] == END)
   }
 
   fun String.decodeBase64OrThrow(): ByteArray {
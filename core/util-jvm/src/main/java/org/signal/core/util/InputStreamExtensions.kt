@@ -139,6 +139,33 @@ fun InputStream.copyTo(outputStream: OutputStream, closeInputStream: Boolean = t
   return StreamUtil.copy(this, outputStream, closeInputStream, closeOutputStream)
 }
 
+/**
+ * Like [copyTo], but flushes the [outputStream] after every chunk and then reports the total number of bytes copied so far to [onProgress].
+ * Useful when something else reads the destination while it's still being written.
+ */
+fun InputStream.copyToWithProgress(outputStream: OutputStream, closeInputStream: Boolean = true, closeOutputStream: Boolean = true, onProgress: (Long) -> Unit): Long {
+  val buffer = ByteArray(64 * 1024)
+  var total = 0L
+  var read: Int
+
+  while (this.read(buffer).also { read = it } != -1) {
+    outputStream.write(buffer, 0, read)
+    outputStream.flush()
+    total += read
+    onProgress(total)
+  }
+
+  if (closeInputStream) {
+    this.close()
+  }
+
+  if (closeOutputStream) {
+    outputStream.close()
+  }
+
+  return total
+}
+
 /**
  * Skips exactly [n] bytes from this stream. Unlike [InputStream.skip], this method
  * guarantees all bytes are skipped by looping and falling back to [read] if needed.
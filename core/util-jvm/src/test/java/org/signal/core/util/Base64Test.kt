@@ -6,7 +6,10 @@
 package org.signal.core.util
 
 import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
 import org.junit.Test
+import java.io.IOException
+import java.nio.ByteBuffer
 import kotlin.random.Random
 
 class Base64Test {
@@ -33,4 +36,104 @@ class Base64Test {
 
     println(stopwatch.stopAndGetLogString())
   }
+
+  @Test
+  fun `encode - matches the legacy encoder for every alphabet and padding`() {
+    for (len in 0 until 256) {
+      val bytes = Random.nextBytes(len)
+
+      assertEquals(Base64Tools.encodeBytes(bytes), Base64.encodeWithPadding(bytes))
+      assertEquals(Base64Tools.encodeBytes(bytes).replace("=", ""), Base64.encodeWithoutPadding(bytes))
+      assertEquals(Base64Tools.encodeBytes(bytes, Base64Tools.URL_SAFE), Base64.encodeUrlSafeWithPadding(bytes))
+      assertEquals(Base64Tools.encodeBytes(bytes, Base64Tools.URL_SAFE).replace("=", ""), Base64.encodeUrlSafeWithoutPadding(bytes))
+    }
+  }
+
+  @Test
+  fun `encode - respects offset and length`() {
+    val bytes = Random.nextBytes(64)
+
+    assertEquals(Base64Tools.encodeBytes(bytes, 5, 31), Base64.encodeWithPadding(bytes, 5, 31))
+  }
+
+  @Test
+  fun `decode - gunzips standard alphabet input like the legacy decoder`() {
+    val bytes = "hello hello hello hello".toByteArray()
+    val gzipped = Base64Tools.encodeBytes(bytes, Base64Tools.GZIP)
+
+    assertArrayEquals(bytes, Base64.decode(gzipped))
+    assertArrayEquals(bytes, Base64.decode(gzipped.toByteArray()))
+    assertArrayEquals(Base64Tools.decode(gzipped, Base64Tools.DONT_GUNZIP), Base64.decode(Base64Tools.encodeBytes(bytes, Base64Tools.GZIP or Base64Tools.URL_SAFE)))
+  }
+
+  @Test
+  fun `decode - leaves bytes that only look gzipped alone`() {
+    val bytes = byteArrayOf(0x1f, 0x8b.toByte(), 1, 2, 3, 4, 5)
+
+    assertArrayEquals(bytes, Base64.decode(Base64.encodeWithPadding(bytes)))
+  }
+
+  @Test
+  fun `decode - into a destination array at an offset`() {
+    val bytes = Random.nextBytes(100)
+    val encoded = Base64.encodeUrlSafeWithoutPadding(bytes)
+    val destination = ByteArray(110)
+
+    val written = Base64.decode(encoded, destination, 10)
+
+    assertEquals(100, written)
+    assertArrayEquals(bytes, destination.copyOfRange(10, 110))
+  }
+
+  @Test
+  fun `decode - into a byte buffer advances its position`() {
+    val bytes = Random.nextBytes(50)
+    val buffer = ByteBuffer.allocate(60).position(4)
+
+    val written = Base64.decode(Base64.encodeWithPadding(bytes), buffer)
+
+    assertEquals(50, written)
+    assertEquals(54, buffer.position())
+    assertArrayEquals(bytes, buffer.array().copyOfRange(4, 54))
+  }
+
+  @Test(expected = IllegalArgumentException::class)
+  fun `decode - into a destination that is too small`() {
+    Base64.decode(Base64.encodeWithPadding(ByteArray(10)), ByteArray(9))
+  }
+
+  @Test
+  fun `decode - skips whitespace`() {
+    val bytes = Random.nextBytes(90)
+    val encoded = Base64.encodeWithPadding(bytes).chunked(16).joinToString("\r\n") + "\n"
+
+    assertArrayEquals(bytes, Base64.decode(encoded))
+  }
+
+  @Test
+  fun `decode - ascii bytes`() {
+    val bytes = Random.nextBytes(33)
+
+    assertArrayEquals(bytes, Base64.decode(Base64.encodeUrlSafeWithPadding(bytes).toByteArray(Charsets.US_ASCII)))
+  }
+
+  @Test
+  fun `decode - empty string`() {
+    assertArrayEquals(ByteArray(0), Base64.decode(""))
+  }
+
+  @Test(expected = IOException::class)
+  fun `decode - bad character`() {
+    Base64.decode("AAAA*AAA")
+  }
+
+  @Test(expected = IOException::class)
+  fun `decode - non-ascii character`() {
+    Base64.decode("AAAA\u00e9AAA")
+  }
+
+  @Test(expected = IOException::class)
+  fun `decode - dangling character`() {
+    Base64.decode("AAAAA")
+  }
 }
@@ -200,6 +200,46 @@ object SqlUtil {
     return "*$pattern*"
   }
 
+  /**
+   * Folds case and accents the same way [buildCaseInsensitiveGlobPattern] matches them. If the pattern for a query matches some text, then the folded text
+   * contains the folded query, which lets in-memory searches narrow things down without ever missing something the GLOB would have found.
+   */
+  @JvmStatic
+  fun foldForSearch(text: String): String {
+    val folded = CharArray(text.length)
+
+    for (i in text.indices) {
+      val c = text[i]
+      folded[i] = SEARCH_FOLDING[c] ?: c.lowercaseChar().let { SEARCH_FOLDING[it] ?: it }
+    }
+
+    return String(folded)
+  }
+
+  /** Maps every accented character in [getAccentuatedCharRegex] to the letter whose pattern includes it. */
+  private val SEARCH_FOLDING: Map<Char, Char> by lazy {
+    val folding: MutableMap<Char, Char> = HashMap()
+    val letters = ('a'..'z') + listOf('α', 'ε', 'η', 'ι', 'ο', 'σ', 'ς', 'υ', 'ω')
+
+    for (letter in letters) {
+      val characters = getAccentuatedCharRegex(letter.toString())
+      var i = 0
+
+      while (i < characters.length) {
+        val isRange = i + 2 < characters.length && characters[i + 1] == '-'
+        val end = if (isRange) characters[i + 2] else characters[i]
+
+        for (c in characters[i]..end) {
+          folding.putIfAbsent(c, letter)
+        }
+
+        i += if (isRange) 3 else 1
+      }
+    }
+
+    folding
+  }
+
   private fun getAccentuatedCharRegex(query: String): String {
     return when (query) {
       "a" -> "À-Åà-åĀ-ąǍǎǞ-ǡǺ-ǻȀ-ȃȦȧȺɐ-ɒḀḁẚẠ-ặ"
@@ -6,12 +6,14 @@ import java.util.concurrent.ExecutorService
 import java.util.concurrent.ThreadPoolExecutor
 
 /**
- * A class that polls active threads at a set interval and logs when multiple threads are BLOCKED.
+ * A class that polls active threads at a set interval and logs when multiple threads are BLOCKED, when an executor's queue is
+ * backing up, or when a task on an [InstrumentedThreadPoolExecutor] has been running for more than a polling interval.
  */
 class DeadlockDetector(private val handler: Handler, private val pollingInterval: Long) {
 
   private var running = false
   private val previouslyBlocked: MutableSet<Long> = mutableSetOf()
+  private val reportedLongRunning: MutableSet<Pair<Long, Long>> = mutableSetOf()
   private val waitingStates: Set<Thread.State> = setOf(Thread.State.WAITING, Thread.State.TIMED_WAITING)
 
   @Volatile
@@ -81,6 +83,14 @@ class DeadlockDetector(private val handler: Handler, private val pollingInterval
       lastThreadDumpTime = time
     }
 
+    val longRunning: Set<Pair<Long, Long>> = checkLongRunningTasks(threads)
+    if (longRunning.any { !reportedLongRunning.contains(it) }) {
+      lastThreadDump = threads
+      lastThreadDumpTime = time
+    }
+    reportedLongRunning.retainAll(longRunning)
+    reportedLongRunning.addAll(longRunning)
+
     previouslyBlocked.clear()
     previouslyBlocked.addAll(blockedIds)
 
@@ -89,6 +99,37 @@ class DeadlockDetector(private val handler: Handler, private val pollingInterval
     }
   }
 
+  /**
+   * Logs the stack of every task that has newly gone past the polling interval. Each run of a task is only logged once, however
+   * long it ends up running.
+   *
+   * @return The (thread id, task start) of every task currently past the polling interval.
+   */
+  private fun checkLongRunningTasks(threads: Map<Thread, Array<StackTraceElement>>): Set<Pair<Long, Long>> {
+    val current: MutableSet<Pair<Long, Long>> = mutableSetOf()
+
+    for (executor in InstrumentedThreadPoolExecutor.getAll()) {
+      // Long-lived loops are expected to run there
+      if (executor === SignalExecutors.UNBOUNDED) {
+        continue
+      }
+
+      val tasks: Map<Thread, InstrumentedThreadPoolExecutor.RunningTask> = executor.getLongRunningTasks(pollingInterval)
+
+      for ((thread, task) in tasks) {
+        val key = Pair(thread.id, task.startNs)
+        current += key
+
+        if (!reportedLongRunning.contains(key)) {
+          val stack: Array<StackTraceElement> = threads[thread] ?: thread.stackTrace
+          Log.w(TAG, buildLogString("Found a long-running task on ${executor.name}! ${task.taskName} has been running for ${task.runningMs} ms.", mapOf(thread to stack)))
+        }
+      }
+    }
+
+    return current
+  }
+
   private data class ExecutorInfo(
     val executor: ExecutorService,
     val namePrefix: String
@@ -0,0 +1,381 @@
+package org.signal.core.util.concurrent;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ThreadPoolExecutor} that keeps track of how long tasks wait in the queue and how long they run, grouped by the class
+ * of the task, along with how often the pool was saturated. Every instance registers itself so that it can be reported on
+ * through {@link #getAll()}. The registry only holds weak references and drops a pool once it terminates, so short-lived pools
+ * don't pile up in it.
+ * <p>
+ * Tasks submitted through {@link #submit} are grouped by the class of the runnable or callable that was passed in, not the
+ * {@link FutureTask} wrapping it. For lambdas that's the synthetic class, which still names the enclosing class.
+ * <p>
+ * The queue holds exactly what was passed to {@link #execute}, so {@link #remove(Runnable)} and the list returned by
+ * {@link #shutdownNow()} work with the caller's own runnables.
+ */
+public class InstrumentedThreadPoolExecutor extends ThreadPoolExecutor {
+
+  private static final List<WeakReference<InstrumentedThreadPoolExecutor>> ALL = new CopyOnWriteArrayList<>();
+
+  /** One per worker thread, since a thread only ever runs one task at a time. */
+  private static final ThreadLocal<RunningState> RUNNING_STATE = new ThreadLocal<RunningState>() {
+    @Override
+    protected RunningState initialValue() {
+      return new RunningState();
+    }
+  };
+
+  private static final long SLOW_TASK_NS = TimeUnit.MILLISECONDS.toNanos(500);
+
+  private static volatile SlowTaskListener slowTaskListener;
+
+  private final String                                    name;
+  private final ConcurrentHashMap<Class<?>, TaskStats>      taskStats    = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Thread, RunningState>     runningTasks = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Runnable, Long>           enqueuedNs   = new ConcurrentHashMap<>();
+  private final AtomicInteger                             active       = new AtomicInteger();
+  private final AtomicLong                                executed     = new AtomicLong();
+  private final AtomicLong                                saturated    = new AtomicLong();
+  private final AtomicLong                                rejected     = new AtomicLong();
+  private final AtomicLong                                peakQueued   = new AtomicLong();
+
+  public InstrumentedThreadPoolExecutor(@NonNull String name,
+                                        int corePoolSize,
+                                        int maximumPoolSize,
+                                        long keepAliveTime,
+                                        @NonNull TimeUnit unit,
+                                        @NonNull BlockingQueue<Runnable> workQueue,
+                                        @NonNull ThreadFactory threadFactory)
+  {
+    super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory);
+    this.name = name;
+    ALL.add(new WeakReference<>(this));
+  }
+
+  /**
+   * @return Every instrumented executor that is still alive and hasn't terminated, in creation order.
+   */
+  public static @NonNull List<InstrumentedThreadPoolExecutor> getAll() {
+    List<InstrumentedThreadPoolExecutor> executors = new ArrayList<>(ALL.size());
+
+    for (WeakReference<InstrumentedThreadPoolExecutor> reference : ALL) {
+      InstrumentedThreadPoolExecutor executor = reference.get();
+      if (executor != null) {
+        executors.add(executor);
+      } else {
+        ALL.remove(reference);
+      }
+    }
+
+    return Collections.unmodifiableList(executors);
+  }
+
+  /**
+   * Called on the worker thread after every task whose queue wait and run time add up to at least half a second.
+   */
+  public static void setSlowTaskListener(@Nullable SlowTaskListener listener) {
+    slowTaskListener = listener;
+  }
+
+  public @NonNull String getName() {
+    return name;
+  }
+
+  @Override
+  public void execute(@NonNull Runnable command) {
+    // Not getActiveCount(), which takes the pool's main lock
+    if (active.get() >= getMaximumPoolSize()) {
+      saturated.incrementAndGet();
+    }
+
+    // Futures we created carry their own enqueue time
+    if (!(command instanceof ClassifiedFutureTask)) {
+      enqueuedNs.putIfAbsent(command, System.nanoTime());
+    }
+
+    // The rejection handler runs inside super.execute(). Some put the task back on the queue, in which case it keeps its enqueue time
+    // and isn't counted, since that's just how those pools grow. It's only rejected if the handler throws.
+    try {
+      super.execute(command);
+    } catch (RuntimeException e) {
+      rejected.incrementAndGet();
+      enqueuedNs.remove(command);
+      throw e;
+    }
+
+    TaskStats.updateMax(peakQueued, getQueue().size());
+  }
+
+  @Override
+  public boolean remove(Runnable task) {
+    boolean removed = super.remove(task);
+    if (removed) {
+      enqueuedNs.remove(task);
+    }
+    return removed;
+  }
+
+  @Override
+  public @NonNull List<Runnable> shutdownNow() {
+    List<Runnable> pending = super.shutdownNow();
+    enqueuedNs.clear();
+    return pending;
+  }
+
+  @Override
+  protected void terminated() {
+    super.terminated();
+
+    for (WeakReference<InstrumentedThreadPoolExecutor> reference : ALL) {
+      InstrumentedThreadPoolExecutor executor = reference.get();
+      if (executor == this || executor == null) {
+        ALL.remove(reference);
+      }
+    }
+  }
+
+  @Override
+  protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+    return new ClassifiedFutureTask<>(runnable, value, runnable.getClass());
+  }
+
+  @Override
+  protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+    return new ClassifiedFutureTask<>(callable, callable.getClass());
+  }
+
+  @Override
+  protected void beforeExecute(Thread thread, Runnable runnable) {
+    super.beforeExecute(thread, runnable);
+
+    RunningState state   = RUNNING_STATE.get();
+    long         startNs = System.nanoTime();
+
+    if (runnable instanceof ClassifiedFutureTask) {
+      ClassifiedFutureTask<?> future = (ClassifiedFutureTask<?>) runnable;
+      state.taskClass  = future.taskClass;
+      state.enqueuedNs = future.enqueuedNs;
+    } else {
+      Long enqueued = enqueuedNs.remove(runnable);
+      state.taskClass  = runnable.getClass();
+      state.enqueuedNs = enqueued != null ? enqueued : startNs;
+    }
+    state.startNs = startNs;
+
+    runningTasks.put(thread, state);
+    active.incrementAndGet();
+  }
+
+  @Override
+  protected void afterExecute(Runnable runnable, Throwable throwable) {
+    super.afterExecute(runnable, throwable);
+
+    RunningState task = runningTasks.remove(Thread.currentThread());
+    if (task == null) {
+      return;
+    }
+
+    long endNs  = System.nanoTime();
+    long waitNs = task.startNs - task.enqueuedNs;
+    long runNs  = endNs - task.startNs;
+
+    active.decrementAndGet();
+    executed.incrementAndGet();
+
+    TaskStats stats = taskStats.get(task.taskClass);
+    if (stats == null) {
+      stats = taskStats.computeIfAbsent(task.taskClass, TaskStats::new);
+    }
+    stats.record(waitNs, runNs);
+
+    SlowTaskListener listener = slowTaskListener;
+    if (listener != null && waitNs + runNs >= SLOW_TASK_NS) {
+      listener.onSlowTask(name, stats.getName(), waitNs, runNs);
+    }
+  }
+
+  public long getExecutedCount() {
+    return executed.get();
+  }
+
+  /**
+   * @return How many tasks were submitted while every thread the pool is allowed to have was busy.
+   */
+  public long getSaturatedCount() {
+    return saturated.get();
+  }
+
+  /**
+   * @return How many tasks the pool turned away, where the rejection handler threw rather than finding somewhere for the task to go.
+   */
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+  public long getPeakQueueSize() {
+    return peakQueued.get();
+  }
+
+  /**
+   * @return Stats for every class of task that has run, most total run time first.
+   */
+  public @NonNull List<TaskStats> getTaskStats() {
+    List<TaskStats> stats = new ArrayList<>(taskStats.values());
+    Collections.sort(stats, (a, b) -> Long.compare(b.getTotalRunNs(), a.getTotalRunNs()));
+    return stats;
+  }
+
+  /**
+   * @return The tasks that have been running for at least {@code thresholdMs}, keyed by the thread running them.
+   */
+  public @NonNull Map<Thread, RunningTask> getLongRunningTasks(long thresholdMs) {
+    long                     now    = System.nanoTime();
+    long                     limit  = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+    Map<Thread, RunningTask> result = new LinkedHashMap<>();
+
+    for (Map.Entry<Thread, RunningState> entry : runningTasks.entrySet()) {
+      Class<?> taskClass = entry.getValue().taskClass;
+      long     startNs   = entry.getValue().startNs;
+      long     runningNs = now - startNs;
+
+      if (runningNs >= limit) {
+        result.put(entry.getKey(), new RunningTask(TaskStats.nameOf(taskClass), startNs, TimeUnit.NANOSECONDS.toMillis(runningNs)));
+      }
+    }
+
+    return result;
+  }
+
+  public interface SlowTaskListener {
+    void onSlowTask(@NonNull String executorName, @NonNull String taskName, long queueWaitNs, long runNs);
+  }
+
+  public static final class RunningTask {
+    private final String taskName;
+    private final long   startNs;
+    private final long   runningMs;
+
+    RunningTask(@NonNull String taskName, long startNs, long runningMs) {
+      this.taskName  = taskName;
+      this.startNs   = startNs;
+      this.runningMs = runningMs;
+    }
+
+    public @NonNull String getTaskName() {
+      return taskName;
+    }
+
+    /**
+     * Together with the thread, identifies a single run of a task.
+     */
+    public long getStartNs() {
+      return startNs;
+    }
+
+    public long getRunningMs() {
+      return runningMs;
+    }
+  }
+
+  public static final class TaskStats {
+    private final String     name;
+    private final AtomicLong count       = new AtomicLong();
+    private final AtomicLong totalWaitNs = new AtomicLong();
+    private final AtomicLong maxWaitNs   = new AtomicLong();
+    private final AtomicLong totalRunNs  = new AtomicLong();
+    private final AtomicLong maxRunNs    = new AtomicLong();
+
+    TaskStats(@NonNull Class<?> taskClass) {
+      this.name = nameOf(taskClass);
+    }
+
+    void record(long waitNs, long runNs) {
+      count.incrementAndGet();
+      totalWaitNs.addAndGet(waitNs);
+      totalRunNs.addAndGet(runNs);
+      updateMax(maxWaitNs, waitNs);
+      updateMax(maxRunNs, runNs);
+    }
+
+    public @NonNull String getName() {
+      return name;
+    }
+
+    public long getCount() {
+      return count.get();
+    }
+
+    public long getTotalWaitNs() {
+      return totalWaitNs.get();
+    }
+
+    public long getMaxWaitNs() {
+      return maxWaitNs.get();
+    }
+
+    public long getTotalRunNs() {
+      return totalRunNs.get();
+    }
+
+    public long getMaxRunNs() {
+      return maxRunNs.get();
+    }
+
+    static void updateMax(@NonNull AtomicLong max, long value) {
+      long current = max.get();
+      while (value > current && !max.compareAndSet(current, value)) {
+        current = max.get();
+      }
+    }
+
+    static @NonNull String nameOf(@NonNull Class<?> taskClass) {
+      String name = taskClass.getName();
+      int    dot  = name.lastIndexOf('.');
+      return dot >= 0 ? name.substring(dot + 1) : name;
+    }
+  }
+
+  /**
+   * What the worker thread that owns this is running. Reused for every task the thread runs.
+   */
+  private static final class RunningState {
+    private volatile Class<?> taskClass;
+    private volatile long     enqueuedNs;
+    private volatile long     startNs;
+  }
+
+  private static final class ClassifiedFutureTask<T> extends FutureTask<T> {
+    private final Class<?> taskClass;
+    private final long     enqueuedNs = System.nanoTime();
+
+    ClassifiedFutureTask(@NonNull Callable<T> callable, @NonNull Class<?> taskClass) {
+      super(callable);
+      this.taskClass = taskClass;
+    }
+
+    ClassifiedFutureTask(@NonNull Runnable runnable, T result, @NonNull Class<?> taskClass) {
+      super(runnable, result);
+      this.taskClass = taskClass;
+    }
+  }
+}
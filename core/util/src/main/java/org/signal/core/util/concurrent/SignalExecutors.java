@@ -7,9 +7,11 @@ import androidx.annotation.NonNull;
 
 import org.signal.core.util.ThreadUtil;
 
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -17,15 +19,23 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 public final class SignalExecutors {
 
-  public static final ExecutorService UNBOUNDED  = Executors.newCachedThreadPool(new NumberedThreadFactory("signal-unbounded", ThreadUtil.PRIORITY_BACKGROUND_THREAD));
-  public static final ExecutorService BOUNDED    = Executors.newFixedThreadPool(4, new NumberedThreadFactory("signal-bounded", ThreadUtil.PRIORITY_BACKGROUND_THREAD));
-  public static final ExecutorService SERIAL     = Executors.newSingleThreadExecutor(new NumberedThreadFactory("signal-serial", ThreadUtil.PRIORITY_BACKGROUND_THREAD));
+  public static final ExecutorService UNBOUNDED  = newInstrumentedExecutor("signal-unbounded", 0, Integer.MAX_VALUE, 60, new SynchronousQueue<>());
+  public static final ExecutorService BOUNDED    = newInstrumentedExecutor("signal-bounded", 4, 4, 0, new LinkedBlockingQueue<>());
+  public static final ExecutorService SERIAL     = newInstrumentedExecutor("signal-serial", 1, 1, 0, new LinkedBlockingQueue<>());
   public static final ExecutorService BOUNDED_IO = newCachedBoundedExecutor("signal-io-bounded", ThreadUtil.PRIORITY_IMPORTANT_BACKGROUND_THREAD, 1, 32, 30);
 
   private SignalExecutors() {}
 
+  /**
+   * The same pools {@link Executors} would build, but instrumented. These are shared by too much of the app to be reconfigured,
+   * so callers should treat them as plain {@link ExecutorService}s.
+   */
+  private static ExecutorService newInstrumentedExecutor(final String name, int minThreads, int maxThreads, int timeoutSeconds, BlockingQueue<Runnable> queue) {
+    return new InstrumentedThreadPoolExecutor(name, minThreads, maxThreads, timeoutSeconds, TimeUnit.SECONDS, queue, new NumberedThreadFactory(name, ThreadUtil.PRIORITY_BACKGROUND_THREAD));
+  }
+
   public static ExecutorService newCachedSingleThreadExecutor(final String name, int priority) {
-    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 15, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> new Thread(r, name) {
+    ThreadPoolExecutor executor = new InstrumentedThreadPoolExecutor(name, 1, 1, 15, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> new Thread(r, name) {
       @Override public void run() {
         Process.setThreadPriority(priority);
         super.run();
@@ -47,20 +57,21 @@ public final class SignalExecutors {
    * created. Then, if a task gets rejected, we simply add it to the queue.
    */
   public static ExecutorService newCachedBoundedExecutor(final String name, int priority, int minThreads, int maxThreads, int timeoutSeconds) {
-    ThreadPoolExecutor threadPool = new ThreadPoolExecutor(minThreads,
-                                                           maxThreads,
-                                                           timeoutSeconds,
-                                                           TimeUnit.SECONDS,
-                                                           new LinkedBlockingQueue<>() {
-                                                             @Override
-                                                             public boolean offer(Runnable runnable) {
-                                                               if (isEmpty()) {
-                                                                 return super.offer(runnable);
-                                                               } else {
-                                                                 return false;
-                                                               }
-                                                             }
-                                                           }, new NumberedThreadFactory(name, priority));
+    ThreadPoolExecutor threadPool = new InstrumentedThreadPoolExecutor(name,
+                                                                       minThreads,
+                                                                       maxThreads,
+                                                                       timeoutSeconds,
+                                                                       TimeUnit.SECONDS,
+                                                                       new LinkedBlockingQueue<>() {
+                                                                         @Override
+                                                                         public boolean offer(Runnable runnable) {
+                                                                           if (isEmpty()) {
+                                                                             return super.offer(runnable);
+                                                                           } else {
+                                                                             return false;
+                                                                           }
+                                                                         }
+                                                                       }, new NumberedThreadFactory(name, priority));
 
     threadPool.setRejectedExecutionHandler((runnable, executor) -> {
       try {
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.crypto;
+
+import androidx.annotation.NonNull;
+
+import org.signal.core.util.Conversions;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Random access to a file written by {@link ModernEncryptingPartOutputStream}.
+ *
+ * The file is AES-CTR encrypted with a counter per 16 byte block, so any position can be decrypted on its own. Reads are
+ * positional and decrypted straight into the caller's buffer, which means one instance can be shared by any number of threads
+ * and streams, and plaintext is never written anywhere. Only the file access itself is serialized, decryption happens in parallel.
+ *
+ * The file may still be growing while it's read. Reads return whatever has been written so far. This deliberately reads through
+ * a {@link RandomAccessFile} rather than a {@link java.nio.channels.FileChannel}, since interrupting a thread that's reading a
+ * channel closes it for every other reader too.
+ */
+public final class EncryptedPartFile implements Closeable {
+
+  private static final int HEADER_LENGTH = 32;
+  private static final int BLOCK_SIZE    = 16;
+
+  private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<>();
+
+  private final RandomAccessFile file;
+  private final SecretKeySpec    key;
+  private final long             dataOffset;
+  private final AtomicInteger    references = new AtomicInteger(1);
+
+  private EncryptedPartFile(@NonNull RandomAccessFile file, @NonNull SecretKeySpec key, long dataOffset) {
+    this.file       = file;
+    this.key        = key;
+    this.dataOffset = dataOffset;
+  }
+
+  /**
+   * Opens a file whose random was stored separately, i.e. written with {@code inline = false}.
+   */
+  public static @NonNull EncryptedPartFile open(@NonNull AttachmentSecret attachmentSecret, @NonNull byte[] random, @NonNull File file) throws IOException {
+    return new EncryptedPartFile(new RandomAccessFile(file, "r"), deriveKey(attachmentSecret, random), 0);
+  }
+
+  /**
+   * Opens a file that starts with its random, i.e. written with {@code inline = true}.
+   */
+  public static @NonNull EncryptedPartFile open(@NonNull AttachmentSecret attachmentSecret, @NonNull File file) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    byte[]           random           = new byte[HEADER_LENGTH];
+
+    try {
+      randomAccessFile.readFully(random);
+    } catch (IOException e) {
+      randomAccessFile.close();
+      throw new IOException(ModernDecryptingPartInputStream.PREMATURE_END_ERROR_MESSAGE, e);
+    }
+
+    return new EncryptedPartFile(randomAccessFile, deriveKey(attachmentSecret, random), HEADER_LENGTH);
+  }
+
+  /**
+   * @return The plaintext length of what has been written so far.
+   */
+  public long size() throws IOException {
+    return Math.max(0, file.length() - dataOffset);
+  }
+
+  /**
+   * Reads and decrypts up to {@code dst.remaining()} bytes starting at plaintext {@code position}. Safe to call from any
+   * number of threads at once.
+   *
+   * @return The number of bytes read, or -1 if {@code position} is at or past the end of the file.
+   */
+  public int read(@NonNull ByteBuffer dst, long position) throws IOException {
+    if (position < 0) {
+      throw new IllegalArgumentException("Negative position: " + position);
+    }
+
+    if (!dst.hasRemaining()) {
+      return 0;
+    }
+
+    int start  = dst.position();
+    int length = dst.hasArray() ? readFully(dst.array(), dst.arrayOffset() + start, dst.remaining(), position)
+                                : readFullyDirect(dst, position);
+
+    if (length == 0) {
+      return -1;
+    }
+
+    dst.position(start + length);
+
+    ByteBuffer ciphertext = dst.duplicate();
+    ciphertext.position(start);
+    ciphertext.limit(start + length);
+
+    decrypt(ciphertext, position);
+
+    return length;
+  }
+
+  /**
+   * Reads as much ciphertext as is there, up to {@code length} bytes, for plaintext {@code position}.
+   */
+  private int readFully(@NonNull byte[] buffer, int offset, int length, long position) throws IOException {
+    int total = 0;
+
+    synchronized (file) {
+      file.seek(dataOffset + position);
+
+      while (total < length) {
+        int read = file.read(buffer, offset + total, length - total);
+        if (read == -1) {
+          break;
+        }
+        total += read;
+      }
+    }
+
+    return total;
+  }
+
+  private int readFullyDirect(@NonNull ByteBuffer dst, long position) throws IOException {
+    byte[] buffer = new byte[dst.remaining()];
+    int    length = readFully(buffer, 0, buffer.length, position);
+
+    dst.duplicate().put(buffer, 0, length);
+    return length;
+  }
+
+  /**
+   * @return A stream of the plaintext starting at {@code position}. The stream holds this file open until both it and this
+   *         file have been closed.
+   */
+  public @NonNull InputStream newInputStream(long position) {
+    references.incrementAndGet();
+    return new PartInputStream(position);
+  }
+
+  @Override
+  public void close() throws IOException {
+    release();
+  }
+
+  private void release() throws IOException {
+    if (references.decrementAndGet() == 0) {
+      file.close();
+    }
+  }
+
+  /**
+   * Decrypts {@code buffer} in place, where its first byte is the plaintext at {@code position}.
+   */
+  private void decrypt(@NonNull ByteBuffer buffer, long position) throws IOException {
+    Cipher cipher = getCipher();
+    byte[] iv     = new byte[16];
+    int    skip   = (int) (position % BLOCK_SIZE);
+
+    Conversions.longTo4ByteArray(iv, 12, position / BLOCK_SIZE);
+
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+
+      if (skip > 0) {
+        cipher.update(new byte[skip]);
+      }
+
+      int expected = buffer.remaining();
+      int length   = cipher.update(buffer, buffer.duplicate());
+
+      if (length != expected) {
+        throw new IOException("Stream cipher assumption has been violated!");
+      }
+    } catch (InvalidKeyException | InvalidAlgorithmParameterException | ShortBufferException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static @NonNull Cipher getCipher() {
+    Cipher cipher = CIPHER.get();
+
+    if (cipher == null) {
+      try {
+        cipher = Cipher.getInstance("AES/CTR/NoPadding");
+      } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+        throw new AssertionError(e);
+      }
+      CIPHER.set(cipher);
+    }
+
+    return cipher;
+  }
+
+  private static @NonNull SecretKeySpec deriveKey(@NonNull AttachmentSecret attachmentSecret, @NonNull byte[] random) {
+    try {
+      Mac mac = Mac.getInstance("HmacSHA256");
+      mac.init(new SecretKeySpec(attachmentSecret.getModernKey(), "HmacSHA256"));
+
+      return new SecretKeySpec(mac.doFinal(random), "AES");
+    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Reads through a small buffer, so that single byte reads don't each cost a file read and a cipher initialization. Reads at
+   * least as big as the buffer skip it.
+   */
+  private final class PartInputStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    /** The position in the file right after whatever is in {@link #buffer}. */
+    private long    position;
+    private byte[]  buffer;
+    private int     bufferPosition;
+    private int     bufferLength;
+    private boolean closed;
+
+    private PartInputStream(long position) {
+      this.position = position;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (bufferPosition == bufferLength && fillBuffer() == -1) {
+        return -1;
+      }
+
+      return buffer[bufferPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+
+      if (len == 0) {
+        return 0;
+      }
+
+      if (bufferPosition == bufferLength) {
+        if (len >= BUFFER_SIZE) {
+          int read = EncryptedPartFile.this.read(ByteBuffer.wrap(b, off, len), position);
+          if (read > 0) {
+            position += read;
+          }
+          return read;
+        }
+
+        if (fillBuffer() == -1) {
+          return -1;
+        }
+      }
+
+      int count = Math.min(len, bufferLength - bufferPosition);
+      System.arraycopy(buffer, bufferPosition, b, off, count);
+      bufferPosition += count;
+
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      if (n <= 0) {
+        return 0;
+      }
+
+      int  buffered = bufferLength - bufferPosition;
+      long skipped;
+
+      if (n <= buffered) {
+        bufferPosition += (int) n;
+        return n;
+      }
+
+      skipped        = buffered + Math.min(n - buffered, Math.max(0, size() - position));
+      position      += skipped - buffered;
+      bufferPosition = bufferLength;
+
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      long buffered = bufferLength - bufferPosition;
+      return (int) Math.min(Integer.MAX_VALUE, buffered + Math.max(0, size() - position));
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        release();
+      }
+    }
+
+    /**
+     * @return The number of bytes now in the buffer, or -1 at the end of the file.
+     */
+    private int fillBuffer() throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+
+      if (buffer == null) {
+        buffer = new byte[BUFFER_SIZE];
+      }
+
+      int read = EncryptedPartFile.this.read(ByteBuffer.wrap(buffer), position);
+
+      bufferPosition = 0;
+      bufferLength   = Math.max(read, 0);
+
+      if (read > 0) {
+        position += read;
+      }
+
+      return read;
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package org.signal.core.util.concurrent
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+class InstrumentedThreadPoolExecutorTest {
+
+  private val executor = InstrumentedThreadPoolExecutor("test", 1, 1, 0, TimeUnit.SECONDS, LinkedBlockingQueue(), ::Thread)
+
+  @After
+  fun tearDown() {
+    executor.shutdownNow()
+  }
+
+  @Test
+  fun givenSubmittedTasks_whenTheyFinish_thenIExpectStatsByTaskClass() {
+    executor.submit(FirstTask()).get()
+    executor.submit(FirstTask()).get()
+    executor.submit(SecondTask(), Unit).get()
+    executor.awaitIdle()
+
+    val stats = executor.taskStats.associateBy { it.name }
+
+    assertEquals(3, executor.executedCount)
+    assertEquals(2L, stats["InstrumentedThreadPoolExecutorTest\$FirstTask"]?.count)
+    assertEquals(1L, stats["InstrumentedThreadPoolExecutorTest\$SecondTask"]?.count)
+  }
+
+  @Test
+  fun givenABusyPool_whenIExecute_thenIExpectSaturationAndQueueWait() {
+    val release = CountDownLatch(1)
+    val started = CountDownLatch(1)
+
+    executor.execute {
+      started.countDown()
+      release.await()
+    }
+    started.await()
+
+    executor.execute(SecondTask())
+    executor.execute(SecondTask())
+    Thread.sleep(20)
+    release.countDown()
+    executor.awaitIdle()
+
+    val stats = executor.taskStats.first { it.name.endsWith("SecondTask") }
+
+    assertEquals(2, executor.saturatedCount)
+    assertEquals(2, executor.peakQueueSize)
+    assertTrue(stats.maxWaitNs >= TimeUnit.MILLISECONDS.toNanos(20))
+  }
+
+  @Test
+  fun givenARunningTask_whenIGetLongRunningTasks_thenIExpectItOnceItPassesTheThreshold() {
+    val release = CountDownLatch(1)
+    val started = CountDownLatch(1)
+
+    executor.execute(
+      BlockingTask {
+        started.countDown()
+        release.await()
+      }
+    )
+    started.await()
+
+    assertEquals(0, executor.getLongRunningTasks(10_000).size)
+
+    Thread.sleep(20)
+    val running = executor.getLongRunningTasks(10).values.single()
+
+    assertEquals("InstrumentedThreadPoolExecutorTest\$BlockingTask", running.taskName)
+    assertTrue(running.runningMs >= 10)
+
+    release.countDown()
+  }
+
+  @Test
+  fun givenAQueuedTask_whenIRemoveItOrShutDown_thenIExpectMyOwnRunnable() {
+    val release = CountDownLatch(1)
+    val started = CountDownLatch(1)
+    val removed = SecondTask()
+    val pending = FirstTask()
+
+    executor.execute(
+      BlockingTask {
+        started.countDown()
+        try {
+          release.await()
+        } catch (e: InterruptedException) {
+          // Expected from shutdownNow()
+        }
+      }
+    )
+    started.await()
+    executor.execute(removed)
+    executor.execute(pending)
+
+    assertTrue(executor.remove(removed))
+    assertSame(pending, executor.shutdownNow().single())
+  }
+
+  @Test
+  fun givenAnExecutor_whenItTerminates_thenIExpectItToLeaveTheRegistry() {
+    val shortLived = InstrumentedThreadPoolExecutor("short-lived", 1, 1, 0, TimeUnit.SECONDS, LinkedBlockingQueue(), ::Thread)
+    assertTrue(InstrumentedThreadPoolExecutor.getAll().contains(shortLived))
+
+    shortLived.shutdown()
+    assertTrue(shortLived.awaitTermination(5, TimeUnit.SECONDS))
+
+    assertFalse(InstrumentedThreadPoolExecutor.getAll().contains(shortLived))
+  }
+
+  /** Futures complete before [InstrumentedThreadPoolExecutor.afterExecute] runs, the completed count only after. */
+  private fun InstrumentedThreadPoolExecutor.awaitIdle() {
+    while (completedTaskCount < taskCount) {
+      Thread.sleep(1)
+    }
+  }
+
+  private class FirstTask : Runnable {
+    override fun run() = Unit
+  }
+
+  private class SecondTask : Runnable {
+    override fun run() = Unit
+  }
+
+  private class BlockingTask(private val block: () -> Unit) : Runnable {
+    override fun run() = block()
+  }
+}
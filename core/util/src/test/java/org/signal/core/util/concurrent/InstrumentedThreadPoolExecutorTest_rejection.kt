@@ -0,0 +1,103 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.core.util.concurrent
+
+import android.app.Application
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.signal.core.util.ThreadUtil
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = Application::class)
+class InstrumentedThreadPoolExecutorTest_rejection {
+
+  @Test
+  fun givenACachedBoundedExecutor_whenATaskIsRequeuedByTheHandler_thenIExpectNoRejectionAndItsFullQueueWait() {
+    val executor = SignalExecutors.newCachedBoundedExecutor("test-cached-bounded", ThreadUtil.PRIORITY_BACKGROUND_THREAD, 1, 1, 30) as InstrumentedThreadPoolExecutor
+    val release = CountDownLatch(1)
+    val started = CountDownLatch(1)
+    val finished = CountDownLatch(2)
+
+    try {
+      executor.execute {
+        started.countDown()
+        release.await()
+      }
+      started.await()
+
+      // The first waits in the queue. The queue refuses the second while it's non-empty, and the handler puts it back.
+      executor.execute(QueuedTask(finished))
+      executor.execute(RequeuedTask(finished))
+
+      Thread.sleep(20)
+      release.countDown()
+      assertTrue(finished.await(5, TimeUnit.SECONDS))
+      executor.awaitIdle()
+
+      val stats = executor.taskStats.first { it.name.endsWith("RequeuedTask") }
+
+      assertEquals(0, executor.rejectedCount)
+      assertEquals(1, stats.count)
+      assertTrue(stats.maxWaitNs >= TimeUnit.MILLISECONDS.toNanos(20))
+    } finally {
+      executor.shutdownNow()
+    }
+  }
+
+  @Test
+  fun givenAFullQueue_whenTheHandlerThrows_thenIExpectARejection() {
+    val executor = InstrumentedThreadPoolExecutor("test-full", 1, 1, 0, TimeUnit.SECONDS, ArrayBlockingQueue(1), ::Thread)
+    executor.setRejectedExecutionHandler(ThreadPoolExecutor.AbortPolicy())
+    val release = CountDownLatch(1)
+    val started = CountDownLatch(1)
+
+    try {
+      executor.execute {
+        started.countDown()
+        release.await()
+      }
+      started.await()
+      executor.execute {}
+
+      try {
+        executor.execute {}
+        fail("Expected the task to be rejected")
+      } catch (e: RejectedExecutionException) {
+        // expected
+      }
+
+      assertEquals(1, executor.rejectedCount)
+    } finally {
+      release.countDown()
+      executor.shutdownNow()
+    }
+  }
+
+  /** Futures complete before [InstrumentedThreadPoolExecutor.afterExecute] runs, the completed count only after. */
+  private fun InstrumentedThreadPoolExecutor.awaitIdle() {
+    while (completedTaskCount < taskCount) {
+      Thread.sleep(1)
+    }
+  }
+
+  private class QueuedTask(private val finished: CountDownLatch) : Runnable {
+    override fun run() = finished.countDown()
+  }
+
+  private class RequeuedTask(private val finished: CountDownLatch) : Runnable {
+    override fun run() = finished.countDown()
+  }
+}
@@ -0,0 +1,144 @@
+package org.signal.core.util.crypto
+
+import assertk.assertThat
+import assertk.assertions.isEqualTo
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.nio.ByteBuffer
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+class EncryptedPartFileTest {
+
+  private val attachmentSecret = AttachmentSecret(ByteArray(32), ByteArray(32), Random(1).nextBytes(32))
+  private val plaintext = Random(2).nextBytes(100_003)
+
+  private lateinit var file: File
+
+  @Before
+  fun setUp() {
+    file = File.createTempFile("part", ".mms")
+  }
+
+  @After
+  fun tearDown() {
+    file.delete()
+  }
+
+  @Test
+  fun givenAFileWithASeparateRandom_whenIReadAtPositions_thenIExpectThePlaintext() {
+    val random = write(inline = false)
+
+    EncryptedPartFile.open(attachmentSecret, random, file).use { partFile ->
+      assertThat(partFile.size()).isEqualTo(plaintext.size.toLong())
+
+      for (position in listOf(0, 1, 15, 16, 17, 4095, 50_000, 99_999)) {
+        assertThat(readAt(partFile, position.toLong(), 1000).toList()).isEqualTo(plaintext.copyOfRange(position, minOf(position + 1000, plaintext.size)).toList())
+      }
+    }
+  }
+
+  @Test
+  fun givenAFileWithAnInlineRandom_whenIReadAtPositions_thenIExpectThePlaintext() {
+    write(inline = true)
+
+    EncryptedPartFile.open(attachmentSecret, file).use { partFile ->
+      assertThat(partFile.size()).isEqualTo(plaintext.size.toLong())
+      assertThat(readAt(partFile, 33, 100).toList()).isEqualTo(plaintext.copyOfRange(33, 133).toList())
+    }
+  }
+
+  @Test
+  fun givenAPositionAtTheEnd_whenIRead_thenIExpectEndOfFile() {
+    val random = write(inline = false)
+
+    EncryptedPartFile.open(attachmentSecret, random, file).use { partFile ->
+      assertThat(partFile.read(ByteBuffer.allocate(10), plaintext.size.toLong())).isEqualTo(-1)
+    }
+  }
+
+  @Test
+  fun givenManyThreads_whenIReadTheSameFile_thenIExpectEachToGetThePlaintext() {
+    val random = write(inline = false)
+    val executor = Executors.newFixedThreadPool(4)
+
+    EncryptedPartFile.open(attachmentSecret, random, file).use { partFile ->
+      val reads = (0 until 200).map { i ->
+        val position = Random(i).nextInt(plaintext.size)
+        executor.submit<Boolean> { readAt(partFile, position.toLong(), 777).contentEquals(plaintext.copyOfRange(position, minOf(position + 777, plaintext.size))) }
+      }
+
+      assertThat(reads.all { it.get(5, TimeUnit.SECONDS) }).isEqualTo(true)
+    }
+
+    executor.shutdown()
+  }
+
+  @Test
+  fun givenAStreamAtAnOffset_whenISkipAndRead_thenIExpectThePlaintext() {
+    val random = write(inline = false)
+
+    ModernDecryptingPartInputStream.createFor(attachmentSecret, random, file, 10).use { inputStream ->
+      assertThat(inputStream.read()).isEqualTo(plaintext[10].toInt() and 0xFF)
+      assertThat(inputStream.skip(1000)).isEqualTo(1000L)
+      assertThat(inputStream.readBytes().toList()).isEqualTo(plaintext.copyOfRange(1011, plaintext.size).toList())
+    }
+  }
+
+  @Test
+  fun givenTheFileIsClosed_whenAStreamIsStillOpen_thenIExpectTheStreamToKeepWorking() {
+    val random = write(inline = false)
+    val partFile = EncryptedPartFile.open(attachmentSecret, random, file)
+    val inputStream = partFile.newInputStream(0)
+
+    partFile.close()
+
+    assertThat(inputStream.readBytes().toList()).isEqualTo(plaintext.toList())
+    inputStream.close()
+  }
+
+  @Test
+  fun givenAStream_whenIReadOneByteAtATime_thenIExpectThePlaintext() {
+    val random = write(inline = false)
+
+    EncryptedPartFile.open(attachmentSecret, random, file).use { partFile ->
+      partFile.newInputStream(7).use { inputStream ->
+        val bytes = generateSequence { inputStream.read().takeIf { it != -1 } }.map { it.toByte() }.toList()
+        assertThat(bytes).isEqualTo(plaintext.copyOfRange(7, plaintext.size).toList())
+      }
+    }
+  }
+
+  @Test
+  fun givenAReaderThatWasInterrupted_whenIReadAgain_thenIExpectThePlaintext() {
+    val random = write(inline = false)
+
+    EncryptedPartFile.open(attachmentSecret, random, file).use { partFile ->
+      val interrupted = Thread {
+        Thread.currentThread().interrupt()
+        readAt(partFile, 0, 5000)
+      }
+      interrupted.start()
+      interrupted.join()
+
+      assertThat(readAt(partFile, 100, 1000).toList()).isEqualTo(plaintext.copyOfRange(100, 1100).toList())
+    }
+  }
+
+  private fun write(inline: Boolean): ByteArray {
+    val (random, outputStream) = ModernEncryptingPartOutputStream.createFor(attachmentSecret, file, inline)
+    outputStream.use { it.write(plaintext) }
+    return random
+  }
+
+  private fun readAt(partFile: EncryptedPartFile, position: Long, length: Int): ByteArray {
+    val buffer = ByteBuffer.allocate(length)
+    while (buffer.hasRemaining() && partFile.read(buffer, position + buffer.position()) != -1) {
+      // keep reading
+    }
+    return buffer.array().copyOf(buffer.position())
+  }
+}
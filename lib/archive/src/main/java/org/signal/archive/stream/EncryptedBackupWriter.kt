@@ -28,13 +28,17 @@ import javax.crypto.spec.SecretKeySpec
  * As it's being written, it will be both encrypted and compressed. Specifically, the backup frames
  * are gzipped, that gzipped data is encrypted, and then an HMAC of the encrypted data is appended
  * to the end of the [outputStream].
+ *
+ * Compression is by far the most expensive part of that, so it can be spread over several threads with `compressionThreads`. The result reads back
+ * the same either way.
  */
 class EncryptedBackupWriter private constructor(
   keyMaterial: MessageBackupKey.BackupKeyMaterial,
   forwardSecrecyToken: BackupForwardSecrecyToken?,
   forwardSecrecyMetadata: ByteArray?,
   private val outputStream: OutputStream,
-  private val append: (ByteArray) -> Unit
+  private val append: (ByteArray) -> Unit,
+  compressionThreads: Int
 ) : BackupExportWriter {
 
   private val mainStream: PaddedGzipOutputStream
@@ -53,9 +57,10 @@ class EncryptedBackupWriter private constructor(
       forwardSecrecyToken: BackupForwardSecrecyToken,
       forwardSecrecyMetadata: ByteArray,
       outputStream: OutputStream,
-      append: (ByteArray) -> Unit
+      append: (ByteArray) -> Unit,
+      compressionThreads: Int = 1
     ): EncryptedBackupWriter {
-      return createForSignalBackup(key, key.deriveBackupId(aci), forwardSecrecyToken, forwardSecrecyMetadata, outputStream, append)
+      return createForSignalBackup(key, key.deriveBackupId(aci), forwardSecrecyToken, forwardSecrecyMetadata, outputStream, append, compressionThreads)
     }
 
     /**
@@ -68,14 +73,16 @@ class EncryptedBackupWriter private constructor(
       forwardSecrecyToken: BackupForwardSecrecyToken,
       forwardSecrecyMetadata: ByteArray,
       outputStream: OutputStream,
-      append: (ByteArray) -> Unit
+      append: (ByteArray) -> Unit,
+      compressionThreads: Int = 1
     ): EncryptedBackupWriter {
       return EncryptedBackupWriter(
         keyMaterial = key.deriveBackupSecrets(backupId, forwardSecrecyToken),
         forwardSecrecyToken = forwardSecrecyToken,
         forwardSecrecyMetadata = forwardSecrecyMetadata,
         outputStream = outputStream,
-        append = append
+        append = append,
+        compressionThreads = compressionThreads
       )
     }
 
@@ -87,9 +94,10 @@ class EncryptedBackupWriter private constructor(
       key: MessageBackupKey,
       aci: ACI,
       outputStream: OutputStream,
-      append: (ByteArray) -> Unit
+      append: (ByteArray) -> Unit,
+      compressionThreads: Int = 1
     ): EncryptedBackupWriter {
-      return createForLocalOrLinking(key, key.deriveBackupId(aci), outputStream, append)
+      return createForLocalOrLinking(key, key.deriveBackupId(aci), outputStream, append, compressionThreads)
     }
 
     /**
@@ -100,14 +108,16 @@ class EncryptedBackupWriter private constructor(
       key: MessageBackupKey,
       backupId: BackupId,
       outputStream: OutputStream,
-      append: (ByteArray) -> Unit
+      append: (ByteArray) -> Unit,
+      compressionThreads: Int = 1
     ): EncryptedBackupWriter {
       return EncryptedBackupWriter(
         keyMaterial = key.deriveBackupSecrets(backupId, forwardSecrecyToken = null),
         forwardSecrecyToken = null,
         forwardSecrecyMetadata = null,
         outputStream = outputStream,
-        append = append
+        append = append,
+        compressionThreads = compressionThreads
       )
     }
   }
@@ -141,7 +151,7 @@ class EncryptedBackupWriter private constructor(
     macStream = MacOutputStream(outputStream, mac)
     val cipherStream = CipherOutputStream(macStream, cipher)
 
-    mainStream = PaddedGzipOutputStream(cipherStream)
+    mainStream = PaddedGzipOutputStream(cipherStream, compressionThreads)
   }
 
   override fun write(header: BackupInfo) {
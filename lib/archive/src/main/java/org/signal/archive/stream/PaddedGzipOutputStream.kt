@@ -14,19 +14,57 @@ import java.util.zip.GZIPOutputStream
  * GZIPs the content of the provided [outputStream], but also adds padding to the end of the stream using the same algorithm as [PaddingInputStream].
  * We do this to fit files into a smaller number of size buckets to avoid fingerprinting. And it turns out that bolting on zeros to the end of a GZIP stream is
  * fine, because GZIP is smart enough to ignore it. This means readers of this data don't have to do anything special.
+ *
+ * With more than one [compressionThreads], compression is done by a [ParallelGzipOutputStream]. Its output differs byte for byte, but it's still a
+ * single GZIP member, so readers can't tell the difference.
  */
-class PaddedGzipOutputStream private constructor(private val outputStream: SizeObservingOutputStream) : GZIPOutputStream(outputStream) {
+class PaddedGzipOutputStream private constructor(
+  private val outputStream: SizeObservingOutputStream,
+  private val gzipStream: OutputStream
+) : FilterOutputStream(gzipStream) {
 
-  constructor(outputStream: OutputStream) : this(SizeObservingOutputStream(outputStream))
+  @JvmOverloads
+  constructor(outputStream: OutputStream, compressionThreads: Int = 1) : this(SizeObservingOutputStream(outputStream), compressionThreads)
 
-  override fun finish() {
-    super.finish()
+  private constructor(outputStream: SizeObservingOutputStream, compressionThreads: Int) : this(
+    outputStream,
+    if (compressionThreads > 1) ParallelGzipOutputStream(outputStream, compressionThreads) else GZIPOutputStream(outputStream)
+  )
+
+  private var finished = false
+
+  override fun write(b: Int) {
+    gzipStream.write(b)
+  }
+
+  override fun write(b: ByteArray, off: Int, len: Int) {
+    gzipStream.write(b, off, len)
+  }
+
+  fun finish() {
+    if (finished) {
+      return
+    }
+
+    when (gzipStream) {
+      is ParallelGzipOutputStream -> gzipStream.finish()
+      is GZIPOutputStream -> gzipStream.finish()
+    }
 
     val totalLength = outputStream.size
     val paddedSize: Long = PaddingInputStream.getPaddedSize(totalLength)
     val paddingToAdd: Int = (paddedSize - totalLength).toInt()
 
     outputStream.write(ByteArray(paddingToAdd))
+    finished = true
+  }
+
+  override fun close() {
+    try {
+      finish()
+    } finally {
+      gzipStream.close()
+    }
   }
 
   /**
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.archive.stream
+
+import java.io.IOException
+import java.io.OutputStream
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.zip.CRC32
+import java.util.zip.Deflater
+
+/**
+ * Writes the same format as [java.util.zip.GZIPOutputStream], a single GZIP member, but compresses on several threads at once, the way pigz does.
+ *
+ * The data is cut into blocks that are deflated independently on [threads] worker threads, each primed with the last 32 KiB of the block before it,
+ * so that compression barely suffers for it. Every block but the last ends in a sync flush, which leaves it on a byte boundary, so the compressed
+ * blocks can simply be written one after the other to form one deflate stream. Anything that reads GZIP can read the result.
+ *
+ * Deflaters and buffers are reused for the life of the stream, and only a couple of blocks per thread are ever in flight. The worker threads are
+ * stopped when the stream is closed. Like [java.util.zip.GZIPOutputStream], [flush] doesn't force out data that's still waiting to be compressed.
+ */
+class ParallelGzipOutputStream @JvmOverloads constructor(
+  private val outputStream: OutputStream,
+  threads: Int,
+  private val blockSize: Int = DEFAULT_BLOCK_SIZE
+) : OutputStream() {
+
+  companion object {
+    const val DEFAULT_BLOCK_SIZE = 128 * 1024
+
+    private const val DICTIONARY_SIZE = 32 * 1024
+
+    /** Same header as [java.util.zip.GZIPOutputStream] writes: magic, deflate, no flags, no modification time, no extra flags, unknown OS. */
+    private val HEADER = byteArrayOf(0x1f, 0x8b.toByte(), Deflater.DEFLATED.toByte(), 0, 0, 0, 0, 0, 0, 0)
+  }
+
+  private val executor: ExecutorService = Executors.newFixedThreadPool(threads) { runnable ->
+    Thread(runnable, "ParallelGzipOutputStream").apply { isDaemon = true }
+  }
+
+  private val maxInFlight = threads * 2
+  private val inFlight = ArrayDeque<Future<Block>>(maxInFlight)
+  private val freeBlocks = ArrayDeque<Block>(maxInFlight + 1)
+  private val deflaters = ConcurrentLinkedQueue<Deflater>()
+
+  private val crc = CRC32()
+  private var uncompressedSize = 0L
+
+  /** The last [DICTIONARY_SIZE] bytes handed to a block, which the next block is primed with. */
+  private val window = ByteArray(DICTIONARY_SIZE)
+  private var windowLength = 0
+
+  private var current = Block(blockSize)
+  private var finished = false
+  private var closed = false
+
+  init {
+    require(threads > 0) { "Need at least one thread" }
+    require(blockSize >= DICTIONARY_SIZE) { "Blocks must be at least as big as the dictionary" }
+    outputStream.write(HEADER)
+  }
+
+  override fun write(b: Int) {
+    ensureOpen()
+    current.input[current.length++] = b.toByte()
+    if (current.length == blockSize) {
+      submit(last = false)
+    }
+  }
+
+  override fun write(b: ByteArray, off: Int, len: Int) {
+    ensureOpen()
+    var offset = off
+    var remaining = len
+    while (remaining > 0) {
+      val count = minOf(remaining, blockSize - current.length)
+      System.arraycopy(b, offset, current.input, current.length, count)
+      current.length += count
+      offset += count
+      remaining -= count
+
+      if (current.length == blockSize) {
+        submit(last = false)
+      }
+    }
+  }
+
+  override fun flush() {
+    outputStream.flush()
+  }
+
+  /**
+   * Compresses whatever is left and writes the GZIP trailer, without closing the underlying stream.
+   */
+  @Throws(IOException::class)
+  fun finish() {
+    if (finished) {
+      return
+    }
+
+    submit(last = true)
+    while (inFlight.isNotEmpty()) {
+      writeNextBlock()
+    }
+
+    writeIntLe(crc.value.toInt())
+    writeIntLe(uncompressedSize.toInt())
+    finished = true
+  }
+
+  override fun close() {
+    if (closed) {
+      return
+    }
+
+    try {
+      finish()
+      outputStream.close()
+    } finally {
+      closed = true
+      executor.shutdownNow()
+      for (future in inFlight) {
+        future.cancel(true)
+      }
+      inFlight.clear()
+      // A deflater only goes back in the pool once a worker is done with it, so these are all safe to end
+      while (true) {
+        deflaters.poll()?.end() ?: break
+      }
+    }
+  }
+
+  private fun submit(last: Boolean) {
+    val block = current
+    block.last = last
+    block.dictionaryLength = windowLength
+    System.arraycopy(window, 0, block.dictionary, 0, windowLength)
+    updateWindow(block.input, block.length)
+
+    crc.update(block.input, 0, block.length)
+    uncompressedSize += block.length
+
+    inFlight.addLast(executor.submit(Callable { block.compress() }))
+
+    while (inFlight.size >= maxInFlight) {
+      writeNextBlock()
+    }
+
+    current = freeBlocks.removeFirstOrNull() ?: Block(blockSize)
+    current.length = 0
+  }
+
+  private fun updateWindow(input: ByteArray, length: Int) {
+    if (length >= DICTIONARY_SIZE) {
+      System.arraycopy(input, length - DICTIONARY_SIZE, window, 0, DICTIONARY_SIZE)
+      windowLength = DICTIONARY_SIZE
+    } else {
+      val kept = minOf(windowLength, DICTIONARY_SIZE - length)
+      System.arraycopy(window, windowLength - kept, window, 0, kept)
+      System.arraycopy(input, 0, window, kept, length)
+      windowLength = kept + length
+    }
+  }
+
+  private fun writeNextBlock() {
+    val block = try {
+      inFlight.removeFirst().get()
+    } catch (e: ExecutionException) {
+      throw IOException("Failed to compress block", e.cause)
+    } catch (e: InterruptedException) {
+      Thread.currentThread().interrupt()
+      throw IOException("Interrupted while compressing", e)
+    }
+
+    outputStream.write(block.output, 0, block.outputLength)
+    freeBlocks.addLast(block)
+  }
+
+  private fun writeIntLe(value: Int) {
+    outputStream.write(value and 0xFF)
+    outputStream.write((value ushr 8) and 0xFF)
+    outputStream.write((value ushr 16) and 0xFF)
+    outputStream.write((value ushr 24) and 0xFF)
+  }
+
+  private fun ensureOpen() {
+    if (finished || closed) {
+      throw IOException("Stream is already finished")
+    }
+  }
+
+  private inner class Block(size: Int) {
+    val input = ByteArray(size)
+    var length = 0
+    val dictionary = ByteArray(DICTIONARY_SIZE)
+    var dictionaryLength = 0
+    var last = false
+
+    /** Deflate rarely grows data by more than a few bytes per stored block, so this almost never needs to grow. */
+    var output = ByteArray(size + size / 64 + 64)
+    var outputLength = 0
+
+    /** Runs on a worker thread. */
+    fun compress(): Block {
+      val deflater = deflaters.poll() ?: Deflater(Deflater.DEFAULT_COMPRESSION, true)
+      try {
+        if (dictionaryLength > 0) {
+          deflater.setDictionary(dictionary, 0, dictionaryLength)
+        }
+        deflater.setInput(input, 0, length)
+        outputLength = 0
+
+        if (last) {
+          deflater.finish()
+          while (!deflater.finished()) {
+            deflateInto(deflater, Deflater.NO_FLUSH)
+          }
+        } else {
+          // A sync flush is only done once it returns without filling the output
+          var filled: Boolean
+          do {
+            filled = deflateInto(deflater, Deflater.SYNC_FLUSH)
+          } while (filled)
+        }
+      } finally {
+        deflater.reset()
+        deflaters.offer(deflater)
+      }
+
+      return this
+    }
+
+    /** @return True if the output was filled, meaning there may be more to come. */
+    private fun deflateInto(deflater: Deflater, flush: Int): Boolean {
+      if (outputLength == output.size) {
+        output = output.copyOf(output.size * 2)
+      }
+
+      val space = output.size - outputLength
+      val written = deflater.deflate(output, outputLength, space, flush)
+      outputLength += written
+      return written == space
+    }
+  }
+}
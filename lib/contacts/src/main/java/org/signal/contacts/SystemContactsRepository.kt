@@ -7,6 +7,7 @@ import android.content.ContentResolver
 import android.content.Context
 import android.content.OperationApplicationException
 import android.database.Cursor
+import android.database.MergeCursor
 import android.net.Uri
 import android.os.RemoteException
 import android.provider.BaseColumns
@@ -129,6 +130,15 @@ object SystemContactsRepository {
       }
     }
 
+    return getContactDetailsByLookupKeys(context, lookupKeys, e164Formatter)
+  }
+
+  /**
+   * Gets and returns an iterator over data for the contacts with the provided lookup keys, in the same shape as [getAllSystemContacts]. Keys are looked up
+   * in batches, so this is a handful of queries no matter how many keys there are.
+   */
+  @JvmStatic
+  fun getContactDetailsByLookupKeys(context: Context, lookupKeys: Collection<String>, e164Formatter: (String) -> String?): ContactIterator {
     if (lookupKeys.isEmpty()) {
       return EmptyContactIterator()
     }
@@ -146,15 +156,97 @@ object SystemContactsRepository {
       ContactsContract.CommonDataKinds.StructuredName.GIVEN_NAME,
       ContactsContract.CommonDataKinds.StructuredName.FAMILY_NAME
     )
+    val mimeTypeArgs = SqlUtil.buildArgs(ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE, ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)
+    val orderBy = "${ContactsContract.CommonDataKinds.Phone.LOOKUP_KEY} ASC, ${ContactsContract.Data.MIMETYPE} DESC, ${ContactsContract.CommonDataKinds.Phone._ID} DESC"
 
-    val lookupPlaceholder = lookupKeys.map { "?" }.joinToString(separator = ",")
+    // Each batch is sorted on its own, which is all the iterator needs, since a lookup key never spans two batches
+    val cursors: List<Cursor> = SqlUtil.buildCollectionQuery(ContactsContract.CommonDataKinds.Phone.LOOKUP_KEY, lookupKeys.toSet()).mapNotNull { query ->
+      val where = "${query.where} AND ${ContactsContract.Data.MIMETYPE} IN (?, ?)"
+      context.contentResolver.query(uri, projection, where, query.whereArgs + mimeTypeArgs, orderBy)
+    }
 
-    val where = "${ContactsContract.CommonDataKinds.Phone.LOOKUP_KEY} IN ($lookupPlaceholder) AND ${ContactsContract.Data.MIMETYPE} IN (?, ?)"
-    val args = lookupKeys.toTypedArray() + SqlUtil.buildArgs(ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE, ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)
-    val orderBy = "${ContactsContract.CommonDataKinds.Phone.LOOKUP_KEY} ASC, ${ContactsContract.Data.MIMETYPE} DESC, ${ContactsContract.CommonDataKinds.Phone._ID} DESC"
+    return when (cursors.size) {
+      0 -> EmptyContactIterator()
+      1 -> CursorContactIterator(cursors[0], e164Formatter)
+      else -> CursorContactIterator(MergeCursor(cursors.toTypedArray()), e164Formatter)
+    }
+  }
 
-    val cursor: Cursor = context.contentResolver.query(uri, projection, where, args, orderBy) ?: return EmptyContactIterator()
-    return CursorContactIterator(cursor, e164Formatter)
+  /**
+   * Finds the contacts that have been updated or deleted after [since], a value previously returned as [ContactChanges.timestamp]. This lets a caller that
+   * has already read every contact re-read only the ones that changed, rather than scanning all of the contact data again.
+   *
+   * @return The changes, or null if they can't be determined incrementally, in which case the caller should read every contact. That's the case if there's no
+   *         previous [since], or if it's old enough that the provider may have forgotten about some of the deletions since then.
+   */
+  @JvmStatic
+  fun getContactChangesSince(context: Context, since: Long): ContactChanges? {
+    val now = System.currentTimeMillis()
+
+    if (since <= 0 || since > now || now - since > ContactsContract.DeletedContacts.DAYS_KEPT_MILLISECONDS) {
+      return null
+    }
+
+    val updatedLookupKeys: MutableSet<String> = mutableSetOf()
+    val updatedWhere = "${ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP} > ?"
+
+    context.contentResolver.query(ContactsContract.Contacts.CONTENT_URI, arrayOf(ContactsContract.Contacts.LOOKUP_KEY), updatedWhere, SqlUtil.buildArgs(since), null)?.use { cursor ->
+      while (cursor.moveToNext()) {
+        val lookupKey: String? = cursor.requireString(ContactsContract.Contacts.LOOKUP_KEY)
+        if (lookupKey != null) {
+          updatedLookupKeys += lookupKey
+        }
+      }
+    } ?: return null
+
+    val deletedUri = ContactsContract.DeletedContacts.CONTENT_URI.buildUpon()
+      .appendQueryParameter(ContactsContract.LIMIT_PARAM_KEY, "1")
+      .build()
+    val deletedWhere = "${ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP} > ?"
+
+    val hasDeletions: Boolean = context.contentResolver.query(deletedUri, arrayOf(ContactsContract.DeletedContacts.CONTACT_ID), deletedWhere, SqlUtil.buildArgs(since), null)?.use { cursor ->
+      cursor.moveToFirst()
+    } ?: return null
+
+    return ContactChanges(
+      updatedLookupKeys = updatedLookupKeys,
+      hasDeletions = hasDeletions,
+      timestamp = now
+    )
+  }
+
+  /**
+   * Retrieves the lookup key of every contact. Much cheaper than reading every contact's data, but still a full scan, so it's meant for when
+   * [getContactChangesSince] reports deletions, which only come with contact IDs.
+   */
+  @JvmStatic
+  fun getAllLookupKeys(context: Context): Set<String> {
+    val lookupKeys: MutableSet<String> = mutableSetOf()
+
+    context.contentResolver.query(ContactsContract.Contacts.CONTENT_URI, arrayOf(ContactsContract.Contacts.LOOKUP_KEY), null, null, null)?.use { cursor ->
+      while (cursor.moveToNext()) {
+        val lookupKey: String? = cursor.requireString(ContactsContract.Contacts.LOOKUP_KEY)
+        if (lookupKey != null) {
+          lookupKeys += lookupKey
+        }
+      }
+    }
+
+    return lookupKeys
+  }
+
+  /**
+   * Extracts the lookup key from a [ContactPhoneDetails.contactUri].
+   */
+  @JvmStatic
+  fun getLookupKey(contactUri: Uri): String? {
+    val segments: List<String> = contactUri.pathSegments
+
+    return if (segments.size >= 3 && segments[1] == "lookup") {
+      segments[2]
+    } else {
+      null
+    }
   }
 
   /**
@@ -815,6 +907,21 @@ object SystemContactsRepository {
     val numbers: List<ContactPhoneDetails>
   )
 
+  /**
+   * @param updatedLookupKeys Lookup keys of the contacts that were added or changed.
+   * @param hasDeletions Whether any contacts were deleted. The provider only records the IDs of deleted contacts, so figuring out which ones they were
+   *                     means checking what's left with [getAllLookupKeys].
+   * @param timestamp What to pass as `since` next time.
+   */
+  data class ContactChanges(
+    val updatedLookupKeys: Set<String>,
+    val hasDeletions: Boolean,
+    val timestamp: Long
+  ) {
+    val isEmpty: Boolean
+      get() = updatedLookupKeys.isEmpty() && !hasDeletions
+  }
+
   data class ContactPhoneDetails(
     val contactUri: Uri,
     val displayName: String?,
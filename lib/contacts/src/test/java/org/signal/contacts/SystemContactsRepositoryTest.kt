@@ -0,0 +1,201 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.contacts
+
+import android.app.Application
+import android.content.ContentProvider
+import android.content.ContentValues
+import android.database.Cursor
+import android.database.sqlite.SQLiteDatabase
+import android.net.Uri
+import android.provider.ContactsContract
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.Robolectric
+import org.robolectric.RobolectricTestRunner
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+class SystemContactsRepositoryTest {
+
+  companion object {
+    private const val CONTACT_COUNT = 3_000
+  }
+
+  private val context: Application = ApplicationProvider.getApplicationContext()
+  private lateinit var provider: FakeContactsProvider
+
+  private val lastSync = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)
+
+  @Before
+  fun setUp() {
+    provider = Robolectric.setupContentProvider(FakeContactsProvider::class.java, ContactsContract.AUTHORITY)
+    provider.insertContacts(CONTACT_COUNT, updatedAt = lastSync - TimeUnit.HOURS.toMillis(1))
+  }
+
+  @Test
+  fun givenNoHighWaterMark_whenIGetChanges_thenIExpectAFullSyncIsNeeded() {
+    assertNull(SystemContactsRepository.getContactChangesSince(context, 0))
+    assertNull(SystemContactsRepository.getContactChangesSince(context, System.currentTimeMillis() - ContactsContract.DeletedContacts.DAYS_KEPT_MILLISECONDS - 1))
+  }
+
+  @Test
+  fun givenNothingChanged_whenIGetChanges_thenIExpectNoChanges() {
+    val changes = SystemContactsRepository.getContactChangesSince(context, lastSync)
+
+    assertNotNull(changes)
+    assertTrue(changes!!.isEmpty)
+    assertTrue(changes.timestamp > lastSync)
+  }
+
+  @Test
+  fun givenOneChangedContact_whenISyncIncrementally_thenIExpectOnlyThatContactToBeRead() {
+    provider.touch(index = 1234)
+
+    val fullCount = SystemContactsRepository.getAllSystemContacts(context) { it }.use { it.asSequence().count() }
+
+    provider.rowsRead = 0
+    val changes = SystemContactsRepository.getContactChangesSince(context, lastSync)!!
+    val changed = SystemContactsRepository.getContactDetailsByLookupKeys(context, changes.updatedLookupKeys) { it }.use { it.asSequence().toList() }
+    val incrementalRows = provider.rowsRead
+
+    assertEquals(CONTACT_COUNT, fullCount)
+    assertEquals(setOf(FakeContactsProvider.lookupKey(1234)), changes.updatedLookupKeys)
+    assertFalse(changes.hasDeletions)
+    assertEquals(FakeContactsProvider.number(1234), changed.single().numbers.single().number)
+    assertEquals(3, incrementalRows)
+  }
+
+  @Test
+  fun givenManyLookupKeys_whenIGetTheirDetails_thenIExpectEveryContactOnce() {
+    val lookupKeys = (0 until 2500).map { FakeContactsProvider.lookupKey(it) }
+
+    val details = SystemContactsRepository.getContactDetailsByLookupKeys(context, lookupKeys) { it }.use { it.asSequence().toList() }
+
+    assertEquals(2500, details.size)
+    assertEquals(2500, details.map { it.numbers.single().number }.toSet().size)
+  }
+
+  @Test
+  fun givenADeletedContact_whenIGetChanges_thenIExpectItMissingFromTheRemainingKeys() {
+    provider.delete(index = 42)
+
+    val changes = SystemContactsRepository.getContactChangesSince(context, lastSync)!!
+    val remaining = SystemContactsRepository.getAllLookupKeys(context)
+
+    assertTrue(changes.hasDeletions)
+    assertEquals(CONTACT_COUNT - 1, remaining.size)
+    assertFalse(FakeContactsProvider.lookupKey(42) in remaining)
+  }
+
+  @Test
+  fun givenAContactUri_whenIGetItsLookupKey_thenIExpectTheKey() {
+    val uri = ContactsContract.Contacts.getLookupUri(5, "0r5-ABC.1234i5")
+
+    assertEquals("0r5-ABC.1234i5", SystemContactsRepository.getLookupKey(uri))
+    assertNull(SystemContactsRepository.getLookupKey(ContactsContract.Contacts.CONTENT_URI))
+  }
+
+  /**
+   * Just enough of the contacts provider for [SystemContactsRepository]'s reads, backed by an in-memory database. Phone and name rows share the data table,
+   * with the lookup key and display name denormalized onto each row the way the provider's views present them.
+   */
+  class FakeContactsProvider : ContentProvider() {
+
+    companion object {
+      fun lookupKey(index: Int): String = "0r$index-lookup"
+      fun number(index: Int): String = "+1555" + index.toString().padStart(7, '0')
+    }
+
+    private lateinit var db: SQLiteDatabase
+
+    var rowsRead = 0
+
+    override fun onCreate(): Boolean {
+      db = SQLiteDatabase.create(null)
+      db.execSQL(
+        "CREATE TABLE contacts (${ContactsContract.Contacts._ID} INTEGER PRIMARY KEY, ${ContactsContract.Contacts.LOOKUP_KEY} TEXT, " +
+          "${ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP} INTEGER)"
+      )
+      db.execSQL(
+        "CREATE TABLE data (${ContactsContract.Data._ID} INTEGER PRIMARY KEY, ${ContactsContract.Data.LOOKUP_KEY} TEXT, ${ContactsContract.Data.MIMETYPE} TEXT, " +
+          "${ContactsContract.Data.DATA1} TEXT, ${ContactsContract.Data.DATA2} TEXT, ${ContactsContract.Data.DATA3} TEXT, " +
+          "${ContactsContract.Data.DISPLAY_NAME} TEXT, ${ContactsContract.Data.PHOTO_URI} TEXT)"
+      )
+      db.execSQL("CREATE TABLE deleted_contacts (${ContactsContract.DeletedContacts.CONTACT_ID} INTEGER, ${ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP} INTEGER)")
+      return true
+    }
+
+    fun insertContacts(count: Int, updatedAt: Long) {
+      db.beginTransaction()
+      try {
+        for (i in 0 until count) {
+          db.insert("contacts", null, ContentValues().apply {
+            put(ContactsContract.Contacts._ID, i)
+            put(ContactsContract.Contacts.LOOKUP_KEY, lookupKey(i))
+            put(ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP, updatedAt)
+          })
+          db.insert("data", null, ContentValues().apply {
+            put(ContactsContract.Data.LOOKUP_KEY, lookupKey(i))
+            put(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.Phone.CONTENT_ITEM_TYPE)
+            put(ContactsContract.CommonDataKinds.Phone.NUMBER, number(i))
+            put(ContactsContract.CommonDataKinds.Phone.TYPE, ContactsContract.CommonDataKinds.Phone.TYPE_MOBILE)
+            put(ContactsContract.Data.DISPLAY_NAME, "Contact $i")
+          })
+          db.insert("data", null, ContentValues().apply {
+            put(ContactsContract.Data.LOOKUP_KEY, lookupKey(i))
+            put(ContactsContract.Data.MIMETYPE, ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE)
+            put(ContactsContract.CommonDataKinds.StructuredName.GIVEN_NAME, "Contact")
+            put(ContactsContract.CommonDataKinds.StructuredName.FAMILY_NAME, i.toString())
+            put(ContactsContract.Data.DISPLAY_NAME, "Contact $i")
+          })
+        }
+        db.setTransactionSuccessful()
+      } finally {
+        db.endTransaction()
+      }
+    }
+
+    fun touch(index: Int) {
+      val values = ContentValues().apply { put(ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP, System.currentTimeMillis()) }
+      db.update("contacts", values, "${ContactsContract.Contacts._ID} = ?", arrayOf(index.toString()))
+    }
+
+    fun delete(index: Int) {
+      db.delete("contacts", "${ContactsContract.Contacts._ID} = ?", arrayOf(index.toString()))
+      db.delete("data", "${ContactsContract.Data.LOOKUP_KEY} = ?", arrayOf(lookupKey(index)))
+      db.insert("deleted_contacts", null, ContentValues().apply {
+        put(ContactsContract.DeletedContacts.CONTACT_ID, index)
+        put(ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP, System.currentTimeMillis())
+      })
+    }
+
+    override fun query(uri: Uri, projection: Array<out String>?, selection: String?, selectionArgs: Array<out String>?, sortOrder: String?): Cursor {
+      val table = when (uri.pathSegments.first()) {
+        "contacts" -> "contacts"
+        "data" -> "data"
+        "deleted_contacts" -> "deleted_contacts"
+        else -> throw UnsupportedOperationException(uri.toString())
+      }
+
+      val cursor = db.query(table, projection, selection, selectionArgs, null, null, sortOrder, uri.getQueryParameter(ContactsContract.LIMIT_PARAM_KEY))
+      rowsRead += cursor.count
+      return cursor
+    }
+
+    override fun getType(uri: Uri): String? = null
+    override fun insert(uri: Uri, values: ContentValues?): Uri? = throw UnsupportedOperationException()
+    override fun delete(uri: Uri, selection: String?, selectionArgs: Array<out String>?): Int = throw UnsupportedOperationException()
+    override fun update(uri: Uri, values: ContentValues?, selection: String?, selectionArgs: Array<out String>?): Int = throw UnsupportedOperationException()
+  }
+}
@@ -14,7 +14,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLHandshakeException;
@@ -34,9 +41,10 @@ final class NetworkClientThread extends Thread {
   public static final int NETWORK_CLIENT_SSL_ESTABLISHED = 1003;
   public static final int NETWORK_CLIENT_STOPPED         = 1004;
 
-  private volatile SSLSocket client;
-  private volatile boolean   isRunning;
-  private volatile Boolean   isVerified;
+  private volatile SSLSocket    client;
+  private volatile List<Socket> parallelClients = Collections.emptyList();
+  private volatile boolean      isRunning;
+  private volatile Boolean      isVerified;
 
   private final Context    context;
   private final ClientTask clientTask;
@@ -96,10 +104,11 @@ final class NetworkClientThread extends Thread {
           Log.i(TAG, "Waiting for user to verify sas");
           awaitAuthenticationCodeVerification();
           Log.d(TAG, "Waiting for server to tell us they also verified");
-          outputStream.write(0x43);
+          outputStream.write(clientTask instanceof ParallelClientTask ? ParallelStreams.VERIFIED_PARALLEL : ParallelStreams.VERIFIED_SINGLE);
           outputStream.flush();
+          int result;
           try {
-            int result = inputStream.read();
+            result = inputStream.read();
             if (result == -1) {
               Log.w(TAG, "Something happened waiting for server to verify");
               throw new DeviceTransferAuthentication.DeviceTransferAuthenticationException("server disconnected while we waited");
@@ -111,7 +120,27 @@ final class NetworkClientThread extends Thread {
 
           transferStarted = true;
           handler.sendEmptyMessage(NETWORK_CLIENT_CONNECTED);
-          clientTask.run(context, outputStream);
+
+          if (clientTask instanceof ParallelClientTask && result == ParallelStreams.VERIFIED_PARALLEL) {
+            ParallelClientTask parallelTask = (ParallelClientTask) clientTask;
+            byte[]             certificate  = x509.getEncoded();
+
+            parallelClients = ParallelStreams.connect(inputStream, outputStream, parallelTask.getParallelStreamCount(), () -> openParallelClient(certificate));
+
+            List<OutputStream> parallelStreams = new ArrayList<>(parallelClients.size());
+            for (Socket parallelClient : parallelClients) {
+              parallelStreams.add(parallelClient.getOutputStream());
+            }
+
+            parallelTask.run(context, outputStream, parallelStreams);
+
+            for (OutputStream parallelStream : parallelStreams) {
+              parallelStream.flush();
+            }
+          } else {
+            Log.i(TAG, "Server only supports a single stream");
+            clientTask.run(context, outputStream);
+          }
           outputStream.flush();
 
           Log.d(TAG, "Waiting for server to tell us they got everything");
@@ -140,6 +169,8 @@ final class NetworkClientThread extends Thread {
         if (success) {
           clientTask.success();
         }
+        ParallelStreams.closeAll(parallelClients);
+        parallelClients = Collections.emptyList();
         StreamUtil.close(client);
         handler.sendEmptyMessage(NETWORK_CLIENT_DISCONNECTED);
       }
@@ -153,6 +184,40 @@ final class NetworkClientThread extends Thread {
     handler.sendEmptyMessage(NETWORK_CLIENT_STOPPED);
   }
 
+  /**
+   * Opens another connection to the server, only returning it if the server presents the same certificate we verified
+   * with the SAS on the primary connection.
+   */
+  private @NonNull Socket openParallelClient(@NonNull byte[] verifiedCertificate) throws IOException {
+    SelfSignedIdentity.ApprovingTrustManager trustManager = new SelfSignedIdentity.ApprovingTrustManager();
+    SSLSocket                                socket;
+
+    try {
+      socket = (SSLSocket) SelfSignedIdentity.getApprovingSocketFactory(trustManager).createSocket();
+    } catch (GeneralSecurityException e) {
+      throw new IOException(e);
+    }
+
+    try {
+      socket.bind(null);
+      socket.connect(new InetSocketAddress(serverHostAddress, port), 10000);
+      socket.startHandshake();
+
+      X509Certificate x509 = trustManager.getX509Certificate();
+      if (x509 == null || !MessageDigest.isEqual(verifiedCertificate, x509.getEncoded())) {
+        throw new SSLHandshakeException("Parallel stream presented a different certificate");
+      }
+
+      return socket;
+    } catch (IOException e) {
+      StreamUtil.close(socket);
+      throw e;
+    } catch (CertificateEncodingException e) {
+      StreamUtil.close(socket);
+      throw new SSLHandshakeException("Unable to encode parallel stream certificate");
+    }
+  }
+
   private void resetVerification() {
     synchronized (verificationLock) {
       isVerified = null;
@@ -185,6 +250,7 @@ final class NetworkClientThread extends Thread {
   @AnyThread
   public void shutdown() {
     isRunning = false;
+    ParallelStreams.closeAll(parallelClients);
     StreamUtil.close(client);
     interrupt();
   }
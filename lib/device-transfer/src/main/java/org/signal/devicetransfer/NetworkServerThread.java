@@ -14,6 +14,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Performs the networking setup/tear down for the server. This includes
@@ -32,6 +35,7 @@ final class NetworkServerThread extends Thread {
 
   private volatile ServerSocket serverSocket;
   private volatile Socket       clientSocket;
+  private volatile List<Socket> parallelClientSockets = Collections.emptyList();
   private volatile boolean      isRunning;
   private volatile Boolean      isVerified;
 
@@ -85,10 +89,11 @@ final class NetworkServerThread extends Thread {
           Log.i(TAG, "Waiting for user to verify sas");
           awaitAuthenticationCodeVerification();
           Log.d(TAG, "Waiting for client to tell us they also verified");
-          outputStream.write(0x43);
+          outputStream.write(serverTask instanceof ParallelServerTask ? ParallelStreams.VERIFIED_PARALLEL : ParallelStreams.VERIFIED_SINGLE);
           outputStream.flush();
+          int result;
           try {
-            int result = inputStream.read();
+            result = inputStream.read();
             if (result == -1) {
               Log.w(TAG, "Something happened waiting for client to verify");
               throw new DeviceTransferAuthentication.DeviceTransferAuthenticationException("client disconnected while we waited");
@@ -100,7 +105,20 @@ final class NetworkServerThread extends Thread {
 
           transferStarted = true;
           handler.sendEmptyMessage(NETWORK_CLIENT_CONNECTED);
-          serverTask.run(context, inputStream);
+
+          if (serverTask instanceof ParallelServerTask && result == ParallelStreams.VERIFIED_PARALLEL) {
+            parallelClientSockets = ParallelStreams.accept(inputStream, outputStream, serverSocket);
+
+            List<InputStream> parallelStreams = new ArrayList<>(parallelClientSockets.size());
+            for (Socket parallelClientSocket : parallelClientSockets) {
+              parallelStreams.add(parallelClientSocket.getInputStream());
+            }
+
+            ((ParallelServerTask) serverTask).run(context, inputStream, parallelStreams);
+          } else {
+            Log.i(TAG, "Client only supports a single stream");
+            serverTask.run(context, inputStream);
+          }
 
           outputStream.write(0x53);
           outputStream.flush();
@@ -114,6 +132,8 @@ final class NetworkServerThread extends Thread {
             Log.i(TAG, "Error connecting with client or server socket closed.", e);
           }
         } finally {
+          ParallelStreams.closeAll(parallelClientSockets);
+          parallelClientSockets = Collections.emptyList();
           StreamUtil.close(clientSocket);
           handler.sendEmptyMessage(NETWORK_CLIENT_DISCONNECTED);
         }
@@ -176,6 +196,7 @@ final class NetworkServerThread extends Thread {
   @AnyThread
   public void shutdown() {
     isRunning = false;
+    ParallelStreams.closeAll(parallelClientSockets);
     StreamUtil.close(clientSocket);
     StreamUtil.close(serverSocket);
     interrupt();
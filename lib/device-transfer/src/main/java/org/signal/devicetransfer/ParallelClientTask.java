@@ -0,0 +1,29 @@
+package org.signal.devicetransfer;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * A {@link ClientTask} that can spread its data over several connections at once when the
+ * {@link DeviceTransferServer} supports it. When the server only supports a single connection,
+ * {@link ClientTask#run(Context, OutputStream)} is used instead.
+ */
+public interface ParallelClientTask extends ClientTask {
+
+  /**
+   * @return How many connections to open in addition to the primary one, between 1 and 8.
+   */
+  int getParallelStreamCount();
+
+  /**
+   * @param context         Android context, mostly like the foreground transfer service
+   * @param outputStream    Output stream of the primary connection, on which the SAS was verified.
+   * @param parallelStreams Output streams of the additional connections, each authenticated against the primary one.
+   */
+  void run(@NonNull Context context, @NonNull OutputStream outputStream, @NonNull List<OutputStream> parallelStreams) throws IOException;
+}
@@ -0,0 +1,24 @@
+package org.signal.devicetransfer;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * A {@link ServerTask} that can receive data over several connections at once when the
+ * {@link DeviceTransferClient} supports it. When the client only uses a single connection,
+ * {@link ServerTask#run(Context, InputStream)} is used instead.
+ */
+public interface ParallelServerTask extends ServerTask {
+
+  /**
+   * @param context         Android context, mostly like the foreground transfer service
+   * @param inputStream     Input stream of the primary connection, on which the SAS was verified.
+   * @param parallelStreams Input streams of the additional connections, each authenticated against the primary one.
+   */
+  void run(@NonNull Context context, @NonNull InputStream inputStream, @NonNull List<InputStream> parallelStreams) throws IOException;
+}
@@ -0,0 +1,162 @@
+package org.signal.devicetransfer;
+
+import androidx.annotation.NonNull;
+
+import org.signal.core.util.StreamUtil;
+import org.signal.core.util.logging.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sets up the additional connections used by {@link ParallelClientTask} and {@link ParallelServerTask}.
+ * <ol>
+ * <li>Once the SAS has been verified, each side sends {@link #VERIFIED_PARALLEL} instead of {@link #VERIFIED_SINGLE} if it
+ * supports parallel streams. Older versions only check that a byte arrived, so either value works with them.</li>
+ * <li>If both sides sent {@link #VERIFIED_PARALLEL}, the client sends the number of extra streams it wants on the primary
+ * connection, and the server replies with a random token.</li>
+ * <li>The client opens that many new TLS connections to the same server, checks that each one presents the certificate
+ * that was verified with the SAS, and sends the token as its first bytes.</li>
+ * <li>The server only accepts connections that present the token.</li>
+ * </ol>
+ * The token is only ever sent inside TLS sessions with the verified server certificate, so a connection that presents it
+ * comes from the verified client.
+ */
+final class ParallelStreams {
+
+  private static final String TAG = Log.tag(ParallelStreams.class);
+
+  static final int VERIFIED_SINGLE   = 0x43;
+  static final int VERIFIED_PARALLEL = 0x50;
+
+  static final int MAX_STREAMS = 8;
+
+  private static final int TOKEN_LENGTH      = 32;
+  private static final int ACCEPT_TIMEOUT_MS = 10_000;
+
+  private ParallelStreams() {}
+
+  /**
+   * Client side. Asks the server for {@code count} extra streams and opens them.
+   *
+   * @param socketOpener Opens a new connection to the server, failing if it does not present the verified certificate.
+   */
+  static @NonNull List<Socket> connect(@NonNull InputStream primaryInput,
+                                       @NonNull OutputStream primaryOutput,
+                                       int count,
+                                       @NonNull SocketOpener socketOpener)
+      throws IOException
+  {
+    if (count < 1 || count > MAX_STREAMS) {
+      throw new IllegalArgumentException("Invalid stream count: " + count);
+    }
+
+    primaryOutput.write(count);
+    primaryOutput.flush();
+
+    byte[] token = new byte[TOKEN_LENGTH];
+    StreamUtil.readFully(primaryInput, token);
+
+    List<Socket> sockets = new ArrayList<>(count);
+    try {
+      for (int i = 0; i < count; i++) {
+        Socket socket = socketOpener.open();
+        sockets.add(socket);
+
+        OutputStream outputStream = socket.getOutputStream();
+        outputStream.write(token);
+        outputStream.flush();
+      }
+    } catch (IOException e) {
+      closeAll(sockets);
+      throw e;
+    }
+
+    Log.i(TAG, "Opened " + count + " parallel streams");
+    return sockets;
+  }
+
+  /**
+   * Server side. Reads how many extra streams the client wants and accepts that many connections that present the token.
+   */
+  static @NonNull List<Socket> accept(@NonNull InputStream primaryInput,
+                                      @NonNull OutputStream primaryOutput,
+                                      @NonNull ServerSocket serverSocket)
+      throws IOException
+  {
+    int count = primaryInput.read();
+    if (count < 1 || count > MAX_STREAMS) {
+      throw new IOException("Invalid stream count: " + count);
+    }
+
+    byte[] token = new byte[TOKEN_LENGTH];
+    new SecureRandom().nextBytes(token);
+
+    primaryOutput.write(token);
+    primaryOutput.flush();
+
+    List<Socket> sockets  = new ArrayList<>(count);
+    long         deadline = System.currentTimeMillis() + ACCEPT_TIMEOUT_MS;
+    int          timeout  = serverSocket.getSoTimeout();
+
+    try {
+      while (sockets.size() < count) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          throw new SocketTimeoutException("Only " + sockets.size() + " of " + count + " parallel streams connected");
+        }
+
+        serverSocket.setSoTimeout((int) remaining);
+        Socket socket = serverSocket.accept();
+
+        if (presentsToken(socket, token, (int) remaining)) {
+          sockets.add(socket);
+        } else {
+          Log.w(TAG, "Rejecting parallel stream with a bad token");
+          StreamUtil.close(socket);
+        }
+      }
+    } catch (IOException e) {
+      closeAll(sockets);
+      throw e;
+    } finally {
+      serverSocket.setSoTimeout(timeout);
+    }
+
+    Log.i(TAG, "Accepted " + count + " parallel streams");
+    return sockets;
+  }
+
+  static void closeAll(@NonNull List<Socket> sockets) {
+    for (Socket socket : sockets) {
+      StreamUtil.close(socket);
+    }
+  }
+
+  private static boolean presentsToken(@NonNull Socket socket, @NonNull byte[] token, int timeoutMillis) {
+    try {
+      socket.setSoTimeout(timeoutMillis);
+
+      byte[] theirToken = new byte[TOKEN_LENGTH];
+      StreamUtil.readFully(socket.getInputStream(), theirToken);
+
+      socket.setSoTimeout(0);
+      return MessageDigest.isEqual(token, theirToken);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read token from parallel stream", e);
+      return false;
+    }
+  }
+
+  interface SocketOpener {
+    @NonNull Socket open() throws IOException;
+  }
+}
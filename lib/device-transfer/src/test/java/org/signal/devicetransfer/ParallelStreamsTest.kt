@@ -0,0 +1,90 @@
+package org.signal.devicetransfer
+
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import java.net.InetAddress
+import java.net.ServerSocket
+import java.net.Socket
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+
+class ParallelStreamsTest {
+
+  private val executor = Executors.newCachedThreadPool()
+
+  private lateinit var serverSocket: ServerSocket
+  private lateinit var primaryServer: Socket
+  private lateinit var primaryClient: Socket
+
+  @Before
+  fun setUp() {
+    serverSocket = ServerSocket(0, 50, InetAddress.getLoopbackAddress())
+
+    val accepted: Future<Socket> = executor.submit<Socket> { serverSocket.accept() }
+    primaryClient = Socket(InetAddress.getLoopbackAddress(), serverSocket.localPort)
+    primaryServer = accepted.get(5, TimeUnit.SECONDS)
+  }
+
+  @After
+  fun tearDown() {
+    primaryClient.close()
+    primaryServer.close()
+    serverSocket.close()
+    executor.shutdownNow()
+  }
+
+  @Test
+  fun givenFourStreams_whenIConnect_thenIExpectEachToCarryDataToTheServer() {
+    val server = executor.submit<List<Socket>> { ParallelStreams.accept(primaryServer.getInputStream(), primaryServer.getOutputStream(), serverSocket) }
+    val client = ParallelStreams.connect(primaryClient.getInputStream(), primaryClient.getOutputStream(), 4) { openLoopback() }
+    val accepted = server.get(5, TimeUnit.SECONDS)
+
+    assertEquals(4, client.size)
+    assertEquals(4, accepted.size)
+
+    client.forEachIndexed { i, socket -> socket.getOutputStream().write(i) }
+    val received = accepted.map { it.getInputStream().read() }.sorted()
+
+    assertEquals(listOf(0, 1, 2, 3), received)
+
+    ParallelStreams.closeAll(client)
+    ParallelStreams.closeAll(accepted)
+  }
+
+  @Test
+  fun givenAConnectionWithABadToken_whenIAccept_thenIExpectItToBeRejected() {
+    val server = executor.submit<List<Socket>> { ParallelStreams.accept(primaryServer.getInputStream(), primaryServer.getOutputStream(), serverSocket) }
+
+    val intruder = openLoopback()
+    intruder.getOutputStream().write(ByteArray(32))
+    intruder.getOutputStream().flush()
+
+    val client = ParallelStreams.connect(primaryClient.getInputStream(), primaryClient.getOutputStream(), 1) { openLoopback() }
+    val accepted = server.get(5, TimeUnit.SECONDS)
+
+    assertEquals(1, accepted.size)
+    assertEquals(-1, intruder.getInputStream().read())
+
+    client[0].getOutputStream().write(byteArrayOf(1, 2, 3))
+    val received = ByteArray(3)
+    accepted[0].getInputStream().read(received)
+    assertArrayEquals(byteArrayOf(1, 2, 3), received)
+
+    intruder.close()
+    ParallelStreams.closeAll(client)
+    ParallelStreams.closeAll(accepted)
+  }
+
+  @Test(expected = IllegalArgumentException::class)
+  fun givenTooManyStreams_whenIConnect_thenIExpectAnException() {
+    ParallelStreams.connect(primaryClient.getInputStream(), primaryClient.getOutputStream(), ParallelStreams.MAX_STREAMS + 1) { openLoopback() }
+  }
+
+  private fun openLoopback(): Socket {
+    return Socket(InetAddress.getLoopbackAddress(), serverSocket.localPort)
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.glide.cache
+
+import com.bumptech.glide.load.Key
+import com.bumptech.glide.load.engine.cache.DiskCache
+import java.io.File
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A [DiskCache] that counts lookups against the cache it wraps, so we can tell how often a bind is served from the cache
+ * instead of decrypting and decoding the original attachment again.
+ *
+ * Glide only ever builds a single disk cache, so the counters are process-wide and read through [stats].
+ */
+class MeteredDiskCache(private val delegate: DiskCache) : DiskCache {
+
+  companion object {
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+    private val writes = AtomicLong()
+
+    @JvmStatic
+    fun stats(): Stats = Stats(hits = hits.get(), misses = misses.get(), writes = writes.get())
+  }
+
+  override fun get(key: Key): File? {
+    val file = delegate.get(key)
+
+    if (file != null) {
+      hits.incrementAndGet()
+    } else {
+      misses.incrementAndGet()
+    }
+
+    return file
+  }
+
+  override fun put(key: Key, writer: DiskCache.Writer) {
+    delegate.put(key) { file ->
+      writer.write(file).also { written ->
+        if (written) {
+          writes.incrementAndGet()
+        }
+      }
+    }
+  }
+
+  override fun delete(key: Key) = delegate.delete(key)
+
+  override fun clear() = delegate.clear()
+
+  class Factory(private val delegate: DiskCache.Factory) : DiskCache.Factory {
+    override fun build(): DiskCache? = delegate.build()?.let { MeteredDiskCache(it) }
+  }
+
+  data class Stats(val hits: Long, val misses: Long, val writes: Long) {
+    val hitRate: Float
+      get() = if (hits + misses == 0L) 0f else hits.toFloat() / (hits + misses)
+  }
+}
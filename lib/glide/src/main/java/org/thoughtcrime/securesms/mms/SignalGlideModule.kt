@@ -6,7 +6,11 @@ import com.bumptech.glide.Glide
 import com.bumptech.glide.GlideBuilder
 import com.bumptech.glide.Registry
 import com.bumptech.glide.annotation.GlideModule
+import com.bumptech.glide.load.engine.cache.DiskCache
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory
 import com.bumptech.glide.module.AppGlideModule
+import org.signal.core.util.mebiBytes
+import org.signal.glide.cache.MeteredDiskCache
 
 /**
  * A [GlideModule] to configure Glide for the app. This class is discovered by Glide's annotation
@@ -26,9 +30,16 @@ class SignalGlideModule : AppGlideModule() {
 
   override fun applyOptions(context: Context, builder: GlideBuilder) {
     builder.setLogLevel(Log.ERROR)
+
+    // Requests using DiskCacheStrategy.RESOURCE, like attachment thumbnails, store the downsampled result here, keyed by model
+    // and target size and encrypted with the attachment secret by the encoders in [RegisterGlideComponents]. Least recently
+    // used entries are evicted once the cache is full.
+    builder.setDiskCache(MeteredDiskCache.Factory(InternalCacheDiskCacheFactory(context, DiskCache.Factory.DEFAULT_DISK_CACHE_DIR, DISK_CACHE_SIZE)))
   }
 
   companion object {
+    private val DISK_CACHE_SIZE: Long = 250.mebiBytes.inWholeBytes
+
     @JvmStatic
     lateinit var registerGlideComponents: RegisterGlideComponents
   }
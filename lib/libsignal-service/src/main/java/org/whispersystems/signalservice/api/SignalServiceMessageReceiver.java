@@ -107,7 +107,7 @@ public class SignalServiceMessageReceiver {
     if (integrityCheck == null) throw new InvalidMessageException("No integrity check!");
     if (pointer.getKey() == null) throw new InvalidMessageException("No key!");
 
-    socket.retrieveAttachment(pointer.getCdnNumber(), Collections.emptyMap(), pointer.getRemoteId(), destination, maxSizeBytes, listener);
+    socket.retrieveAttachment(pointer.getCdnNumber(), Collections.emptyMap(), pointer.getRemoteId(), destination, maxSizeBytes, pointer.getSize().orElse(0), listener);
 
     byte[] iv = new byte[16];
     try (InputStream tempStream = new FileInputStream(destination)) {
@@ -124,6 +124,66 @@ public class SignalServiceMessageReceiver {
     );
   }
 
+  /**
+   * Retrieves a SignalServiceAttachment as a stream that decrypts while the ciphertext arrives. Incremental MACs are verified as
+   * bytes come in, so the returned stream can be written straight to its final location.
+   *
+   * Small attachments are read directly off the CDN response, and their ciphertext is never written to disk. Anything else, and anything
+   * already partially downloaded into {@code transferFile}, is downloaded into {@code transferFile} the same way as
+   * {@link #retrieveAttachment(SignalServiceAttachmentPointer, File, long, IntegrityCheck, ProgressListener)}, in parallel ranges and
+   * resuming where it left off, while the returned stream reads along behind it.
+   *
+   * Only attachments with an incremental digest can be streamed, since otherwise the MAC can only be checked after the whole
+   * ciphertext has been read. Use {@link #canStreamAttachment(SignalServiceAttachmentPointer)} to check, and fall back to
+   * {@link #retrieveAttachment(SignalServiceAttachmentPointer, File, long, IntegrityCheck, ProgressListener)} otherwise.
+   *
+   * Network failures while reading the returned stream are thrown as {@link org.signal.network.exceptions.PushNetworkException} or
+   * {@link org.signal.network.exceptions.NonSuccessfulResponseCodeException}. Integrity failures may only be detected once the final bytes have been read.
+   */
+  public InputStream retrieveAttachmentStream(SignalServiceAttachmentPointer pointer, File transferFile, long maxSizeBytes, IntegrityCheck integrityCheck, @Nullable ProgressListener listener)
+      throws IOException, InvalidMessageException, MissingConfigurationException
+  {
+    if (integrityCheck == null) throw new InvalidMessageException("No integrity check!");
+    if (pointer.getKey() == null) throw new InvalidMessageException("No key!");
+    if (!canStreamAttachment(pointer)) throw new InvalidMessageException("Attachment can't be streamed!");
+
+    long        plaintextLength  = pointer.getSize().orElse(0);
+    long        ciphertextLength = AttachmentCipherStreamUtil.getCiphertextLength(PaddingInputStream.getPaddedSize(plaintextLength));
+    InputStream cdnStream;
+
+    if (ciphertextLength >= PushServiceSocket.PARALLEL_DOWNLOAD_MIN_SIZE || transferFile.length() > 0) {
+      cdnStream = socket.retrieveAttachmentWhileDownloading(pointer.getCdnNumber(), Collections.emptyMap(), pointer.getRemoteId(), transferFile, maxSizeBytes, ciphertextLength, listener);
+    } else {
+      cdnStream = socket.retrieveAttachmentStream(pointer.getCdnNumber(), Collections.emptyMap(), pointer.getRemoteId(), maxSizeBytes, listener);
+    }
+
+    try {
+      return AttachmentCipherInputStream.createForAttachment(
+        () -> cdnStream,
+        ciphertextLength,
+        plaintextLength,
+        pointer.getKey(),
+        integrityCheck,
+        pointer.getIncrementalDigest().get(),
+        pointer.getIncrementalMacChunkSize()
+      );
+    } catch (IOException | InvalidMessageException | RuntimeException e) {
+      cdnStream.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return True if the attachment carries an incremental digest and a size, and can therefore be retrieved with
+   *         {@link #retrieveAttachmentStream(SignalServiceAttachmentPointer, File, long, IntegrityCheck, ProgressListener)}.
+   */
+  public static boolean canStreamAttachment(SignalServiceAttachmentPointer pointer) {
+    return pointer.getIncrementalDigest().isPresent() &&
+           pointer.getIncrementalDigest().get().length > 0 &&
+           pointer.getIncrementalMacChunkSize() > 0 &&
+           pointer.getSize().orElse(0) > 0;
+  }
+
   /**
    * Retrieves an archived media attachment.
    *
@@ -149,7 +209,7 @@ public class SignalServiceMessageReceiver {
       throw new InvalidMessageException("No key!");
     }
 
-    socket.retrieveAttachment(pointer.getCdnNumber(), readCredentialHeaders, pointer.getRemoteId(), archiveDestination, maxSizeBytes, listener);
+    socket.retrieveAttachment(pointer.getCdnNumber(), readCredentialHeaders, pointer.getRemoteId(), archiveDestination, maxSizeBytes, pointer.getSize().orElse(0), listener);
 
     long originalCipherLength = pointer.getSize()
                                        .filter(s -> s > 0)
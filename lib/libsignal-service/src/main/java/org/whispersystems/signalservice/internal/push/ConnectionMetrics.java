@@ -0,0 +1,173 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.signalservice.internal.push;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+
+/**
+ * Counts connection activity for each group of clients in {@link PushServiceSocket} (the service, storage and each CDN),
+ * so we can see how often a request reuses a pooled connection instead of paying for a new TCP and TLS handshake.
+ */
+public final class ConnectionMetrics {
+
+  private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+  /**
+   * @return A listener factory that attributes every call made by a client to {@code label}.
+   */
+  EventListener.Factory listenerFactory(@Nonnull String label) {
+    Counters labelCounters = counters.computeIfAbsent(label, unused -> new Counters());
+    return call -> new CountingListener(labelCounters);
+  }
+
+  /**
+   * @return A point-in-time copy of the counters, keyed and sorted by label.
+   */
+  public @Nonnull Map<String, Snapshot> getSnapshots() {
+    Map<String, Snapshot> snapshots = new TreeMap<>();
+
+    for (Map.Entry<String, Counters> entry : counters.entrySet()) {
+      snapshots.put(entry.getKey(), entry.getValue().snapshot());
+    }
+
+    return Collections.unmodifiableMap(snapshots);
+  }
+
+  public static final class Snapshot {
+
+    private final long callsInFlight;
+    private final long callsStarted;
+    private final long connectionsAcquired;
+    private final long connectionsOpened;
+    private final long tlsHandshakes;
+
+    Snapshot(long callsInFlight, long callsStarted, long connectionsAcquired, long connectionsOpened, long tlsHandshakes) {
+      this.callsInFlight       = callsInFlight;
+      this.callsStarted        = callsStarted;
+      this.connectionsAcquired = connectionsAcquired;
+      this.connectionsOpened   = connectionsOpened;
+      this.tlsHandshakes       = tlsHandshakes;
+    }
+
+    public long getCallsInFlight() {
+      return callsInFlight;
+    }
+
+    public long getCallsStarted() {
+      return callsStarted;
+    }
+
+    public long getConnectionsAcquired() {
+      return connectionsAcquired;
+    }
+
+    public long getConnectionsOpened() {
+      return connectionsOpened;
+    }
+
+    public long getTlsHandshakes() {
+      return tlsHandshakes;
+    }
+
+    /**
+     * @return The fraction of acquired connections that came out of the pool rather than being newly opened, from 0 to 1.
+     */
+    public double getReuseRate() {
+      if (connectionsAcquired == 0) {
+        return 0;
+      }
+
+      return Math.max(0, connectionsAcquired - connectionsOpened) / (double) connectionsAcquired;
+    }
+
+    @Override
+    public @Nonnull String toString() {
+      return String.format(Locale.US,
+                           "inFlight: %d, calls: %d, acquired: %d, opened: %d, tlsHandshakes: %d, reuse: %.1f%%",
+                           callsInFlight, callsStarted, connectionsAcquired, connectionsOpened, tlsHandshakes, getReuseRate() * 100);
+    }
+  }
+
+  private static final class Counters {
+    private final AtomicLong callsInFlight       = new AtomicLong();
+    private final AtomicLong callsStarted        = new AtomicLong();
+    private final AtomicLong connectionsAcquired = new AtomicLong();
+    private final AtomicLong connectionsOpened   = new AtomicLong();
+    private final AtomicLong tlsHandshakes       = new AtomicLong();
+
+    private Snapshot snapshot() {
+      return new Snapshot(callsInFlight.get(), callsStarted.get(), connectionsAcquired.get(), connectionsOpened.get(), tlsHandshakes.get());
+    }
+  }
+
+  /**
+   * One instance per call. A call ends with exactly one of callEnd or callFailed, but we guard the in-flight count anyway.
+   */
+  private static final class CountingListener extends EventListener {
+
+    private final Counters      counters;
+    private final AtomicBoolean ended = new AtomicBoolean(false);
+
+    private CountingListener(@Nonnull Counters counters) {
+      this.counters = counters;
+    }
+
+    @Override
+    public void callStart(@Nonnull Call call) {
+      counters.callsStarted.incrementAndGet();
+      counters.callsInFlight.incrementAndGet();
+    }
+
+    @Override
+    public void connectEnd(@Nonnull Call call, @Nonnull InetSocketAddress inetSocketAddress, @Nonnull Proxy proxy, @Nullable Protocol protocol) {
+      counters.connectionsOpened.incrementAndGet();
+    }
+
+    @Override
+    public void secureConnectEnd(@Nonnull Call call, @Nullable Handshake handshake) {
+      counters.tlsHandshakes.incrementAndGet();
+    }
+
+    @Override
+    public void connectionAcquired(@Nonnull Call call, @Nonnull Connection connection) {
+      counters.connectionsAcquired.incrementAndGet();
+    }
+
+    @Override
+    public void callEnd(@Nonnull Call call) {
+      onEnded();
+    }
+
+    @Override
+    public void callFailed(@Nonnull Call call, @Nonnull IOException ioe) {
+      onEnded();
+    }
+
+    private void onEnded() {
+      if (ended.compareAndSet(false, true)) {
+        counters.callsInFlight.decrementAndGet();
+      }
+    }
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.signalservice.internal.push;
+
+import org.signal.core.util.logging.Log;
+import org.signal.core.util.stream.LimitedInputStream;
+import org.signal.core.util.stream.TailerInputStream;
+import org.signal.network.exceptions.PushNetworkException;
+import org.whispersystems.signalservice.api.messages.AttachmentTransferProgress;
+import org.whispersystems.signalservice.api.messages.SignalServiceAttachment.ProgressListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Runs a download into a file on a background thread, and reads the file back while it's being written.
+ * <p>
+ * Only the prefix reported by {@link RangedCdnDownload#getContiguousLength(File)} is read, so ranges that finish out of order are picked
+ * up once the gaps before them have been filled in. If the download fails, the failure is thrown from the next read that has to wait for
+ * more data. Closing the stream cancels the download and waits for it to stop, leaving whatever it got in the file to be resumed later.
+ */
+final class DownloadTailInputStream extends FilterInputStream {
+
+  private static final String TAG = DownloadTailInputStream.class.getSimpleName();
+
+  private final File destination;
+  private final long length;
+
+  private volatile boolean   closed;
+  private          Future<?> download;
+
+  private DownloadTailInputStream(@Nonnull File destination, long length) {
+    super(new ByteArrayInputStream(new byte[0]));
+    this.destination = destination;
+    this.length      = length;
+  }
+
+  /**
+   * Starts {@code downloader} on {@code executor} and returns a stream of the first {@code length} bytes of {@code destination} as they're written.
+   */
+  static @Nonnull InputStream start(@Nonnull ExecutorService executor,
+                                    @Nonnull File destination,
+                                    long length,
+                                    @Nullable ProgressListener listener,
+                                    @Nonnull Downloader downloader)
+  {
+    DownloadTailInputStream stream = new DownloadTailInputStream(destination, length);
+
+    ProgressListener cancelingListener = new ProgressListener() {
+      @Override
+      public void onAttachmentProgress(@Nonnull AttachmentTransferProgress progress) {
+        if (listener != null) {
+          listener.onAttachmentProgress(progress);
+        }
+      }
+
+      @Override
+      public boolean shouldCancel() {
+        return stream.closed || (listener != null && listener.shouldCancel());
+      }
+    };
+
+    stream.download = executor.submit(() -> {
+      downloader.download(cancelingListener);
+      return null;
+    });
+    stream.in = new TailerInputStream(stream::openWrittenPrefix, length);
+
+    return stream;
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    super.close();
+
+    try {
+      download.get();
+    } catch (ExecutionException e) {
+      Log.i(TAG, "Download stopped: " + e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private @Nonnull InputStream openWrittenPrefix() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+
+    if (download != null && download.isDone()) {
+      try {
+        download.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        throw cause instanceof IOException ? (IOException) cause : new PushNetworkException(cause);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new PushNetworkException(e);
+      }
+
+      if (destination.length() < length) {
+        throw new PushNetworkException("Download ended at " + destination.length() + " of " + length);
+      }
+    }
+
+    if (!destination.exists()) {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    return new LimitedInputStream(new FileInputStream(destination), RangedCdnDownload.getContiguousLength(destination));
+  }
+
+  interface Downloader {
+    void download(@Nonnull ProgressListener listener) throws Exception;
+  }
+}
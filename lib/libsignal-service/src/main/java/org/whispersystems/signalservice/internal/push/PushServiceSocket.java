@@ -122,6 +122,8 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
@@ -136,7 +138,9 @@ import kotlin.Pair;
 import okhttp3.Call;
 import okhttp3.ConnectionPool;
 import okhttp3.ConnectionSpec;
+import okhttp3.Dispatcher;
 import okhttp3.Dns;
+import okhttp3.EventListener;
 import okhttp3.HttpUrl;
 import okhttp3.Interceptor;
 import okhttp3.MediaType;
@@ -197,8 +201,27 @@ public class PushServiceSocket {
 
   private static final int MAX_FOLLOW_UPS = 20;
 
-  private       long      soTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
-  private final Set<Call> connections     = new HashSet<>();
+  /** Downloads at least this large are split into {@link #PARALLEL_DOWNLOAD_RANGES} concurrently fetched byte ranges. */
+  public  static final long PARALLEL_DOWNLOAD_MIN_SIZE = 8 * 1024 * 1024;
+  private static final int  PARALLEL_DOWNLOAD_RANGES   = 4;
+
+  private static final ExecutorService RANGED_DOWNLOAD_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "signal-ranged-download");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private static final long SO_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  /** Whole-call deadline for small CDN control requests (HEADs, range probes, resumable upload bookkeeping). Transfers have none. */
+  private static final long CDN_CONTROL_CALL_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+  private static final int  MAX_IDLE_CONNECTIONS         = 20;
+  private static final long IDLE_CONNECTION_KEEP_ALIVE_S = 45;
+
+  private final Set<Call> connections = new HashSet<>();
+
+  private final ConnectionMetrics connectionMetrics = new ConnectionMetrics();
 
   private final ServiceConnectionHolder[]        serviceClients;
   private final Map<Integer, ConnectionHolder[]> cdnClientsMap;
@@ -219,9 +242,12 @@ public class PushServiceSocket {
     this.credentialsProvider       = credentialsProvider;
     this.signalAgent               = signalAgent;
     this.automaticNetworkRetry     = automaticNetworkRetry;
-    this.serviceClients            = createServiceConnectionHolders(configuration.getSignalServiceUrls(), configuration.getNetworkInterceptors(), configuration.getSocketFactory(), configuration.getProxySelector(), configuration.getDns());
-    this.cdnClientsMap             = createCdnClientsMap(configuration.getSignalCdnUrlMap(), configuration.getNetworkInterceptors(), configuration.getSocketFactory(), configuration.getProxySelector(), configuration.getDns());
-    this.storageClients            = createConnectionHolders(configuration.getSignalStorageUrls(), configuration.getNetworkInterceptors(), configuration.getSocketFactory(), configuration.getProxySelector(), configuration.getDns());
+
+    OkHttpClient baseClient = createBaseClient(configuration.getNetworkInterceptors(), configuration.getSocketFactory(), configuration.getProxySelector(), configuration.getDns());
+
+    this.serviceClients            = createServiceConnectionHolders(configuration.getSignalServiceUrls(), baseClient);
+    this.cdnClientsMap             = createCdnClientsMap(configuration.getSignalCdnUrlMap(), baseClient, connectionMetrics);
+    this.storageClients            = createConnectionHolders(configuration.getSignalStorageUrls(), baseClient, connectionMetrics.listenerFactory("storage"));
     this.random                    = new SecureRandom();
   }
 
@@ -233,6 +259,13 @@ public class PushServiceSocket {
     return credentialsProvider;
   }
 
+  /**
+   * Connection reuse, TLS handshake and in-flight call counts for the service, storage and each CDN.
+   */
+  public ConnectionMetrics getConnectionMetrics() {
+    return connectionMetrics;
+  }
+
   public RegistrationSessionMetadataResponse createVerificationSession(@Nullable String pushToken, @Nullable String mcc, @Nullable String mnc) throws IOException {
     final String jsonBody = JsonUtil.toJson(new VerificationSessionMetadataRequestBody(credentialsProvider.getE164(), pushToken, mcc, mnc));
     try (Response response = makeServiceRequest(VERIFICATION_SESSION_PATH, "POST", jsonRequestBody(jsonBody), NO_HEADERS, new RegistrationSessionResponseHandler(), SealedSenderAccess.NONE, false)) {
@@ -570,20 +603,110 @@ public class PushServiceSocket {
   public void retrieveAttachment(int cdnNumber, Map<String, String> headers, SignalServiceAttachmentRemoteId remoteId, File destination, long maxSizeBytes, ProgressListener listener)
       throws IOException, MissingConfigurationException
   {
-    final String path;
+    retrieveAttachment(cdnNumber, headers, remoteId, destination, maxSizeBytes, 0, listener);
+  }
+
+  /**
+   * @param expectedSizeBytes A hint for the size of the object. Large objects are downloaded as several byte ranges in parallel.
+   *                          Pass 0 if unknown.
+   */
+  public void retrieveAttachment(int cdnNumber, Map<String, String> headers, SignalServiceAttachmentRemoteId remoteId, File destination, long maxSizeBytes, long expectedSizeBytes, ProgressListener listener)
+      throws IOException, MissingConfigurationException
+  {
+    String path = getAttachmentPath(remoteId);
+
+    if (RangedCdnDownload.isInProgress(destination) || (expectedSizeBytes >= PARALLEL_DOWNLOAD_MIN_SIZE && destination.length() == 0)) {
+      if (downloadFromCdnInRanges(destination, cdnNumber, headers, path, maxSizeBytes, listener)) {
+        return;
+      }
+    }
+
+    downloadFromCdn(destination, cdnNumber, headers, path, maxSizeBytes, listener);
+  }
+
+  /**
+   * Downloads the attachment into {@code destination} in the background, exactly as
+   * {@link #retrieveAttachment(int, Map, SignalServiceAttachmentRemoteId, File, long, long, ProgressListener)} would, and returns a stream of the
+   * ciphertext that follows the download as it's written. Large objects are still fetched in parallel ranges, and an interrupted download still
+   * resumes from what's already in {@code destination}.
+   * <p>
+   * The caller must close the stream, which cancels the download if it hasn't finished. A failed download is thrown from the stream as a
+   * {@link PushNetworkException} or {@link NonSuccessfulResponseCodeException}.
+   *
+   * @param expectedSizeBytes The size of the object. The stream ends after this many bytes.
+   */
+  public InputStream retrieveAttachmentWhileDownloading(int cdnNumber, Map<String, String> headers, SignalServiceAttachmentRemoteId remoteId, File destination, long maxSizeBytes, long expectedSizeBytes, ProgressListener listener)
+      throws MissingConfigurationException
+  {
+    getCdnClients(cdnNumber);
+
+    return DownloadTailInputStream.start(RANGED_DOWNLOAD_EXECUTOR,
+                                         destination,
+                                         expectedSizeBytes,
+                                         listener,
+                                         downloadListener -> retrieveAttachment(cdnNumber, headers, remoteId, destination, maxSizeBytes, expectedSizeBytes, downloadListener));
+  }
+
+  /**
+   * Opens the attachment on the CDN and returns the response body as a stream, without writing anything to disk.
+   * The caller must close the stream. Any network failure while reading surfaces as a {@link PushNetworkException}.
+   */
+  public InputStream retrieveAttachmentStream(int cdnNumber, Map<String, String> headers, SignalServiceAttachmentRemoteId remoteId, long maxSizeBytes, ProgressListener listener)
+      throws IOException, MissingConfigurationException
+  {
+    ConnectionHolder connectionHolder = getRandom(getCdnClients(cdnNumber), random);
+    Request.Builder  request          = buildCdnGetRequest(connectionHolder, headers, getAttachmentPath(remoteId));
+    Call             call             = connectionHolder.getClient().newCall(request.build());
+
+    synchronized (connections) {
+      connections.add(call);
+    }
+
+    Response response = null;
+    try {
+      response = call.execute();
+
+      if (!response.isSuccessful()) {
+        throw new NonSuccessfulResponseCodeException(response.code(), "Response: " + response);
+      }
+
+      ResponseBody body = response.body();
+      if (body == null)                        throw new PushNetworkException("No response body!");
+      if (body.contentLength() > maxSizeBytes) throw new PushNetworkException("Response exceeds max size!");
+
+      return new CdnResponseInputStream(call, response, maxSizeBytes, listener);
+    } catch (NonSuccessfulResponseCodeException | PushNetworkException e) {
+      closeStreamedCall(call, response);
+      throw e;
+    } catch (IOException e) {
+      closeStreamedCall(call, response);
+      throw new PushNetworkException(e);
+    }
+  }
+
+  private void closeStreamedCall(Call call, @Nullable Response response) {
+    if (response != null) {
+      response.close();
+    }
+
+    synchronized (connections) {
+      connections.remove(call);
+    }
+  }
+
+  private static String getAttachmentPath(SignalServiceAttachmentRemoteId remoteId) throws IOException {
     if (remoteId instanceof SignalServiceAttachmentRemoteId.V2) {
-      path = String.format(Locale.US, ATTACHMENT_ID_DOWNLOAD_PATH, ((SignalServiceAttachmentRemoteId.V2) remoteId).getCdnId());
+      return String.format(Locale.US, ATTACHMENT_ID_DOWNLOAD_PATH, ((SignalServiceAttachmentRemoteId.V2) remoteId).getCdnId());
     } else if (remoteId instanceof SignalServiceAttachmentRemoteId.V4) {
       String urlEncodedKey = urlEncode(((SignalServiceAttachmentRemoteId.V4) remoteId).getCdnKey());
-      path = String.format(Locale.US, ATTACHMENT_KEY_DOWNLOAD_PATH, urlEncodedKey);
+      return String.format(Locale.US, ATTACHMENT_KEY_DOWNLOAD_PATH, urlEncodedKey);
     } else if (remoteId instanceof SignalServiceAttachmentRemoteId.Backup) {
       //noinspection PatternVariableCanBeUsed
       SignalServiceAttachmentRemoteId.Backup backupCdnRemoteId = (SignalServiceAttachmentRemoteId.Backup) remoteId;
-      path = String.format(Locale.US, ARCHIVE_MEDIA_DOWNLOAD_PATH, backupCdnRemoteId.getMediaCdnPath(), backupCdnRemoteId.getMediaId());
+      return String.format(Locale.US, ARCHIVE_MEDIA_DOWNLOAD_PATH, backupCdnRemoteId.getMediaCdnPath(), backupCdnRemoteId.getMediaId());
     } else {
       throw new IllegalArgumentException("Invalid cdnPath type: " + remoteId.getClass().getSimpleName());
     }
-    downloadFromCdn(destination, cdnNumber, headers, path, maxSizeBytes, listener);
   }
 
   public byte[] retrieveSticker(byte[] packId, int stickerId)
@@ -749,19 +872,128 @@ public class PushServiceSocket {
     }
   }
 
-  private void downloadFromCdn(OutputStream outputStream, long offset, int cdnNumber, Map<String, String> headers, String path, long maxSizeBytes, ProgressListener listener)
-      throws PushNetworkException, NonSuccessfulResponseCodeException, MissingConfigurationException {
+  /**
+   * Downloads the object as several byte ranges fetched concurrently, each written at its own offset into the destination.
+   *
+   * @return False if the CDN does not support range requests for this object, in which case nothing was downloaded and the
+   *         caller should fall back to a single-stream download.
+   */
+  private boolean downloadFromCdnInRanges(File destination, int cdnNumber, Map<String, String> headers, String path, long maxSizeBytes, ProgressListener listener)
+      throws IOException, MissingConfigurationException
+  {
+    ConnectionHolder[] cdnNumberClients = getCdnClients(cdnNumber);
+    long               totalLength      = probeCdnContentLength(cdnNumberClients, headers, path);
+
+    if (totalLength <= 0) {
+      Log.w(TAG, "CDN did not report a length for ranged download, falling back to a single stream.");
+      if (RangedCdnDownload.isInProgress(destination)) {
+        RangedCdnDownload.reset(destination);
+      }
+      return false;
+    }
+
+    if (totalLength > maxSizeBytes) {
+      throw new PushNetworkException("Response exceeds max size!");
+    }
+
+    RangedCdnDownload download = new RangedCdnDownload(destination, totalLength, PARALLEL_DOWNLOAD_RANGES);
+    download.run(RANGED_DOWNLOAD_EXECUTOR, (start, end, sink) -> downloadRangeFromCdn(cdnNumberClients, headers, path, start, end, sink), listener);
+
+    return true;
+  }
+
+  /**
+   * Requests the first byte of the object to learn its total length from the {@code Content-Range} header.
+   *
+   * @return The total length, or -1 if the CDN did not answer with a partial response.
+   */
+  private long probeCdnContentLength(ConnectionHolder[] cdnNumberClients, Map<String, String> headers, String path)
+      throws PushNetworkException, NonSuccessfulResponseCodeException
+  {
+    ConnectionHolder connectionHolder = getRandom(cdnNumberClients, random);
+    Request.Builder  request          = buildCdnGetRequest(connectionHolder, headers, path);
+
+    request.addHeader("Range", "bytes=0-0");
+
+    Call call = newCdnControlCall(connectionHolder.getClient(), request.build());
+
+    synchronized (connections) {
+      connections.add(call);
+    }
+
+    try (Response response = call.execute()) {
+      if (response.code() == 206) {
+        return RangedCdnDownload.parseTotalLength(response.header("Content-Range"));
+      } else if (response.isSuccessful()) {
+        return -1;
+      } else {
+        throw new NonSuccessfulResponseCodeException(response.code(), "Response: " + response);
+      }
+    } catch (NonSuccessfulResponseCodeException | PushNetworkException e) {
+      throw e;
+    } catch (IOException e) {
+      throw new PushNetworkException(e);
+    } finally {
+      synchronized (connections) {
+        connections.remove(call);
+      }
+    }
+  }
+
+  private void downloadRangeFromCdn(ConnectionHolder[] cdnNumberClients, Map<String, String> headers, String path, long start, long end, RangedCdnDownload.RangeSink sink)
+      throws IOException
+  {
+    ConnectionHolder connectionHolder = getRandom(cdnNumberClients, random);
+    Request.Builder  request          = buildCdnGetRequest(connectionHolder, headers, path);
+
+    request.addHeader("Range", "bytes=" + start + "-" + end);
+
+    Call call = connectionHolder.getClient().newCall(request.build());
+
+    synchronized (connections) {
+      connections.add(call);
+    }
+
+    try (Response response = call.execute()) {
+      if (response.code() == 206) {
+        ResponseBody body = response.body();
+        if (body == null) throw new PushNetworkException("No response body!");
+
+        InputStream in     = body.byteStream();
+        byte[]      buffer = new byte[32768];
+        int         read;
+
+        while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+          sink.write(buffer, read);
+        }
+      } else if (response.code() == 416) {
+        throw new RangeException(start);
+      } else if (response.isSuccessful()) {
+        throw new PushNetworkException("CDN ignored range request, code: " + response.code());
+      } else {
+        throw new NonSuccessfulResponseCodeException(response.code(), "Response: " + response);
+      }
+    } catch (NonSuccessfulResponseCodeException | PushNetworkException e) {
+      call.cancel();
+      throw e;
+    } catch (IOException e) {
+      throw new PushNetworkException(e);
+    } finally {
+      synchronized (connections) {
+        connections.remove(call);
+      }
+    }
+  }
+
+  private ConnectionHolder[] getCdnClients(int cdnNumber) throws MissingConfigurationException {
     ConnectionHolder[] cdnNumberClients = cdnClientsMap.get(cdnNumber);
     if (cdnNumberClients == null) {
       throw new MissingConfigurationException("Attempted to download from unsupported CDN number: " + cdnNumber + ", Our configuration supports: " + cdnClientsMap.keySet());
     }
-    ConnectionHolder   connectionHolder = getRandom(cdnNumberClients, random);
-    OkHttpClient       okHttpClient     = connectionHolder.getClient()
-                                                          .newBuilder()
-                                                          .connectTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                          .readTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                          .build();
+    return cdnNumberClients;
+  }
 
+  private static Request.Builder buildCdnGetRequest(ConnectionHolder connectionHolder, Map<String, String> headers, String path) {
     Request.Builder request = new Request.Builder().url(connectionHolder.getUrl() + "/" + path).get();
 
     if (connectionHolder.getHostHeader().isPresent()) {
@@ -772,6 +1004,16 @@ public class PushServiceSocket {
       request.addHeader(header.getKey(), header.getValue());
     }
 
+    return request;
+  }
+
+  private void downloadFromCdn(OutputStream outputStream, long offset, int cdnNumber, Map<String, String> headers, String path, long maxSizeBytes, ProgressListener listener)
+      throws PushNetworkException, NonSuccessfulResponseCodeException, MissingConfigurationException {
+    ConnectionHolder[] cdnNumberClients = getCdnClients(cdnNumber);
+    ConnectionHolder   connectionHolder = getRandom(cdnNumberClients, random);
+    OkHttpClient       okHttpClient     = connectionHolder.getClient();
+    Request.Builder    request          = buildCdnGetRequest(connectionHolder, headers, path);
+
     if (offset > 0) {
       Log.i(TAG, "Starting download from CDN with offset " + offset);
       request.addHeader("Range", "bytes=" + offset + "-");
@@ -830,11 +1072,7 @@ public class PushServiceSocket {
       throw new MissingConfigurationException("Attempted to download from unsupported CDN number: " + cdnNumber + ", Our configuration supports: " + cdnClientsMap.keySet());
     }
     ConnectionHolder   connectionHolder = getRandom(cdnNumberClients, random);
-    OkHttpClient       okHttpClient     = connectionHolder.getClient()
-                                                          .newBuilder()
-                                                          .connectTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                          .readTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                          .build();
+    OkHttpClient       okHttpClient     = connectionHolder.getClient();
 
     Request.Builder request = new Request.Builder().url(connectionHolder.getUrl() + "/" + path).head();
 
@@ -846,7 +1084,7 @@ public class PushServiceSocket {
       request.addHeader(header.getKey(), header.getValue());
     }
 
-    Call call = okHttpClient.newCall(request.build());
+    Call call = newCdnControlCall(okHttpClient, request.build());
 
     synchronized (connections) {
       connections.add(call);
@@ -881,11 +1119,7 @@ public class PushServiceSocket {
       throws PushNetworkException, NonSuccessfulResponseCodeException
   {
     ConnectionHolder connectionHolder = getRandom(cdnClientsMap.get(0), random);
-    OkHttpClient     okHttpClient     = connectionHolder.getClient()
-                                                        .newBuilder()
-                                                        .connectTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                        .readTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                        .build();
+    OkHttpClient     okHttpClient     = connectionHolder.getClient();
 
     DigestingRequestBody file = new DigestingRequestBody(data, outputStreamFactory, contentType, length, incremental, progressListener, cancelationSignal, 0);
 
@@ -936,11 +1170,7 @@ public class PushServiceSocket {
 
   public String getResumableUploadUrl(AttachmentUploadForm uploadForm, @Nullable String checksumSha256) throws IOException {
     ConnectionHolder connectionHolder = getRandom(cdnClientsMap.get(uploadForm.cdn), random);
-    OkHttpClient     okHttpClient     = connectionHolder.getClient()
-                                                        .newBuilder()
-                                                        .connectTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                        .readTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                        .build();
+    OkHttpClient     okHttpClient     = connectionHolder.getClient();
 
     Request.Builder request = new Request.Builder().url(buildConfiguredUrl(connectionHolder, uploadForm.signedUploadLocation))
                                                    .post(RequestBody.create(null, ""));
@@ -969,7 +1199,7 @@ public class PushServiceSocket {
       throw new AssertionError("Unknown CDN version: " + uploadForm.cdn);
     }
 
-    Call call = okHttpClient.newCall(request.build());
+    Call call = newCdnControlCall(okHttpClient, request.build());
 
     synchronized (connections) {
       connections.add(call);
@@ -998,11 +1228,7 @@ public class PushServiceSocket {
       throws IOException
   {
     ConnectionHolder     connectionHolder = getRandom(cdnClientsMap.get(3), random);
-    OkHttpClient         okHttpClient     = connectionHolder.getClient()
-                                                            .newBuilder()
-                                                            .connectTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                            .readTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                            .build();
+    OkHttpClient         okHttpClient     = connectionHolder.getClient();
     DigestingRequestBody file             = new DigestingRequestBody(attachmentData.getData(), attachmentData.getOutputStreamFactory(), "application/offset+octet-stream", attachmentData.getDataSize(), attachmentData.getIncremental(), attachmentData.getListener(), attachmentData.getCancelationSignal(), 0);
 
     Request.Builder request = new Request.Builder().url(buildConfiguredUrl(connectionHolder, uploadForm.signedUploadLocation))
@@ -1063,11 +1289,7 @@ public class PushServiceSocket {
 
   private AttachmentDigest uploadToCdn2(String resumableUrl, InputStream data, String contentType, long length, boolean incremental, OutputStreamFactory outputStreamFactory, ProgressListener progressListener, CancelationSignal cancelationSignal) throws IOException {
     ConnectionHolder connectionHolder = getRandom(cdnClientsMap.get(2), random);
-    OkHttpClient     okHttpClient     = connectionHolder.getClient()
-                                                        .newBuilder()
-                                                        .connectTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                        .readTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                        .build();
+    OkHttpClient     okHttpClient     = connectionHolder.getClient();
 
     ResumeInfo           resumeInfo = getResumeInfoCdn2(resumableUrl, length);
     DigestingRequestBody file       = new DigestingRequestBody(data, outputStreamFactory, contentType, length, incremental, progressListener, cancelationSignal, resumeInfo.contentStart);
@@ -1135,11 +1357,7 @@ public class PushServiceSocket {
       throws IOException
   {
     ConnectionHolder connectionHolder = getRandom(cdnClientsMap.get(3), random);
-    OkHttpClient     okHttpClient     = connectionHolder.getClient()
-                                                        .newBuilder()
-                                                        .connectTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                        .readTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                        .build();
+    OkHttpClient     okHttpClient     = connectionHolder.getClient();
 
     ResumeInfo           resumeInfo = getResumeInfoCdn3(resumableUrl, headers);
     DigestingRequestBody file       = new DigestingRequestBody(data, outputStreamFactory, contentType, length, incremental, progressListener, cancelationSignal, resumeInfo.contentStart);
@@ -1196,11 +1414,7 @@ public class PushServiceSocket {
 
   private ResumeInfo getResumeInfoCdn2(String resumableUrl, long contentLength) throws IOException {
     ConnectionHolder connectionHolder = getRandom(cdnClientsMap.get(2), random);
-    OkHttpClient     okHttpClient     = connectionHolder.getClient()
-                                                        .newBuilder()
-                                                        .connectTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                        .readTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                        .build();
+    OkHttpClient     okHttpClient     = connectionHolder.getClient();
 
     final long   offset;
     final String contentRange;
@@ -1213,7 +1427,7 @@ public class PushServiceSocket {
       request.header("host", connectionHolder.getHostHeader().get());
     }
 
-    Call call = okHttpClient.newCall(request.build());
+    Call call = newCdnControlCall(okHttpClient, request.build());
 
     synchronized (connections) {
       connections.add(call);
@@ -1253,11 +1467,7 @@ public class PushServiceSocket {
 
   private ResumeInfo getResumeInfoCdn3(String resumableUrl, Map<String, String> headers) throws IOException {
     ConnectionHolder connectionHolder = getRandom(cdnClientsMap.get(3), random);
-    OkHttpClient     okHttpClient     = connectionHolder.getClient()
-                                                        .newBuilder()
-                                                        .connectTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                        .readTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                        .build();
+    OkHttpClient     okHttpClient     = connectionHolder.getClient();
 
     final long   offset;
 
@@ -1273,7 +1483,7 @@ public class PushServiceSocket {
       request.header("host", connectionHolder.getHostHeader().get());
     }
 
-    Call call = okHttpClient.newCall(request.build());
+    Call call = newCdnControlCall(okHttpClient, request.build());
 
     synchronized (connections) {
       connections.add(call);
@@ -1475,13 +1685,8 @@ public class PushServiceSocket {
 
   private OkHttpClient buildOkHttpClient(boolean unidentified) {
     ServiceConnectionHolder connectionHolder = (ServiceConnectionHolder) getRandom(serviceClients, random);
-    OkHttpClient            baseClient       = unidentified ? connectionHolder.getUnidentifiedClient() : connectionHolder.getClient();
 
-    return baseClient.newBuilder()
-                     .connectTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                     .readTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                     .retryOnConnectionFailure(automaticNetworkRetry)
-                     .build();
+    return unidentified ? connectionHolder.getUnidentifiedServiceClient() : connectionHolder.getServiceClient();
   }
 
   private Request buildServiceRequest(String urlFragment,
@@ -1530,11 +1735,7 @@ public class PushServiceSocket {
       throws PushNetworkException, NonSuccessfulResponseCodeException
   {
     ConnectionHolder connectionHolder = getRandom(storageClients, random);
-    OkHttpClient     okHttpClient     = connectionHolder.getClient()
-                                                        .newBuilder()
-                                                        .connectTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                        .readTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                        .build();
+    OkHttpClient     okHttpClient     = connectionHolder.getClient();
 
     Request.Builder request = new Request.Builder().url(connectionHolder.getUrl() + path);
     request.method(method, body);
@@ -1601,13 +1802,8 @@ public class PushServiceSocket {
   }
 
   public CallingResponse makeCallingRequest(long requestId, String url, String httpMethod, List<Pair<String, String>> headers, byte[] body) {
-    ConnectionHolder connectionHolder = getRandom(serviceClients, random);
-    OkHttpClient     okHttpClient     = connectionHolder.getClient()
-                                                        .newBuilder()
-                                                        .followRedirects(false)
-                                                        .connectTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                        .readTimeout(soTimeoutMillis, TimeUnit.MILLISECONDS)
-                                                        .build();
+    ServiceConnectionHolder connectionHolder = (ServiceConnectionHolder) getRandom(serviceClients, random);
+    OkHttpClient            okHttpClient     = connectionHolder.getCallingClient();
 
     RequestBody     requestBody = body != null ? RequestBody.create(null, body) : null;
     Request.Builder builder     = new Request.Builder()
@@ -1650,33 +1846,26 @@ public class PushServiceSocket {
     return new CallingResponse.Error(requestId, new IOException("Redirect limit exceeded"));
   }
 
-  private ServiceConnectionHolder[] createServiceConnectionHolders(SignalUrl[] urls,
-                                                                   List<Interceptor> interceptors,
-                                                                   SocketFactory socketFactory,
-                                                                   ProxySelector proxySelector,
-                                                                   Dns dns)
-  {
+  private ServiceConnectionHolder[] createServiceConnectionHolders(SignalUrl[] urls, OkHttpClient baseClient) {
     List<ServiceConnectionHolder> serviceConnectionHolders = new LinkedList<>();
 
     for (SignalUrl url : urls) {
-      serviceConnectionHolders.add(new ServiceConnectionHolder(createConnectionClient(url, interceptors, socketFactory, proxySelector, dns),
-                                                               createConnectionClient(url, interceptors, socketFactory, proxySelector, dns),
-                                                               url.getUrl(), url.getHostHeader()));
+      serviceConnectionHolders.add(new ServiceConnectionHolder(createConnectionClient(baseClient, url, connectionMetrics.listenerFactory("service")),
+                                                               createConnectionClient(baseClient, url, connectionMetrics.listenerFactory("service-unidentified")),
+                                                               url.getUrl(), url.getHostHeader(), automaticNetworkRetry));
     }
 
     return serviceConnectionHolders.toArray(new ServiceConnectionHolder[0]);
   }
 
   private static Map<Integer, ConnectionHolder[]> createCdnClientsMap(final Map<Integer, SignalCdnUrl[]> signalCdnUrlMap,
-                                                                      final List<Interceptor> interceptors,
-                                                                      final SocketFactory socketFactory,
-                                                                      final ProxySelector proxySelector,
-                                                                      final Dns dns) {
+                                                                      final OkHttpClient baseClient,
+                                                                      final ConnectionMetrics connectionMetrics) {
     validateConfiguration(signalCdnUrlMap);
     final Map<Integer, ConnectionHolder[]> result = new HashMap<>();
     for (Map.Entry<Integer, SignalCdnUrl[]> entry : signalCdnUrlMap.entrySet()) {
       result.put(entry.getKey(),
-                 createConnectionHolders(entry.getValue(), interceptors, socketFactory, proxySelector, dns));
+                 createConnectionHolders(entry.getValue(), baseClient, connectionMetrics.listenerFactory("cdn" + entry.getKey())));
     }
     return Collections.unmodifiableMap(result);
   }
@@ -1687,46 +1876,66 @@ public class PushServiceSocket {
     }
   }
 
-  private static ConnectionHolder[] createConnectionHolders(SignalUrl[] urls, List<Interceptor> interceptors, SocketFactory socketFactory, ProxySelector proxySelector, Dns dns) {
+  private static ConnectionHolder[] createConnectionHolders(SignalUrl[] urls, OkHttpClient baseClient, EventListener.Factory eventListenerFactory) {
     List<ConnectionHolder> connectionHolders = new LinkedList<>();
 
     for (SignalUrl url : urls) {
-      connectionHolders.add(new ConnectionHolder(createConnectionClient(url, interceptors, socketFactory, proxySelector, dns), url.getUrl(), url.getHostHeader()));
+      connectionHolders.add(new ConnectionHolder(createConnectionClient(baseClient, url, eventListenerFactory), url.getUrl(), url.getHostHeader()));
     }
 
     return connectionHolders.toArray(new ConnectionHolder[0]);
   }
 
-  private static OkHttpClient createConnectionClient(SignalUrl url, List<Interceptor> interceptors, SocketFactory socketFactory, ProxySelector proxySelector, Dns dns) {
+  /**
+   * Every client is derived from this one, so they all share a single {@link ConnectionPool} and {@link Dispatcher}.
+   * Pooled connections are still never shared between clients: each client gets its own SSL socket factory below, and
+   * OkHttp only reuses a connection for an address with the same socket factory. That keeps unidentified requests off of
+   * identified connections.
+   */
+  private static OkHttpClient createBaseClient(List<Interceptor> interceptors, SocketFactory socketFactory, ProxySelector proxySelector, Dns dns) {
+    OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                                                   .socketFactory(socketFactory)
+                                                   .proxySelector(proxySelector)
+                                                   .dns(dns)
+                                                   .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, IDLE_CONNECTION_KEEP_ALIVE_S, TimeUnit.SECONDS))
+                                                   .dispatcher(new Dispatcher())
+                                                   .connectTimeout(SO_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                                                   .readTimeout(SO_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+    for (Interceptor interceptor : interceptors) {
+      builder.addInterceptor(interceptor);
+    }
+
+    return builder.build();
+  }
+
+  private static OkHttpClient createConnectionClient(OkHttpClient baseClient, SignalUrl url, EventListener.Factory eventListenerFactory) {
     try {
       TrustManager[] trustManagers = BlacklistingTrustManager.createFor(url.getTrustStore());
 
       SSLContext context = SSLContext.getInstance("TLS");
       context.init(null, trustManagers, null);
 
-      OkHttpClient.Builder builder = new OkHttpClient.Builder()
-                                                     .socketFactory(socketFactory)
-                                                     .proxySelector(proxySelector)
-                                                     .sslSocketFactory(new Tls12SocketFactory(context.getSocketFactory()), (X509TrustManager)trustManagers[0])
-                                                     .connectionSpecs(url.getConnectionSpecs().orElse(Util.immutableList(ConnectionSpec.RESTRICTED_TLS)))
-                                                     .dns(dns);
-
-      builder.sslSocketFactory(new Tls12SocketFactory(context.getSocketFactory()), (X509TrustManager)trustManagers[0])
-             .connectionSpecs(url.getConnectionSpecs().orElse(Util.immutableList(ConnectionSpec.RESTRICTED_TLS)))
-             .build();
-
-      builder.connectionPool(new ConnectionPool(5, 45, TimeUnit.SECONDS));
-
-      for (Interceptor interceptor : interceptors) {
-        builder.addInterceptor(interceptor);
-      }
-
-      return builder.build();
+      return baseClient.newBuilder()
+                       .sslSocketFactory(new Tls12SocketFactory(context.getSocketFactory()), (X509TrustManager)trustManagers[0])
+                       .connectionSpecs(url.getConnectionSpecs().orElse(Util.immutableList(ConnectionSpec.RESTRICTED_TLS)))
+                       .eventListenerFactory(eventListenerFactory)
+                       .build();
     } catch (NoSuchAlgorithmException | KeyManagementException e) {
       throw new AssertionError(e);
     }
   }
 
+  /**
+   * Starts a small control request on a CDN. Unlike a transfer, these should finish quickly end to end, so they get a
+   * whole-call deadline on top of the client's connect and read timeouts.
+   */
+  private static Call newCdnControlCall(OkHttpClient client, Request request) {
+    Call call = client.newCall(request);
+    call.timeout().timeout(CDN_CONTROL_CALL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    return call;
+  }
+
   private String getAuthorizationHeader(CredentialsProvider credentialsProvider) {
     try {
       String identifier = credentialsProvider.getAci() != null ? credentialsProvider.getAci().toString() : credentialsProvider.getE164();
@@ -1871,17 +2080,97 @@ public class PushServiceSocket {
     }
   }
 
+  /**
+   * Wraps a streamed CDN response body, enforcing the size limit, reporting progress and translating read failures into
+   * {@link PushNetworkException}s so callers can tell them apart from failures further down the pipeline.
+   */
+  private final class CdnResponseInputStream extends InputStream {
+
+    private final Call             call;
+    private final Response         response;
+    private final InputStream      in;
+    private final long             contentLength;
+    private final long             maxSizeBytes;
+    private final ProgressListener listener;
+
+    private long    totalRead;
+    private boolean closed;
+
+    private CdnResponseInputStream(Call call, Response response, long maxSizeBytes, @Nullable ProgressListener listener) {
+      this.call          = call;
+      this.response      = response;
+      this.in            = response.body().byteStream();
+      this.contentLength = response.body().contentLength();
+      this.maxSizeBytes  = maxSizeBytes;
+      this.listener      = listener;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] buffer = new byte[1];
+      int    read   = read(buffer, 0, 1);
+
+      return read == -1 ? -1 : buffer[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int read;
+      try {
+        read = in.read(buffer, offset, length);
+      } catch (IOException e) {
+        throw new PushNetworkException(e);
+      }
+
+      if (read == -1) {
+        return -1;
+      }
+
+      if ((totalRead += read) > maxSizeBytes) throw new PushNetworkException("Response exceeded max size!");
+
+      if (listener != null) {
+        listener.onAttachmentProgress(new AttachmentTransferProgress(contentLength > 0 ? contentLength : maxSizeBytes, totalRead));
+        if (listener.shouldCancel()) {
+          call.cancel();
+          throw new PushNetworkException("Canceled by listener check.");
+        }
+      }
+
+      return read;
+    }
+
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        closeStreamedCall(call, response);
+      }
+    }
+  }
+
   private static class ServiceConnectionHolder extends ConnectionHolder {
 
-    private final OkHttpClient unidentifiedClient;
+    private final OkHttpClient serviceClient;
+    private final OkHttpClient unidentifiedServiceClient;
+    private final OkHttpClient callingClient;
 
-    private ServiceConnectionHolder(OkHttpClient identifiedClient, OkHttpClient unidentifiedClient, String url, Optional<String> hostHeader) {
+    private ServiceConnectionHolder(OkHttpClient identifiedClient, OkHttpClient unidentifiedClient, String url, Optional<String> hostHeader, boolean automaticNetworkRetry) {
       super(identifiedClient, url, hostHeader);
-      this.unidentifiedClient = unidentifiedClient;
+      this.serviceClient             = identifiedClient.newBuilder().retryOnConnectionFailure(automaticNetworkRetry).build();
+      this.unidentifiedServiceClient = unidentifiedClient.newBuilder().retryOnConnectionFailure(automaticNetworkRetry).build();
+      this.callingClient             = identifiedClient.newBuilder().followRedirects(false).build();
+    }
+
+    OkHttpClient getServiceClient() {
+      return serviceClient;
+    }
+
+    OkHttpClient getUnidentifiedServiceClient() {
+      return unidentifiedServiceClient;
     }
 
-    OkHttpClient getUnidentifiedClient() {
-      return unidentifiedClient;
+    OkHttpClient getCallingClient() {
+      return callingClient;
     }
   }
 
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.signalservice.internal.push;
+
+import org.signal.core.util.logging.Log;
+import org.signal.network.exceptions.PushNetworkException;
+import org.whispersystems.signalservice.api.messages.AttachmentTransferProgress;
+import org.whispersystems.signalservice.api.messages.SignalServiceAttachment.ProgressListener;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Downloads a CDN object as N byte ranges in parallel, writing each range at its offset into a
+ * preallocated destination file.
+ * <p>
+ * Per-range progress is tracked in a small sidecar file next to the destination, so an interrupted
+ * download resumes each range where it left off instead of starting over.
+ * <p>
+ * Until the download finishes, only the bytes reported by {@link #getContiguousLength(File)} can be
+ * trusted. The rest of the file is zeros where ranges haven't been filled in yet.
+ */
+public final class RangedCdnDownload {
+
+  private static final String TAG = RangedCdnDownload.class.getSimpleName();
+
+  private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+
+  private static final String STATE_SUFFIX  = ".ranges";
+  private static final int    STATE_VERSION = 1;
+  private static final int    STATE_HEADER  = 4 + 8 + 4;
+
+  /** How much of a range is written between updates to its persisted progress, each of which has to sync the data to disk first. */
+  private static final long STATE_FLUSH_INTERVAL = 256 * 1024;
+
+  private final File   destination;
+  private final File   stateFile;
+  private final long   totalLength;
+  private final long[] rangeStarts;
+  private final long[] rangeEnds;
+  private final long[] completed;
+  private final long[] persisted;
+
+  RangedCdnDownload(@Nonnull File destination, long totalLength, int rangeCount) {
+    if (totalLength <= 0) throw new IllegalArgumentException("Invalid length: " + totalLength);
+    if (rangeCount <= 0)  throw new IllegalArgumentException("Invalid range count: " + rangeCount);
+
+    int  count     = (int) Math.min(rangeCount, totalLength);
+    long rangeSize = totalLength / count;
+
+    this.destination = destination;
+    this.stateFile   = getStateFile(destination);
+    this.totalLength = totalLength;
+    this.rangeStarts = new long[count];
+    this.rangeEnds   = new long[count];
+    this.completed   = new long[count];
+    this.persisted   = new long[count];
+
+    for (int i = 0; i < count; i++) {
+      rangeStarts[i] = i * rangeSize;
+      rangeEnds[i]   = i == count - 1 ? totalLength - 1 : (i + 1) * rangeSize - 1;
+    }
+  }
+
+  /**
+   * @return True if a ranged download into this destination was started and has not finished yet.
+   */
+  static boolean isInProgress(@Nonnull File destination) {
+    return getStateFile(destination).exists();
+  }
+
+  /**
+   * Discards any ranged download progress, leaving the destination empty.
+   */
+  static void reset(@Nonnull File destination) throws IOException {
+    // Truncate first, so that nobody reading along sees the preallocated zeros without the state that says they aren't data
+    try (RandomAccessFile file = new RandomAccessFile(destination, "rw")) {
+      file.setLength(0);
+    }
+
+    File stateFile = getStateFile(destination);
+
+    if (stateFile.exists() && !stateFile.delete()) {
+      throw new IOException("Failed to delete range state file");
+    }
+  }
+
+  /**
+   * Safe to call while a download into this destination is running, e.g. to play back what's there so far.
+   *
+   * @return The number of bytes at the start of the destination that hold downloaded data with no gaps. Without a ranged download in
+   *         progress that's the whole file. Otherwise it's every finished range plus however far the first unfinished one got.
+   */
+  public static long getContiguousLength(@Nonnull File destination) {
+    File stateFile = getStateFile(destination);
+
+    if (!stateFile.exists()) {
+      return destination.length();
+    }
+
+    try (RandomAccessFile state = new RandomAccessFile(stateFile, "r")) {
+      if (state.length() < STATE_HEADER || state.readInt() != STATE_VERSION) {
+        return 0;
+      }
+
+      long totalLength = state.readLong();
+      int  rangeCount  = state.readInt();
+
+      if (totalLength <= 0 || rangeCount <= 0 || state.length() != STATE_HEADER + 8L * rangeCount) {
+        return 0;
+      }
+
+      long rangeSize  = totalLength / rangeCount;
+      long contiguous = 0;
+
+      for (int i = 0; i < rangeCount; i++) {
+        long rangeLength = i == rangeCount - 1 ? totalLength - i * rangeSize : rangeSize;
+        long completed   = Math.max(0, Math.min(state.readLong(), rangeLength));
+
+        contiguous += completed;
+
+        if (completed < rangeLength) {
+          break;
+        }
+      }
+
+      return contiguous;
+    } catch (FileNotFoundException e) {
+      // The download finished while we were looking
+      return destination.length();
+    } catch (IOException e) {
+      // The state is being rewritten for a fresh download, so nothing's been downloaded yet
+      return 0;
+    }
+  }
+
+  /**
+   * Parses the total object length out of a {@code Content-Range: bytes a-b/total} header.
+   *
+   * @return The total length, or -1 if the header is missing or the length is unknown.
+   */
+  static long parseTotalLength(@Nullable String contentRange) {
+    if (contentRange == null) {
+      return -1;
+    }
+
+    Matcher matcher = CONTENT_RANGE_PATTERN.matcher(contentRange.trim());
+    if (!matcher.matches()) {
+      return -1;
+    }
+
+    try {
+      return Long.parseLong(matcher.group(3));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  int getRangeCount() {
+    return rangeStarts.length;
+  }
+
+  /**
+   * Fetches every incomplete range concurrently on {@code executor} and blocks until all of them finish.
+   * On success the sidecar state is removed and the destination holds the full object.
+   */
+  void run(@Nonnull ExecutorService executor, @Nonnull RangeFetcher fetcher, @Nullable ProgressListener listener) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(destination, "rw");
+         RandomAccessFile state = new RandomAccessFile(stateFile, "rw"))
+    {
+      FileChannel dataChannel  = file.getChannel();
+      FileChannel stateChannel = state.getChannel();
+
+      if (!restoreState(stateChannel, file.length())) {
+        Log.i(TAG, "Starting ranged download of " + totalLength + " bytes in " + rangeStarts.length + " ranges");
+        file.setLength(totalLength);
+        writeState(stateChannel);
+      } else {
+        Log.i(TAG, "Resuming ranged download of " + totalLength + " bytes, " + sum(completed) + " already downloaded");
+      }
+
+      AtomicLong    transferred = new AtomicLong(sum(completed));
+      AtomicBoolean canceled    = new AtomicBoolean(false);
+      List<Future<?>> futures   = new ArrayList<>(rangeStarts.length);
+
+      for (int i = 0; i < rangeStarts.length; i++) {
+        if (rangeStarts[i] + completed[i] > rangeEnds[i]) {
+          continue;
+        }
+
+        final int range = i;
+        futures.add(executor.submit(() -> {
+          try {
+            fetchRange(range, fetcher, dataChannel, stateChannel, transferred, canceled, listener);
+          } catch (IOException | RuntimeException e) {
+            canceled.set(true);
+            throw e;
+          }
+          return null;
+        }));
+      }
+
+      awaitAll(futures, canceled);
+    }
+
+    if (!stateFile.delete()) {
+      Log.w(TAG, "Failed to delete range state file");
+    }
+  }
+
+  private void fetchRange(int range,
+                          @Nonnull RangeFetcher fetcher,
+                          @Nonnull FileChannel dataChannel,
+                          @Nonnull FileChannel stateChannel,
+                          @Nonnull AtomicLong transferred,
+                          @Nonnull AtomicBoolean canceled,
+                          @Nullable ProgressListener listener)
+      throws IOException
+  {
+    long start = rangeStarts[range] + completed[range];
+    long end   = rangeEnds[range];
+
+    try {
+      fetcher.fetch(start, end, (buffer, length) -> {
+        if (canceled.get()) {
+          throw new PushNetworkException("Ranged download canceled.");
+        }
+
+        long position = rangeStarts[range] + completed[range];
+        if (position + length - 1 > end) {
+          throw new PushNetworkException("Range " + range + " returned more data than requested!");
+        }
+
+        ByteBuffer source = ByteBuffer.wrap(buffer, 0, length);
+        while (source.hasRemaining()) {
+          position += dataChannel.write(source, position);
+        }
+
+        completed[range] += length;
+
+        if (completed[range] - persisted[range] >= STATE_FLUSH_INTERVAL || rangeStarts[range] + completed[range] > end) {
+          persistRangeState(dataChannel, stateChannel, range);
+        }
+
+        if (listener == null) {
+          transferred.addAndGet(length);
+        } else {
+          synchronized (listener) {
+            listener.onAttachmentProgress(new AttachmentTransferProgress(totalLength, transferred.addAndGet(length)));
+            if (listener.shouldCancel()) {
+              canceled.set(true);
+              throw new PushNetworkException("Canceled by listener check.");
+            }
+          }
+        }
+      });
+    } finally {
+      if (completed[range] > persisted[range]) {
+        try {
+          persistRangeState(dataChannel, stateChannel, range);
+        } catch (IOException e) {
+          Log.w(TAG, "Failed to save progress of range " + range, e);
+        }
+      }
+    }
+
+    if (rangeStarts[range] + completed[range] <= end) {
+      throw new PushNetworkException("Range " + range + " ended early at " + (rangeStarts[range] + completed[range]) + " of " + end);
+    }
+  }
+
+  private static void awaitAll(@Nonnull List<Future<?>> futures, @Nonnull AtomicBoolean canceled) throws IOException {
+    IOException failure = null;
+
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        canceled.set(true);
+        if (failure == null) {
+          failure = e.getCause() instanceof IOException ? (IOException) e.getCause() : new PushNetworkException(e.getCause());
+        }
+      } catch (CancellationException e) {
+        canceled.set(true);
+        if (failure == null) {
+          failure = new PushNetworkException(e);
+        }
+      } catch (InterruptedException e) {
+        canceled.set(true);
+        Thread.currentThread().interrupt();
+        if (failure == null) {
+          failure = new PushNetworkException(e);
+        }
+      }
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * @return True if valid state for this exact object and range layout was found and loaded.
+   */
+  private boolean restoreState(@Nonnull FileChannel stateChannel, long destinationLength) throws IOException {
+    int expectedSize = STATE_HEADER + 8 * rangeStarts.length;
+
+    if (stateChannel.size() != expectedSize || destinationLength != totalLength) {
+      return false;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(expectedSize);
+    while (buffer.hasRemaining()) {
+      if (stateChannel.read(buffer, buffer.position()) < 0) {
+        return false;
+      }
+    }
+    buffer.flip();
+
+    if (buffer.getInt() != STATE_VERSION || buffer.getLong() != totalLength || buffer.getInt() != rangeStarts.length) {
+      return false;
+    }
+
+    for (int i = 0; i < completed.length; i++) {
+      long value = buffer.getLong();
+      if (value < 0 || value > rangeEnds[i] - rangeStarts[i] + 1) {
+        return false;
+      }
+      completed[i] = value;
+      persisted[i] = value;
+    }
+
+    return true;
+  }
+
+  private void writeState(@Nonnull FileChannel stateChannel) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(STATE_HEADER + 8 * rangeStarts.length);
+    buffer.putInt(STATE_VERSION);
+    buffer.putLong(totalLength);
+    buffer.putInt(rangeStarts.length);
+
+    for (long value : completed) {
+      buffer.putLong(value);
+    }
+    buffer.flip();
+
+    stateChannel.truncate(0);
+    while (buffer.hasRemaining()) {
+      stateChannel.write(buffer, buffer.position());
+    }
+  }
+
+  /**
+   * Records how far a range has gotten. The data is synced to disk first, so the state never claims bytes that a crash could still lose.
+   */
+  private void persistRangeState(@Nonnull FileChannel dataChannel, @Nonnull FileChannel stateChannel, int range) throws IOException {
+    dataChannel.force(false);
+
+    ByteBuffer buffer   = ByteBuffer.allocate(8).putLong(0, completed[range]);
+    long       position = STATE_HEADER + 8L * range;
+
+    while (buffer.hasRemaining()) {
+      position += stateChannel.write(buffer, position);
+    }
+
+    persisted[range] = completed[range];
+  }
+
+  private static long sum(long[] values) {
+    long total = 0;
+    for (long value : values) {
+      total += value;
+    }
+    return total;
+  }
+
+  /**
+   * @return The sidecar file that tracks the progress of a ranged download into {@code destination}. It may not exist.
+   */
+  public static @Nonnull File getStateFile(@Nonnull File destination) {
+    return new File(destination.getPath() + STATE_SUFFIX);
+  }
+
+  /**
+   * Fetches a single byte range from the CDN.
+   */
+  interface RangeFetcher {
+    /**
+     * Fetches bytes {@code start} through {@code end} (inclusive), handing them to {@code sink} in order.
+     */
+    void fetch(long start, long end, @Nonnull RangeSink sink) throws IOException;
+  }
+
+  interface RangeSink {
+    void write(@Nonnull byte[] buffer, int length) throws IOException;
+  }
+}
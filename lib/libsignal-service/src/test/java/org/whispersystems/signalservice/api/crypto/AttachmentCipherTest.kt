@@ -104,6 +104,34 @@ class AttachmentCipherTest {
     cipherFile.delete()
   }
 
+  @Test
+  fun attachment_encryptDecrypt_incremental_singlePassStream() {
+    val key = Util.getSecretBytes(64)
+    val plaintextInput = Util.getSecretBytes(MEBIBYTE + 123)
+    val plaintextHash = MessageDigest.getInstance("SHA-256").digest(plaintextInput)
+
+    val encryptResult = encryptData(plaintextInput, key, withIncremental = true)
+    val streamLength = AttachmentCipherStreamUtil.getCiphertextLength(PaddingInputStream.getPaddedSize(plaintextInput.size.toLong()))
+    assertThat(streamLength).isEqualTo(encryptResult.ciphertext.size.toLong())
+
+    var opens = 0
+    val inputStream = AttachmentCipherInputStream.createForAttachment(
+      streamSupplier = {
+        opens++
+        ByteArrayInputStream(encryptResult.ciphertext)
+      },
+      streamLength = streamLength,
+      plaintextLength = plaintextInput.size.toLong(),
+      combinedKeyMaterial = key,
+      integrityCheck = IntegrityCheck(encryptedDigest = encryptResult.digest, plaintextHash = plaintextHash),
+      incrementalDigest = encryptResult.incrementalDigest,
+      incrementalMacChunkSize = encryptResult.chunkSizeChoice
+    )
+
+    assertThat(inputStream.readFully()).isEqualTo(plaintextInput)
+    assertThat(opens).isEqualTo(1)
+  }
+
   @Ignore("Useful when making changes, otherwise a bit slow.")
   @Test
   fun attachment_encryptDecrypt_skipAll_manyFileSizes() {
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.signalservice.internal.push
+
+import assertk.assertThat
+import assertk.assertions.containsExactly
+import assertk.assertions.isEqualTo
+import io.mockk.mockk
+import okhttp3.Call
+import okhttp3.Connection
+import okhttp3.Protocol
+import org.junit.Test
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.net.Proxy
+
+class ConnectionMetricsTest {
+
+  private val metrics = ConnectionMetrics()
+  private val call = mockk<Call>()
+  private val connection = mockk<Connection>()
+
+  @Test
+  fun givenOneNewAndThreePooledConnections_whenISnapshot_thenIExpectSeventyFivePercentReuse() {
+    val factory = metrics.listenerFactory("cdn2")
+
+    factory.create(call).apply {
+      callStart(call)
+      connectEnd(call, ADDRESS, Proxy.NO_PROXY, Protocol.HTTP_2)
+      secureConnectEnd(call, null)
+      connectionAcquired(call, connection)
+      callEnd(call)
+    }
+
+    repeat(3) {
+      factory.create(call).apply {
+        callStart(call)
+        connectionAcquired(call, connection)
+        callEnd(call)
+      }
+    }
+
+    val snapshot = metrics.snapshots["cdn2"]!!
+    assertThat(snapshot.callsStarted).isEqualTo(4L)
+    assertThat(snapshot.connectionsAcquired).isEqualTo(4L)
+    assertThat(snapshot.connectionsOpened).isEqualTo(1L)
+    assertThat(snapshot.tlsHandshakes).isEqualTo(1L)
+    assertThat(snapshot.reuseRate).isEqualTo(0.75)
+  }
+
+  @Test
+  fun givenCallsThatHaveNotEnded_whenISnapshot_thenIExpectThemInFlight() {
+    val factory = metrics.listenerFactory("cdn3")
+
+    val first = factory.create(call).apply { callStart(call) }
+    factory.create(call).apply { callStart(call) }
+
+    assertThat(metrics.snapshots["cdn3"]!!.callsInFlight).isEqualTo(2L)
+
+    first.callFailed(call, IOException())
+    first.callEnd(call)
+
+    assertThat(metrics.snapshots["cdn3"]!!.callsInFlight).isEqualTo(1L)
+  }
+
+  @Test
+  fun givenSeveralClientsWithTheSameLabel_whenISnapshot_thenIExpectTheirCountsCombined() {
+    metrics.listenerFactory("storage").create(call).callStart(call)
+    metrics.listenerFactory("storage").create(call).callStart(call)
+    metrics.listenerFactory("cdn0").create(call).callStart(call)
+
+    assertThat(metrics.snapshots.keys.toList()).containsExactly("cdn0", "storage")
+    assertThat(metrics.snapshots["storage"]!!.callsStarted).isEqualTo(2L)
+  }
+
+  @Test
+  fun givenNoConnections_whenISnapshot_thenIExpectNoReuse() {
+    metrics.listenerFactory("cdn0")
+
+    assertThat(metrics.snapshots["cdn0"]!!.reuseRate).isEqualTo(0.0)
+  }
+
+  companion object {
+    private val ADDRESS = InetSocketAddress.createUnresolved("cdn.example.org", 443)
+  }
+}
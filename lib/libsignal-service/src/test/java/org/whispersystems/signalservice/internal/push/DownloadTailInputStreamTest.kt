@@ -0,0 +1,123 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.signalservice.internal.push
+
+import assertk.assertThat
+import assertk.assertions.isEqualTo
+import assertk.assertions.isTrue
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import org.signal.network.exceptions.PushNetworkException
+import java.io.File
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+class DownloadTailInputStreamTest {
+
+  private val content = Random(2).nextBytes(CONTENT_LENGTH)
+
+  private lateinit var executor: ExecutorService
+  private lateinit var destination: File
+
+  @Before
+  fun setUp() {
+    executor = Executors.newCachedThreadPool()
+    destination = File.createTempFile("tail", ".download")
+  }
+
+  @After
+  fun tearDown() {
+    executor.shutdownNow()
+    destination.delete()
+    RangedCdnDownload.getStateFile(destination).delete()
+  }
+
+  @Test
+  fun givenARangedDownload_whenIReadAlong_thenIExpectTheWholeContentInOrder() {
+    val stream = DownloadTailInputStream.start(executor, destination, CONTENT_LENGTH.toLong(), null) { listener ->
+      RangedCdnDownload(destination, CONTENT_LENGTH.toLong(), 4).run(executor, slowCdn(), listener)
+    }
+
+    val read = stream.use { it.readBytes() }
+
+    assertArrayEquals(content, read)
+  }
+
+  @Test
+  fun givenADownloadThatFails_whenIReadAlong_thenIExpectTheFailure() {
+    val stream = DownloadTailInputStream.start(executor, destination, CONTENT_LENGTH.toLong(), null) {
+      destination.writeBytes(content.copyOf(CHUNK_SIZE))
+      throw PushNetworkException("Connection dropped")
+    }
+
+    try {
+      stream.use { it.readBytes() }
+      fail("Expected the download failure")
+    } catch (e: PushNetworkException) {
+      assertThat(e.message).isEqualTo("Connection dropped")
+    }
+  }
+
+  @Test
+  fun givenADownloadThatEndsEarly_whenIReadAlong_thenIExpectAFailure() {
+    val stream = DownloadTailInputStream.start(executor, destination, CONTENT_LENGTH.toLong(), null) {
+      destination.writeBytes(content.copyOf(CHUNK_SIZE))
+    }
+
+    try {
+      stream.use { it.readBytes() }
+      fail("Expected the download to be short")
+    } catch (e: PushNetworkException) {
+      // expected
+    }
+  }
+
+  @Test
+  fun givenARunningDownload_whenICloseTheStream_thenIExpectTheDownloadToBeCanceled() {
+    val started = CountDownLatch(1)
+    var canceled = false
+
+    val stream = DownloadTailInputStream.start(executor, destination, CONTENT_LENGTH.toLong(), null) { listener ->
+      started.countDown()
+      while (!listener.shouldCancel()) {
+        Thread.sleep(10)
+      }
+      canceled = true
+    }
+
+    assertThat(started.await(5, TimeUnit.SECONDS)).isTrue()
+    stream.close()
+
+    assertThat(canceled).isTrue()
+  }
+
+  /**
+   * Stand-in for a CDN that honors range requests and delivers each range a chunk at a time, so that the reader catches up with it.
+   */
+  private fun slowCdn() = RangedCdnDownload.RangeFetcher { start, end, sink ->
+    val buffer = ByteArray(CHUNK_SIZE)
+    var position = start
+
+    while (position <= end) {
+      val length = minOf(CHUNK_SIZE.toLong(), end - position + 1).toInt()
+      System.arraycopy(content, position.toInt(), buffer, 0, length)
+      sink.write(buffer, length)
+      position += length
+      Thread.sleep(1)
+    }
+  }
+
+  companion object {
+    private const val CONTENT_LENGTH = 512 * 1024 + 9
+    private const val CHUNK_SIZE = 16 * 1024
+  }
+}
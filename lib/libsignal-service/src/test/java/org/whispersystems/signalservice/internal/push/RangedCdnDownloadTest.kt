@@ -0,0 +1,193 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.whispersystems.signalservice.internal.push
+
+import assertk.assertThat
+import assertk.assertions.isEqualTo
+import assertk.assertions.isFalse
+import assertk.assertions.isTrue
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.fail
+import org.junit.Before
+import org.junit.Test
+import org.whispersystems.signalservice.api.messages.AttachmentTransferProgress
+import org.whispersystems.signalservice.api.messages.SignalServiceAttachment
+import java.io.File
+import java.io.IOException
+import java.util.Collections
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.random.Random
+
+class RangedCdnDownloadTest {
+
+  private val content = Random(1).nextBytes(CONTENT_LENGTH)
+
+  private lateinit var executor: ExecutorService
+  private lateinit var destination: File
+
+  @Before
+  fun setUp() {
+    executor = Executors.newCachedThreadPool()
+    destination = File.createTempFile("ranged", ".download")
+    destination.delete()
+  }
+
+  @After
+  fun tearDown() {
+    executor.shutdownNow()
+    destination.delete()
+    File(destination.path + ".ranges").delete()
+  }
+
+  @Test
+  fun givenFourRanges_whenIDownload_thenIExpectContentToMatch() {
+    val requests = Collections.synchronizedList(mutableListOf<LongRange>())
+
+    RangedCdnDownload(destination, CONTENT_LENGTH.toLong(), 4).run(executor, FakeCdn(requests), null)
+
+    assertArrayEquals(content, destination.readBytes())
+    assertThat(requests.size).isEqualTo(4)
+    assertThat(RangedCdnDownload.isInProgress(destination)).isFalse()
+  }
+
+  @Test
+  fun givenMoreRangesThanBytes_whenIDownload_thenIExpectOneRangePerByte() {
+    val download = RangedCdnDownload(destination, 3, 8)
+
+    assertThat(download.rangeCount).isEqualTo(3)
+  }
+
+  @Test
+  fun givenAnInterruptedRange_whenIResume_thenIExpectOnlyMissingBytesToBeRequested() {
+    try {
+      RangedCdnDownload(destination, CONTENT_LENGTH.toLong(), 4).run(executor, FakeCdn(failAfterWrites = AtomicInteger(10)), null)
+      fail("Expected the download to fail")
+    } catch (e: IOException) {
+      // expected
+    }
+
+    assertThat(RangedCdnDownload.isInProgress(destination)).isTrue()
+
+    val requests = Collections.synchronizedList(mutableListOf<LongRange>())
+    RangedCdnDownload(destination, CONTENT_LENGTH.toLong(), 4).run(executor, FakeCdn(requests), null)
+
+    assertArrayEquals(content, destination.readBytes())
+    assertThat(requests.sumOf { it.last - it.first + 1 } < CONTENT_LENGTH).isTrue()
+    assertThat(RangedCdnDownload.isInProgress(destination)).isFalse()
+  }
+
+  @Test
+  fun givenAListener_whenIDownload_thenIExpectProgressToReachTotal() {
+    var last: AttachmentTransferProgress? = null
+    var previous = -1L
+
+    val listener = object : SignalServiceAttachment.ProgressListener {
+      override fun onAttachmentProgress(progress: AttachmentTransferProgress) {
+        assertThat(progress.transmitted.inWholeBytes > previous).isTrue()
+        previous = progress.transmitted.inWholeBytes
+        last = progress
+      }
+
+      override fun shouldCancel(): Boolean = false
+    }
+
+    RangedCdnDownload(destination, CONTENT_LENGTH.toLong(), 4).run(executor, FakeCdn(), listener)
+
+    assertThat(last!!.total.inWholeBytes).isEqualTo(CONTENT_LENGTH.toLong())
+    assertThat(last!!.transmitted.inWholeBytes).isEqualTo(CONTENT_LENGTH.toLong())
+  }
+
+  @Test
+  fun givenAStaleStateFile_whenIDownloadADifferentLength_thenIExpectAFreshDownload() {
+    try {
+      RangedCdnDownload(destination, CONTENT_LENGTH.toLong() / 2, 4).run(executor, FakeCdn(failAfterWrites = AtomicInteger(2)), null)
+      fail("Expected the download to fail")
+    } catch (e: IOException) {
+      // expected
+    }
+
+    RangedCdnDownload(destination, CONTENT_LENGTH.toLong(), 4).run(executor, FakeCdn(), null)
+
+    assertArrayEquals(content, destination.readBytes())
+  }
+
+  @Test
+  fun givenOnlyPartOfTheFirstRange_whenIGetTheContiguousLength_thenIExpectOnlyThoseBytes() {
+    val download = RangedCdnDownload(destination, CONTENT_LENGTH.toLong(), 4)
+    val fetcher = RangedCdnDownload.RangeFetcher { start, end, sink ->
+      if (start == 0L) {
+        FakeCdn().fetch(start, start + 3 * CHUNK_SIZE - 1, sink)
+        throw IOException("Connection dropped")
+      }
+      FakeCdn().fetch(start, end, sink)
+    }
+
+    // One thread, so the first range gets as far as it's going to before the others are canceled
+    val singleThread = Executors.newSingleThreadExecutor()
+    try {
+      download.run(singleThread, fetcher, null)
+      fail("Expected the download to fail")
+    } catch (e: IOException) {
+      // expected
+    } finally {
+      singleThread.shutdown()
+    }
+
+    val contiguous = RangedCdnDownload.getContiguousLength(destination)
+    assertThat(contiguous).isEqualTo(3L * CHUNK_SIZE)
+    assertThat(destination.length()).isEqualTo(CONTENT_LENGTH.toLong())
+    assertArrayEquals(content.copyOf(contiguous.toInt()), destination.readBytes().copyOf(contiguous.toInt()))
+  }
+
+  @Test
+  fun givenAFinishedDownload_whenIGetTheContiguousLength_thenIExpectTheWholeFile() {
+    RangedCdnDownload(destination, CONTENT_LENGTH.toLong(), 4).run(executor, FakeCdn(), null)
+
+    assertThat(RangedCdnDownload.getContiguousLength(destination)).isEqualTo(CONTENT_LENGTH.toLong())
+  }
+
+  @Test
+  fun parseTotalLength() {
+    assertThat(RangedCdnDownload.parseTotalLength("bytes 0-0/12345")).isEqualTo(12345L)
+    assertThat(RangedCdnDownload.parseTotalLength("bytes 0-0/*")).isEqualTo(-1L)
+    assertThat(RangedCdnDownload.parseTotalLength("versions 1-2/3")).isEqualTo(-1L)
+    assertThat(RangedCdnDownload.parseTotalLength(null)).isEqualTo(-1L)
+  }
+
+  /**
+   * Stand-in for a CDN that honors range requests, optionally dropping the connection after a number of chunks.
+   */
+  private inner class FakeCdn(
+    private val requests: MutableList<LongRange> = mutableListOf(),
+    private val failAfterWrites: AtomicInteger? = null
+  ) : RangedCdnDownload.RangeFetcher {
+    override fun fetch(start: Long, end: Long, sink: RangedCdnDownload.RangeSink) {
+      requests += start..end
+
+      val buffer = ByteArray(CHUNK_SIZE)
+      var position = start
+
+      while (position <= end) {
+        if (failAfterWrites != null && failAfterWrites.decrementAndGet() < 0) {
+          throw IOException("Connection dropped")
+        }
+
+        val length = minOf(CHUNK_SIZE.toLong(), end - position + 1).toInt()
+        System.arraycopy(content, position.toInt(), buffer, 0, length)
+        sink.write(buffer, length)
+        position += length
+      }
+    }
+  }
+
+  companion object {
+    private const val CONTENT_LENGTH = 1024 * 1024 + 17
+    private const val CHUNK_SIZE = 4096
+  }
+}
@@ -121,6 +121,10 @@ class FixedSizePagingController<Key, Data> implements PagingController<Key> {
         int  position = loadStart + i;
         Data item     = loaded.get(i);
 
+        if (item == null) {
+          continue;
+        }
+
         updated.set(position, item);
         keyToPosition.put(dataSource.getKey(item), position);
       }
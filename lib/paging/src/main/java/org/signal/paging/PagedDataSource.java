@@ -22,7 +22,8 @@ public interface PagedDataSource<Key, Data> {
    * @param totalSize          The total number of items in the data source
    * @param cancellationSignal An object that you can check to see if the load operation was canceled.
    * @return A list of length {@code length} that represents the data starting at {@code start}.
-   * If you don't have the full range, just populate what you can.
+   * If you don't have the full range, just populate what you can. Items you can't load may be left null, in which case that
+   * position keeps showing a placeholder.
    */
   @WorkerThread
   @NonNull List<Data> load(int start, int length, int totalSize, @NonNull CancellationSignal cancellationSignal);
@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.text.NumberFormat;
 import java.util.Locale;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 @RequiresApi(26)
@@ -136,6 +137,29 @@ public final class StreamingTranscoder {
                         @NonNull OutputStream stream,
                         @Nullable TranscoderCancelationSignal cancelationSignal)
       throws IOException, EncodingException
+  {
+    return transcode(progress, stream, cancelationSignal, false).mdatSize;
+  }
+
+  /**
+   * Transcodes to a fast-started MP4 without a second pass over the output. Only the contents of the mdat box are written to
+   * {@code mdatStream}; the returned header (ftyp, moov and the mdat box header) must be written in front of them.
+   *
+   * @return The header of the fast-started file.
+   */
+  public @NonNull byte[] transcodeFastStart(@NonNull Progress progress,
+                                            @NonNull OutputStream mdatStream,
+                                            @Nullable TranscoderCancelationSignal cancelationSignal)
+      throws IOException, EncodingException
+  {
+    return Objects.requireNonNull(transcode(progress, mdatStream, cancelationSignal, true).fastStartHeader);
+  }
+
+  private @NonNull Result transcode(@NonNull Progress progress,
+                                    @NonNull OutputStream stream,
+                                    @Nullable TranscoderCancelationSignal cancelationSignal,
+                                    boolean fastStart)
+      throws IOException, EncodingException
   {
     float durationSec = duration / 1000f;
 
@@ -177,7 +201,11 @@ public final class StreamingTranscoder {
     } else {
       outStream = new CountingOutputStream(stream);
     }
-    converter.setOutput(outStream);
+    if (fastStart) {
+      converter.setFastStartOutput(outStream);
+    } else {
+      converter.setOutput(outStream);
+    }
     converter.setVideoCodec(targetQuality.getCodec());
     converter.setVideoResolution(targetQuality.getOutputResolution());
     converter.setVideoBitrate(targetQuality.getTargetVideoBitRate());
@@ -198,9 +226,10 @@ public final class StreamingTranscoder {
       return cancelationSignal != null && cancelationSignal.isCanceled();
     });
 
-    long mdatSize = converter.convert();
+    long   mdatSize        = converter.convert();
+    byte[] fastStartHeader = fastStart ? converter.getFastStartHeader() : null;
 
-    long  outSize           = outStream.getCount();
+    long  outSize           = outStream.getCount() + (fastStartHeader != null ? fastStartHeader.length : 0);
     float encodeDurationSec = (System.currentTimeMillis() - startTime) / 1000f;
 
     Log.i(TAG, String.format(Locale.US,
@@ -223,7 +252,7 @@ public final class StreamingTranscoder {
 
     stream.flush();
 
-    return mdatSize;
+    return new Result(mdatSize, fastStartHeader);
   }
 
   public boolean isTranscodeRequired() {
@@ -275,6 +304,16 @@ public final class StreamingTranscoder {
     void onProgress(int percent);
   }
 
+  private static final class Result {
+    final           long   mdatSize;
+    final @Nullable byte[] fastStartHeader;
+
+    Result(long mdatSize, @Nullable byte[] fastStartHeader) {
+      this.mdatSize        = mdatSize;
+      this.fastStartHeader = fastStartHeader;
+    }
+  }
+
   private static class LimitedSizeOutputStream extends FilterOutputStream {
 
     private final long sizeLimit;
@@ -75,6 +75,7 @@ public final class MediaConverter {
 
     private Listener mListener;
     private boolean mCancelled;
+    private byte[] mFastStartHeader;
 
     public interface Listener {
         boolean onProgress(int percent);
@@ -99,7 +100,22 @@ public final class MediaConverter {
     }
 
     public void setOutput(final @NonNull OutputStream stream) {
-        mOutput = new StreamOutput(stream);
+        mOutput = new StreamOutput(stream, false);
+    }
+
+    /**
+     * Only the contents of the mdat box are written to {@code mdatStream}. After {@link #convert()}, the rest of the file is
+     * available from {@link #getFastStartHeader()} and goes in front of them.
+     */
+    public void setFastStartOutput(final @NonNull OutputStream mdatStream) {
+        mOutput = new StreamOutput(mdatStream, true);
+    }
+
+    /**
+     * @return The ftyp, moov and mdat header of the last conversion, if the output was set with {@link #setFastStartOutput(OutputStream)}.
+     */
+    public @Nullable byte[] getFastStartHeader() {
+        return mFastStartHeader;
     }
 
     @SuppressWarnings("unused")
@@ -227,6 +243,9 @@ public final class MediaConverter {
             if (muxerStarted) {
                 mdatContentLength = muxer.stop();
                 muxerStopped = true;
+                if (muxer instanceof StreamingMuxer) {
+                    mFastStartHeader = ((StreamingMuxer) muxer).getFastStartHeader();
+                }
             } else if (mCancelled) {
                 throw new EncodingException("Conversion cancelled before muxing started");
             }
@@ -480,14 +499,16 @@ public final class MediaConverter {
      private static class StreamOutput implements Output {
 
         final OutputStream outputStream;
+        final boolean      fastStart;
 
-        StreamOutput(final @NonNull OutputStream outputStream) {
+        StreamOutput(final @NonNull OutputStream outputStream, boolean fastStart) {
             this.outputStream = outputStream;
+            this.fastStart    = fastStart;
         }
 
         @Override
         public @NonNull Muxer createMuxer() {
-            return new StreamingMuxer(outputStream);
+            return new StreamingMuxer(outputStream, fastStart);
         }
     }
 }
@@ -48,8 +48,10 @@ import org.mp4parser.tools.Mp4Math;
 import org.mp4parser.tools.Path;
 import org.signal.core.util.logging.Log;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -71,6 +73,11 @@ import static org.mp4parser.tools.CastUtils.l2i;
  * A very special property of this variant is that it written sequentially. You can start transferring the
  * data while the <code>sink</code> receives it. (in contrast to typical implementations which need random
  * access to write length fields at the beginning of the file)
+ * <p>
+ * In fast start mode, only the contents of the mdat box are written to the <code>sink</code>. Once closed,
+ * {@link #getFastStartHeader()} holds the ftyp, moov and mdat header that go in front of them, with the chunk
+ * offsets already pointing past the header. Writing the header followed by the sink's contents gives a file
+ * with ftyp, moov, mdat order, without having to read the file back to move the moov.
  */
 final class Mp4Writer extends DefaultBoxes implements SampleSink {
 
@@ -80,6 +87,10 @@ final class Mp4Writer extends DefaultBoxes implements SampleSink {
   private final WritableByteChannel  sink;
   private final List<StreamingTrack> source;
   private final Date                 creationTime = new Date();
+  private final FileTypeBox          fileTypeBox;
+  private final boolean              fastStart;
+
+  private byte[] fastStartHeader;
 
   private boolean hasWrittenMdat = false;
 
@@ -111,8 +122,13 @@ final class Mp4Writer extends DefaultBoxes implements SampleSink {
   private long mMDatTotalContentLength = 0;
   
   Mp4Writer(final @NonNull List<StreamingTrack> source, final @NonNull WritableByteChannel sink) throws IOException {
-    this.source = new ArrayList<>(source);
-    this.sink   = sink;
+    this(source, sink, false);
+  }
+
+  Mp4Writer(final @NonNull List<StreamingTrack> source, final @NonNull WritableByteChannel sink, boolean fastStart) throws IOException {
+    this.source    = new ArrayList<>(source);
+    this.sink      = sink;
+    this.fastStart = fastStart;
 
     final HashSet<Long> trackIds = new HashSet<>();
     for (StreamingTrack streamingTrack : source) {
@@ -147,7 +163,11 @@ final class Mp4Writer extends DefaultBoxes implements SampleSink {
     final List<String> minorBrands = new LinkedList<>();
     minorBrands.add("isom");
     minorBrands.add("mp42");
-    write(sink, new FileTypeBox("mp42", 0, minorBrands));
+    fileTypeBox = new FileTypeBox("mp42", 0, minorBrands);
+
+    if (!fastStart) {
+      write(sink, fileTypeBox);
+    }
   }
 
   public void close() throws IOException {
@@ -155,7 +175,11 @@ final class Mp4Writer extends DefaultBoxes implements SampleSink {
       writeChunkContainer(createChunkContainer(streamingTrack));
       streamingTrack.close();
     }
-    write(sink, createMoov());
+    if (fastStart) {
+      fastStartHeader = createFastStartHeader(createMoov());
+    } else {
+      write(sink, createMoov());
+    }
     hasWrittenMdat = false;
   }
 
@@ -163,6 +187,65 @@ final class Mp4Writer extends DefaultBoxes implements SampleSink {
     return mMDatTotalContentLength;
   }
 
+  /**
+   * Only available in fast start mode, after {@link #close()}.
+   *
+   * @return The ftyp, moov and mdat header to write in front of everything that was written to the sink.
+   */
+  public @NonNull byte[] getFastStartHeader() {
+    if (fastStartHeader == null) {
+      throw new IllegalStateException("No fast start header. fastStart: " + fastStart);
+    }
+    return fastStartHeader;
+  }
+
+  /**
+   * In fast start mode the chunk offsets are relative to the start of the mdat contents. The size of the moov doesn't
+   * depend on the offset values, so we can measure the header, then shift every offset past it.
+   */
+  private @NonNull byte[] createFastStartHeader(final @NonNull Box moov) throws IOException {
+    final long    mdatContentLength = bytesWritten;
+    final boolean largeMdat         = mdatContentLength + 8 > UInt32_MAX;
+    final int     mdatHeaderSize    = largeMdat ? 16 : 8;
+    final long    headerSize        = fileTypeBox.getSize() + moov.getSize() + mdatHeaderSize;
+
+    if (headerSize + mdatContentLength > UInt32_MAX) {
+      throw new MuxingException("Chunk offsets do not fit in stco");
+    }
+
+    for (StreamingTrack streamingTrack : source) {
+      final ChunkOffsetBox stco    = Objects.requireNonNull(Path.getPath(trackBoxes.get(streamingTrack), "mdia[0]/minf[0]/stbl[0]/stco[0]"));
+      final long[]         offsets = stco.getChunkOffsets().clone();
+      for (int i = 0; i < offsets.length; i++) {
+        offsets[i] += headerSize;
+      }
+      stco.setChunkOffsets(offsets);
+    }
+
+    final ByteArrayOutputStream header        = new ByteArrayOutputStream(l2i(headerSize));
+    final WritableByteChannel   headerChannel = Channels.newChannel(header);
+    fileTypeBox.getBox(headerChannel);
+    moov.getBox(headerChannel);
+
+    final ByteBuffer mdatHeader = ByteBuffer.allocate(mdatHeaderSize);
+    if (largeMdat) {
+      mdatHeader.putInt(1);
+      mdatHeader.put(new byte[] { 109, 100, 97, 116 });
+      mdatHeader.putLong(mdatContentLength + mdatHeaderSize);
+    } else {
+      mdatHeader.putInt((int) (mdatContentLength + mdatHeaderSize));
+      mdatHeader.put(new byte[] { 109, 100, 97, 116 });
+    }
+    mdatHeader.flip();
+    headerChannel.write(mdatHeader);
+
+    if (header.size() != headerSize) {
+      throw new MuxingException("Fast start header is " + header.size() + " bytes, expected " + headerSize);
+    }
+
+    return header.toByteArray();
+  }
+
   private Box createMoov() {
     final MovieBox movieBox = new MovieBox();
 
@@ -291,9 +374,11 @@ final class Mp4Writer extends DefaultBoxes implements SampleSink {
   private void writeChunkContainer(ChunkContainer chunkContainer) throws IOException {
     final TrackBox       tb   = trackBoxes.get(chunkContainer.streamingTrack);
     final ChunkOffsetBox stco = Objects.requireNonNull(Path.getPath(tb, "mdia[0]/minf[0]/stbl[0]/stco[0]"));
-    final int extraChunkOffset = hasWrittenMdat ? 0 : 8;
+    // In fast start mode the mdat header is written with the moov instead, see createFastStartHeader
+    final boolean includeHeader = !hasWrittenMdat && !fastStart;
+    final int extraChunkOffset = includeHeader ? 8 : 0;
     stco.setChunkOffsets(Mp4Arrays.copyOfAndAppend(stco.getChunkOffsets(), bytesWritten + extraChunkOffset));
-    chunkContainer.mdat.includeHeader = !hasWrittenMdat;
+    chunkContainer.mdat.includeHeader = includeHeader;
     write(sink, chunkContainer.mdat);
 
     mMDatTotalContentLength += chunkContainer.mdat.getSize();
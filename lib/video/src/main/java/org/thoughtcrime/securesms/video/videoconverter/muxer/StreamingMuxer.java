@@ -22,11 +22,22 @@ import java.util.List;
 public final class StreamingMuxer implements Muxer {
   private static final String TAG = Log.tag(StreamingMuxer.class);
   private final OutputStream          outputStream;
+  private final boolean               fastStart;
   private final List<MediaCodecTrack> tracks = new ArrayList<>();
   private       Mp4Writer             mp4Writer;
+  private       byte[]                fastStartHeader;
 
   public StreamingMuxer(OutputStream outputStream) {
+    this(outputStream, false);
+  }
+
+  /**
+   * @param fastStart If true, only the contents of the mdat box are written to {@code outputStream}, and the rest of the file
+   *                  is available from {@link #getFastStartHeader()} once stopped. See {@link Mp4Writer}.
+   */
+  public StreamingMuxer(OutputStream outputStream, boolean fastStart) {
     this.outputStream = outputStream;
+    this.fastStart    = fastStart;
   }
 
   @Override
@@ -35,7 +46,7 @@ public final class StreamingMuxer implements Muxer {
     for (MediaCodecTrack track : tracks) {
       source.add((StreamingTrack) track);
     }
-    mp4Writer = new Mp4Writer(source, Channels.newChannel(outputStream));
+    mp4Writer = new Mp4Writer(source, Channels.newChannel(outputStream), fastStart);
   }
 
   @Override
@@ -49,11 +60,23 @@ public final class StreamingMuxer implements Muxer {
     mp4Writer.close();
     long mdatLength = mp4Writer.getTotalMdatContentLength();
 
+    if (fastStart) {
+      fastStartHeader = mp4Writer.getFastStartHeader();
+    }
+
     mp4Writer = null;
 
     return mdatLength;
   }
 
+  /**
+   * @return The ftyp, moov and mdat header that go in front of the mdat contents, or null if not in fast start mode or not
+   * stopped yet.
+   */
+  public @Nullable byte[] getFastStartHeader() {
+    return fastStartHeader;
+  }
+
   @Override
   public int addTrack(@NonNull MediaFormat format) throws IOException {
 
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2026 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.thoughtcrime.securesms.video.videoconverter.muxer
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.mp4parser.IsoFile
+import org.mp4parser.boxes.iso14496.part12.ChunkOffsetBox
+import org.mp4parser.boxes.iso14496.part12.SampleDescriptionBox
+import org.mp4parser.boxes.iso14496.part12.SampleSizeBox
+import org.mp4parser.boxes.iso14496.part12.SampleToChunkBox
+import org.mp4parser.boxes.sampleentry.VisualSampleEntry
+import org.mp4parser.streaming.input.AbstractStreamingTrack
+import org.mp4parser.streaming.input.StreamingSampleImpl
+import org.mp4parser.tools.Path
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+
+class Mp4WriterTest {
+
+  companion object {
+    private const val TIMESCALE = 1000L
+    private const val SAMPLE_DURATION = 40L
+
+    /** Enough samples for a few of the writer's 2 second chunks. */
+    private const val SAMPLE_COUNT = 150
+  }
+
+  @Test
+  fun `fast start header puts moov before mdat`() {
+    val file = muxFastStart(samples())
+
+    assertEquals(listOf("ftyp", "moov", "mdat"), topLevelBoxes(file).map { it.first })
+  }
+
+  @Test
+  fun `fast start mdat size covers everything after its header`() {
+    val file = muxFastStart(samples())
+    val (_, mdatStart, mdatSize) = topLevelBoxes(file).last()
+
+    assertEquals(file.size.toLong() - mdatStart, mdatSize)
+  }
+
+  @Test
+  fun `fast start chunk offsets point at the samples`() {
+    val samples = samples()
+    val file = muxFastStart(samples)
+
+    val offsets = sampleOffsets(file)
+    assertEquals(samples.size, offsets.size)
+    assertTrue("Expected more than one chunk", chunkOffsets(file).size > 1)
+
+    val mdatStart = topLevelBoxes(file).last().second
+    for ((i, sample) in samples.withIndex()) {
+      assertTrue("Sample $i starts before the mdat contents", offsets[i] >= mdatStart + 8)
+      assertArrayEquals("Sample $i", sample, file.copyOfRange(offsets[i].toInt(), offsets[i].toInt() + sample.size))
+    }
+  }
+
+  @Test
+  fun `fast start mdat contents match the default layout`() {
+    val samples = samples()
+
+    val defaultLayout = ByteArrayOutputStream()
+    val track = FakeVideoTrack()
+    val writer = Mp4Writer(listOf(track), Channels.newChannel(defaultLayout))
+    samples.forEach { writer.acceptSample(StreamingSampleImpl(ByteBuffer.wrap(it), SAMPLE_DURATION), track) }
+    writer.close()
+
+    val defaultFile = defaultLayout.toByteArray()
+    val fastStartFile = muxFastStart(samples)
+
+    // The default layout is ftyp, an mdat header with no size, the mdat contents, then moov
+    val (_, mdatStart, mdatSize) = topLevelBoxes(fastStartFile).last()
+    val contentLength = (mdatSize - 8).toInt()
+    val ftypSize = topLevelBoxes(fastStartFile).first().third.toInt()
+
+    assertEquals(defaultFile.size, fastStartFile.size)
+    assertArrayEquals(
+      defaultFile.copyOfRange(ftypSize + 8, ftypSize + 8 + contentLength),
+      fastStartFile.copyOfRange(mdatStart.toInt() + 8, fastStartFile.size)
+    )
+  }
+
+  private fun muxFastStart(samples: List<ByteArray>): ByteArray {
+    val mdatContents = ByteArrayOutputStream()
+    val track = FakeVideoTrack()
+    val writer = Mp4Writer(listOf(track), Channels.newChannel(mdatContents), true)
+
+    for (sample in samples) {
+      writer.acceptSample(StreamingSampleImpl(ByteBuffer.wrap(sample), SAMPLE_DURATION), track)
+    }
+    writer.close()
+
+    return writer.fastStartHeader + mdatContents.toByteArray()
+  }
+
+  /** Samples of varying sizes, each filled with its own index, so a misplaced offset shows up as the wrong bytes. */
+  private fun samples(): List<ByteArray> {
+    return List(SAMPLE_COUNT) { i -> ByteArray(50 + (i * 7) % 90) { i.toByte() } }
+  }
+
+  /** @return The type, start offset and size of every top level box. */
+  private fun topLevelBoxes(file: ByteArray): List<Triple<String, Long, Long>> {
+    val buffer = ByteBuffer.wrap(file)
+    val boxes = mutableListOf<Triple<String, Long, Long>>()
+
+    while (buffer.remaining() >= 8) {
+      val start = buffer.position()
+      var size = buffer.int.toLong() and 0xFFFFFFFFL
+      val type = String(ByteArray(4).also { buffer.get(it) }, Charsets.US_ASCII)
+      if (size == 1L) {
+        size = buffer.long
+      }
+      assertTrue("Box $type has size $size", size >= 8)
+
+      boxes += Triple(type, start.toLong(), size)
+      buffer.position((start + size).toInt())
+    }
+
+    assertEquals("Trailing bytes after the last box", 0, buffer.remaining())
+    return boxes
+  }
+
+  private fun parse(file: ByteArray): IsoFile {
+    return IsoFile(Channels.newChannel(file.inputStream()))
+  }
+
+  private fun chunkOffsets(file: ByteArray): LongArray {
+    return Path.getPath<ChunkOffsetBox>(parse(file), "moov[0]/trak[0]/mdia[0]/minf[0]/stbl[0]/stco[0]")!!.chunkOffsets
+  }
+
+  /** Works out where each sample starts from the stco, stsc and stsz boxes, the same way a player would. */
+  private fun sampleOffsets(file: ByteArray): List<Long> {
+    val isoFile = parse(file)
+    val chunkOffsets = Path.getPath<ChunkOffsetBox>(isoFile, "moov[0]/trak[0]/mdia[0]/minf[0]/stbl[0]/stco[0]")!!.chunkOffsets
+    val sampleSizes = Path.getPath<SampleSizeBox>(isoFile, "moov[0]/trak[0]/mdia[0]/minf[0]/stbl[0]/stsz[0]")!!.sampleSizes
+    val samplesPerChunk = Path.getPath<SampleToChunkBox>(isoFile, "moov[0]/trak[0]/mdia[0]/minf[0]/stbl[0]/stsc[0]")!!.blowup(chunkOffsets.size)
+
+    val offsets = mutableListOf<Long>()
+    var sample = 0
+    for ((chunk, chunkOffset) in chunkOffsets.withIndex()) {
+      var offset = chunkOffset
+      repeat(samplesPerChunk[chunk].toInt()) {
+        offsets += offset
+        offset += sampleSizes[sample++]
+      }
+    }
+    return offsets
+  }
+
+  private class FakeVideoTrack : AbstractStreamingTrack() {
+    override fun getTimescale(): Long = TIMESCALE
+    override fun getHandler(): String = "vide"
+    override fun getLanguage(): String = "und"
+    override fun getSampleDescriptionBox(): SampleDescriptionBox = SampleDescriptionBox().apply { addBox(VisualSampleEntry("avc1")) }
+    override fun close() = Unit
+  }
+}